@@ -0,0 +1,137 @@
+/**
+ * Benchmark.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A single-threaded microbenchmark of one operation.
+ *
+ * <p>The operation is run for a number of warm-up iterations before being timed, and the bytes allocated
+ * by the measuring thread are recorded where the JVM supports it. Results returned by {@link #run()}
+ * are consumed so that the operation cannot be optimised away.
+ *
+ * @since   1.3
+ */
+public abstract class Benchmark {
+
+	private static volatile Object sink;
+
+	private final String name;
+
+	/**
+	 * Constructs a named benchmark
+	 * @param name the name reported with the results
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Prepares any state used by {@link #run()}
+	 * @throws Exception if set-up fails
+	 */
+	protected void setUp() throws Exception {}
+
+	/**
+	 * Performs the operation being measured once
+	 * @return any result of the operation
+	 * @throws Exception if the operation fails
+	 */
+	protected abstract Object run() throws Exception;
+
+	/**
+	 * Releases any state used by {@link #run()}
+	 * @throws Exception if clean-up fails
+	 */
+	protected void tearDown() throws Exception {}
+
+	/**
+	 * Get the number of operations performed by each call to {@link #run()}
+	 * @return the batch size - 1 unless overridden
+	 */
+	protected int operationsPerRun() {
+		return 1;
+	}
+
+	/**
+	 * Runs the benchmark
+	 * @param warmup the number of untimed calls to {@link #run()}
+	 * @param iterations the number of timed calls to {@link #run()}
+	 * @return the measured result
+	 * @throws Exception if the benchmark fails
+	 */
+	public Result measure(int warmup, int iterations) throws Exception {
+		setUp();
+		try {
+			for (int i = 0; i < warmup; i++) {
+				sink = run();
+			}
+
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink = run();
+			}
+			long elapsed = System.nanoTime() - start;
+			long bytes = allocatedBytes() - allocated;
+
+			long operations = (long) iterations * operationsPerRun();
+			return new Result(name, (double) elapsed / operations, allocated < 0 ? -1 : (double) bytes / operations);
+		} finally {
+			tearDown();
+		}
+	}
+
+	/*
+	 * Bytes allocated by the current thread, or -1 if unsupported
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * The average cost of one operation
+	 */
+	public static class Result {
+
+		private final String name;
+		private final double nanos_per_op;
+		private final double bytes_per_op;
+
+		Result(String name, double nanos_per_op, double bytes_per_op) {
+			this.name = name;
+			this.nanos_per_op = nanos_per_op;
+			this.bytes_per_op = bytes_per_op;
+		}
+
+		/**
+		 * Get the average time taken by one operation
+		 * @return nanoseconds per operation
+		 */
+		public double getNanosPerOp() {
+			return nanos_per_op;
+		}
+
+		/**
+		 * Get the average bytes allocated by one operation
+		 * @return bytes per operation - negative if unsupported
+		 */
+		public double getBytesPerOp() {
+			return bytes_per_op;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-48s %12.1f ns/op %10.1f B/op", name, nanos_per_op, bytes_per_op);
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Checks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+/**
+ * Counts the outcome of the checks made by a main-based check harness, printing each one.
+ *
+ * <p>A harness makes its checks and then calls {@link #exit()}, which exits with status 1 if any failed, so
+ * that the harness can be run by a build or a script.
+ *
+ * @since   1.3
+ */
+public class Checks {
+
+	private final String name;
+	private int passed;
+	private int failed;
+
+	/**
+	 * Constructs an empty set of checks
+	 * @param name the name of the harness, printed with the summary
+	 */
+	public Checks(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a check
+	 * @param condition whether the check passed
+	 * @param description what was checked, with any detail useful should it fail
+	 * @return the <tt>condition</tt>
+	 */
+	public synchronized boolean check(boolean condition, String description) {
+		if(condition){
+			passed++;
+			System.out.println("  ok    " + description);
+		}else{
+			failed++;
+			System.out.println("  FAIL  " + description);
+		}
+		return condition;
+	}
+
+	/**
+	 * Records a check that failed with an exception
+	 * @param description what was checked
+	 * @param cause the exception
+	 */
+	public synchronized void fail(String description, Throwable cause) {
+		check(false, description + ": " + cause);
+	}
+
+	/**
+	 * Prints a heading for the checks that follow
+	 * @param section the name of the section
+	 */
+	public void section(String section) {
+		System.out.println(section);
+	}
+
+	/**
+	 * Get the number of checks that failed
+	 * @return the failure count
+	 */
+	public synchronized int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Prints the number of checks that passed and failed, then exits with status 1 if any failed
+	 */
+	public synchronized void exit() {
+		System.out.println(name + ": " + passed + " passed, " + failed + " failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+}
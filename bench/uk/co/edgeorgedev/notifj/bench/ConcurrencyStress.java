@@ -0,0 +1,489 @@
+/**
+ * ConcurrencyStress.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.growl.GntpFanOutNotification;
+import uk.co.edgeorgedev.notifj.notification.growl.WindowsGrowlNotification;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpStubServer;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+import uk.co.edgeorgedev.notifj.notification.linux.LinuxNotification;
+
+/**
+ * Shares one notification between many threads - 128 unless given - that display notifications, queue them with
+ * <tt>showAsync()</tt> and change settings at once, and checks that nothing is lost, corrupted or left hanging.
+ *
+ * <ul>
+ * <li>A backend whose handle is freed by <tt>close()</tt>, closed while every thread is still sending: no call may
+ * use the handle once freed, the only failures are refusals once <tt>close()</tt> has started, and every queued
+ * notification completes.</li>
+ * <li>{@link MemoryNotification}: every notification from every thread is recorded exactly once.</li>
+ * <li>{@link GntpFanOutNotification} against two loopback {@link GntpStubServer}s: every notification reaches
+ * both hosts, which are each registered once.</li>
+ * <li>{@link WindowsGrowlNotification} against a loopback {@link GntpStubServer}, with each transport: closed while
+ * every thread is still sending, failing only with refusals and leaving no connection open.</li>
+ * <li>{@link LinuxNotification}, when a D-Bus session bus is available: closed while every thread is still
+ * sending, failing only with refusals.</li>
+ * <li>Repeated <tt>open()</tt>, <tt>showAsync()</tt> and <tt>close()</tt> cycles leave no dispatcher threads behind,
+ * and a closed notification refuses <tt>showAsync()</tt>.</li>
+ * </ul>
+ *
+ * <p>Usage: <tt>ConcurrencyStress [threads]</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class ConcurrencyStress {
+
+	private static final int DEFAULT_THREADS = 128;
+	private static final int OPERATIONS_PER_THREAD = 200;
+	/* A GFW host is sent each notification over a connection of its own by jgntp */
+	private static final int GROWL_OPERATIONS_PER_THREAD = 20;
+	private static final int CYCLES = 50;
+	private static final long FUTURE_TIMEOUT_SECONDS = 30;
+
+	private final Checks checks = new Checks("ConcurrencyStress");
+	private final int threads;
+
+	private ConcurrencyStress(int threads) {
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws Exception {
+		ConcurrencyStress stress = new ConcurrencyStress(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS);
+		stress.closeWhileSending();
+		stress.memory();
+		stress.fanOut();
+		for (WindowsGrowlNotification.Transport transport : WindowsGrowlNotification.Transport.values()) {
+			stress.windowsGrowl(transport);
+		}
+		stress.linux();
+		stress.cycles();
+		stress.checks.exit();
+	}
+
+	/*
+	 * Close a backend with a freeable handle while every thread is sending through it
+	 */
+	private void closeWhileSending() throws Exception {
+		checks.section(threads + " threads share a backend that is closed mid-stream");
+		HandleNotification notification = new HandleNotification();
+		notification.open();
+		Outcome outcome = run(notification, true);
+
+		checks.check(notification.violations.get() == 0, notification.violations.get() + " calls used the handle after it was freed");
+		checks.check(notification.used.get() > 0, notification.used.get() + " calls used the handle before it was freed");
+		checks.check(outcome.unexpected.isEmpty(), "the only failures were refusals once close() had started: "
+				+ outcome.refused.get() + " refused, unexpected " + outcome.unexpected);
+		checks.check(outcome.hung.get() == 0, "every queued notification completed - " + outcome.hung.get() + " hung");
+	}
+
+	/*
+	 * Record notifications from every thread, checking none is lost or recorded twice
+	 */
+	private void memory() throws Exception {
+		checks.section(threads + " threads share a MemoryNotification");
+		MemoryNotification notification = new MemoryNotification("NotifJ Stress", Integer.highestOneBit(threads * OPERATIONS_PER_THREAD) * 2);
+		notification.open();
+		Outcome outcome = run(notification, false);
+		notification.close();
+
+		long expected = (long) threads * OPERATIONS_PER_THREAD;
+		checks.check(outcome.failures() == 0, "no notification failed: " + outcome.unexpected);
+		checks.check(notification.getCount() == expected, notification.getCount() + " of " + expected + " notifications recorded");
+		Map<String, Boolean> seen = new ConcurrentHashMap<String, Boolean>();
+		int duplicates = 0;
+		for (MemoryNotification.Entry entry : notification.getEntries()) {
+			NotificationMessage message = entry.getMessage();
+			if(seen.put(message.getTitle() + "/" + message.getMessage(), Boolean.TRUE) != null)
+				duplicates++;
+		}
+		checks.check(duplicates == 0 && seen.size() == expected, seen.size() + " distinct notifications recorded, " + duplicates + " twice");
+	}
+
+	/*
+	 * Send from every thread to two GNTP hosts at once
+	 */
+	private void fanOut() throws Exception {
+		checks.section(threads + " threads share a GntpFanOutNotification");
+		GntpStubServer first = new GntpStubServer();
+		GntpStubServer second = new GntpStubServer();
+		GntpFanOutNotification notification = new GntpFanOutNotification("NotifJ Stress",
+				new InetSocketAddress(first.getHost(), first.getPort()), new InetSocketAddress(second.getHost(), second.getPort()));
+		notification.setPoolSize(8);
+		notification.setHostTimeout(30, TimeUnit.SECONDS);
+		try {
+			Outcome outcome;
+			try {
+				notification.open();
+				outcome = run(notification, false);
+			} finally {
+				notification.close();
+			}
+
+			long expected = (long) threads * OPERATIONS_PER_THREAD;
+			checks.check(outcome.failures() == 0, "no notification failed: " + outcome.unexpected);
+			checks.check(first.getRequests() == expected + 1 && second.getRequests() == expected + 1, "each host received "
+					+ (expected + 1) + " requests: " + first.getRequests() + " and " + second.getRequests());
+			checks.check(first.getRegistrations() == 1 && second.getRegistrations() == 1, "each host was registered once: "
+					+ first.getRegistrations() + " and " + second.getRegistrations());
+			awaitClosed(first, second);
+			checks.check(first.getConnections() == 0 && second.getConnections() == 0, "close() closed every connection: "
+					+ first.getConnections() + " and " + second.getConnections() + " still open");
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	/*
+	 * Close a WindowsGrowlNotification while every thread is sending through it to a stub host
+	 */
+	private void windowsGrowl(WindowsGrowlNotification.Transport transport) throws Exception {
+		checks.section(threads + " threads share a WindowsGrowlNotification over " + transport + " that is closed mid-stream");
+		GntpStubServer server = new GntpStubServer();
+		/* As Growl for Windows does, and without which jgntp holds a connection open for every notification */
+		server.closeAfterResponse(true);
+		StubWindowsGrowlNotification notification = new StubWindowsGrowlNotification();
+		notification.setHost(server.getHost());
+		notification.setPort(server.getPort());
+		notification.setTransport(transport);
+		notification.setPoolSize(8);
+		try {
+			notification.open();
+			Outcome outcome = run(notification, true, GROWL_OPERATIONS_PER_THREAD);
+
+			checks.check(server.getRequests() > 0, server.getRequests() + " requests reached the host before close()");
+			checks.check(outcome.unexpected.isEmpty(), "the only failures were refusals once close() had started: "
+					+ outcome.refused.get() + " refused, unexpected " + outcome.unexpected);
+			checks.check(outcome.hung.get() == 0, "every queued notification completed - " + outcome.hung.get() + " hung");
+			awaitClosed(server);
+			checks.check(server.getConnections() == 0, "close() closed every connection: " + server.getConnections() + " still open");
+		} finally {
+			server.close();
+		}
+	}
+
+	/*
+	 * Close a LinuxNotification while every thread is sending through it, should a session bus be available
+	 */
+	private void linux() throws Exception {
+		checks.section(threads + " threads share a LinuxNotification that is closed mid-stream");
+		LinuxNotification notification = new LinuxNotification("NotifJ Stress");
+		try {
+			notification.open();
+		} catch (NotificationException e) {
+			System.out.println("  skipped - " + e.getMessage());
+			return;
+		}
+		Outcome outcome = run(notification, true);
+		checks.check(outcome.unexpected.isEmpty(), "the only failures were refusals once close() had started: "
+				+ outcome.refused.get() + " refused, unexpected " + outcome.unexpected);
+		checks.check(outcome.hung.get() == 0, "every queued notification completed - " + outcome.hung.get() + " hung");
+	}
+
+	/*
+	 * Open, queue from several threads and close again, then check no dispatcher thread survived
+	 */
+	private void cycles() throws Exception {
+		checks.section(CYCLES + " open, showAsync and close cycles");
+		final MemoryNotification notification = new MemoryNotification("NotifJ Stress");
+		final AtomicInteger failed = new AtomicInteger();
+		for (int cycle = 0; cycle < CYCLES; cycle++) {
+			notification.open();
+			List<Thread> senders = new ArrayList<Thread>();
+			for (int i = 0; i < 8; i++) {
+				Thread sender = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for (int n = 0; n < 20; n++) {
+							try {
+								notification.showAsync("Cycle", "Notification " + n);
+							} catch (NotificationException e) {
+								failed.incrementAndGet();
+							}
+						}
+					}
+				});
+				senders.add(sender);
+				sender.start();
+			}
+			for (Thread sender : senders) {
+				sender.join();
+			}
+			notification.close();
+		}
+		checks.check(failed.get() == 0, failed.get() + " notifications refused while open");
+		checks.check(dispatcherThreads() == 0, dispatcherThreads() + " dispatcher threads left after the last close()");
+
+		boolean refused = false;
+		try {
+			notification.showAsync("Closed", "Should be refused");
+		} catch (NotificationException e) {
+			refused = true;
+		}
+		checks.check(refused, "showAsync() is refused once closed");
+		checks.check(dispatcherThreads() == 0, "showAsync() on a closed notification started no dispatcher thread");
+	}
+
+	/*
+	 * Start every thread at once, each mixing show(), showAsync() and setting changes - closing the notification
+	 * once half the operations are done when asked
+	 */
+	private Outcome run(AbstractNotification notification, boolean close_midway) throws Exception {
+		return run(notification, close_midway, OPERATIONS_PER_THREAD);
+	}
+
+	private Outcome run(final AbstractNotification notification, boolean close_midway, final int operations) throws Exception {
+		final Outcome outcome = new Outcome();
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong progress = new AtomicLong();
+		final URL callback = new URL("http://localhost/stress");
+		final List<Future<Void>> queued = new ArrayList<Future<Void>>();
+		List<Thread> workers = new ArrayList<Thread>(threads);
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					List<Future<Void>> mine = new ArrayList<Future<Void>>();
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int n = 0; n < operations; n++) {
+						NotificationMessage message = new NotificationMessage("Thread " + thread, "Notification " + n,
+								NotificationPriority.values()[n % NotificationPriority.values().length]);
+						try {
+							switch (n % 4) {
+							case 0:
+								notification.sticky(n % 8 == 0);
+								notification.show(message);
+								break;
+							case 1:
+								mine.add(notification.showAsync(message));
+								break;
+							case 2:
+								notification.callbackUrl(n % 8 == 2 ? callback : null);
+								notification.show(message);
+								break;
+							default:
+								notification.show(message);
+							}
+						} catch (NotificationException e) {
+							outcome.failed(e);
+						} catch (RuntimeException e) {
+							outcome.unexpected(e);
+						}
+						progress.incrementAndGet();
+					}
+					synchronized (queued) {
+						queued.addAll(mine);
+					}
+				}
+			}, "Stress-" + t);
+			workers.add(worker);
+			worker.start();
+		}
+
+		long half = (long) threads * operations / 2;
+		start.countDown();
+		if(close_midway){
+			while(progress.get() < half){
+				Thread.sleep(1);
+			}
+			outcome.closing.set(true);
+			notification.close();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		for (Future<Void> future : queued) {
+			try {
+				future.get(FUTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (TimeoutException e) {
+				outcome.hung.incrementAndGet();
+			} catch (ExecutionException e) {
+				outcome.failed(e.getCause());
+			}
+		}
+		return outcome;
+	}
+
+	/*
+	 * Wait for each stub to see its connections closed, which it counts only once its connection thread reads the end of stream
+	 */
+	private static void awaitClosed(GntpStubServer... servers) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FUTURE_TIMEOUT_SECONDS);
+		for (GntpStubServer server : servers) {
+			while(server.getConnections() > 0 && System.nanoTime() < deadline){
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	private static int dispatcherThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.isAlive() && thread.getName().startsWith("NotifJ-Dispatcher"))
+				count++;
+		}
+		return count;
+	}
+
+	/*
+	 * The failures seen by every thread - those once close() has started are refusals, any other is unexpected
+	 */
+	private static class Outcome {
+
+		final AtomicBoolean closing = new AtomicBoolean();
+		final AtomicLong refused = new AtomicLong();
+		final AtomicLong hung = new AtomicLong();
+		final ConcurrentMap<String, AtomicLong> unexpected = new ConcurrentHashMap<String, AtomicLong>();
+
+		void failed(Throwable cause) {
+			if(closing.get() && cause instanceof NotificationException){
+				refused.incrementAndGet();
+			}else{
+				unexpected(cause);
+			}
+		}
+
+		void unexpected(Throwable cause) {
+			String key = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+			AtomicLong count = unexpected.get(key);
+			if(count == null){
+				AtomicLong created = new AtomicLong();
+				count = unexpected.putIfAbsent(key, created);
+				if(count == null)
+					count = created;
+			}
+			count.incrementAndGet();
+		}
+
+		long failures() {
+			return refused.get() + unexpected.size();
+		}
+	}
+
+	/*
+	 * A backend whose handle is freed by close() in the same way as the real backends free theirs, recording any
+	 * use of the handle once freed
+	 */
+	private static class HandleNotification extends AbstractNotification {
+
+		final AtomicLong used = new AtomicLong();
+		final AtomicLong violations = new AtomicLong();
+		private final Object lifecycle = new Object();
+		private volatile Handle mHandle;
+
+		HandleNotification() {
+			setApplicationName("NotifJ Stress");
+		}
+
+		@Override
+		public void open() {
+			synchronized (lifecycle) {
+				if(mHandle == null)
+					mHandle = new Handle();
+			}
+			openDispatcher();
+		}
+
+		@Override
+		public void show(String title, String message) throws NotificationException {
+			long started = beginCall();
+			boolean sent = false;
+			try {
+				Handle handle = mHandle;
+				if(handle == null)
+					throw new NotificationException("No handle available - Have you called open()?");
+				handle.use(this);
+				sent = true;
+			} finally {
+				endCall();
+				recordSend(started, sent);
+			}
+		}
+
+		@Override
+		public void close() throws NotificationException {
+			closeDispatcher();
+			synchronized (lifecycle) {
+				beginDrain();
+				try {
+					Handle handle = mHandle;
+					mHandle = null;
+					if(handle != null)
+						handle.release(this);
+				} finally {
+					endDrain();
+				}
+			}
+		}
+	}
+
+	/*
+	 * A GFW notification sent to the stub host, whatever the operating system
+	 */
+	private static class StubWindowsGrowlNotification extends WindowsGrowlNotification {
+
+		StubWindowsGrowlNotification() {
+			setApplicationName("NotifJ Stress");
+		}
+
+		@Override
+		protected boolean isOperatingSystemSupported() {
+			return true;
+		}
+	}
+
+	private static class Handle {
+
+		private final AtomicInteger in_use = new AtomicInteger();
+		private volatile boolean released;
+
+		void use(HandleNotification owner) {
+			in_use.incrementAndGet();
+			try {
+				if(released)
+					owner.violations.incrementAndGet();
+				owner.used.incrementAndGet();
+				Thread.yield();
+				if(released)
+					owner.violations.incrementAndGet();
+			} finally {
+				in_use.decrementAndGet();
+			}
+		}
+
+		void release(HandleNotification owner) {
+			released = true;
+			if(in_use.get() > 0)
+				owner.violations.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/**
+ * DispatchBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Benchmarks of displaying a burst of notifications through a backend whose every call blocks, as a GNTP
+ * round-trip or an AppleScript evaluation does.
+ *
+ * <p>The burst is displayed by calling <tt>show()</tt> in turn, through the default dispatcher and through a
+ * concurrent dispatcher - on virtual threads where the JVM has them. These benchmarks sleep, so they are run
+ * on their own with fewer iterations than {@link NotifJBenchmarks}.
+ *
+ * <p>Usage: <tt>DispatchBenchmarks [iterations] [concurrency]</tt>.
+ *
+ * @since   1.3
+ */
+public class DispatchBenchmarks {
+
+	private static final int DEFAULT_ITERATIONS = 10;
+	private static final int DEFAULT_CONCURRENCY = 64;
+	private static final int BURST_SIZE = 256;
+	private static final long BLOCK_MILLIS = 1;
+	private static final NotificationMessage MESSAGE = new NotificationMessage("Build finished", "All 214 tests passed");
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + System.getProperty("os.name")
+				+ ", " + iterations + " iterations, " + BLOCK_MILLIS + "ms per backend call");
+		for (Benchmark benchmark : benchmarks(concurrency)) {
+			System.out.println(benchmark.measure(iterations, iterations));
+		}
+	}
+
+	/**
+	 * Get the dispatch benchmarks
+	 * @param concurrency the concurrency of the concurrent dispatcher
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> benchmarks(int concurrency) {
+		return Arrays.asList(showInTurn(), dispatch(1), dispatch(concurrency));
+	}
+
+	/*
+	 * Display each notification of the burst on the calling thread
+	 */
+	private static Benchmark showInTurn() {
+		return new Benchmark("dispatch.sync[" + BURST_SIZE + "]") {
+			private final BlockingNotification notification = new BlockingNotification();
+
+			@Override
+			protected Object run() throws Exception {
+				for (int i = 0; i < BURST_SIZE; i++) {
+					notification.show(MESSAGE);
+				}
+				return notification;
+			}
+
+			@Override
+			protected int operationsPerRun() {
+				return BURST_SIZE;
+			}
+		};
+	}
+
+	/*
+	 * Queue the burst and wait for every notification to be displayed
+	 */
+	private static Benchmark dispatch(final int concurrency) {
+		final BlockingNotification notification = new BlockingNotification();
+		final NotificationDispatcher dispatcher = new NotificationDispatcher(notification, BURST_SIZE, OverflowPolicy.BLOCK,
+				NotificationDispatcher.DEFAULT_AGING_MILLIS, TimeUnit.MILLISECONDS, concurrency);
+		String mode = concurrency == 1 ? "serial" : (dispatcher.isVirtual() ? "virtual" : "platform") + "[x" + concurrency + "]";
+		return new Benchmark("dispatch." + mode + "[" + BURST_SIZE + "]") {
+			private final List<Future<Void>> displayed = new ArrayList<Future<Void>>(BURST_SIZE);
+
+			@Override
+			protected Object run() throws Exception {
+				displayed.clear();
+				for (int i = 0; i < BURST_SIZE; i++) {
+					displayed.add(dispatcher.submit(MESSAGE));
+				}
+				for (Future<Void> future : displayed) {
+					future.get();
+				}
+				return displayed;
+			}
+
+			@Override
+			protected int operationsPerRun() {
+				return BURST_SIZE;
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				dispatcher.shutdown(5, TimeUnit.SECONDS);
+			}
+		};
+	}
+
+	/*
+	 * A backend whose every call blocks for a fixed time
+	 */
+	private static class BlockingNotification extends AbstractNotification {
+
+		@Override
+		public void open() {
+			openDispatcher();
+		}
+
+		@Override
+		public void show(String title, String message) throws NotificationException {
+			try {
+				Thread.sleep(BLOCK_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NotificationException("Interrupted", e);
+			}
+		}
+
+		@Override
+		public void close() throws NotificationException {
+			closeDispatcher();
+		}
+	}
+
+}
@@ -0,0 +1,453 @@
+/**
+ * LoadGenerator.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.growl.GntpFanOutNotification;
+import uk.co.edgeorgedev.notifj.notification.growl.GrowlNotification;
+import uk.co.edgeorgedev.notifj.notification.growl.WindowsGrowlNotification;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpStubServer;
+import uk.co.edgeorgedev.notifj.notification.headless.JsonLinesNotification;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+import uk.co.edgeorgedev.notifj.notification.linux.LinuxNotification;
+import uk.co.edgeorgedev.notifj.notification.metrics.LatencyHistogram;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackends;
+
+/**
+ * A command-line load generator and soak test that drives a {@link Notification} at a given rate and concurrency
+ * for a given time.
+ *
+ * <p>Every report interval, and once more at the end, it prints the throughput, failures, latency percentiles and
+ * the growth of the heap, garbage collection, threads and open file descriptors - steady growth of the last two
+ * under a constant load points to leaked connections. With <tt>--stub</tt> a {@link GntpStubServer} is started on
+ * a loopback port, with optional injected latency and failures, and the GNTP backends are pointed at it; its
+ * open connections are reported too.
+ *
+ * <p>With a rate, each thread sends on a fixed schedule and latency is measured from when each notification was
+ * due, so a stalled backend is charged for the notifications it held up rather than hiding them. Without one,
+ * each thread sends as fast as the backend allows.
+ *
+ * <p>For example, an hour against a stub that answers in 2-7ms and fails 1% of notifications:
+ * <pre>
+ * java -cp "bin:libs/*" uk.co.edgeorgedev.notifj.bench.LoadGenerator --backend gntp --stub --stub-latency 2
+ *         --stub-jitter 5 --stub-error-rate 0.01 --rate 500 --threads 16 --duration 1h</pre>
+ *
+ * @since   1.3
+ */
+public class LoadGenerator {
+
+	private static final String USAGE =
+			"Usage: LoadGenerator [options]\n"
+			+ "  --backend NAME           memory, jsonl, gntp, gfw, growl, linux or auto (default memory)\n"
+			+ "  --rate N                 notifications per second across all threads, 0 for as fast as possible (default 0)\n"
+			+ "  --threads N              sending threads (default 4)\n"
+			+ "  --duration TIME          how long to run, e.g. 30s, 10m or 2h (default 30s)\n"
+			+ "  --report TIME            time between reports (default 5s)\n"
+			+ "  --async N                send with showAsync() through a dispatcher of concurrency N, waiting for each\n"
+			+ "  --host HOST --port N     the GNTP host for gntp and gfw (default localhost:23053)\n"
+			+ "  --transport NAME         jgntp or native, for gfw (default jgntp)\n"
+			+ "  --file PATH              the file for jsonl (default a temporary file)\n"
+			+ "  --stub                   start a loopback GNTP stub server for gntp and gfw\n"
+			+ "  --stub-latency MS        delay each stub response\n"
+			+ "  --stub-jitter MS         add a random delay of up to MS to each stub response\n"
+			+ "  --stub-error-rate P      answer a proportion P of notifications with -ERROR\n"
+			+ "  --stub-disconnect-rate P drop the connection instead of answering a proportion P of notifications\n";
+
+	private static final String APPLICATION = "NotifJ Load";
+	private static final double[] PERCENTILES = { 50, 99, 99.9 };
+	private static final int MAX_FAILURE_KINDS = 32;
+
+	private String backend = "memory";
+	private double rate;
+	private int threads = 4;
+	private long duration_nanos = TimeUnit.SECONDS.toNanos(30);
+	private long report_nanos = TimeUnit.SECONDS.toNanos(5);
+	private int async_concurrency;
+	private String host = "localhost";
+	private int port = 23053;
+	private String transport = "jgntp";
+	private File file;
+	private boolean stub;
+	private long stub_latency_millis;
+	private long stub_jitter_millis;
+	private double stub_error_rate;
+	private double stub_disconnect_rate;
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+	private final LatencyHistogram total_latency = new LatencyHistogram();
+	private final LatencyHistogram interval_latency = new LatencyHistogram();
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		try {
+			generator.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+		}
+		try {
+			System.exit(generator.run() ? 0 : 1);
+		} catch (NotificationException e) {
+			System.err.println("Could not run against " + generator.backend + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if("--stub".equals(option)){
+				stub = true;
+				continue;
+			}
+			if("--help".equals(option))
+				throw new IllegalArgumentException("NotifJ load generator");
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			try {
+				if("--backend".equals(option))
+					backend = value;
+				else if("--rate".equals(option))
+					rate = Double.parseDouble(value);
+				else if("--threads".equals(option))
+					threads = Integer.parseInt(value);
+				else if("--duration".equals(option))
+					duration_nanos = parseTime(value);
+				else if("--report".equals(option))
+					report_nanos = parseTime(value);
+				else if("--async".equals(option))
+					async_concurrency = Integer.parseInt(value);
+				else if("--host".equals(option))
+					host = value;
+				else if("--port".equals(option))
+					port = Integer.parseInt(value);
+				else if("--transport".equals(option))
+					transport = value;
+				else if("--file".equals(option))
+					file = new File(value);
+				else if("--stub-latency".equals(option))
+					stub_latency_millis = Long.parseLong(value);
+				else if("--stub-jitter".equals(option))
+					stub_jitter_millis = Long.parseLong(value);
+				else if("--stub-error-rate".equals(option))
+					stub_error_rate = Double.parseDouble(value);
+				else if("--stub-disconnect-rate".equals(option))
+					stub_disconnect_rate = Double.parseDouble(value);
+				else
+					throw new IllegalArgumentException("Unknown option " + option);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+			}
+		}
+		if(threads < 1 || rate < 0 || duration_nanos <= 0 || report_nanos <= 0 || async_concurrency < 0)
+			throw new IllegalArgumentException("Threads, rate, duration, report interval and concurrency must be positive");
+	}
+
+	/*
+	 * A time such as 500ms, 30s, 10m or 2h - seconds if there is no unit
+	 */
+	private static long parseTime(String value) {
+		String text = value.trim().toLowerCase(Locale.ENGLISH);
+		TimeUnit unit = TimeUnit.SECONDS;
+		if(text.endsWith("ms")){
+			unit = TimeUnit.MILLISECONDS;
+			text = text.substring(0, text.length() - 2);
+		}else if(text.endsWith("s")){
+			text = text.substring(0, text.length() - 1);
+		}else if(text.endsWith("m")){
+			unit = TimeUnit.MINUTES;
+			text = text.substring(0, text.length() - 1);
+		}else if(text.endsWith("h")){
+			unit = TimeUnit.HOURS;
+			text = text.substring(0, text.length() - 1);
+		}
+		return unit.toNanos(Long.parseLong(text));
+	}
+
+	/*
+	 * Run the load and print the reports - false if no notification could be sent
+	 */
+	private boolean run() throws Exception {
+		GntpStubServer server = null;
+		if(stub){
+			server = new GntpStubServer();
+			server.injectLatency(stub_latency_millis, stub_jitter_millis, TimeUnit.MILLISECONDS);
+			server.injectFailures(stub_error_rate, stub_disconnect_rate);
+			host = server.getHost();
+			port = server.getPort();
+		}
+		final Notification notification = create();
+		if(async_concurrency > 0){
+			if(!(notification instanceof AbstractNotification))
+				throw new IllegalArgumentException(backend + " has no dispatcher");
+			((AbstractNotification) notification).dispatch(threads * 2, OverflowPolicy.BLOCK, async_concurrency);
+		}
+
+		Snapshot start = Snapshot.take(true);
+		System.out.println("java " + System.getProperty("java.version") + ", " + System.getProperty("os.name") + ", "
+				+ Runtime.getRuntime().availableProcessors() + " CPU, " + backend + (server == null ? "" : " against stub " + host + ":" + port)
+				+ ", " + threads + " threads, " + (rate > 0 ? format(rate) + "/s" : "unthrottled")
+				+ (async_concurrency > 0 ? ", async x" + async_concurrency : "") + ", " + TimeUnit.NANOSECONDS.toSeconds(duration_nanos) + "s");
+		notification.open();
+
+		final long began = System.nanoTime();
+		final long deadline = began + duration_nanos;
+		List<Thread> workers = new ArrayList<Thread>(threads);
+		for (int i = 0; i < threads; i++) {
+			final int worker = i;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					send(notification, worker, began, deadline);
+				}
+			}, "LoadGenerator-" + i);
+			thread.setDaemon(true);
+			workers.add(thread);
+			thread.start();
+		}
+
+		long last_sent = 0;
+		long last_report = began;
+		Snapshot previous = start;
+		for (long next = began + report_nanos; next < deadline; next += report_nanos) {
+			LockSupport.parkNanos(next - System.nanoTime());
+			long now = System.nanoTime();
+			long count = sent.get() + failed.get();
+			Snapshot current = Snapshot.take(false);
+			System.out.println(report(format(TimeUnit.NANOSECONDS.toMillis(now - began) / 1000.0) + "s", (count - last_sent) * 1e9 / (now - last_report),
+					interval_latency, current, previous, server));
+			interval_latency.reset();
+			last_sent = count;
+			last_report = now;
+			previous = current;
+		}
+		for (Thread thread : workers) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - began;
+
+		long closing = System.nanoTime();
+		notification.close();
+		long closed = System.nanoTime() - closing;
+		/* Give the stub a moment to see connections closed by the client */
+		Thread.sleep(200);
+		Snapshot end = Snapshot.take(true);
+
+		System.out.println();
+		System.out.println(report("total", (sent.get() + failed.get()) * 1e9 / elapsed, total_latency, end, start, server));
+		System.out.println("sent " + sent.get() + ", failed " + failed.get() + ", close() took " + formatNanos(closed));
+		for (Map.Entry<String, AtomicLong> failure : failures.entrySet()) {
+			System.out.println("  " + failure.getValue().get() + " x " + failure.getKey());
+		}
+		System.out.println("heap after GC " + (start.heap >> 20) + "MB -> " + (end.heap >> 20) + "MB ("
+				+ (end.heap - start.heap >= 0 ? "+" : "") + ((end.heap - start.heap) >> 10) + "KB), threads " + start.threads + " -> " + end.threads
+				+ (start.descriptors < 0 ? "" : ", file descriptors " + start.descriptors + " -> " + end.descriptors));
+		if(server != null){
+			System.out.println("stub: " + server.getRequests() + " requests, " + server.getErrors() + " errors and " + server.getDisconnects()
+					+ " disconnects injected, " + server.getConnections() + " connections still open of " + server.getAccepted() + " accepted");
+			server.close();
+		}
+		return sent.get() > 0;
+	}
+
+	/*
+	 * Send notifications until the deadline, on a fixed schedule if there is a rate
+	 */
+	private void send(Notification notification, int worker, long began, long deadline) {
+		long period = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+		/* Stagger the threads so that a rate is spread evenly over each period */
+		long due = began + period * worker / threads;
+		long sequence = 0;
+		while(true){
+			long now = System.nanoTime();
+			if(period > 0){
+				if(due - now > 0){
+					LockSupport.parkNanos(due - now);
+					now = System.nanoTime();
+				}
+			}else{
+				due = now;
+			}
+			if(now - deadline >= 0)
+				return;
+			NotificationMessage message = new NotificationMessage("Load " + worker, "Notification " + sequence++);
+			try {
+				if(async_concurrency > 0)
+					notification.showAsync(message).get();
+				else
+					notification.show(message);
+				sent.incrementAndGet();
+			} catch (Exception e) {
+				failed.incrementAndGet();
+				countFailure(e instanceof ExecutionException ? e.getCause() : e);
+			}
+			long latency = System.nanoTime() - due;
+			total_latency.record(latency);
+			interval_latency.record(latency);
+			due += period;
+		}
+	}
+
+	/*
+	 * Count a failure under its root cause, which says more than the backend's own exception
+	 */
+	private void countFailure(Throwable failure) {
+		Throwable root = failure;
+		while(root.getCause() != null && root.getCause() != root){
+			root = root.getCause();
+		}
+		String key = root == failure ? describe(failure) : describe(failure) + " <- " + describe(root);
+		/* Messages naming each notification would otherwise grow the map without bound */
+		if(failures.size() >= MAX_FAILURE_KINDS && !failures.containsKey(key))
+			key = "other";
+		failures.putIfAbsent(key, new AtomicLong());
+		failures.get(key).incrementAndGet();
+	}
+
+	private static String describe(Throwable failure) {
+		return failure.getClass().getSimpleName() + ": " + failure.getMessage();
+	}
+
+	private Notification create() throws Exception {
+		if("memory".equals(backend))
+			return new MemoryNotification(APPLICATION, 1 << 16);
+		if("jsonl".equals(backend)){
+			if(file == null){
+				file = File.createTempFile("notifj-load", ".jsonl");
+				file.deleteOnExit();
+			}
+			return new JsonLinesNotification(APPLICATION, file);
+		}
+		if("gntp".equals(backend)){
+			GntpFanOutNotification notification = new GntpFanOutNotification(APPLICATION, new InetSocketAddress(host, port));
+			notification.setPoolSize(Math.max(1, Math.min(threads, 64)));
+			return notification;
+		}
+		if("gfw".equals(backend)){
+			WindowsGrowlNotification notification = new NamedWindowsGrowlNotification(APPLICATION);
+			notification.setHost(host);
+			notification.setPort(port);
+			notification.setTransport("native".equals(transport) ? WindowsGrowlNotification.Transport.NATIVE : WindowsGrowlNotification.Transport.JGNTP);
+			return notification;
+		}
+		if("growl".equals(backend))
+			return new GrowlNotification(APPLICATION);
+		if("linux".equals(backend))
+			return new LinuxNotification(APPLICATION);
+		if("auto".equals(backend))
+			return NotificationBackends.create(APPLICATION);
+		throw new IllegalArgumentException("Unknown backend " + backend);
+	}
+
+	private String report(String label, double throughput, LatencyHistogram latency, Snapshot current, Snapshot previous, GntpStubServer server) {
+		StringBuilder line = new StringBuilder();
+		line.append(String.format(Locale.ENGLISH, "%-8s %10s/s  failed %-6d", label, format(throughput), failed.get()));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(Locale.ENGLISH, "  p%s %9s", format(percentile), formatNanos(latency.getValueAtPercentile(percentile))));
+		}
+		line.append(String.format(Locale.ENGLISH, "  max %9s", formatNanos(latency.getMax())));
+		line.append("  heap ").append(current.heap >> 20).append("MB");
+		line.append("  gc ").append(current.collections - previous.collections).append('/').append(current.collection_millis - previous.collection_millis).append("ms");
+		line.append("  threads ").append(current.threads);
+		if(current.descriptors >= 0)
+			line.append("  fds ").append(current.descriptors);
+		if(server != null)
+			line.append("  stub conns ").append(server.getConnections());
+		return line.toString();
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ENGLISH, "%.1f", value);
+	}
+
+	private static String formatNanos(long nanos) {
+		if(nanos < 10000)
+			return nanos + "ns";
+		if(nanos < 10000000)
+			return String.format(Locale.ENGLISH, "%.1fus", nanos / 1e3);
+		if(nanos < 10000000000L)
+			return String.format(Locale.ENGLISH, "%.1fms", nanos / 1e6);
+		return String.format(Locale.ENGLISH, "%.1fs", nanos / 1e9);
+	}
+
+	/*
+	 * A GFW notification that can be pointed at any host without going through GrowlNotification
+	 */
+	private static final class NamedWindowsGrowlNotification extends WindowsGrowlNotification {
+
+		NamedWindowsGrowlNotification(String application_name) {
+			setApplicationName(application_name);
+		}
+
+		/*
+		 * Any GNTP server will do, e.g. the stub
+		 */
+		@Override
+		protected boolean isOperatingSystemSupported() {
+			return true;
+		}
+
+	}
+
+	/*
+	 * The state of the JVM at a point in time
+	 */
+	private static final class Snapshot {
+
+		long heap;
+		long collections;
+		long collection_millis;
+		int threads;
+		long descriptors = -1;
+
+		/*
+		 * Take a snapshot, collecting garbage first so that the heap reading is what is still reachable
+		 */
+		static Snapshot take(boolean collect) {
+			if(collect)
+				System.gc();
+			Snapshot snapshot = new Snapshot();
+			MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+			snapshot.heap = memory.getHeapMemoryUsage().getUsed();
+			for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+				snapshot.collections += Math.max(0, collector.getCollectionCount());
+				snapshot.collection_millis += Math.max(0, collector.getCollectionTime());
+			}
+			snapshot.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+			OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+			if(system instanceof com.sun.management.UnixOperatingSystemMXBean)
+				snapshot.descriptors = ((com.sun.management.UnixOperatingSystemMXBean) system).getOpenFileDescriptorCount();
+			return snapshot;
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * NotifJBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.co.edgeorgedev.notifj.notification.growl.AppleScriptBenchmarks;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpBenchmarks;
+
+/**
+ * Runs every NotifJ benchmark and prints the cost per operation.
+ *
+ * <p>Usage: <tt>NotifJBenchmarks [iterations]</tt>. Warm-up uses the same number of iterations.
+ *
+ * @since   1.3
+ */
+public class NotifJBenchmarks {
+
+	private static final int DEFAULT_ITERATIONS = 20000;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.addAll(AppleScriptBenchmarks.benchmarks());
+		benchmarks.addAll(GntpBenchmarks.benchmarks());
+		benchmarks.addAll(PipelineBenchmarks.benchmarks());
+		benchmarks.addAll(SinkBenchmarks.benchmarks());
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + System.getProperty("os.name")
+				+ ", " + iterations + " iterations");
+		for (Benchmark benchmark : benchmarks) {
+			System.out.println(benchmark.measure(iterations, iterations));
+		}
+	}
+
+}
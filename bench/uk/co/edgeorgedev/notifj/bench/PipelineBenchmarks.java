@@ -0,0 +1,96 @@
+/**
+ * PipelineBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationCoalescer;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter.OverflowAction;
+import uk.co.edgeorgedev.notifj.notification.NotificationSink;
+import uk.co.edgeorgedev.notifj.notification.metrics.DefaultNotificationMetrics;
+
+/**
+ * Benchmarks of the processing stages that sit in front of a backend.
+ *
+ * @since   1.3
+ */
+public class PipelineBenchmarks {
+
+	private static final NotificationSink DISCARD = new NotificationSink() {
+		@Override
+		public void show(NotificationMessage message) {}
+	};
+
+	/**
+	 * Get the pipeline benchmarks
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> benchmarks() {
+		return Arrays.asList(rateLimiterAdmit(), coalescerRepeat(), metricsRecordSend());
+	}
+
+	/*
+	 * Admit a notification through a limit that is never reached
+	 */
+	private static Benchmark rateLimiterAdmit() {
+		return new Benchmark("pipeline.ratelimiter.admit") {
+			private final NotificationRateLimiter limiter = new NotificationRateLimiter(DISCARD, OverflowAction.DROP)
+					.limitApplication("NotifJ Benchmark", 1e9, 1000000)
+					.limitType("Notification", 1e9, 1000000);
+
+			@Override
+			protected Object run() throws Exception {
+				return limiter.show("NotifJ Benchmark", "Notification", "Build finished", "All 214 tests passed");
+			}
+		};
+	}
+
+	/*
+	 * Suppress a repeat of a notification inside its window
+	 */
+	private static Benchmark coalescerRepeat() {
+		return new Benchmark("pipeline.coalescer.repeat") {
+			private NotificationCoalescer coalescer;
+
+			@Override
+			protected void setUp() {
+				coalescer = new NotificationCoalescer(DISCARD, 1, TimeUnit.HOURS);
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				coalescer.show("Disk full", "/var is at 100%");
+				return coalescer;
+			}
+
+			@Override
+			protected void tearDown() {
+				coalescer.close();
+			}
+		};
+	}
+
+	/*
+	 * Record the latency of a send to the default metrics
+	 */
+	private static Benchmark metricsRecordSend() {
+		return new Benchmark("pipeline.metrics.send") {
+			private final DefaultNotificationMetrics metrics = new DefaultNotificationMetrics();
+			private long latency;
+
+			@Override
+			protected Object run() throws Exception {
+				metrics.recordSend("WindowsGrowlNotification", latency += 997, true);
+				return metrics;
+			}
+		};
+	}
+
+}
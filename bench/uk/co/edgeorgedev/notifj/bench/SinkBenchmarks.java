@@ -0,0 +1,151 @@
+/**
+ * SinkBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.bench;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.headless.JsonLinesNotification;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+
+/**
+ * Benchmarks of the headless backends, and of the dispatch queue with a backend that does not block.
+ *
+ * @since   1.3
+ */
+public class SinkBenchmarks {
+
+	private static final int BATCH_SIZE = 32;
+	private static final int BURST_SIZE = 256;
+	private static final NotificationMessage MESSAGE = new NotificationMessage("Build finished", "All 214 tests passed");
+
+	/**
+	 * Get the sink benchmarks
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> benchmarks() {
+		return Arrays.asList(memoryShow(), memoryShowAll(), memoryDispatch(), jsonLinesShow());
+	}
+
+	/*
+	 * Record a notification in the ring buffer
+	 */
+	private static Benchmark memoryShow() {
+		return new Benchmark("sink.memory.show") {
+			private final MemoryNotification notification = new MemoryNotification("NotifJ Benchmark");
+
+			@Override
+			protected void setUp() {
+				notification.open();
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				notification.show(MESSAGE);
+				return notification;
+			}
+		};
+	}
+
+	/*
+	 * Record a batch, claiming its slots at once
+	 */
+	private static Benchmark memoryShowAll() {
+		return new Benchmark("sink.memory.showAll[" + BATCH_SIZE + "]") {
+			private final MemoryNotification notification = new MemoryNotification("NotifJ Benchmark");
+			private final List<NotificationMessage> batch = Collections.nCopies(BATCH_SIZE, MESSAGE);
+
+			@Override
+			protected void setUp() {
+				notification.open();
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				return notification.showAll(batch);
+			}
+
+			@Override
+			protected int operationsPerRun() {
+				return BATCH_SIZE;
+			}
+		};
+	}
+
+	/*
+	 * Queue a burst with showAsync() and wait for the dispatcher to record it - the cost of the queue itself
+	 */
+	private static Benchmark memoryDispatch() {
+		return new Benchmark("sink.memory.dispatch[" + BURST_SIZE + "]") {
+			private final MemoryNotification notification = new MemoryNotification("NotifJ Benchmark");
+
+			@Override
+			protected void setUp() {
+				notification.open();
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				long target = notification.getCount() + BURST_SIZE;
+				for (int i = 0; i < BURST_SIZE; i++) {
+					notification.showAsync(MESSAGE);
+				}
+				if(!notification.await(target, 10, TimeUnit.SECONDS))
+					throw new IllegalStateException("Burst was not dispatched");
+				return notification;
+			}
+
+			@Override
+			protected int operationsPerRun() {
+				return BURST_SIZE;
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				notification.close();
+			}
+		};
+	}
+
+	/*
+	 * Encode a notification as JSON and buffer it, writing and rotating the file as it fills
+	 */
+	private static Benchmark jsonLinesShow() {
+		return new Benchmark("sink.jsonl.show") {
+			private File directory;
+			private JsonLinesNotification notification;
+
+			@Override
+			protected void setUp() throws Exception {
+				directory = File.createTempFile("notifj-bench", "");
+				if(!directory.delete() || !directory.mkdir())
+					throw new IllegalStateException("Could not create " + directory);
+				notification = new JsonLinesNotification("NotifJ Benchmark", new File(directory, "notifications.jsonl"), 8L << 20, 1);
+				notification.open();
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				notification.show(MESSAGE);
+				return notification;
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				notification.close();
+				for (File file : directory.listFiles()) {
+					file.delete();
+				}
+				directory.delete();
+			}
+		};
+	}
+
+}
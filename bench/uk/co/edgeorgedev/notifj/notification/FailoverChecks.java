@@ -0,0 +1,234 @@
+/**
+ * FailoverChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.CircuitBreaker.State;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+
+/**
+ * Checks the circuit breakers of {@link FailoverNotification} against notifications that fail on demand: a link
+ * opens after the failure threshold, lets a single probe through once the open time has passed, and a probe whose
+ * outcome is lost is let through again. When every breaker is open the last link is tried regardless, and
+ * <tt>showAll</tt> passes only the notifications that failed on to the next link.
+ *
+ * <p>Usage: <tt>FailoverChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class FailoverChecks {
+
+	private static final String APPLICATION = "NotifJ Failover Checks";
+	private static final int THRESHOLD = 3;
+	private static final long OPEN_MILLIS = 200;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("FailoverChecks");
+
+		try {
+			checks.section("CLOSED to OPEN after " + THRESHOLD + " failures");
+			FailingNotification primary = new FailingNotification();
+			FailingNotification fallback = new FailingNotification();
+			final FailoverNotification failover = new FailoverNotification(primary, fallback)
+					.circuitBreaker(THRESHOLD, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+			failover.open();
+			primary.failing = true;
+			for (int i = 1; i < THRESHOLD; i++) {
+				failover.show("Failure " + i, "Shown by the fallback");
+			}
+			checks.check(failover.getState(0) == State.CLOSED, "the breaker is still closed after " + (THRESHOLD - 1)
+					+ " failures: " + failover.getState(0));
+			failover.show("Failure " + THRESHOLD, "Shown by the fallback");
+			checks.check(failover.getState(0) == State.OPEN, "it opened on failure " + THRESHOLD + ": " + failover.getState(0));
+			checks.check(fallback.getCount() == THRESHOLD, "the fallback displayed each of them: " + fallback.getCount());
+			failover.show("Skipped", "The primary is not called");
+			checks.check(primary.calls.get() == THRESHOLD, "an open breaker is skipped without a call - " + primary.calls.get()
+					+ " calls to the primary");
+
+			checks.section("A single HALF_OPEN probe after the open time");
+			Thread.sleep(OPEN_MILLIS * 2);
+			failover.show("Failed probe", "Shown by the fallback");
+			checks.check(primary.calls.get() == THRESHOLD + 1 && failover.getState(0) == State.OPEN,
+					"a failed probe opened the breaker again: " + failover.getState(0));
+			Thread.sleep(OPEN_MILLIS * 2);
+			primary.failing = false;
+			primary.gate = new CountDownLatch(1);
+			final AtomicReference<Exception> probe_failure = new AtomicReference<Exception>();
+			Thread probe = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						failover.show("Probe", "Held until released");
+					} catch (Exception e) {
+						probe_failure.set(e);
+					}
+				}
+			}, "FailoverChecks-probe");
+			probe.start();
+			checks.check(primary.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "the probe reached the primary");
+			checks.check(failover.getState(0) == State.HALF_OPEN, "the breaker is half-open while the probe is in flight: "
+					+ failover.getState(0));
+			long fallback_count = fallback.getCount();
+			for (int i = 0; i < 5; i++) {
+				failover.show("During the probe " + i, "Shown by the fallback");
+			}
+			checks.check(primary.calls.get() == THRESHOLD + 2, "no other call was let through alongside the probe - "
+					+ (primary.calls.get() - THRESHOLD - 1) + " calls to the primary");
+			checks.check(fallback.getCount() == fallback_count + 5, "they went to the fallback instead");
+			primary.gate.countDown();
+			probe.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+			checks.check(probe_failure.get() == null && failover.getState(0) == State.CLOSED, "the successful probe closed the breaker: "
+					+ failover.getState(0));
+			primary.gate = null;
+			failover.close();
+
+			checks.section("A lost probe is let through again");
+			CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+			breaker.failed();
+			Thread.sleep(OPEN_MILLIS * 2);
+			checks.check(breaker.allowRequest(), "a probe is let through once the open time has passed");
+			checks.check(!breaker.allowRequest(), "no other call is let through while its outcome is unknown");
+			Thread.sleep(OPEN_MILLIS * 2);
+			checks.check(breaker.allowRequest() && breaker.getState() == State.HALF_OPEN, "a probe whose outcome was never reported "
+					+ "is taken as lost and another is let through: " + breaker.getState());
+			breaker.succeeded();
+			checks.check(breaker.getState() == State.CLOSED, "the new probe's success closed the breaker");
+
+			checks.section("The last link is tried when every breaker is open");
+			FailingNotification first = new FailingNotification();
+			FailingNotification last = new FailingNotification();
+			FailoverNotification exhausted = new FailoverNotification(first, last)
+					.circuitBreaker(1, TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+			exhausted.open();
+			first.failing = true;
+			last.failing = true;
+			try {
+				exhausted.show("Nowhere", "Every link fails");
+				checks.check(false, "a notification every link fails is refused");
+			} catch (NotificationException e) {
+				checks.check(true, "a notification every link fails is refused: " + e.getMessage());
+			}
+			checks.check(exhausted.getState(0) == State.OPEN && exhausted.getState(1) == State.OPEN, "every breaker is open: "
+					+ exhausted.getState(0) + ", " + exhausted.getState(1));
+			last.failing = false;
+			exhausted.show("Last resort", "Shown by the last link");
+			checks.check(last.getCount() == 1 && first.calls.get() == 1, "the last link displayed it without the first being called - "
+					+ first.calls.get() + " calls to the first");
+			checks.check(exhausted.getState(1) == State.CLOSED, "its success closed the last link's breaker: " + exhausted.getState(1));
+			exhausted.close();
+
+			checks.section("showAll passes only failed notifications on");
+			FailingNotification partial = new FailingNotification("B", "D");
+			FailingNotification rest = new FailingNotification();
+			FailoverNotification batching = new FailoverNotification(partial, rest);
+			batching.open();
+			List<NotificationMessage> messages = Arrays.asList(new NotificationMessage("A", "1"), new NotificationMessage("B", "2"),
+					new NotificationMessage("C", "3"), new NotificationMessage("D", "4"));
+			List<NotificationResult> results = batching.showAll(messages);
+			checks.check(partial.batches.equals(Collections.singletonList(Arrays.asList("A", "B", "C", "D"))),
+					"the first link was given every notification: " + partial.batches);
+			checks.check(rest.batches.equals(Collections.singletonList(Arrays.asList("B", "D"))),
+					"the next link was given only those that failed: " + rest.batches);
+			checks.check(titles(results).equals(Arrays.asList("A", "B", "C", "D")) && succeeded(results),
+					"every result succeeded, in the order given: " + titles(results));
+			checks.check(batching.getState(0) == State.CLOSED, "a partly successful batch does not count against the first link: "
+					+ batching.getState(0));
+			batching.close();
+		} catch (Exception e) {
+			checks.fail("Failover", e);
+		}
+		checks.exit();
+	}
+
+	private static List<String> titles(List<NotificationResult> results) {
+		List<String> titles = new ArrayList<String>(results.size());
+		for (NotificationResult result : results) {
+			titles.add(result.getMessage().getTitle());
+		}
+		return titles;
+	}
+
+	private static boolean succeeded(List<NotificationResult> results) {
+		for (NotificationResult result : results) {
+			if(!result.isSuccess())
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Records what it displays, unless told to fail every notification or those with given titles,
+	 * and can be held at a gate to keep a call in flight
+	 */
+	private static class FailingNotification extends MemoryNotification {
+
+		final Set<String> rejected;
+		final AtomicInteger calls = new AtomicInteger();
+		final List<List<String>> batches = new CopyOnWriteArrayList<List<String>>();
+		final CountDownLatch entered = new CountDownLatch(1);
+		volatile boolean failing;
+		volatile CountDownLatch gate;
+
+		FailingNotification(String... rejected) {
+			super(APPLICATION);
+			this.rejected = new HashSet<String>(Arrays.asList(rejected));
+		}
+
+		@Override
+		public void show(NotificationMessage message) throws NotificationException {
+			calls.incrementAndGet();
+			CountDownLatch current = gate;
+			if(current != null){
+				entered.countDown();
+				try {
+					if(!current.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+						throw new NotificationException("Gate was never opened");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new NotificationException("Interrupted at the gate", e);
+				}
+			}
+			if(failing || rejected.contains(message.getTitle()))
+				throw new NotificationException("Backend is failing");
+			super.show(message);
+		}
+
+		@Override
+		public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+			List<String> titles = new ArrayList<String>(messages.size());
+			for (NotificationMessage message : messages) {
+				titles.add(message.getTitle());
+			}
+			batches.add(titles);
+			List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+			for (NotificationMessage message : messages) {
+				try {
+					show(message);
+					results.add(NotificationResult.success(message));
+				} catch (NotificationException e) {
+					results.add(NotificationResult.failure(message, e));
+				}
+			}
+			return results;
+		}
+	}
+
+}
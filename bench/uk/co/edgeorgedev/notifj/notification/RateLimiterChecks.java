@@ -0,0 +1,143 @@
+/**
+ * RateLimiterChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter.OverflowAction;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+
+/**
+ * Checks each {@link OverflowAction} of {@link NotificationRateLimiter} against a {@link MemoryNotification}
+ * sink: a full burst is admitted and the notification after it dropped, <tt>DELAY</tt> waits about one interval
+ * and drops a notification that would wait past the maximum delay, <tt>SUMMARIZE</tt> counts the notifications
+ * it drops in the next one of their type, and a notification refused by its application's limit gives its
+ * type's token back.
+ *
+ * <p>Usage: <tt>RateLimiterChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class RateLimiterChecks {
+
+	private static final String APPLICATION = "NotifJ Rate Limiter Checks";
+	private static final String OTHER_APPLICATION = "NotifJ Rate Limiter Checks (other)";
+	private static final String TYPE = "Build";
+	private static final String OTHER_TYPE = "Deploy";
+	private static final int BURST = 5;
+	/* One token every 100ms */
+	private static final double PER_SECOND = 10;
+	private static final long INTERVAL_MILLIS = 100;
+	private static final int SUPPRESSED = 3;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("RateLimiterChecks");
+
+		try {
+			checks.section("A burst of " + BURST + " is admitted");
+			MemoryNotification sink = open();
+			/* Slow enough that no token comes back during the burst */
+			NotificationRateLimiter limiter = new NotificationRateLimiter(sink(sink), OverflowAction.DROP).limitType(TYPE, 1, BURST);
+			int admitted = 0;
+			for (int i = 0; i < BURST; i++) {
+				if(limiter.show(APPLICATION, TYPE, "Burst " + i, "Within the burst"))
+					admitted++;
+			}
+			checks.check(admitted == BURST, admitted + " of " + BURST + " notifications were admitted");
+			checks.check(!limiter.show(APPLICATION, TYPE, "Burst " + BURST, "Past the burst"), "notification " + (BURST + 1)
+					+ " was dropped");
+			checks.check(limiter.show(APPLICATION, OTHER_TYPE, "Unlimited", "Another type"), "a type without a limit is admitted");
+			checks.check(sink.getCount() == BURST + 1, "the sink displayed only the admitted notifications: " + sink.getCount());
+			checks.check(limiter.getAdmitted() == BURST + 1 && limiter.getDelayed() == 0 && limiter.getDropped() == 1,
+					counters(limiter));
+
+			checks.section("DELAY waits about one interval");
+			sink = open();
+			limiter = new NotificationRateLimiter(sink(sink), OverflowAction.DELAY).limitType(TYPE, PER_SECOND, 1);
+			limiter.show(APPLICATION, TYPE, "First", "Admitted at once");
+			long started = System.nanoTime();
+			boolean delayed = limiter.show(APPLICATION, TYPE, "Second", "Admitted after one interval");
+			long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			checks.check(delayed, "the notification past the limit was admitted");
+			checks.check(waited >= INTERVAL_MILLIS * 3 / 4 && waited < INTERVAL_MILLIS * 4, "it waited about " + INTERVAL_MILLIS
+					+ "ms: " + waited + "ms");
+			checks.check(sink.getCount() == 2, "the sink displayed both: " + sink.getCount());
+			checks.check(limiter.getAdmitted() == 2 && limiter.getDelayed() == 1 && limiter.getDropped() == 0, counters(limiter));
+
+			checks.section("DELAY drops past the maximum delay");
+			limiter.maxDelay(INTERVAL_MILLIS / 2, TimeUnit.MILLISECONDS);
+			started = System.nanoTime();
+			boolean refused = !limiter.show(APPLICATION, TYPE, "Third", "Would wait longer than the maximum delay");
+			waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			checks.check(refused, "a notification that would wait past the maximum delay was dropped");
+			checks.check(waited < INTERVAL_MILLIS / 2, "it was dropped without waiting: " + waited + "ms");
+			checks.check(sink.getCount() == 2, "the sink did not display it: " + sink.getCount());
+			checks.check(limiter.getAdmitted() == 2 && limiter.getDelayed() == 1 && limiter.getDropped() == 1, counters(limiter));
+
+			checks.section("SUMMARIZE mentions the suppressed notifications");
+			sink = open();
+			limiter = new NotificationRateLimiter(sink(sink), OverflowAction.SUMMARIZE).limitType(TYPE, PER_SECOND, 1);
+			limiter.show(APPLICATION, TYPE, "Failed", "Build 1 failed");
+			int suppressed = 0;
+			for (int i = 0; i < SUPPRESSED; i++) {
+				if(!limiter.show(APPLICATION, TYPE, "Failed", "Build " + (i + 2) + " failed"))
+					suppressed++;
+			}
+			checks.check(suppressed == SUPPRESSED, suppressed + " of " + SUPPRESSED + " notifications past the limit were suppressed");
+			checks.check(limiter.show(APPLICATION, OTHER_TYPE, "Deployed", "To staging"), "another type is admitted meanwhile");
+			checks.check("To staging".equals(sink.getLast().getMessage().getMessage()), "it does not mention the suppressed "
+					+ "notifications of another type: " + sink.getLast().getMessage().getMessage());
+			Thread.sleep(INTERVAL_MILLIS * 2);
+			limiter.show(APPLICATION, TYPE, "Failed", "Build 5 failed");
+			String summary = sink.getLast().getMessage().getMessage();
+			checks.check(summary.equals("Build 5 failed\n(" + SUPPRESSED + " similar notifications suppressed)"),
+					"the next notification of the type mentions them: " + summary.replace('\n', ' '));
+			Thread.sleep(INTERVAL_MILLIS * 2);
+			limiter.show(APPLICATION, TYPE, "Failed", "Build 6 failed");
+			checks.check("Build 6 failed".equals(sink.getLast().getMessage().getMessage()), "they are mentioned only once: "
+					+ sink.getLast().getMessage().getMessage().replace('\n', ' '));
+			checks.check(limiter.getAdmitted() == 4 && limiter.getDelayed() == 0 && limiter.getDropped() == SUPPRESSED,
+					counters(limiter));
+
+			checks.section("An application limit gives the type's token back");
+			sink = open();
+			limiter = new NotificationRateLimiter(sink(sink), OverflowAction.DROP).limitApplication(APPLICATION, 1, 1).limitType(TYPE, 1, 2);
+			checks.check(limiter.show(APPLICATION, TYPE, "First", "Takes a token from both"), "the first notification was admitted");
+			checks.check(!limiter.show(APPLICATION, TYPE, "Second", "Refused by the application"),
+					"the second was refused by its application's limit");
+			checks.check(limiter.show(OTHER_APPLICATION, TYPE, "Third", "Uses the type's remaining token"),
+					"another application was admitted with the type's token the refusal gave back");
+			checks.check(!limiter.show(OTHER_APPLICATION, TYPE, "Fourth", "The type's tokens are spent"),
+					"the type's limit still holds once its tokens are spent");
+			checks.check(limiter.getAdmitted() == 2 && limiter.getDelayed() == 0 && limiter.getDropped() == 2, counters(limiter));
+		} catch (Exception e) {
+			checks.fail("Rate limiter", e);
+		}
+		checks.exit();
+	}
+
+	private static MemoryNotification open() {
+		MemoryNotification sink = new MemoryNotification(APPLICATION);
+		sink.open();
+		return sink;
+	}
+
+	private static NotificationSink sink(final MemoryNotification notification) {
+		return new NotificationSink() {
+			@Override
+			public void show(NotificationMessage message) throws NotificationException {
+				notification.show(message);
+			}
+		};
+	}
+
+	private static String counters(NotificationRateLimiter limiter) {
+		return "admitted " + limiter.getAdmitted() + ", delayed " + limiter.getDelayed() + ", dropped " + limiter.getDropped();
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * AppleScriptBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+
+import uk.co.edgeorgedev.notifj.bench.Benchmark;
+
+/**
+ * Benchmarks of preparing AppleScript for evaluation, using an engine that discards every script
+ * so that only NotifJ's own work is measured.
+ *
+ * @since   1.3
+ */
+public class AppleScriptBenchmarks {
+
+	private static final String SOURCE = "on notify_growl(appName, notificationName, theTitle, theMessage, callbackUrl, isSticky)\nreturn true\nend notify_growl";
+
+	/**
+	 * Get the AppleScript benchmarks
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> benchmarks() {
+		return Arrays.asList(templateCall(), quote());
+	}
+
+	/*
+	 * Render a handler call for an engine that cannot compile scripts
+	 */
+	private static Benchmark templateCall() {
+		return new Benchmark("applescript.template.call") {
+			private final AppleScriptTemplate template = new AppleScriptTemplate("notify_growl", SOURCE);
+			private final ScriptEngine engine = new DiscardingEngine();
+
+			@Override
+			protected Object run() throws Exception {
+				return template.eval(engine, "NotifJ Benchmark", "Notification", "Build \"42\" finished",
+						"All 214 tests passed", "", Boolean.FALSE);
+			}
+		};
+	}
+
+	/*
+	 * Escape a string literal
+	 */
+	private static Benchmark quote() {
+		return new Benchmark("applescript.quote") {
+			@Override
+			protected Object run() {
+				return AppleScriptTemplate.quote("C:\\builds\\\"nightly\" finished");
+			}
+		};
+	}
+
+	/*
+	 * Script engine that returns the length of each script without evaluating it
+	 */
+	private static class DiscardingEngine extends AbstractScriptEngine {
+
+		@Override
+		public Object eval(String script, ScriptContext context) {
+			return script.length();
+		}
+
+		@Override
+		public Object eval(Reader reader, ScriptContext context) {
+			return null;
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return null;
+		}
+	}
+
+}
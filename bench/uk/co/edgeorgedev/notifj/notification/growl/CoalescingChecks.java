@@ -0,0 +1,156 @@
+/**
+ * CoalescingChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationCoalescer;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationSink;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Checks the coalescing of {@link GrowlNotification} against a notification that records what it would display:
+ * repeats within the window are folded into one <tt>Title (xN)</tt> summary once it closes, an emergency is never
+ * folded, and replacing the coalescer displays the summaries it was holding. The index of a
+ * {@link NotificationCoalescer} must never hold more than {@link NotificationCoalescer#DEFAULT_MAX_KEYS} keys,
+ * closing the eldest window early to make room.
+ *
+ * <p>Usage: <tt>CoalescingChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class CoalescingChecks {
+
+	private static final String APPLICATION = "NotifJ Coalescing Checks";
+	private static final long WINDOW_MILLIS = 200;
+	private static final int REPEATS = 10;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("CoalescingChecks");
+
+		RecordingGrowlNotification growl = new RecordingGrowlNotification();
+		try {
+			checks.section(REPEATS + " repeats within the window");
+			growl.coalesce(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+			for (int i = 0; i < REPEATS; i++) {
+				growl.show("Disk full", "/var is at 98%");
+			}
+			checks.check(titles(growl).equals(list("Disk full")), "only the first was displayed while the window was open: "
+					+ titles(growl));
+			checks.check(awaitDisplayed(growl, 2), "a summary was displayed once the window closed");
+			checks.check(titles(growl).equals(list("Disk full", "Disk full (x" + REPEATS + ")")), "the repeats were folded into one "
+					+ "summary: " + titles(growl));
+			Thread.sleep(WINDOW_MILLIS * 2);
+			checks.check(growl.displayed.size() == 2, "nothing else was displayed: " + titles(growl));
+
+			checks.section("EMERGENCY is never folded");
+			growl.displayed.clear();
+			for (int i = 0; i < 3; i++) {
+				growl.show("Reactor", "Core temperature critical", NotificationPriority.EMERGENCY);
+			}
+			checks.check(growl.displayed.size() == 3, "each emergency was displayed straight away: " + titles(growl));
+
+			checks.section("Replacing the coalescer");
+			growl.displayed.clear();
+			growl.coalesce(1, TimeUnit.MINUTES);
+			growl.show("Build failed", "master is red");
+			growl.show("Build failed", "master is red");
+			growl.coalesce(1, TimeUnit.MINUTES, NotificationCoalescer.SAME_TITLE);
+			checks.check(titles(growl).equals(list("Build failed", "Build failed (x2)")), "the replaced coalescer displayed "
+					+ "the summary it was holding: " + titles(growl));
+			growl.show("Build failed", "master is red");
+			growl.show("Build failed", "release is red");
+			checks.check(growl.displayed.size() == 3, "the new key function folds notifications with the same title: "
+					+ titles(growl));
+			growl.close();
+			checks.check(titles(growl).equals(list("Build failed", "Build failed (x2)", "Build failed", "Build failed (x2)")),
+					"close() displayed the pending summary: " + titles(growl));
+
+			checks.section("The index holds at most " + NotificationCoalescer.DEFAULT_MAX_KEYS + " keys");
+			final List<String> shown = new CopyOnWriteArrayList<String>();
+			NotificationCoalescer coalescer = new NotificationCoalescer(new NotificationSink() {
+				@Override
+				public void show(NotificationMessage message) throws NotificationException {
+					shown.add(message.getTitle());
+				}
+			}, 1, TimeUnit.MINUTES);
+			for (int i = 0; i < NotificationCoalescer.DEFAULT_MAX_KEYS; i++) {
+				coalescer.show("Key " + i, "Repeated");
+				coalescer.show("Key " + i, "Repeated");
+			}
+			checks.check(coalescer.size() == NotificationCoalescer.DEFAULT_MAX_KEYS, "every key has an open window: " + coalescer.size());
+			checks.check(shown.size() == NotificationCoalescer.DEFAULT_MAX_KEYS, "only the first of each was displayed: " + shown.size());
+			coalescer.show("Key " + NotificationCoalescer.DEFAULT_MAX_KEYS, "One too many");
+			checks.check(coalescer.size() == NotificationCoalescer.DEFAULT_MAX_KEYS, "a new key did not grow the index: "
+					+ coalescer.size());
+			checks.check(shown.size() == NotificationCoalescer.DEFAULT_MAX_KEYS + 2 && "Key 0 (x2)".equals(shown.get(shown.size() - 2)),
+					"the eldest window was closed early with its summary: " + shown.subList(NotificationCoalescer.DEFAULT_MAX_KEYS, shown.size()));
+			checks.check(coalescer.getSuppressed() == NotificationCoalescer.DEFAULT_MAX_KEYS, coalescer.getSuppressed()
+					+ " notifications were suppressed");
+			coalescer.close();
+			checks.check(coalescer.size() == 0, "close() closed every window: " + coalescer.size());
+			checks.check(shown.size() == NotificationCoalescer.DEFAULT_MAX_KEYS * 2 + 1, "and displayed a summary for each key that "
+					+ "repeated: " + shown.size() + " displayed");
+		} catch (Exception e) {
+			checks.fail("Coalescing", e);
+		} finally {
+			growl.close();
+		}
+		checks.exit();
+	}
+
+	private static List<String> list(String... titles) {
+		List<String> list = new ArrayList<String>(titles.length);
+		for (String title : titles) {
+			list.add(title);
+		}
+		return list;
+	}
+
+	private static List<String> titles(RecordingGrowlNotification growl) {
+		List<String> titles = new ArrayList<String>();
+		for (NotificationMessage message : growl.displayed) {
+			titles.add(message.getTitle());
+		}
+		return titles;
+	}
+
+	/*
+	 * Summaries are displayed by the coalescer's sweep on its own thread
+	 */
+	private static boolean awaitDisplayed(RecordingGrowlNotification growl, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while(growl.displayed.size() < count && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		return growl.displayed.size() >= count;
+	}
+
+	/*
+	 * Records what would be displayed instead of sending it to Growl
+	 */
+	private static class RecordingGrowlNotification extends GrowlNotification {
+
+		final List<NotificationMessage> displayed = new CopyOnWriteArrayList<NotificationMessage>();
+
+		RecordingGrowlNotification() throws NotificationException {
+			super(APPLICATION);
+		}
+
+		@Override
+		protected void display(NotificationMessage message) throws NotificationException {
+			displayed.add(message);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * FanOutChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpStubServer;
+
+/**
+ * Checks {@link GntpFanOutNotification} against several loopback {@link GntpStubServer}s: a healthy host, a host
+ * slower than the host timeout, a host that answers every notification with <tt>-ERROR</tt> and a host that is down.
+ *
+ * <p>Usage: <tt>FanOutChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class FanOutChecks {
+
+	private static final String APPLICATION = "NotifJ Fan-out Checks";
+	private static final long HOST_TIMEOUT_MILLIS = 250;
+	private static final long SLOW_LATENCY_MILLIS = 2000;
+	private static final int THREADS = 16;
+	private static final int NOTIFICATIONS_PER_THREAD = 10;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("FanOutChecks");
+
+		GntpStubServer healthy = new GntpStubServer();
+		GntpStubServer slow = new GntpStubServer();
+		slow.injectLatency(SLOW_LATENCY_MILLIS, 0, TimeUnit.MILLISECONDS);
+		GntpStubServer failing = new GntpStubServer();
+		failing.injectFailures(1, 0);
+		InetSocketAddress healthy_address = address(healthy);
+		InetSocketAddress slow_address = address(slow);
+		InetSocketAddress failing_address = address(failing);
+		InetSocketAddress down_address = unusedPort();
+
+		final GntpFanOutNotification notification = new GntpFanOutNotification(APPLICATION,
+				healthy_address, slow_address, failing_address, down_address);
+		notification.setHostTimeout(HOST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		notification.circuitBreaker(Integer.MAX_VALUE, 1, TimeUnit.MILLISECONDS);
+		try {
+			notification.open();
+
+			checks.section("A slow host times out without delaying the others");
+			long started = System.nanoTime();
+			FanOutResult result = notification.deliver(new NotificationMessage("Disk full", "/var is at 98%"));
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			checks.check(elapsed < SLOW_LATENCY_MILLIS / 2, "deliver() returned after " + elapsed + "ms - the host timeout is "
+					+ HOST_TIMEOUT_MILLIS + "ms and the slow host answers after " + SLOW_LATENCY_MILLIS + "ms");
+			checks.check(result.getDelivered().equals(Arrays.asList(healthy_address)), "the healthy host displayed it: " + result.getDelivered());
+			checks.check(result.isSuccess() && !result.isComplete(), "the result is a success but not complete");
+			checks.check(messageOf(result, slow_address).contains("Timed out"), "the slow host timed out: " + messageOf(result, slow_address));
+
+			checks.section("FanOutResult reports each host's failure");
+			checks.check(result.getFailures().keySet().equals(new HashSet<InetSocketAddress>(Arrays.asList(slow_address, failing_address, down_address))),
+					"the slow, failing and down hosts failed: " + result.getFailures().keySet());
+			checks.check(!messageOf(result, failing_address).isEmpty(), "the failing host reported its -ERROR: " + messageOf(result, failing_address));
+			checks.check(!messageOf(result, down_address).isEmpty(), "the down host reported it could not connect: " + messageOf(result, down_address));
+			checks.check(result.getCause() != null, "the result has a cause");
+
+			checks.section("Each host is registered exactly once");
+			ExecutorService senders = Executors.newFixedThreadPool(THREADS);
+			List<Future<Integer>> sent = new ArrayList<Future<Integer>>(THREADS);
+			for (int i = 0; i < THREADS; i++) {
+				sent.add(senders.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws NotificationException {
+						int delivered = 0;
+						for (int n = 0; n < NOTIFICATIONS_PER_THREAD; n++) {
+							if(notification.deliver(new NotificationMessage("Build finished", "Build " + n)).getDelivered().size() == 1)
+								delivered++;
+						}
+						return delivered;
+					}
+				}));
+			}
+			int delivered = 0;
+			for (Future<Integer> future : sent) {
+				delivered += future.get();
+			}
+			senders.shutdown();
+			int expected = THREADS * NOTIFICATIONS_PER_THREAD;
+			checks.check(delivered == expected, THREADS + " threads had " + delivered + " of " + expected + " notifications displayed by the healthy host alone");
+			checks.check(healthy.getRegistrations() == 1, "the healthy host was registered " + healthy.getRegistrations() + " time(s)");
+			checks.check(slow.getRegistrations() == 1, "the slow host was registered " + slow.getRegistrations() + " time(s)");
+			checks.check(failing.getRegistrations() == 1, "the failing host was registered " + failing.getRegistrations() + " time(s)");
+			checks.check(healthy.getRequests() == 1 + 1 + expected, "the healthy host received " + healthy.getRequests() + " requests, "
+					+ (2 + expected) + " expected");
+		} catch (Exception e) {
+			checks.fail("Fan-out", e);
+		} finally {
+			notification.close();
+			healthy.close();
+			slow.close();
+			failing.close();
+		}
+		checks.exit();
+	}
+
+	private static InetSocketAddress address(GntpStubServer server) {
+		return new InetSocketAddress(server.getHost(), server.getPort());
+	}
+
+	/*
+	 * A loopback port nothing is listening on
+	 */
+	private static InetSocketAddress unusedPort() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return new InetSocketAddress("127.0.0.1", port);
+	}
+
+	private static String messageOf(FanOutResult result, InetSocketAddress host) {
+		NotificationException failure = result.getFailures().get(host);
+		if(failure == null)
+			return "";
+		return failure.getCause() == null || failure.getMessage().equals(String.valueOf(failure.getCause().getMessage()))
+				? failure.getMessage() : failure.getMessage() + " (" + failure.getCause().getMessage() + ")";
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * GntpConnectionPoolChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpStubServer;
+
+/**
+ * Checks {@link GntpConnectionPool} against a fault-injecting loopback {@link GntpStubServer}: concurrent
+ * notifications are sent over several connections at once, a connection the host drops fails its health check
+ * and is replaced, reconnecting backs off while the host refuses connections, and shutting the pool down leaves
+ * no connection open.
+ *
+ * <p>Usage: <tt>GntpConnectionPoolChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class GntpConnectionPoolChecks {
+
+	private static final String APPLICATION = "NotifJ Pool Checks";
+	private static final String[] TYPES = { GrowlNotification.DEFAULT_NOTIFICATION_TYPE };
+	private static final int POOL_SIZE = 4;
+	private static final long LATENCY_MILLIS = 300;
+	private static final long SEND_TIMEOUT_MILLIS = 500;
+	private static final long REFUSED_TIMEOUT_MILLIS = 100;
+	private static final long REFUSED_MILLIS = 3000;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("GntpConnectionPoolChecks");
+
+		GntpStubServer server = new GntpStubServer();
+		/* As Growl for Windows does */
+		server.closeAfterResponse(true);
+		final GntpConnectionPool pool = new GntpConnectionPool(APPLICATION, server.getHost(), server.getPort(), POOL_SIZE);
+		GntpConnectionPool single = new GntpConnectionPool(APPLICATION, server.getHost(), server.getPort(), 1);
+		ExecutorService senders = Executors.newFixedThreadPool(POOL_SIZE);
+		try {
+			pool.open(TYPES, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(server.getRegistrations() == POOL_SIZE, "open() registered each of the " + POOL_SIZE + " connections: "
+					+ server.getRegistrations() + " registrations");
+
+			checks.section("Concurrent notifications use more than one connection");
+			server.injectLatency(LATENCY_MILLIS, 0, TimeUnit.MILLISECONDS);
+			List<Future<Void>> sent = new ArrayList<Future<Void>>(POOL_SIZE);
+			long started = System.nanoTime();
+			for (int i = 0; i < POOL_SIZE; i++) {
+				final NotificationMessage message = message("Concurrent " + i);
+				sent.add(senders.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						pool.notify(message, null, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+						return null;
+					}
+				}));
+			}
+			int delivered = 0;
+			for (Future<Void> future : sent) {
+				future.get(TIMEOUT_SECONDS * 2, TimeUnit.SECONDS);
+				delivered++;
+			}
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			checks.check(delivered == POOL_SIZE, delivered + " of " + POOL_SIZE + " notifications were answered");
+			checks.check(elapsed < LATENCY_MILLIS * 2, "they were sent in parallel - " + elapsed + "ms for " + POOL_SIZE
+					+ " notifications answered after " + LATENCY_MILLIS + "ms each");
+			server.injectLatency(0, 0, TimeUnit.MILLISECONDS);
+
+			checks.section("-ERROR");
+			server.injectFailures(1, 0);
+			try {
+				pool.notify(message("Refused"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				checks.check(false, "a notification answered with -ERROR fails");
+			} catch (NotificationException e) {
+				checks.check(true, "a notification answered with -ERROR fails: " + e.getMessage());
+			}
+			server.injectFailures(0, 0);
+			long registrations = server.getRegistrations();
+			pool.notify(message("After -ERROR"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			checks.check(server.getRegistrations() == registrations, "the connection that was answered stayed in use - "
+					+ (server.getRegistrations() - registrations) + " registrations");
+
+			checks.section("A dropped connection is replaced");
+			single.open(TYPES, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			registrations = server.getRegistrations();
+			server.injectFailures(0, 1);
+			try {
+				single.notify(message("Dropped"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				checks.check(false, "a notification whose connection is dropped without a response fails");
+			} catch (NotificationException e) {
+				checks.check(true, "a notification whose connection is dropped without a response fails: " + e.getMessage());
+			}
+			server.injectFailures(0, 0);
+			try {
+				single.notify(message("Too soon"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				checks.check(false, "the connection fails its health check until its back-off has passed");
+			} catch (NotificationException e) {
+				checks.check(true, "the connection fails its health check until its back-off has passed: " + e.getMessage());
+			}
+			Thread.sleep(GntpConnectionPool.MIN_BACKOFF_MILLIS * 2);
+			single.notify(message("Replaced"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			checks.check(server.getRegistrations() == registrations + 1, "it was replaced by a newly registered connection - "
+					+ (server.getRegistrations() - registrations) + " registrations");
+
+			checks.section("Reconnecting backs off while the host refuses connections");
+			server.refuseConnections(true);
+			List<Long> attempts = new ArrayList<Long>();
+			int refused = 0;
+			started = System.nanoTime();
+			while(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(REFUSED_MILLIS)){
+				long sending = System.nanoTime();
+				try {
+					single.notify(message("Refused"), null, REFUSED_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (NotificationException e) {
+					refused++;
+				}
+				/* A reconnect waits out the timeout for a registration that never comes; a backed-off call does not */
+				if(System.nanoTime() - sending >= TimeUnit.MILLISECONDS.toNanos(REFUSED_TIMEOUT_MILLIS / 2))
+					attempts.add(TimeUnit.NANOSECONDS.toMillis(sending - started));
+				Thread.sleep(5);
+			}
+			checks.check(refused > attempts.size() * 10, refused + " notifications failed with " + attempts.size()
+					+ " reconnect attempts between them, at " + attempts + "ms");
+			checks.check(attempts.size() >= 2 && increasing(attempts), "each reconnect attempt waited longer than the last");
+			server.refuseConnections(false);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+			boolean recovered = false;
+			while(!recovered && System.nanoTime() < deadline){
+				try {
+					single.notify(message("Back"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+					recovered = true;
+				} catch (NotificationException e) {
+					Thread.sleep(50);
+				}
+			}
+			checks.check(recovered, "the pool reconnected once the host accepted connections again");
+
+			checks.section("Shutting down");
+			/* jgntp keeps a connection open for each notification to a host that does not close them */
+			server.closeAfterResponse(false);
+			for (int i = 0; i < POOL_SIZE; i++) {
+				pool.notify(message("Kept open " + i), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			checks.check(server.getConnections() > 0, server.getConnections() + " connections were open before shutting down");
+			pool.shutdown(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			single.shutdown(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(awaitClosed(server), "shutting down closed every connection - " + server.getConnections() + " open");
+			try {
+				pool.notify(message("After shutdown"), null, SEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				checks.check(false, "a pool that has been shut down refuses to send");
+			} catch (NotificationException e) {
+				checks.check(true, "a pool that has been shut down refuses to send: " + e.getMessage());
+			}
+		} catch (Exception e) {
+			checks.fail("GNTP connection pool", e);
+		} finally {
+			senders.shutdownNow();
+			pool.shutdown(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			single.shutdown(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			server.close();
+		}
+		checks.exit();
+	}
+
+	private static NotificationMessage message(String title) {
+		return NotificationMessage.builder().title(title).message("From the pool").type(GrowlNotification.DEFAULT_NOTIFICATION_TYPE).build();
+	}
+
+	/*
+	 * Whether each gap between attempts is longer than the one before
+	 */
+	private static boolean increasing(List<Long> attempts) {
+		long previous = 0;
+		for (int i = 1; i < attempts.size(); i++) {
+			long gap = attempts.get(i) - attempts.get(i - 1);
+			if(gap <= previous)
+				return false;
+			previous = gap;
+		}
+		return true;
+	}
+
+	/*
+	 * The stub server notices a closed connection on its own thread
+	 */
+	private static boolean awaitClosed(GntpStubServer server) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while(server.getConnections() > 0 && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		return server.getConnections() == 0;
+	}
+
+}
@@ -0,0 +1,249 @@
+/**
+ * GntpBenchmarks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import uk.co.edgeorgedev.notifj.bench.Benchmark;
+import uk.co.edgeorgedev.notifj.notification.IconCache;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.growl.FanOutResult;
+import uk.co.edgeorgedev.notifj.notification.growl.GntpFanOutNotification;
+
+/**
+ * Benchmarks of GNTP encoding, of sending over a loopback {@link GntpStubServer}, of icon resources and of
+ * receiving socket callbacks.
+ *
+ * @since   1.3
+ */
+public class GntpBenchmarks {
+
+	private static final String APPLICATION = "NotifJ Benchmark";
+	private static final String TYPE = "Notification";
+	private static final int BATCH_SIZE = 32;
+	private static final int FAN_OUT_HOSTS = 8;
+
+	/**
+	 * Get the GNTP benchmarks
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> benchmarks() {
+		return Arrays.asList(encodeNotify(), sendNotify(), sendPipelined(), sendIcon(), iconCacheHit(), callbackRoundTrip(), fanOut());
+	}
+
+	/*
+	 * Encode a NOTIFY request into the reusable direct buffer
+	 */
+	private static Benchmark encodeNotify() {
+		return new Benchmark("gntp.encode.notify") {
+			private final GntpEncoder encoder = new GntpEncoder();
+			private final GntpNotify notify = new GntpNotify(APPLICATION, TYPE, "Build finished", "All 214 tests passed");
+
+			@Override
+			protected Object run() {
+				encoder.clear();
+				notify.encode(encoder);
+				return encoder.flip();
+			}
+		};
+	}
+
+	/*
+	 * Send a NOTIFY request and wait for its response
+	 */
+	private static Benchmark sendNotify() {
+		return new TransportBenchmark("gntp.send.notify", 1);
+	}
+
+	/*
+	 * Pipeline a batch of NOTIFY requests over one connection
+	 */
+	private static Benchmark sendPipelined() {
+		return new TransportBenchmark("gntp.send.pipelined[" + BATCH_SIZE + "]", BATCH_SIZE);
+	}
+
+	/*
+	 * Pipeline a batch of NOTIFY requests sharing one icon, whose image is only sent with the first
+	 */
+	private static Benchmark sendIcon() {
+		return new TransportBenchmark("gntp.send.icon[" + BATCH_SIZE + "]", BATCH_SIZE) {
+			@Override
+			protected GntpNotify request() throws Exception {
+				IconCache.Entry icon = IconCache.getDefault().get(NotificationIcon.fromBytes(iconBytes()));
+				return super.request().icon(icon.getId(), icon.getData());
+			}
+		};
+	}
+
+	/*
+	 * Look up a byte icon that is already cached
+	 */
+	private static Benchmark iconCacheHit() {
+		return new Benchmark("icon.cache.hit") {
+			private final IconCache cache = new IconCache();
+			private NotificationIcon icon;
+
+			@Override
+			protected void setUp() throws Exception {
+				icon = NotificationIcon.fromBytes(iconBytes());
+				cache.get(icon);
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				return cache.get(icon);
+			}
+		};
+	}
+
+	/*
+	 * A 256 pixel square PNG, which the icon cache shrinks to its maximum dimension
+	 */
+	private static byte[] iconBytes() throws IOException {
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, 0xff000000 | (x << 16) | (y << 8) | ((x ^ y) & 0xff));
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/*
+	 * Send a notification over its own connection and wait for the listener to receive its callback
+	 */
+	private static Benchmark callbackRoundTrip() {
+		return new Benchmark("gntp.callback.roundtrip") {
+			private final Semaphore received = new Semaphore(0);
+			private GntpStubServer server;
+			private GntpCallbackReceiver receiver;
+
+			@Override
+			protected void setUp() throws Exception {
+				server = new GntpStubServer();
+				server.emitCallbacks("CLICKED", 0);
+				receiver = new GntpCallbackReceiver(server.getHost(), server.getPort());
+				receiver.addListener(new GntpCallbackListener() {
+					@Override
+					public void onCallback(GntpCallback callback) {
+						received.release();
+					}
+				});
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				String id = receiver.send(new GntpNotify(APPLICATION, TYPE, "Build finished", "All 214 tests passed"), null, 5, TimeUnit.SECONDS);
+				if(!received.tryAcquire(5, TimeUnit.SECONDS))
+					throw new IllegalStateException("No callback for " + id);
+				return id;
+			}
+
+			@Override
+			protected void tearDown() {
+				receiver.close();
+				server.close();
+			}
+		};
+	}
+
+	/*
+	 * Send a notification to several loopback servers at once and wait for every host to answer
+	 */
+	private static Benchmark fanOut() {
+		return new Benchmark("gntp.fanout[" + FAN_OUT_HOSTS + "]") {
+			private final NotificationMessage message = new NotificationMessage("Build finished", "All 214 tests passed");
+			private final List<GntpStubServer> servers = new ArrayList<GntpStubServer>(FAN_OUT_HOSTS);
+			private GntpFanOutNotification notification;
+
+			@Override
+			protected void setUp() throws Exception {
+				List<InetSocketAddress> hosts = new ArrayList<InetSocketAddress>(FAN_OUT_HOSTS);
+				for (int i = 0; i < FAN_OUT_HOSTS; i++) {
+					GntpStubServer server = new GntpStubServer();
+					servers.add(server);
+					hosts.add(new InetSocketAddress(server.getHost(), server.getPort()));
+				}
+				notification = new GntpFanOutNotification(APPLICATION, hosts);
+				notification.open();
+			}
+
+			@Override
+			protected Object run() throws Exception {
+				FanOutResult result = notification.deliver(message);
+				if(!result.isComplete())
+					throw new IllegalStateException("Fan-out failed: " + result.getFailures());
+				return result;
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				notification.close();
+				for (GntpStubServer server : servers) {
+					server.close();
+				}
+			}
+		};
+	}
+
+	private static class TransportBenchmark extends Benchmark {
+
+		private final int batch_size;
+		private GntpStubServer server;
+		private GntpTransport transport;
+		private List<GntpNotify> requests;
+
+		TransportBenchmark(String name, int batch_size) {
+			super(name);
+			this.batch_size = batch_size;
+		}
+
+		@Override
+		protected void setUp() throws Exception {
+			server = new GntpStubServer();
+			transport = new GntpTransport(server.getHost(), server.getPort());
+			transport.send(new GntpRegister(APPLICATION, TYPE), 5, TimeUnit.SECONDS);
+			requests = new ArrayList<GntpNotify>(batch_size);
+			for (int i = 0; i < batch_size; i++) {
+				requests.add(request());
+			}
+		}
+
+		protected GntpNotify request() throws Exception {
+			return new GntpNotify(APPLICATION, TYPE, "Build finished", "All 214 tests passed");
+		}
+
+		@Override
+		protected Object run() throws Exception {
+			return transport.send(requests, 5, TimeUnit.SECONDS);
+		}
+
+		@Override
+		protected int operationsPerRun() {
+			return batch_size;
+		}
+
+		@Override
+		protected void tearDown() {
+			transport.close();
+			server.close();
+		}
+	}
+
+}
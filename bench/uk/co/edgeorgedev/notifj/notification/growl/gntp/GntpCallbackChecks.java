@@ -0,0 +1,182 @@
+/**
+ * GntpCallbackChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Checks that {@link GntpCallbackReceiver} delivers the socket callbacks of a loopback {@link GntpStubServer}:
+ * each result is parsed, callbacks arriving out of order are matched to the attachment of their own notification,
+ * notifications whose callback never arrives expire, a listener that throws does not stop the others, and a
+ * sender is failed by an <tt>-ERROR</tt> or by <tt>close()</tt> rather than left waiting for its timeout.
+ *
+ * <p>Usage: <tt>GntpCallbackChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class GntpCallbackChecks {
+
+	private static final String APPLICATION = "NotifJ Callback Checks";
+	private static final String TYPE = "General";
+	private static final int OUTSTANDING = 50;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("GntpCallbackChecks");
+
+		GntpStubServer server = new GntpStubServer();
+		GntpCallbackReceiver receiver = new GntpCallbackReceiver(server.getHost(), server.getPort());
+		final BlockingQueue<GntpCallback> received = new LinkedBlockingQueue<GntpCallback>();
+		final AtomicReference<RuntimeException> thrown = new AtomicReference<RuntimeException>();
+		receiver.addListener(new GntpCallbackListener() {
+			@Override
+			public void onCallback(GntpCallback callback) {
+				RuntimeException failure = new IllegalStateException("Listener failure");
+				thrown.set(failure);
+				throw failure;
+			}
+		});
+		receiver.addListener(new GntpCallbackListener() {
+			@Override
+			public void onCallback(GntpCallback callback) {
+				received.add(callback);
+			}
+		});
+		try {
+			checks.section("Callback results");
+			String[][] results = { { "CLICK", "CLICKED" }, { "CLICKED", "CLICKED" }, { "CLOSE", "CLOSED" }, { "CLOSED", "CLOSED" },
+					{ "TIMEDOUT", "TIMEDOUT" }, { "TIMEOUT", "TIMEDOUT" } };
+			for (String[] result : results) {
+				server.emitCallbacks(result[0], 0);
+				String id = receiver.send(request("Result " + result[0]), result[0], TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				GntpCallback callback = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				checks.check(callback != null && callback.getResult() == GntpCallback.Result.valueOf(result[1]),
+						result[0] + " is delivered as " + result[1] + ": " + callback);
+				checks.check(callback != null && id.equals(callback.getNotificationId()) && result[0].equals(callback.getAttachment()),
+						"the " + result[0] + " callback carries its notification's id and attachment");
+			}
+			checks.check(thrown.get() != null, "the first listener threw on every callback");
+			checks.check(receiver.getOutstanding() == 0, "no notification is outstanding once its callback arrived: "
+					+ receiver.getOutstanding());
+
+			checks.section(OUTSTANDING + " outstanding notifications called back out of order");
+			server.emitCallbacks("CLICKED", 200, 800);
+			Map<String, Object> attachments = new HashMap<String, Object>();
+			List<String> sent = new ArrayList<String>();
+			for (int i = 0; i < OUTSTANDING; i++) {
+				Object attachment = "notification-" + i;
+				String id = receiver.send(request("Build " + i), attachment, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				attachments.put(id, attachment);
+				sent.add(id);
+			}
+			checks.check(receiver.getOutstanding() > 0, receiver.getOutstanding() + " notifications were awaiting their callback at once");
+			List<String> arrived = new ArrayList<String>();
+			int matched = 0;
+			for (int i = 0; i < OUTSTANDING; i++) {
+				GntpCallback callback = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				if(callback == null)
+					break;
+				arrived.add(callback.getNotificationId());
+				if(callback.getAttachment() != null && callback.getAttachment().equals(attachments.get(callback.getNotificationId())))
+					matched++;
+			}
+			checks.check(arrived.size() == OUTSTANDING, arrived.size() + " callbacks of " + OUTSTANDING + " arrived");
+			checks.check(!arrived.equals(sent), "the callbacks arrived in a different order to their notifications");
+			checks.check(matched == OUTSTANDING, matched + " of " + OUTSTANDING + " callbacks carried their own notification's attachment");
+			checks.check(new HashSet<String>(arrived).size() == arrived.size() && arrived.containsAll(sent),
+					"every notification was called back exactly once");
+			checks.check(receiver.getOutstanding() == 0, "no notification is outstanding: " + receiver.getOutstanding());
+
+			checks.section("Expiry");
+			server.emitCallbacks(null, 0);
+			receiver.setExpiry(1, TimeUnit.SECONDS);
+			for (int i = 0; i < 5; i++) {
+				receiver.send(request("Never called back " + i), null, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+			checks.check(receiver.getOutstanding() == 5, "notifications without a callback are outstanding: " + receiver.getOutstanding());
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+			while(receiver.getOutstanding() > 0 && System.nanoTime() < deadline){
+				Thread.sleep(50);
+			}
+			checks.check(receiver.getOutstanding() == 0, "they were dropped once expired: " + receiver.getOutstanding() + " outstanding");
+			checks.check(awaitClosed(server), "their connections were closed - " + server.getConnections() + " open");
+			receiver.setExpiry(GntpCallbackReceiver.DEFAULT_EXPIRY_MINUTES, TimeUnit.MINUTES);
+
+			checks.section("-ERROR");
+			server.injectFailures(1, 0);
+			try {
+				receiver.send(request("Refused"), null, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				checks.check(false, "a notification answered with -ERROR fails send()");
+			} catch (NotificationException e) {
+				checks.check(true, "a notification answered with -ERROR fails send(): " + e.getMessage());
+			}
+			checks.check(receiver.getOutstanding() == 0, "the refused notification is not outstanding: " + receiver.getOutstanding());
+			server.injectFailures(0, 0);
+
+			checks.section("close() with a sender waiting");
+			server.injectLatency(TIMEOUT_SECONDS * 4, 0, TimeUnit.SECONDS);
+			final GntpCallbackReceiver closing = receiver;
+			final AtomicReference<Exception> outcome = new AtomicReference<Exception>();
+			Thread sender = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						closing.send(request("Never answered"), null, TIMEOUT_SECONDS * 4, TimeUnit.SECONDS);
+					} catch (NotificationException e) {
+						outcome.set(e);
+					}
+				}
+			}, "GntpCallbackChecks-sender");
+			sender.start();
+			Thread.sleep(200);
+			long closed_at = System.nanoTime();
+			receiver.close();
+			sender.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+			long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - closed_at);
+			checks.check(!sender.isAlive(), "the waiting sender was released " + waited + "ms after close()");
+			checks.check(outcome.get() != null, "its send() failed: " + (outcome.get() == null ? null : outcome.get().getMessage()));
+			try {
+				receiver.send(request("After close"), null, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				checks.check(false, "a closed receiver refuses to send");
+			} catch (NotificationException e) {
+				checks.check(true, "a closed receiver refuses to send: " + e.getMessage());
+			}
+		} catch (Exception e) {
+			checks.fail("GNTP callbacks", e);
+		} finally {
+			receiver.close();
+			server.close();
+		}
+		checks.exit();
+	}
+
+	private static GntpNotify request(String title) {
+		return new GntpNotify(APPLICATION, TYPE, title, "Waiting for a callback");
+	}
+
+	/*
+	 * The stub server notices a closed connection on its own thread
+	 */
+	private static boolean awaitClosed(GntpStubServer server) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while(server.getConnections() > 0 && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		return server.getConnections() == 0;
+	}
+
+}
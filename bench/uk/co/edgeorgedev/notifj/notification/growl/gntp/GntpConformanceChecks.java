@@ -0,0 +1,146 @@
+/**
+ * GntpConformanceChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Checks that {@link GntpTransport} speaks GNTP/1.0 to a loopback {@link GntpStubServer}: <tt>REGISTER</tt> and
+ * <tt>NOTIFY</tt> are answered with <tt>-OK</tt>, an <tt>-ERROR</tt> is decoded with its code and description,
+ * pipelined requests are answered in order over one connection, and a server that closes the connection after
+ * each response is sent one request per connection rather than the unanswered batch again and again.
+ *
+ * <p>Usage: <tt>GntpConformanceChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class GntpConformanceChecks {
+
+	private static final String APPLICATION = "NotifJ Conformance Checks";
+	private static final String TYPE = "General";
+	private static final int PIPELINED = 20;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("GntpConformanceChecks");
+
+		GntpStubServer server = new GntpStubServer();
+		GntpTransport transport = new GntpTransport(server.getHost(), server.getPort());
+		try {
+			checks.section("REGISTER");
+			GntpResponse response = transport.send(new GntpRegister(APPLICATION, TYPE, "Warning"), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(response.isOk(), "REGISTER is answered with -OK: " + response);
+			checks.check("REGISTER".equals(response.getAction()), "the response action is REGISTER: " + response.getAction());
+			checks.check(server.getRegistrations() == 1, "the server received " + server.getRegistrations() + " registration(s)");
+
+			checks.section("NOTIFY");
+			response = transport.send(new GntpNotify(APPLICATION, TYPE, "Build finished", "All 214 tests passed")
+					.priority(1).sticky(true), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(response.isOk(), "NOTIFY is answered with -OK: " + response);
+			checks.check("NOTIFY".equals(response.getAction()), "the response action is NOTIFY: " + response.getAction());
+			ByteBuffer image = ByteBuffer.wrap(new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3 });
+			for (int i = 0; i < 2; i++) {
+				transport.send(new GntpNotify(APPLICATION, TYPE, "Icon", "With an image").icon("conformance-icon", image),
+						TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+			checks.check(server.getResources() == 1, "an image used twice on one connection was sent "
+					+ server.getResources() + " time(s)");
+			checks.check(server.getResourceBytes() == image.remaining(), "the server received " + server.getResourceBytes()
+					+ " image bytes of " + image.remaining());
+
+			checks.section("-ERROR");
+			server.injectFailures(1, 0);
+			response = transport.send(new GntpNotify(APPLICATION, TYPE, "Disk full", "/var is at 98%"), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(!response.isOk() && response.getType() == GntpResponse.Type.ERROR, "the failure is answered with -ERROR: " + response);
+			checks.check(response.getErrorCode() == 500, "the error code is decoded: " + response.getErrorCode());
+			checks.check("Injected failure".equals(response.getErrorDescription()), "the error description is decoded: "
+					+ response.getErrorDescription());
+			checks.check(transport.isConnected(), "the connection is kept open after an -ERROR");
+			server.injectFailures(0, 0);
+
+			checks.section("Pipelining over a kept-open connection");
+			long accepted = server.getAccepted();
+			long requests = server.getRequests();
+			List<GntpResponse> responses = transport.send(batch(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(responses.size() == PIPELINED + 1, "every request was answered: " + responses.size() + " of " + (PIPELINED + 1));
+			checks.check(inOrder(responses), "the responses are in the order of the requests");
+			checks.check(server.getAccepted() == accepted, "the batch was sent over the open connection - "
+					+ (server.getAccepted() - accepted) + " new connection(s)");
+			checks.check(server.getRequests() - requests == PIPELINED + 1, "the server received " + (server.getRequests() - requests)
+					+ " requests of " + (PIPELINED + 1));
+
+			checks.section("Pipelining to a server that closes after each response");
+			server.closeAfterResponse(true);
+			transport.close();
+			requests = server.getRequests();
+			responses = transport.send(batch(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(responses.size() == PIPELINED + 1, "every request was answered: " + responses.size() + " of " + (PIPELINED + 1));
+			checks.check(inOrder(responses), "the responses are in the order of the requests");
+			checks.check(server.getRequests() - requests == PIPELINED + 1, "the server received " + (server.getRequests() - requests)
+					+ " requests of " + (PIPELINED + 1));
+			long discarded = server.getDiscardedBytes();
+			checks.check(discarded < encodedLength(batch()), "only the first pipelined batch was discarded - " + discarded
+					+ " bytes of a " + encodedLength(batch()) + " byte batch");
+			responses = transport.send(batch(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			checks.check(responses.size() == PIPELINED + 1 && server.getDiscardedBytes() == discarded, "once the server is known to close "
+					+ "connections, requests are sent one per connection - " + (server.getDiscardedBytes() - discarded) + " bytes discarded");
+
+			checks.section("A server that drops every connection");
+			server.closeAfterResponse(false);
+			server.injectFailures(0, 1);
+			try {
+				transport.send(new GntpNotify(APPLICATION, TYPE, "Dropped", "Never answered"), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				checks.check(false, "sending to a server that never answers fails");
+			} catch (NotificationException e) {
+				checks.check(true, "sending to a server that never answers fails: " + e.getMessage());
+			}
+			checks.check(!transport.isConnected(), "the connection is closed after the failure");
+		} catch (Exception e) {
+			checks.fail("GNTP conformance", e);
+		} finally {
+			transport.close();
+			server.close();
+		}
+		checks.exit();
+	}
+
+	/*
+	 * A registration followed by notifications, each of whose responses is told apart by its action
+	 */
+	private static List<GntpRequest> batch() {
+		List<GntpRequest> requests = new ArrayList<GntpRequest>(PIPELINED + 1);
+		requests.add(new GntpRegister(APPLICATION, TYPE));
+		for (int i = 0; i < PIPELINED; i++) {
+			requests.add(new GntpNotify(APPLICATION, TYPE, "Build " + i, "Finished"));
+		}
+		return requests;
+	}
+
+	private static int encodedLength(List<GntpRequest> requests) {
+		GntpEncoder encoder = new GntpEncoder().clear();
+		for (GntpRequest request : requests) {
+			request.encode(encoder);
+		}
+		return encoder.flip().remaining();
+	}
+
+	private static boolean inOrder(List<GntpResponse> responses) {
+		if(responses.isEmpty() || !"REGISTER".equals(responses.get(0).getAction()))
+			return false;
+		for (GntpResponse response : responses.subList(1, responses.size())) {
+			if(!response.isOk() || !"NOTIFY".equals(response.getAction()))
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,522 @@
+/**
+ * GntpStubServer.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A GNTP/1.0 server on a loopback port that answers every request with <tt>-OK</tt>.
+ *
+ * <p>The <tt>Data-</tt> headers of a request are returned in its response, as GNTP requires.
+ *
+ * <p>Connections are kept open so that clients may pipeline requests, unless {@link #closeAfterResponse(boolean)}
+ * has been called to close each one after its first response, as Growl for Windows does. Each connection is
+ * served by its own daemon thread.
+ *
+ * <p>Binary resources are read the first time a request references them on a connection, as clients only
+ * send each once per connection.
+ *
+ * <p>Once {@link #emitCallbacks(String, long)} has been called, every notification that requests a socket
+ * callback is followed by a <tt>-CALLBACK</tt> on the same connection, as if the user had interacted with it.
+ *
+ * <p>For soak tests, {@link #injectLatency(long, long, TimeUnit)} delays every <tt>NOTIFY</tt> response and
+ * {@link #injectFailures(double, double)} answers a proportion of them with <tt>-ERROR</tt> or drops the connection
+ * instead. Registration is never delayed or failed. {@link #getConnections()} reports the connections still open,
+ * so that a client leaking connections shows as steady growth. {@link #refuseConnections(boolean)} stops listening
+ * on the port until told otherwise, as a host whose Growl has stopped would.
+ *
+ * <p>It can also be run on its own, e.g. for a client on another machine:
+ * <tt>GntpStubServer [port] [latency_millis] [error_rate] [disconnect_rate]</tt>.
+ *
+ * @since   1.3
+ */
+public class GntpStubServer {
+
+	private final InetAddress address;
+	private final int port;
+	private volatile ServerSocket server;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong registrations = new AtomicLong();
+	private final AtomicLong callbacks = new AtomicLong();
+	private final AtomicLong resources = new AtomicLong();
+	private final AtomicLong resource_bytes = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong disconnects = new AtomicLong();
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong discarded_bytes = new AtomicLong();
+	private final AtomicInteger connections = new AtomicInteger();
+	private volatile boolean running = true;
+	private volatile String callback_result;
+	private volatile long callback_delay_millis;
+	private volatile long callback_jitter_millis;
+	private volatile long latency_nanos;
+	private volatile long jitter_nanos;
+	private volatile double error_rate;
+	private volatile double disconnect_rate;
+	private volatile boolean close_after_response;
+
+	/**
+	 * Starts a server on an ephemeral loopback port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public GntpStubServer() throws IOException {
+		this(0, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Starts a server on a given port
+	 * @param port the TCP port - 0 for an ephemeral port
+	 * @param address the local address to listen on - <tt>null</tt> for every address
+	 * @throws IOException if the port cannot be bound
+	 */
+	public GntpStubServer(int port, InetAddress address) throws IOException {
+		this.address = address;
+		this.port = listen(port);
+	}
+
+	/**
+	 * Get the port the server is listening on
+	 * @return the TCP port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Get the host the server is listening on
+	 * @return the loopback address
+	 */
+	public String getHost() {
+		return server.getInetAddress().getHostAddress();
+	}
+
+	/**
+	 * Get the number of requests answered
+	 * @return the request count
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Get the number of <tt>REGISTER</tt> requests answered
+	 * @return the registration count
+	 */
+	public long getRegistrations() {
+		return registrations.get();
+	}
+
+	/**
+	 * Get the number of socket callbacks sent
+	 * @return the callback count
+	 */
+	public long getCallbacks() {
+		return callbacks.get();
+	}
+
+	/**
+	 * Get the number of notifications received with a coalescing ID, i.e. updates of a displayed notification
+	 * @return the coalesced notification count
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Get the number of <tt>-ERROR</tt> responses injected
+	 * @return the injected error count
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Get the number of connections dropped instead of answering a request
+	 * @return the injected disconnect count
+	 */
+	public long getDisconnects() {
+		return disconnects.get();
+	}
+
+	/**
+	 * Get the number of connections accepted since the server started
+	 * @return the accepted connection count
+	 */
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * Get the number of bytes pipelined after a request and discarded when {@link #closeAfterResponse(boolean)}
+	 * closed the connection, i.e. requests the client will have to send again
+	 * @return the discarded byte count
+	 */
+	public long getDiscardedBytes() {
+		return discarded_bytes.get();
+	}
+
+	/**
+	 * Get the number of connections currently open
+	 * @return the open connection count
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Get the number of binary resources received
+	 * @return the resource count
+	 */
+	public long getResources() {
+		return resources.get();
+	}
+
+	/**
+	 * Get the number of binary resource bytes received
+	 * @return the total length of every resource
+	 */
+	public long getResourceBytes() {
+		return resource_bytes.get();
+	}
+
+	/**
+	 * Sends a socket callback for each subsequent notification that requests one
+	 * @param result the <tt>Notification-Callback-Result</tt>, e.g. <tt>CLICKED</tt> - <tt>null</tt> to stop sending callbacks
+	 * @param delay_millis the time between the <tt>-OK</tt> response and the callback
+	 */
+	public void emitCallbacks(String result, long delay_millis) {
+		emitCallbacks(result, delay_millis, 0);
+	}
+
+	/**
+	 * Sends a socket callback for each subsequent notification that requests one, after a random delay so that
+	 * callbacks arrive in a different order to their notifications
+	 * @param result the <tt>Notification-Callback-Result</tt>, e.g. <tt>CLICKED</tt> - <tt>null</tt> to stop sending callbacks
+	 * @param delay_millis the minimum time between the <tt>-OK</tt> response and the callback
+	 * @param jitter_millis the maximum random delay added to <tt>delay_millis</tt>
+	 */
+	public void emitCallbacks(String result, long delay_millis, long jitter_millis) {
+		this.callback_delay_millis = delay_millis;
+		this.callback_jitter_millis = jitter_millis;
+		this.callback_result = result;
+	}
+
+	/**
+	 * Delays each subsequent <tt>NOTIFY</tt> response, as a slow or distant Growl host would
+	 * @param latency the delay before each response
+	 * @param jitter the maximum random delay added to <tt>latency</tt>
+	 * @param unit the time unit of the <tt>latency</tt> and <tt>jitter</tt>
+	 */
+	public void injectLatency(long latency, long jitter, TimeUnit unit) {
+		this.latency_nanos = unit.toNanos(latency);
+		this.jitter_nanos = unit.toNanos(jitter);
+	}
+
+	/**
+	 * Fails a random proportion of subsequent <tt>NOTIFY</tt> requests
+	 * @param error_rate the proportion, from 0 to 1, answered with <tt>-ERROR</tt>
+	 * @param disconnect_rate the proportion, from 0 to 1, whose connection is closed without a response
+	 * @throws IllegalArgumentException if either rate is not between 0 and 1, or they add up to more than 1
+	 */
+	public void injectFailures(double error_rate, double disconnect_rate) {
+		if(error_rate < 0 || disconnect_rate < 0 || error_rate + disconnect_rate > 1)
+			throw new IllegalArgumentException("Failure rates must be between 0 and 1");
+		this.error_rate = error_rate;
+		this.disconnect_rate = disconnect_rate;
+	}
+
+	/**
+	 * Closes each subsequent connection once its first request has been answered, discarding any pipelined after it
+	 * @param close <tt>true</tt> to close connections after a response and <tt>false</tt> to keep them open
+	 */
+	public void closeAfterResponse(boolean close) {
+		this.close_after_response = close;
+	}
+
+	/**
+	 * Stops listening, so that new connections are refused, or listens on the same port again
+	 * <p>Connections already open are served either way.
+	 * @param refuse <tt>true</tt> to refuse connections and <tt>false</tt> to accept them again
+	 * @throws IOException if the port cannot be bound again
+	 */
+	public synchronized void refuseConnections(boolean refuse) throws IOException {
+		if(!running || refuse == server.isClosed())
+			return;
+		if(refuse)
+			server.close();
+		else
+			listen(port);
+	}
+
+	/**
+	 * Stops accepting connections
+	 */
+	public synchronized void close() {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	/*
+	 * Bind the port and accept connections on it until it is closed - the bound port is returned
+	 */
+	private int listen(int port) throws IOException {
+		final ServerSocket listening = new ServerSocket();
+		listening.setReuseAddress(true);
+		listening.bind(new InetSocketAddress(address, port), 50);
+		server = listening;
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept(listening);
+			}
+		}, "GntpStubServer-" + listening.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return listening.getLocalPort();
+	}
+
+	private void accept(ServerSocket server) {
+		while(running){
+			try {
+				final Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				accepted.incrementAndGet();
+				connections.incrementAndGet();
+				Thread connection = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}, "GntpStubServer-connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Answer requests until the client closes the connection
+	 */
+	private void serve(Socket socket) {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			Set<String> received = new HashSet<String>();
+			String line;
+			while((line = readLine(in)) != null){
+				if(line.isEmpty())
+					continue;
+				String[] information = line.split(" ");
+				String action = information.length > 1 ? information[1] : "";
+				int sections = 1;
+				Map<String, String> headers = new HashMap<String, String>();
+				while((line = readLine(in)) != null && !line.isEmpty()){
+					int separator = line.indexOf(':');
+					if(separator > 0)
+						headers.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+					if(line.startsWith("Notifications-Count:"))
+						sections += Integer.parseInt(line.substring(separator + 1).trim());
+				}
+				for (int i = 1; i < sections; i++) {
+					while((line = readLine(in)) != null && !line.isEmpty()){
+						// Skip notification type sections
+					}
+				}
+				String icon = headers.get("Notification-Icon");
+				if(icon != null && icon.startsWith(GntpNotify.RESOURCE_SCHEME) && received.add(icon.substring(GntpNotify.RESOURCE_SCHEME.length())))
+					readResource(in);
+				if(headers.containsKey("Notification-Coalescing-ID"))
+					coalesced.incrementAndGet();
+				requests.incrementAndGet();
+				if("REGISTER".equals(action))
+					registrations.incrementAndGet();
+				String data = data(headers);
+				if("NOTIFY".equals(action) && !answer(out, action, data))
+					return;
+				if(!"NOTIFY".equals(action))
+					respond(out, action, data);
+				String result = callback_result;
+				if(result != null && headers.containsKey("Notification-Callback-Context"))
+					callback(out, headers, result);
+				if(close_after_response){
+					discarded_bytes.addAndGet(in.available());
+					return;
+				}
+			}
+		} catch (SocketException e) {
+			// Client went away
+		} catch (IOException e) {
+			// Client went away
+		} finally {
+			connections.decrementAndGet();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+
+	/*
+	 * Answer a NOTIFY once any injected latency has passed, failing it should the dice say so
+	 * - false if the connection is to be dropped
+	 */
+	private boolean answer(OutputStream out, String action, String data) throws IOException {
+		long delay = latency_nanos;
+		if(jitter_nanos > 0)
+			delay += ThreadLocalRandom.current().nextLong(jitter_nanos + 1);
+		if(delay > 0){
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		double failure = error_rate + disconnect_rate;
+		double roll = failure > 0 ? ThreadLocalRandom.current().nextDouble() : 1;
+		if(roll < disconnect_rate){
+			disconnects.incrementAndGet();
+			return false;
+		}
+		if(roll < failure){
+			errors.incrementAndGet();
+			out.write(("GNTP/1.0 -ERROR NONE\r\nResponse-Action: " + action + "\r\nError-Code: 500\r\n"
+					+ "Error-Description: Injected failure\r\n" + data + "\r\n").getBytes("UTF-8"));
+			out.flush();
+			return true;
+		}
+		respond(out, action, data);
+		return true;
+	}
+
+	/*
+	 * Write an -OK response for the action, returning the request's Data- headers as GNTP requires
+	 */
+	protected void respond(OutputStream out, String action, String data) throws IOException {
+		out.write(("GNTP/1.0 -OK NONE\r\nResponse-Action: " + action + "\r\n" + data + "\r\n").getBytes("UTF-8"));
+		out.flush();
+	}
+
+	/*
+	 * The request's Data- headers, which clients such as jgntp use to match a response to its request
+	 */
+	private static String data(Map<String, String> headers) {
+		StringBuilder data = new StringBuilder();
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if(header.getKey().startsWith("Data-"))
+				data.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		return data.toString();
+	}
+
+	/*
+	 * Write a -CALLBACK for a notification once the callback delay has passed
+	 */
+	private void callback(OutputStream out, Map<String, String> headers, String result) throws IOException {
+		long delay = callback_delay_millis;
+		if(callback_jitter_millis > 0)
+			delay += ThreadLocalRandom.current().nextLong(callback_jitter_millis + 1);
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		StringBuilder callback = new StringBuilder("GNTP/1.0 -CALLBACK NONE\r\n")
+				.append("Application-Name: ").append(headers.get("Application-Name")).append("\r\n");
+		if(headers.containsKey("Notification-ID"))
+			callback.append("Notification-ID: ").append(headers.get("Notification-ID")).append("\r\n");
+		callback.append("Notification-Callback-Result: ").append(result).append("\r\n")
+				.append("Notification-Callback-Timestamp: ").append(System.currentTimeMillis()).append("\r\n")
+				.append("Notification-Callback-Context: ").append(headers.get("Notification-Callback-Context")).append("\r\n")
+				.append("Notification-Callback-Context-Type: ").append(headers.get("Notification-Callback-Context-Type")).append("\r\n\r\n");
+		out.write(callback.toString().getBytes("UTF-8"));
+		out.flush();
+		callbacks.incrementAndGet();
+	}
+
+	/*
+	 * Read a binary resource section - its headers, data and closing blank lines
+	 */
+	private void readResource(InputStream in) throws IOException {
+		long length = 0;
+		String line;
+		while((line = readLine(in)) != null && !line.isEmpty()){
+			if(line.startsWith("Length:"))
+				length = Long.parseLong(line.substring("Length:".length()).trim());
+		}
+		for (long skipped = 0; skipped < length; skipped++) {
+			if(in.read() == -1)
+				throw new IOException("Resource ended early");
+		}
+		readLine(in);
+		readLine(in);
+		resources.incrementAndGet();
+		resource_bytes.addAndGet(length);
+	}
+
+	/*
+	 * Read a CRLF terminated line, or null at the end of the stream
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+		int previous = -1;
+		int current;
+		while((current = in.read()) != -1){
+			if(previous == '\r' && current == '\n'){
+				byte[] bytes = line.toByteArray();
+				return new String(bytes, 0, bytes.length - 1, "UTF-8");
+			}
+			line.write(current);
+			previous = current;
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a server until the process is stopped
+	 * @param args the port, default 23053, then optionally the latency in milliseconds, the error rate and the disconnect rate
+	 * @throws Exception if the server cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 23053;
+		GntpStubServer server = new GntpStubServer(port, null);
+		server.injectLatency(args.length > 1 ? Long.parseLong(args[1]) : 0, 0, TimeUnit.MILLISECONDS);
+		server.injectFailures(args.length > 2 ? Double.parseDouble(args[2]) : 0, args.length > 3 ? Double.parseDouble(args[3]) : 0);
+		System.out.println("GNTP stub server listening on port " + server.getPort());
+		while(true){
+			Thread.sleep(10000);
+			System.out.println(server.getRequests() + " requests, " + server.getErrors() + " errors, " + server.getDisconnects()
+					+ " disconnects, " + server.getConnections() + " connections open of " + server.getAccepted() + " accepted");
+		}
+	}
+
+}
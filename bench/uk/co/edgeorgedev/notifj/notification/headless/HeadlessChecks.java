@@ -0,0 +1,190 @@
+/**
+ * HeadlessChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.headless;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification.Entry;
+
+/**
+ * Checks the headless notifications. {@link MemoryNotification} must overwrite its oldest entries once its ring
+ * is full and count them, return only the entries since a sequence number, forget its entries on <tt>clear()</tt>,
+ * and wake a thread in <tt>await()</tt> when <tt>showAsync</tt> records a notification. {@link JsonLinesNotification}
+ * must rotate its file before it grows past the maximum size, keeping only the newest files, and escape quotes,
+ * backslashes and control characters while writing other characters as UTF-8.
+ *
+ * <p>Usage: <tt>HeadlessChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class HeadlessChecks {
+
+	private static final String APPLICATION = "NotifJ Headless Checks";
+	private static final int CAPACITY = 4;
+	private static final int RECORDED = 10;
+	private static final long MAX_FILE_SIZE = 400;
+	private static final int MAX_FILES = 2;
+	private static final int LINES = 20;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("HeadlessChecks");
+
+		File directory = Files.createTempDirectory("notifj-headless").toFile();
+		try {
+			checks.section("Ring overwrite");
+			MemoryNotification memory = new MemoryNotification(APPLICATION, CAPACITY - 1);
+			memory.open();
+			checks.check(memory.getCapacity() == CAPACITY, "the capacity was rounded up to a power of two: " + memory.getCapacity());
+			for (int i = 0; i < RECORDED; i++) {
+				memory.show("Entry " + i, "Recorded");
+			}
+			List<Entry> entries = memory.getEntries();
+			checks.check(titles(entries).equals(titles("Entry ", RECORDED - CAPACITY, RECORDED)), "only the newest " + CAPACITY
+					+ " entries are held, oldest first: " + titles(entries));
+			checks.check(entries.get(0).getSequence() == RECORDED - CAPACITY && memory.getLast().getSequence() == RECORDED - 1,
+					"they kept their sequence numbers: " + entries.get(0).getSequence() + " to " + memory.getLast().getSequence());
+			checks.check(memory.getOverwritten() == RECORDED - CAPACITY, memory.getOverwritten() + " entries were counted as overwritten");
+			checks.check(memory.getCount() == RECORDED, memory.getCount() + " notifications were counted as recorded");
+
+			checks.section("getEntriesSince");
+			long seen = memory.getLast().getSequence();
+			memory.show("Entry " + RECORDED, "After the last seen");
+			memory.show("Entry " + (RECORDED + 1), "After the last seen");
+			checks.check(titles(memory.getEntriesSince(seen + 1)).equals(titles("Entry ", RECORDED, RECORDED + 2)),
+					"only the entries recorded since the last seen are returned: " + titles(memory.getEntriesSince(seen + 1)));
+			checks.check(titles(memory.getEntriesSince(0)).equals(titles("Entry ", RECORDED + 2 - CAPACITY, RECORDED + 2)),
+					"entries that were overwritten are not returned: " + titles(memory.getEntriesSince(0)));
+			checks.check(memory.getEntriesSince(RECORDED + 2).isEmpty(), "none are returned past the last");
+
+			checks.section("clear()");
+			memory.clear();
+			checks.check(memory.getEntries().isEmpty() && memory.getLast() == null, "no entries are held once cleared");
+			checks.check(memory.getCount() == RECORDED + 2, "the count of notifications recorded was kept: " + memory.getCount());
+			checks.check(memory.getOverwritten() == 0, "nothing is counted as overwritten since: " + memory.getOverwritten());
+			memory.show("After clear", "Recorded");
+			checks.check(titles(memory.getEntries()).equals(list("After clear")), "a notification recorded afterwards is held: "
+					+ titles(memory.getEntries()));
+
+			checks.section("await() wakes on showAsync");
+			final MemoryNotification waited_on = memory;
+			final long expected = memory.getCount() + 1;
+			final AtomicBoolean arrived = new AtomicBoolean();
+			final AtomicLong woken_at = new AtomicLong();
+			Thread waiter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						arrived.set(waited_on.await(expected, TIMEOUT_SECONDS, TimeUnit.SECONDS));
+						woken_at.set(System.nanoTime());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "HeadlessChecks-waiter");
+			waiter.start();
+			Thread.sleep(100);
+			checks.check(waiter.isAlive(), "the waiter waits while nothing is recorded");
+			long shown_at = System.nanoTime();
+			memory.showAsync("Queued", "Recorded by the dispatcher");
+			waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+			long woken = TimeUnit.NANOSECONDS.toMillis(woken_at.get() - shown_at);
+			checks.check(arrived.get(), "await() returned once the queued notification was recorded");
+			checks.check(woken < TimeUnit.SECONDS.toMillis(1), "it woke " + woken + "ms after showAsync rather than at its timeout");
+			checks.check(!memory.await(expected + 1, 50, TimeUnit.MILLISECONDS), "await() times out when nothing more is recorded");
+			memory.close();
+
+			checks.section("JSON lines rotation");
+			File file = new File(directory, "alerts.jsonl");
+			JsonLinesNotification json = new JsonLinesNotification(APPLICATION, file, MAX_FILE_SIZE, MAX_FILES);
+			json.open();
+			for (int i = 0; i < LINES; i++) {
+				json.show("Line " + i, "Rotated at " + MAX_FILE_SIZE + " bytes");
+			}
+			json.close();
+			checks.check(json.getRotations() > MAX_FILES, "the file was rotated " + json.getRotations() + " times");
+			List<String> kept = new ArrayList<String>();
+			boolean within = true;
+			for (int index = MAX_FILES; index >= 0; index--) {
+				File rotated = index == 0 ? file : new File(file.getPath() + "." + index);
+				within &= rotated.length() <= MAX_FILE_SIZE;
+				for (String line : Files.readAllLines(rotated.toPath(), StandardCharsets.UTF_8)) {
+					kept.add(line.replaceAll(".*\"title\":\"([^\"]*)\".*", "$1"));
+				}
+			}
+			checks.check(within, "no file grew past " + MAX_FILE_SIZE + " bytes");
+			checks.check(!new File(file.getPath() + "." + (MAX_FILES + 1)).exists(), "only " + MAX_FILES + " rotated files were kept");
+			checks.check(!kept.isEmpty() && kept.equals(titles("Line ", LINES - kept.size(), LINES)), "the files hold the newest lines in "
+					+ "order: " + kept);
+
+			checks.section("JSON escaping");
+			File escaped = new File(directory, "escaped.jsonl");
+			json = new JsonLinesNotification(APPLICATION, escaped);
+			json.open();
+			json.show("Say \"hi\"", "line one\nline two\ttabbed \\ \r\u0001 \u2028");
+			json.show("Caf\u00e9 \u2615", "\u65e5\u672c \uD83D\uDE00");
+			json.close();
+			List<String> lines = Files.readAllLines(escaped.toPath(), StandardCharsets.UTF_8);
+			checks.check(lines.size() == 2, "each notification is one line: " + lines.size() + " lines");
+			String first = lines.isEmpty() ? "" : lines.get(0);
+			checks.check(first.contains("\"title\":\"Say \\\"hi\\\"\""), "quotes are escaped: " + first);
+			checks.check(first.contains("\"message\":\"line one\\nline two\\ttabbed \\\\ \\r\\u0001 \\u2028\""),
+					"newlines, tabs, backslashes, control characters and line separators are escaped: " + first);
+			String second = lines.size() < 2 ? "" : lines.get(1);
+			checks.check(second.contains("\"title\":\"Caf\u00e9 \u2615\"") && second.contains("\"message\":\"\u65e5\u672c \uD83D\uDE00\""),
+					"other characters are written as UTF-8: " + second);
+			byte[] bytes = Files.readAllBytes(escaped.toPath());
+			checks.check(Arrays.equals(new String(bytes, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8), bytes),
+					"the file is well-formed UTF-8, surrogate pairs included");
+		} catch (Exception e) {
+			checks.fail("Headless", e);
+		} finally {
+			File[] files = directory.listFiles();
+			for (File file : files == null ? new File[0] : files) {
+				file.delete();
+			}
+			directory.delete();
+		}
+		checks.exit();
+	}
+
+	private static List<String> list(String... titles) {
+		List<String> list = new ArrayList<String>(titles.length);
+		for (String title : titles) {
+			list.add(title);
+		}
+		return list;
+	}
+
+	private static List<String> titles(List<Entry> entries) {
+		List<String> titles = new ArrayList<String>(entries.size());
+		for (Entry entry : entries) {
+			titles.add(entry.getMessage().getTitle());
+		}
+		return titles;
+	}
+
+	/*
+	 * The titles numbered from start, up to but not including end
+	 */
+	private static List<String> titles(String prefix, int start, int end) {
+		List<String> titles = new ArrayList<String>(end - start);
+		for (int i = start; i < end; i++) {
+			titles.add(prefix + i);
+		}
+		return titles;
+	}
+
+}
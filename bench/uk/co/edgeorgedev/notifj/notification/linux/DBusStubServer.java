@@ -0,0 +1,349 @@
+/**
+ * DBusStubServer.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A D-Bus server on a loopback TCP port that stands in for both the bus and the freedesktop.org notification
+ * server, so that {@link LinuxNotification} can be checked without a desktop session.
+ *
+ * <p>Clients are authenticated whatever mechanism they offer. <tt>Hello</tt> is answered with a unique name,
+ * <tt>Notify</tt> with an incrementing id - or the <tt>replaces_id</tt> when one is given - and
+ * <tt>GetCapabilities</tt> with the capabilities set by {@link #capabilities(String...)}. Any other method call
+ * is answered with an empty reply. Every method call is recorded, with its arguments, for the caller to inspect.
+ *
+ * <p>{@link #dropConnections()} closes every open connection, as a restarted bus would. Each connection is
+ * served by its own daemon thread.
+ *
+ * @since   1.3
+ */
+public class DBusStubServer {
+
+	private static final String GUID = "0123456789abcdef0123456789abcdef";
+
+	private final ServerSocket server;
+	private final List<Call> calls = new CopyOnWriteArrayList<Call>();
+	private final Set<Socket> open = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong ids = new AtomicLong();
+	private final AtomicInteger connections = new AtomicInteger();
+	private volatile boolean running = true;
+	private volatile List<String> capabilities = Arrays.asList("body", "persistence");
+
+	/**
+	 * A method call received by the server
+	 */
+	public static class Call {
+
+		private final String member;
+		private final List<Object> arguments;
+		private final List<Object> reply;
+
+		Call(String member, List<Object> arguments, List<Object> reply) {
+			this.member = member;
+			this.arguments = arguments;
+			this.reply = reply;
+		}
+
+		/**
+		 * Get the name of the method called
+		 * @return the member, e.g. <tt>Notify</tt>
+		 */
+		public String getMember() {
+			return member;
+		}
+
+		/**
+		 * Get the arguments of the call, as read by {@link DBusReader}
+		 * @return the arguments in signature order
+		 */
+		public List<Object> getArguments() {
+			return arguments;
+		}
+
+		/**
+		 * Get the values the server replied with
+		 * @return the reply body
+		 */
+		public List<Object> getReply() {
+			return reply;
+		}
+
+		@Override
+		public String toString() {
+			return member + arguments + " -> " + reply;
+		}
+	}
+
+	/**
+	 * Starts a server on an ephemeral loopback port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public DBusStubServer() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "DBusStubServer-" + server.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Get the D-Bus address of the server
+	 * @return a <tt>tcp:</tt> address
+	 */
+	public String getAddress() {
+		return "tcp:host=" + server.getInetAddress().getHostAddress() + ",port=" + server.getLocalPort();
+	}
+
+	/**
+	 * Get the method calls received with a given name, in the order they were received
+	 * @param member the method name, e.g. <tt>Notify</tt>
+	 * @return the calls
+	 */
+	public List<Call> getCalls(String member) {
+		List<Call> matching = new ArrayList<Call>();
+		for (Call call : calls) {
+			if(call.getMember().equals(member))
+				matching.add(call);
+		}
+		return matching;
+	}
+
+	/**
+	 * Get the number of connections accepted since the server started
+	 * @return the accepted connection count
+	 */
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * Get the number of connections currently open
+	 * @return the open connection count
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Set the capabilities returned by <tt>GetCapabilities</tt>
+	 * <p>The default is <tt>body</tt> and <tt>persistence</tt>.
+	 * @param capabilities the capability names
+	 */
+	public void capabilities(String... capabilities) {
+		this.capabilities = Arrays.asList(capabilities);
+	}
+
+	/**
+	 * Closes every open connection without a reply, as a bus that has restarted would
+	 */
+	public void dropConnections() {
+		for (Socket socket : open) {
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes those open
+	 */
+	public void close() {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+		dropConnections();
+	}
+
+	private void accept() {
+		while(running){
+			try {
+				final Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				accepted.incrementAndGet();
+				connections.incrementAndGet();
+				open.add(socket);
+				Thread connection = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}, "DBusStubServer-connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Authenticate the client, then answer its method calls until it closes the connection
+	 */
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			OutputStream out = socket.getOutputStream();
+			if(in.read() != 0)
+				return;
+			String line;
+			while((line = readLine(in)) != null && !line.equals("BEGIN")){
+				if(line.startsWith("AUTH"))
+					out.write(("OK " + GUID + "\r\n").getBytes(DBusWriter.UTF_8));
+				else
+					out.write("ERROR\r\n".getBytes(DBusWriter.UTF_8));
+				out.flush();
+			}
+			if(line == null)
+				return;
+
+			byte[] header = new byte[DBusMessage.FIXED_HEADER_LENGTH];
+			DBusWriter reply = new DBusWriter(256);
+			DBusWriter body = new DBusWriter(256);
+			while(true){
+				try {
+					in.readFully(header);
+				} catch (IOException e) {
+					return;
+				}
+				int length = DBusMessage.length(ByteBuffer.wrap(header));
+				byte[] message = Arrays.copyOf(header, length);
+				in.readFully(message, header.length, length - header.length);
+				answer(ByteBuffer.wrap(message), reply, body, out);
+			}
+		} catch (IOException e) {
+			// Client went away
+		} catch (NotificationException e) {
+			// Malformed message - drop the client
+		} finally {
+			open.remove(socket);
+			closeQuietly(socket);
+			connections.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Record a method call and write its reply
+	 */
+	@SuppressWarnings("unchecked")
+	private void answer(ByteBuffer message, DBusWriter reply, DBusWriter body, OutputStream out) throws IOException {
+		message.order(message.get(0) == 'B' ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		if(message.get(1) != DBusMessage.METHOD_CALL)
+			return;
+		long serial = message.getInt(8) & 0xffffffffL;
+		DBusReader reader = new DBusReader(message);
+		reader.position(12);
+		Map<Object, Object> fields = (Map<Object, Object>) reader.read("a{yv}").get(0);
+		reader.position((message.position() + 7) & ~7);
+		String signature = (String) fields.get((byte) DBusMessage.FIELD_SIGNATURE);
+		List<Object> arguments = signature == null ? Collections.emptyList() : reader.read(signature);
+		String member = (String) fields.get((byte) DBusMessage.FIELD_MEMBER);
+
+		String reply_signature;
+		List<Object> values;
+		if("Hello".equals(member)){
+			reply_signature = "s";
+			values = Collections.<Object>singletonList(":1." + accepted.get());
+		}else if("Notify".equals(member)){
+			long replaces_id = (Long) arguments.get(1);
+			reply_signature = "u";
+			values = Collections.<Object>singletonList(replaces_id != 0 ? replaces_id : ids.incrementAndGet());
+		}else if("GetCapabilities".equals(member)){
+			reply_signature = "as";
+			values = Collections.<Object>singletonList(capabilities);
+		}else{
+			reply_signature = "";
+			values = Collections.emptyList();
+		}
+		calls.add(new Call(member, arguments, values));
+
+		body.clear();
+		if(!values.isEmpty())
+			body.write(reply_signature, values.toArray());
+		reply.clear();
+		reply.writeByte('l');
+		reply.writeByte(DBusMessage.METHOD_RETURN);
+		reply.writeByte(0);
+		reply.writeByte(1);
+		reply.writeUInt32(body.position());
+		reply.writeUInt32(serial);
+		reply.writeUInt32(0);
+		int length_at = reply.position() - 4;
+		reply.align(8);
+		int start = reply.position();
+		writeField(reply, DBusMessage.FIELD_REPLY_SERIAL, "u", serial);
+		if(!reply_signature.isEmpty())
+			writeField(reply, DBusMessage.FIELD_SIGNATURE, "g", reply_signature);
+		reply.putUInt32(length_at, reply.position() - start);
+		reply.align(8);
+		reply.writeBytes(body.flip());
+		ByteBuffer encoded = reply.flip();
+		out.write(encoded.array(), 0, encoded.remaining());
+		out.flush();
+	}
+
+	private static void writeField(DBusWriter writer, int code, String signature, Object value) {
+		writer.align(8);
+		writer.writeByte(code);
+		writer.writeSignature(signature);
+		writer.write(signature, value);
+	}
+
+	/*
+	 * Read a CRLF terminated line of the authentication protocol, or null at the end of the stream
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int previous = -1;
+		int current;
+		while((current = in.read()) != -1){
+			if(previous == '\r' && current == '\n'){
+				byte[] bytes = line.toByteArray();
+				return new String(bytes, 0, bytes.length - 1, DBusWriter.UTF_8);
+			}
+			line.write(current);
+			previous = current;
+		}
+		return null;
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+}
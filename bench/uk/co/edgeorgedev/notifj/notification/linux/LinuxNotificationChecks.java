@@ -0,0 +1,151 @@
+/**
+ * LinuxNotificationChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.linux.DBusStubServer.Call;
+
+/**
+ * Checks what {@link LinuxNotification} puts on the wire, against a loopback {@link DBusStubServer}: the ids
+ * returned by <tt>Notify</tt>, the <tt>replaces_id</tt> sent when updating in place, the urgency and resident
+ * hints, <tt>expire_timeout</tt> for sticky notifications, <tt>CloseNotification</tt> when a handle is dismissed,
+ * <tt>GetCapabilities</tt>, and that a call after the bus drops the connection is made over a new one.
+ *
+ * <p>Usage: <tt>LinuxNotificationChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class LinuxNotificationChecks {
+
+	private static final String APPLICATION = "NotifJ Linux Checks";
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Checks checks = new Checks("LinuxNotificationChecks");
+
+		DBusStubServer server = new DBusStubServer();
+		LinuxNotification notification = new LinuxNotification(APPLICATION);
+		notification.setBusAddress(server.getAddress());
+		try {
+			notification.open();
+			checks.check(server.getConnections() == 1, "open() made one connection to the bus: " + server.getConnections());
+			checks.check(server.getCalls("Hello").size() == 1, "the connection registered with Hello");
+
+			checks.section("Notify");
+			long first = notification.show("Build finished", "All 214 tests passed", 0);
+			long second = notification.show("Deploy finished", "3 hosts updated", 0);
+			List<Call> notified = server.getCalls("Notify");
+			checks.check(notified.size() == 2, "each show sent one Notify: " + notified.size());
+			checks.check(first == (Long) notified.get(0).getReply().get(0) && second == (Long) notified.get(1).getReply().get(0),
+					"show returned the ids the server replied with: " + first + ", " + second);
+			checks.check(first != second, "each notification was given its own id");
+			List<Object> arguments = notified.get(0).getArguments();
+			checks.check(APPLICATION.equals(arguments.get(0)), "app_name is the application name: " + arguments.get(0));
+			checks.check(Long.valueOf(0).equals(arguments.get(1)), "replaces_id is 0 for a new notification: " + arguments.get(1));
+			checks.check("Build finished".equals(arguments.get(3)) && "All 214 tests passed".equals(arguments.get(4)),
+					"the summary and body are the title and message: " + arguments.get(3) + ", " + arguments.get(4));
+			checks.check(Integer.valueOf(-1).equals(arguments.get(7)), "expire_timeout is the server default for a non-sticky "
+					+ "notification: " + arguments.get(7));
+			checks.check(hints(notified.get(0)).isEmpty(), "a normal priority notification carries no hints: " + hints(notified.get(0)));
+
+			checks.section("replaces_id");
+			long replaced = notification.show("Build finished", "Now with coverage", first);
+			checks.check(replaced == first && Long.valueOf(first).equals(last(server, "Notify").getArguments().get(1)),
+					"an explicit replaces_id is sent and its id returned: " + replaced);
+			notification.updateInPlace(true);
+			notification.show("Progress", "10%");
+			long progress = (Long) last(server, "Notify").getReply().get(0);
+			notification.show("Progress", "50%");
+			checks.check(Long.valueOf(progress).equals(last(server, "Notify").getArguments().get(1)),
+					"updating in place replaces the last notification with the same title: replaces_id "
+					+ last(server, "Notify").getArguments().get(1) + " of " + progress);
+			notification.show("Another title", "Not replaced");
+			checks.check(Long.valueOf(0).equals(last(server, "Notify").getArguments().get(1)),
+					"a notification with a new title is not a replacement");
+			notification.updateInPlace(false);
+
+			checks.section("Urgency and resident hints");
+			notification.show("Disk full", "/var is at 98%", NotificationPriority.EMERGENCY);
+			checks.check(Byte.valueOf((byte) 2).equals(hints(last(server, "Notify")).get("urgency")),
+					"EMERGENCY is sent with critical urgency: " + hints(last(server, "Notify")));
+			notification.show("Backup", "Nightly backup ran", NotificationPriority.VERY_LOW);
+			checks.check(Byte.valueOf((byte) 0).equals(hints(last(server, "Notify")).get("urgency")),
+					"VERY_LOW is sent with low urgency: " + hints(last(server, "Notify")));
+			notification.sticky().show("Review requested", "PR #42 is waiting");
+			Call sticky = last(server, "Notify");
+			checks.check(Boolean.TRUE.equals(hints(sticky).get("resident")), "a sticky notification is resident: " + hints(sticky));
+			checks.check(Integer.valueOf(0).equals(sticky.getArguments().get(7)), "a sticky notification never expires: "
+					+ "expire_timeout " + sticky.getArguments().get(7));
+			notification.sticky(false);
+
+			checks.section("CloseNotification");
+			NotificationHandle handle = notification.showUpdatable(new NotificationMessage("Upload", "0%"));
+			long handle_id = (Long) last(server, "Notify").getReply().get(0);
+			handle.dismiss();
+			List<Call> closed = server.getCalls("CloseNotification");
+			checks.check(closed.size() == 1, "dismissing a handle sent one CloseNotification: " + closed.size());
+			checks.check(closed.size() == 1 && Long.valueOf(handle_id).equals(closed.get(0).getArguments().get(0)),
+					"CloseNotification names the handle's notification: " + closed + " for id " + handle_id);
+
+			checks.section("GetCapabilities");
+			server.capabilities("body", "body-markup", "actions");
+			String[] capabilities = notification.getCapabilities();
+			checks.check(Arrays.asList(capabilities).equals(Arrays.asList("body", "body-markup", "actions")),
+					"the server's capabilities are returned: " + Arrays.toString(capabilities));
+			checks.check(server.getCalls("GetCapabilities").size() == 1, "one GetCapabilities call was made");
+
+			checks.section("Reconnect after the bus drops the connection");
+			long accepted = server.getAccepted();
+			server.dropConnections();
+			long reconnected = notification.show("After restart", "Still delivered", 0);
+			checks.check(reconnected == (Long) last(server, "Notify").getReply().get(0), "a notification sent after the connection "
+					+ "dropped was delivered: id " + reconnected);
+			checks.check(server.getAccepted() == accepted + 1, "it was sent over one new connection - "
+					+ (server.getAccepted() - accepted) + " accepted");
+			checks.check(server.getCalls("Hello").size() == 2, "the new connection registered with Hello");
+
+			checks.section("close()");
+			notification.close();
+			checks.check(awaitClosed(server), "close() closed the connection - " + server.getConnections() + " open");
+		} catch (Exception e) {
+			checks.fail("LinuxNotification", e);
+		} finally {
+			notification.close();
+			server.close();
+		}
+		checks.exit();
+	}
+
+	private static Call last(DBusStubServer server, String member) {
+		List<Call> calls = server.getCalls(member);
+		return calls.get(calls.size() - 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<Object, Object> hints(Call call) {
+		return (Map<Object, Object>) call.getArguments().get(6);
+	}
+
+	/*
+	 * The server notices a closed connection on its own thread
+	 */
+	private static boolean awaitClosed(DBusStubServer server) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while(server.getConnections() > 0 && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		return server.getConnections() == 0;
+	}
+
+}
@@ -0,0 +1,406 @@
+/**
+ * OutboxChecks.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.outbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.bench.Checks;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.headless.MemoryNotification;
+
+/**
+ * Checks that {@link OutboxNotification} and its {@link NotificationJournal} keep every notification that was not
+ * displayed: those queued by <tt>showAsync</tt> are recorded before they are queued and displayed once, those the
+ * queue drops are redelivered, entries left unacknowledged by an unclean stop are replayed in order, a torn record
+ * ends its segment without losing the records before it, concurrent appends with {@link NotificationJournal.SyncPolicy#GROUP}
+ * are all replayed, and segments are deleted once every entry in them has been acknowledged.
+ *
+ * <p>Usage: <tt>OutboxChecks</tt>. Exits with status 1 if any check fails.
+ *
+ * @since   1.3
+ */
+public class OutboxChecks {
+
+	private static final String APPLICATION = "NotifJ Outbox Checks";
+	private static final int THREADS = 16;
+	private static final int APPENDS_PER_THREAD = 50;
+	private static final int SMALL_SEGMENT_SIZE = 4096;
+	private static final int COMPACTED_ENTRIES = 300;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private final Checks checks = new Checks("OutboxChecks");
+	private final List<File> directories = new ArrayList<File>();
+
+	public static void main(String[] args) throws Exception {
+		OutboxChecks outbox = new OutboxChecks();
+		try {
+			outbox.showAsync();
+			outbox.dropped();
+			outbox.replay();
+			outbox.tornRecords();
+			outbox.groupCommit();
+			outbox.compaction();
+		} catch (Exception e) {
+			outbox.checks.fail("Outbox", e);
+		} finally {
+			outbox.deleteDirectories();
+		}
+		outbox.checks.exit();
+	}
+
+	/*
+	 * Each showAsync variant records its notification before queueing it, and the queue acknowledges it
+	 */
+	private void showAsync() throws Exception {
+		checks.section("showAsync records before queueing");
+		GatedNotification backend = new GatedNotification();
+		backend.gate = new CountDownLatch(1);
+		OutboxNotification outbox = new OutboxNotification(backend, directory());
+		outbox.open();
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			futures.add(outbox.showAsync("Build finished", "All 214 tests passed"));
+			futures.add(outbox.showAsync("Disk full", "/var is at 98%", NotificationPriority.HIGH));
+			futures.add(outbox.showAsync(NotificationMessage.builder().title("Review requested").message("PR #42").sticky(true).build()));
+			checks.check(outbox.getPending().size() == 3, "every queued notification is in the journal while the backend is "
+					+ "blocked: " + outbox.getPending().size() + " pending");
+			checks.check(outbox.redeliver() == 0, "redeliver() leaves queued notifications to the queue");
+
+			backend.gate.countDown();
+			for (Future<Void> future : futures) {
+				future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+			checks.check(backend.getCount() == 3, "each queued notification was displayed once: " + backend.getCount());
+			checks.check(outbox.getPending().isEmpty(), "each was acknowledged once displayed: " + outbox.getPending().size() + " pending");
+			long next = outbox.getJournal().append(new NotificationMessage("Sentinel", "Not displayed"));
+			checks.check(next == 4, "the queued show appended no entry of its own - the next id is " + next);
+			outbox.getJournal().ack(next);
+		} finally {
+			backend.gate.countDown();
+			outbox.close();
+		}
+	}
+
+	/*
+	 * Notifications dropped by a full queue stay in the journal for redeliver()
+	 */
+	private void dropped() throws Exception {
+		checks.section("showAsync dropped by a full queue");
+		GatedNotification backend = new GatedNotification();
+		backend.gate = new CountDownLatch(1);
+		OutboxNotification outbox = new OutboxNotification(backend, directory()).dispatch(1, OverflowPolicy.DROP_NEWEST);
+		outbox.open();
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 5; i++) {
+				futures.add(outbox.showAsync("Dropped " + i, "Queue of one"));
+			}
+			backend.gate.countDown();
+			int failed = 0;
+			for (Future<Void> future : futures) {
+				try {
+					future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				} catch (ExecutionException e) {
+					failed++;
+				}
+			}
+			checks.check(failed > 0, failed + " of 5 notifications were dropped by a queue of one");
+			checks.check(outbox.getPending().size() == failed, "the dropped notifications stayed in the journal: "
+					+ outbox.getPending().size() + " pending");
+			int redelivered = outbox.redeliver();
+			checks.check(redelivered == failed, "redeliver() displayed the " + redelivered + " dropped notification(s)");
+			checks.check(outbox.getPending().isEmpty() && backend.getCount() == 5, "every notification was displayed once: "
+					+ backend.getCount() + " displayed, " + outbox.getPending().size() + " pending");
+		} finally {
+			backend.gate.countDown();
+			outbox.close();
+		}
+	}
+
+	/*
+	 * Entries appended but never acknowledged are replayed by the next open(), in order
+	 */
+	private void replay() throws Exception {
+		checks.section("Replay after an unclean stop");
+		File directory = directory();
+		NotificationJournal stopped = new NotificationJournal(directory);
+		stopped.open();
+		stopped.append(new NotificationMessage("First", "Never acknowledged", NotificationPriority.HIGH));
+		stopped.ack(stopped.append(new NotificationMessage("Second", "Acknowledged")));
+		stopped.append(NotificationMessage.builder().title("Third").message("Never acknowledged").sticky(true).type("Deploy").build());
+		/* Abandoned without close(), as by a crash */
+
+		GatedNotification backend = new GatedNotification();
+		backend.failing = true;
+		OutboxNotification outbox = new OutboxNotification(backend, directory);
+		outbox.open();
+		try {
+			List<NotificationMessage> pending = outbox.getPending();
+			checks.check(titles(pending).equals(Arrays.asList("First", "Third")), "the unacknowledged entries are pending in order, "
+					+ "kept as the backend is failing: " + titles(pending));
+			checks.check(pending.size() == 2 && pending.get(0).getPriority() == NotificationPriority.HIGH
+					&& Boolean.TRUE.equals(pending.get(1).getSticky()) && "Deploy".equals(pending.get(1).getType()),
+					"the replayed entries keep their priority, sticky setting and type");
+			backend.failing = false;
+			int redelivered = outbox.redeliver();
+			checks.check(redelivered == 2, "redeliver() displayed " + redelivered + " entries once the backend recovered");
+			checks.check(titles(backend.getMessages()).equals(Arrays.asList("First", "Third")), "they were displayed in the order "
+					+ "they were recorded: " + titles(backend.getMessages()));
+			checks.check(outbox.getPending().isEmpty(), "nothing is pending after redelivery");
+		} finally {
+			outbox.close();
+		}
+
+		GatedNotification reopened = new GatedNotification();
+		outbox = new OutboxNotification(reopened, directory);
+		outbox.open();
+		try {
+			checks.check(outbox.getPending().isEmpty() && reopened.getCount() == 0, "redelivered entries are not replayed again: "
+					+ reopened.getCount() + " displayed");
+		} finally {
+			outbox.close();
+		}
+	}
+
+	/*
+	 * A record torn by a crash, before its length was written or part way through its body, ends its segment
+	 */
+	private void tornRecords() throws Exception {
+		checks.section("Torn records");
+		for (boolean torn_body : new boolean[] { false, true }) {
+			String tear = torn_body ? "a torn body" : "no length";
+			File directory = directory();
+			NotificationJournal journal = new NotificationJournal(directory);
+			journal.open();
+			for (String title : new String[] { "First", "Second", "Third" }) {
+				journal.append(new NotificationMessage(title, "Written before the crash"));
+			}
+			journal.close();
+			tear(directory, 2, torn_body);
+
+			journal = new NotificationJournal(directory);
+			List<String> replayed = new ArrayList<String>();
+			for (NotificationJournal.Entry entry : journal.open()) {
+				replayed.add(entry.getMessage().getTitle());
+			}
+			checks.check(replayed.equals(Arrays.asList("First", "Second")), "a last record with " + tear + " is dropped and the "
+					+ "records before it kept: " + replayed);
+			journal.append(new NotificationMessage("After", "Written after recovery"));
+			journal.close();
+
+			journal = new NotificationJournal(directory);
+			replayed.clear();
+			for (NotificationJournal.Entry entry : journal.open()) {
+				replayed.add(entry.getMessage().getTitle());
+			}
+			journal.close();
+			checks.check(replayed.equals(Arrays.asList("First", "Second", "After")), "entries appended after recovering from "
+					+ tear + " are replayed: " + replayed);
+		}
+	}
+
+	/*
+	 * Threads appending at once share flushes, and every entry is replayed after an unclean stop
+	 */
+	private void groupCommit() throws Exception {
+		checks.section(THREADS + " threads appending with GROUP commit");
+		File directory = directory();
+		final NotificationJournal journal = new NotificationJournal(directory, NotificationJournal.DEFAULT_SEGMENT_SIZE,
+				NotificationJournal.SyncPolicy.GROUP, NotificationJournal.DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		journal.open();
+		final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+						ids.add(journal.append(new NotificationMessage("Thread " + thread, "Append " + i)));
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		try {
+			for (Future<Void> future : futures) {
+				future.get(TIMEOUT_SECONDS * 4, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		int appended = THREADS * APPENDS_PER_THREAD;
+		checks.check(ids.size() == appended, "every append returned its own id: " + ids.size() + " of " + appended);
+		checks.check(journal.getPending().size() == appended, journal.getPending().size() + " entries of " + appended + " are pending");
+		/* Abandoned without close(), as by a crash */
+
+		NotificationJournal reopened = new NotificationJournal(directory);
+		List<NotificationJournal.Entry> replayed = reopened.open();
+		reopened.close();
+		checks.check(replayed.size() == appended, "every flushed entry was replayed: " + replayed.size() + " of " + appended);
+		checks.check(inOrderPerThread(replayed), "each thread's entries were replayed in the order it appended them");
+	}
+
+	/*
+	 * Segments are deleted oldest first, once every entry in them has been acknowledged
+	 */
+	private void compaction() throws Exception {
+		checks.section("Compaction");
+		File directory = directory();
+		NotificationJournal journal = new NotificationJournal(directory, SMALL_SEGMENT_SIZE, NotificationJournal.SyncPolicy.NEVER,
+				NotificationJournal.DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		journal.open();
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = 0; i < COMPACTED_ENTRIES; i++) {
+			ids.add(journal.append(new NotificationMessage("Entry " + i, "Filling " + SMALL_SEGMENT_SIZE + " byte segments")));
+		}
+		int segments = journal.getSegmentCount();
+		checks.check(segments > 3, COMPACTED_ENTRIES + " entries filled " + segments + " segments");
+		for (long id : ids.subList(1, ids.size())) {
+			journal.ack(id);
+		}
+		checks.check(journal.getSegmentCount() >= segments, "the oldest segment is kept while its first entry is unacknowledged: "
+				+ journal.getSegmentCount() + " segments");
+		journal.ack(ids.get(0));
+		checks.check(journal.getSegmentCount() == 1, "acknowledging it deleted every full segment: " + journal.getSegmentCount() + " left");
+		checks.check(segmentFiles(directory) == 1, "one segment file is left on disk: " + segmentFiles(directory));
+		journal.close();
+
+		journal = new NotificationJournal(directory, SMALL_SEGMENT_SIZE, NotificationJournal.SyncPolicy.NEVER,
+				NotificationJournal.DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		List<NotificationJournal.Entry> replayed = journal.open();
+		checks.check(replayed.isEmpty() && journal.getSegmentCount() == 1, "reopening replays nothing and compacts the old segment: "
+				+ replayed.size() + " pending, " + journal.getSegmentCount() + " segment(s)");
+		journal.close();
+	}
+
+	/*
+	 * Tear a record of the only segment, as a crash while writing it would
+	 */
+	private static void tear(File directory, int record, boolean torn_body) throws IOException {
+		File[] files = directory.listFiles();
+		if(files == null || files.length != 1)
+			throw new IOException("Expected one segment in " + directory);
+		RandomAccessFile segment = new RandomAccessFile(files[0], "rw");
+		try {
+			long position = 0;
+			for (int i = 0; i < record; i++) {
+				segment.seek(position);
+				position += JournalSegment.RECORD_HEADER_LENGTH + segment.readInt();
+			}
+			if(torn_body){
+				segment.seek(position + JournalSegment.RECORD_HEADER_LENGTH + 2);
+				int value = segment.read();
+				segment.seek(position + JournalSegment.RECORD_HEADER_LENGTH + 2);
+				segment.write(value ^ 0xff);
+			}else{
+				segment.seek(position);
+				segment.writeInt(0);
+			}
+		} finally {
+			segment.close();
+		}
+	}
+
+	private static boolean inOrderPerThread(List<NotificationJournal.Entry> entries) {
+		int[] next = new int[THREADS];
+		for (NotificationJournal.Entry entry : entries) {
+			int thread = Integer.parseInt(entry.getMessage().getTitle().substring("Thread ".length()));
+			int append = Integer.parseInt(entry.getMessage().getMessage().substring("Append ".length()));
+			if(append != next[thread]++)
+				return false;
+		}
+		return true;
+	}
+
+	private static List<String> titles(List<NotificationMessage> messages) {
+		List<String> titles = new ArrayList<String>(messages.size());
+		for (NotificationMessage message : messages) {
+			titles.add(message.getTitle());
+		}
+		return titles;
+	}
+
+	private static int segmentFiles(File directory) {
+		File[] files = directory.listFiles();
+		int count = 0;
+		for (File file : files == null ? new File[0] : files) {
+			if(JournalSegment.sequenceOf(file.getName()) > 0)
+				count++;
+		}
+		return count;
+	}
+
+	private File directory() throws IOException {
+		File directory = Files.createTempDirectory("notifj-outbox").toFile();
+		directories.add(directory);
+		return directory;
+	}
+
+	private void deleteDirectories() {
+		for (File directory : directories) {
+			File[] files = directory.listFiles();
+			for (File file : files == null ? new File[0] : files) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/*
+	 * Records notifications once let through the gate, or fails them
+	 */
+	private static class GatedNotification extends MemoryNotification {
+
+		volatile CountDownLatch gate;
+		volatile boolean failing;
+
+		GatedNotification() {
+			super(APPLICATION);
+		}
+
+		@Override
+		public void show(NotificationMessage message) throws NotificationException {
+			CountDownLatch current = gate;
+			if(current != null){
+				try {
+					if(!current.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+						throw new NotificationException("Gate was never opened");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new NotificationException("Interrupted at the gate", e);
+				}
+			}
+			if(failing)
+				throw new NotificationException("Backend is failing");
+			super.show(message);
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * AppleScriptBenchmark.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of building the AppleScript that displays a notification on OS X, using an engine that discards
+ * every script so that only NotifJ's own work is measured.
+ *
+ * @since   1.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppleScriptBenchmark {
+
+	private static final String SOURCE = "on notify_growl(appName, notificationName, theTitle, theMessage, callbackUrl, isSticky)\nreturn true\nend notify_growl";
+
+	private final AppleScriptTemplate template = new AppleScriptTemplate("notify_growl", SOURCE);
+	private final DiscardingEngine engine = new DiscardingEngine();
+
+	@Benchmark
+	public Object templateCall() throws ScriptException {
+		return template.eval(engine, "NotifJ Benchmark", "Notification", "Build \"42\" finished",
+				"All 214 tests passed", "", Boolean.FALSE);
+	}
+
+	@Benchmark
+	public String quote() {
+		return AppleScriptTemplate.quote("C:\\builds\\\"nightly\" finished");
+	}
+
+	/*
+	 * Script engine that returns the length of each script without evaluating it
+	 */
+	private static class DiscardingEngine extends AbstractScriptEngine {
+
+		@Override
+		public Object eval(String script, ScriptContext context) {
+			return script.length();
+		}
+
+		@Override
+		public Object eval(Reader reader, ScriptContext context) {
+			return null;
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return null;
+		}
+	}
+
+}
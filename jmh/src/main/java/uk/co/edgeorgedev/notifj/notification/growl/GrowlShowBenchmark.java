@@ -0,0 +1,106 @@
+/**
+ * GrowlShowBenchmark.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter.OverflowAction;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * The cost of {@link GrowlNotification#show(NotificationMessage)} delegating to the platform notification.
+ *
+ * <p>The platform notification is replaced by one that counts what it is given, so that only the work
+ * <tt>GrowlNotification</tt> adds is measured. <tt>display</tt> is the cost of calling it directly, and the other
+ * benchmarks add <tt>show()</tt> alone, with a rate limit, and with coalescing of repeats.
+ *
+ * @since   1.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrowlShowBenchmark {
+
+	private final NotificationMessage message = new NotificationMessage("Build finished", "All 214 tests passed");
+
+	private CountingGrowlNotification plain;
+	private CountingGrowlNotification limited;
+	private CountingGrowlNotification coalescing;
+
+	@Setup
+	public void setUp() throws NotificationException {
+		plain = new CountingGrowlNotification();
+		limited = new CountingGrowlNotification();
+		limited.rateLimit(1e12, Integer.MAX_VALUE, OverflowAction.DROP);
+		coalescing = new CountingGrowlNotification();
+		coalescing.coalesce(1, TimeUnit.HOURS);
+	}
+
+	@Benchmark
+	public long display() throws NotificationException {
+		plain.display(message);
+		return plain.displayed;
+	}
+
+	@Benchmark
+	public long show() throws NotificationException {
+		plain.show(message);
+		return plain.displayed;
+	}
+
+	@Benchmark
+	public long showRateLimited() throws NotificationException {
+		limited.show(message);
+		return limited.displayed;
+	}
+
+	@Benchmark
+	public long showCoalescedRepeat() throws NotificationException {
+		coalescing.show(message);
+		return coalescing.displayed;
+	}
+
+	@TearDown
+	public void tearDown() throws NotificationException {
+		plain.close();
+		limited.close();
+		coalescing.close();
+	}
+
+	/*
+	 * Counts the notifications that reach the platform notification instead of displaying them
+	 */
+	private static class CountingGrowlNotification extends GrowlNotification {
+
+		long displayed;
+
+		CountingGrowlNotification() throws NotificationException {
+			super("NotifJ Benchmark");
+		}
+
+		@Override
+		protected void display(NotificationMessage message) {
+			displayed++;
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * GntpSendBenchmark.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * The cost of encoding GNTP requests and of sending them over {@link GntpTransport} to a {@link GntpStubServer}
+ * on a loopback port, one at a time and pipelined.
+ *
+ * @since   1.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GntpSendBenchmark {
+
+	private static final String APPLICATION = "NotifJ Benchmark";
+	private static final String TYPE = "Notification";
+	private static final int PIPELINED = 32;
+
+	private final GntpEncoder encoder = new GntpEncoder();
+	private final GntpNotify notify = new GntpNotify(APPLICATION, TYPE, "Build finished", "All 214 tests passed");
+	private final List<GntpNotify> batch = new ArrayList<GntpNotify>(PIPELINED);
+
+	private GntpStubServer server;
+	private GntpTransport transport;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new GntpStubServer();
+		transport = new GntpTransport(server.getHost(), server.getPort());
+		transport.send(new GntpRegister(APPLICATION, TYPE), 5, TimeUnit.SECONDS);
+		for (int i = 0; i < PIPELINED; i++) {
+			batch.add(notify);
+		}
+	}
+
+	@Benchmark
+	public ByteBuffer encodeNotify() {
+		encoder.clear();
+		notify.encode(encoder);
+		return encoder.flip();
+	}
+
+	@Benchmark
+	public GntpResponse sendNotify() throws NotificationException {
+		return transport.send(notify, 5, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINED)
+	public List<GntpResponse> sendPipelined() throws NotificationException {
+		return transport.send(batch, 5, TimeUnit.SECONDS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		transport.close();
+		server.close();
+	}
+
+}
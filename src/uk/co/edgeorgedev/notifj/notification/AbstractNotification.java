@@ -0,0 +1,523 @@
+/**
+ * AbstractNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * This class holds the state and behaviour shared by every {@link Notification} backend: the application
+ * name, the sticky and callback settings and the queue used by {@link #showAsync(String, String)}.
+ *
+ * <p>Backends need only implement <tt>open()</tt>, <tt>show()</tt> and <tt>close()</tt>, calling
+ * {@link #openDispatcher()} from the first and {@link #closeDispatcher()} from the last, so that queued
+ * notifications are drained and <tt>showAsync()</tt> is refused until the notification is opened again.
+ *
+ * <p><b>Thread safety.</b> One instance may be shared by any number of threads. Settings are held in
+ * <tt>volatile</tt> fields, so <tt>show()</tt> reads them without locking and sees each change made by another
+ * thread once the setter has returned; each setting is read independently, so a notification displayed while
+ * several settings change may see some of the new values and not others. Backends publish the handles they
+ * create in <tt>open()</tt> through <tt>volatile</tt> fields, and bracket every use of them with
+ * {@link #beginCall()} and {@link #endCall()}. <tt>close()</tt> then drains with {@link #beginDrain()}: it waits
+ * for queued notifications and calls already in progress to finish, refusing new ones, before the handles are freed.
+ *
+ * <p>Backends record the latency and outcome of each call with {@link #recordSend(long, boolean)}, under the
+ * simple class name of the notification, to the {@link MetricsRegistry}.
+ *
+ * @see     Notification
+ * @since   1.3
+ */
+public abstract class AbstractNotification implements Notification {
+
+	private static final long DISPATCH_DRAIN_SECONDS = 5;
+
+	protected volatile String application_name;
+	protected volatile boolean sticky;
+	protected volatile URL callback_url;
+
+	private volatile NotificationDispatcher dispatcher;
+	private boolean dispatch_closed;
+	private final AtomicInteger calls = new AtomicInteger();
+	private volatile boolean draining;
+	private final String metrics_source = metricsSourceOf(getClass());
+	private int dispatch_capacity = NotificationDispatcher.DEFAULT_CAPACITY;
+	private int dispatch_concurrency = NotificationDispatcher.DEFAULT_CONCURRENCY;
+	private OverflowPolicy overflow_policy = OverflowPolicy.BLOCK;
+	private volatile long update_interval_nanos = TimeUnit.MILLISECONDS.toNanos(NotificationHandle.DEFAULT_MIN_INTERVAL_MILLIS);
+
+	/*
+	 * Application name setter for child classes
+	 */
+	protected void setApplicationName(String application_name){
+		this.application_name = application_name;
+	}
+
+	/**
+	 * Displays a notification with a given priority
+	 *
+	 * <p>Backends that can display priorities override this method; by default the priority is ignored.
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(title, message);
+	}
+
+	/**
+	 * Displays a notification
+	 *
+	 * <p>Backends that can apply a message's own settings override this method; by default only its title,
+	 * message body and priority are used.
+	 *
+	 * @param  message the notification to display.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		show(message.getTitle(), message.getMessage(), message.getPriority());
+	}
+
+	/**
+	 * Displays a notification that can later be updated or dismissed
+	 *
+	 * <p>Backends that can replace a displayed notification override this method; by default each update is
+	 * displayed as a new notification, and dismissing it only stops further updates.
+	 *
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update or dismiss the notification
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		NotificationHandle handle = new NotificationHandle(update_interval_nanos, TimeUnit.NANOSECONDS) {
+			@Override
+			protected void push(NotificationMessage state) throws NotificationException {
+				show(state);
+			}
+
+			@Override
+			protected void remove() {
+				// A notification that cannot be replaced cannot be removed either
+			}
+		};
+		handle.update(message);
+		return handle;
+	}
+
+	/**
+	 * Sets the minimum time between the updates of a notification shown with {@link #showUpdatable(NotificationMessage)}
+	 * <p>The default is 250 milliseconds. Updates that arrive sooner are held back, and only the latest is displayed.
+	 *
+	 * @param interval the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>interval</tt>
+	 * @throws IllegalArgumentException if the interval is negative or the unit is null
+	 * @since 1.3
+	 */
+	public void setUpdateInterval(long interval, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(interval < 0)
+			throw new IllegalArgumentException("Interval cannot be negative");
+		this.update_interval_nanos = unit.toNanos(interval);
+	}
+
+	/*
+	 * The minimum time between the updates of a notification, for backends' own handles
+	 */
+	protected long getUpdateIntervalNanos() {
+		return update_interval_nanos;
+	}
+
+	/*
+	 * Whether a message is sticky, falling back to this object's setting
+	 */
+	protected boolean isSticky(NotificationMessage message) {
+		Boolean message_sticky = message.getSticky();
+		return message_sticky == null ? sticky : message_sticky;
+	}
+
+	/*
+	 * The callback URL of a message, falling back to this object's callback
+	 */
+	protected URL getCallbackUrl(NotificationMessage message) {
+		URL message_callback = message.getCallbackUrl();
+		return message_callback == null ? callback_url : message_callback;
+	}
+
+	/**
+	 * Displays several notifications by showing each in turn
+	 *
+	 * <p>Backends that can display several notifications in one round-trip override this method.
+	 *
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if none of the notifications can be displayed
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+		NotificationException failure = null;
+		int failures = 0;
+		for (NotificationMessage message : messages) {
+			try {
+				show(message);
+				results.add(NotificationResult.success(message));
+			} catch (NotificationException e) {
+				failure = e;
+				failures++;
+				results.add(NotificationResult.failure(message, e));
+			}
+		}
+		if(failure != null && failures == results.size())
+			throw failure;
+		return results;
+	}
+
+	/**
+	 * Queues a notification to be displayed on a background thread
+	 *
+	 * <p>The dispatch queue is created on the first call and is drained by {@link #close()}. Once closed,
+	 * notifications are refused until the notification is opened again.
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification has been closed or cannot be queued
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(String title, String message) throws NotificationException {
+		return dispatcher().submit(title, message);
+	}
+
+	/**
+	 * Queues a notification to be displayed on a background thread, ahead of any queued notifications of a lower priority
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification has been closed or cannot be queued
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(String title, String message, NotificationPriority priority) throws NotificationException {
+		return dispatcher().submit(title, message, priority);
+	}
+
+	/**
+	 * Queues a notification to be displayed on a background thread, ahead of any queued notifications of a lower priority
+	 *
+	 * @param  message the notification to display.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification has been closed or cannot be queued
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(NotificationMessage message) throws NotificationException {
+		return dispatcher().submit(message);
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * <p>By default up to {@link NotificationDispatcher#DEFAULT_CAPACITY} notifications are queued
+	 * and callers block while the queue is full.
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	public AbstractNotification dispatch(int capacity, OverflowPolicy policy){
+		return dispatch(capacity, policy, NotificationDispatcher.DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * <p>With a concurrency greater than 1, each queued notification is displayed on a thread of its own - a
+	 * virtual thread on Java 21 and later - with no more than <tt>concurrency</tt> in flight. This suits backends
+	 * that spend most of each call waiting, such as Growl for Windows over a slow network.
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @see NotificationDispatcher
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	public synchronized AbstractNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		if(policy == null)
+			throw new IllegalArgumentException("Overflow policy cannot be null");
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity cannot be less than 1");
+		if(concurrency < 1)
+			throw new IllegalArgumentException("Concurrency cannot be less than 1");
+		if(dispatcher != null)
+			throw new IllegalStateException("Dispatch queue is already in use");
+		this.dispatch_capacity = capacity;
+		this.overflow_policy = policy;
+		this.dispatch_concurrency = concurrency;
+		return this;
+	}
+
+	/*
+	 * Lazily create the dispatcher used by showAsync - only its creation takes the lock. A closed notification
+	 * is refused rather than given a new dispatcher, whose worker would outlive it
+	 */
+	private NotificationDispatcher dispatcher() throws NotificationException {
+		NotificationDispatcher current = dispatcher;
+		if(current != null)
+			return current;
+		synchronized (this) {
+			if(dispatch_closed)
+				throw new NotificationException("Notification has been closed - Have you called open()?");
+			if(dispatcher == null)
+				dispatcher = new NotificationDispatcher(this, dispatch_capacity, overflow_policy,
+						NotificationDispatcher.DEFAULT_AGING_MILLIS, TimeUnit.MILLISECONDS, dispatch_concurrency);
+			return dispatcher;
+		}
+	}
+
+	/*
+	 * Accept notifications from showAsync again once reopened
+	 */
+	protected synchronized void openDispatcher() {
+		dispatch_closed = false;
+	}
+
+	/*
+	 * Drain any queued notifications before clean-up, refusing more until reopened
+	 */
+	protected void closeDispatcher() throws NotificationException {
+		NotificationDispatcher current;
+		synchronized (this) {
+			current = dispatcher;
+			dispatcher = null;
+			dispatch_closed = true;
+		}
+		if(current == null)
+			return;
+		try {
+			current.shutdown(DISPATCH_DRAIN_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted draining queued notifications", e);
+		}
+	}
+
+	/**
+	 * Marks the start of a call that uses the backend's handles
+	 *
+	 * <p>Read the handles only after this returns, and always follow it with {@link #endCall()} in a
+	 * <tt>finally</tt> block. Takes no lock.
+	 *
+	 * @return the time the call started, as given by {@link System#nanoTime()}, for {@link #recordSend(long, boolean)}
+	 * @throws NotificationException if the notification is being closed
+	 * @since 1.3
+	 */
+	protected final long beginCall() throws NotificationException {
+		calls.incrementAndGet();
+		if(draining){
+			endCall();
+			throw new NotificationException("Notification is being closed");
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a call started by {@link #beginCall()}
+	 * @since 1.3
+	 */
+	protected final void endCall() {
+		if(calls.decrementAndGet() == 0 && draining){
+			synchronized (calls) {
+				calls.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Records a notification sent, or that failed to send, since a call started
+	 * @param started the time the call started, as returned by {@link #beginCall()}
+	 * @param success <tt>true</tt> if the notification was sent and <tt>false</tt> if it failed
+	 * @since 1.3
+	 */
+	protected final void recordSend(long started, boolean success) {
+		MetricsRegistry.get().recordSend(metrics_source, System.nanoTime() - started, success);
+	}
+
+	/**
+	 * Records the outcome of each notification in a batch sent since a call started
+	 * @param started the time the call started, as returned by {@link #beginCall()}
+	 * @param messages the notifications in the batch
+	 * @param results the result of each notification - <tt>null</tt> if the whole batch failed
+	 * @since 1.3
+	 */
+	protected final void recordSends(long started, Collection<NotificationMessage> messages, List<NotificationResult> results) {
+		if(results == null){
+			for (int i = 0; i < messages.size(); i++) {
+				recordSend(started, false);
+			}
+			return;
+		}
+		for (NotificationResult result : results) {
+			recordSend(started, result.isSuccess());
+		}
+	}
+
+	/**
+	 * Records an error that is handled by the backend rather than thrown to the caller
+	 * @param cause the error
+	 * @since 1.3
+	 */
+	protected final void recordError(Throwable cause) {
+		MetricsRegistry.get().recordError(metrics_source, cause);
+	}
+
+	/*
+	 * The simple name of a class, or its full name should it be anonymous
+	 */
+	private static String metricsSourceOf(Class<?> type) {
+		String name = type.getSimpleName();
+		return name.isEmpty() ? type.getName() : name;
+	}
+
+	/**
+	 * Drains calls to the backend before its handles are freed
+	 *
+	 * <p>New calls are refused until {@link #endDrain()}. Calls in progress are given the same time to finish as
+	 * queued notifications; any still running after that are left to fail. Backends call this from <tt>close()</tt>,
+	 * after {@link #closeDispatcher()}, and must not drain from several threads at once.
+	 *
+	 * @throws NotificationException if interrupted while waiting
+	 * @since 1.3
+	 */
+	protected final void beginDrain() throws NotificationException {
+		draining = true;
+		long remaining = TimeUnit.SECONDS.toNanos(DISPATCH_DRAIN_SECONDS);
+		long deadline = System.nanoTime() + remaining;
+		synchronized (calls) {
+			while(calls.get() > 0 && remaining > 0){
+				try {
+					TimeUnit.NANOSECONDS.timedWait(calls, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					endDrain();
+					throw new NotificationException("Interrupted draining notifications in progress", e);
+				}
+				remaining = deadline - System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Accepts calls to the backend again once its handles have been freed
+	 * @since 1.3
+	 */
+	protected final void endDrain() {
+		draining = false;
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	@Override
+	public AbstractNotification sticky(){
+		this.sticky = true;
+		return this;
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	@Override
+	public AbstractNotification sticky(boolean sticky){
+		this.sticky = sticky;
+		return this;
+	}
+
+	/**
+	 * Check if notifications are sticky
+	 * @since 1.3
+	 * @return <tt>true</tt> if notifications generated by this object are sticky and <tt>false</tt> otherwise.
+	 */
+	@Override
+	public boolean isSticky() {
+		return sticky;
+	}
+
+	/**
+	 * Adds a callback url to notifications.
+	 *
+	 * @param callback_url the callback URL to open - <tt>null</tt> can be used to remove the callback as can {@link #removeCallback()}
+	 * @see #removeCallback()
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	@Override
+	public AbstractNotification callbackUrl(URL callback_url){
+		this.callback_url = callback_url;
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>AbstractNotification</tt> object
+	 */
+	@Override
+	public AbstractNotification removeCallback(){
+		callback_url = null;
+		return this;
+	}
+
+	/**
+	 * Get the notification's callback URL
+	 * @since 1.3
+	 * @return the callback URL - <tt>null</tt> if the callback is not set
+	 */
+	@Override
+	public URL getCallbackUrl() {
+		return callback_url;
+	}
+
+}
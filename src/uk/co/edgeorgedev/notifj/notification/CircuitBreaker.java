@@ -0,0 +1,130 @@
+/**
+ * CircuitBreaker.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class stops calls to a failing backend for a while, so that callers are not held up by it.
+ *
+ * <p>The breaker starts {@link State#CLOSED}. After a number of consecutive failures it opens and refuses
+ * every call. Once the open time has elapsed it becomes {@link State#HALF_OPEN} and lets a single probe
+ * call through: should the probe succeed the breaker closes, otherwise it opens again. A probe whose outcome
+ * has not been reported within another open time is taken as lost, and the next call is let through as a
+ * new probe, so a caller that fails to report cannot leave the breaker refusing calls for good.
+ *
+ * @see     FailoverNotification
+ * @since   1.3
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The state of a circuit breaker
+	 * @since 1.3
+	 */
+	public enum State {
+		/** Calls are allowed */
+		CLOSED,
+		/** Calls are refused until the open time has elapsed */
+		OPEN,
+		/** A single probe call is allowed to test whether the backend has recovered */
+		HALF_OPEN
+	}
+
+	private final int failure_threshold;
+	private final long open_nanos;
+
+	private State state = State.CLOSED;
+	private int failures;
+
+	/*
+	 * When the breaker opened, or when the probe in flight was let through
+	 */
+	private long opened_at;
+
+	/**
+	 * Constructs a closed circuit breaker
+	 * @param failure_threshold the number of consecutive failures that open the breaker
+	 * @param open_time the time the breaker stays open before a probe is allowed
+	 * @param unit the time unit of the <tt>open_time</tt>
+	 * @throws IllegalArgumentException if the unit is null, the threshold is less than 1 or the open time is negative
+	 * @since 1.3
+	 */
+	public CircuitBreaker(int failure_threshold, long open_time, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(failure_threshold < 1)
+			throw new IllegalArgumentException("Failure threshold cannot be less than 1");
+		if(open_time < 0)
+			throw new IllegalArgumentException("Open time cannot be negative");
+		this.failure_threshold = failure_threshold;
+		this.open_nanos = unit.toNanos(open_time);
+	}
+
+	/**
+	 * Check if a call may be made, moving an open breaker to half-open once its open time has elapsed
+	 *
+	 * <p>A caller allowed through must report the outcome with {@link #succeeded()} or {@link #failed()}, in a
+	 * <tt>finally</tt> block so that an unexpected exception is reported too.
+	 *
+	 * @return <tt>true</tt> if the call may be made and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		default:
+			// Open, or half-open with a probe in flight
+			long now = System.nanoTime();
+			if(now - opened_at < open_nanos)
+				return false;
+			state = State.HALF_OPEN;
+			opened_at = now;
+			return true;
+		}
+	}
+
+	/**
+	 * Records a successful call, closing the breaker
+	 * @since 1.3
+	 */
+	public synchronized void succeeded() {
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	/**
+	 * Records a failed call, opening the breaker should the threshold be reached or a probe fail
+	 * @since 1.3
+	 */
+	public synchronized void failed() {
+		failures++;
+		if(state == State.HALF_OPEN || failures >= failure_threshold){
+			state = State.OPEN;
+			opened_at = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Get the current state
+	 * @return the state
+	 * @since 1.3
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Get the number of consecutive failures
+	 * @return the failure count - 0 after a success
+	 * @since 1.3
+	 */
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+}
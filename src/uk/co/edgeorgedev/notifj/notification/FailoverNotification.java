@@ -0,0 +1,453 @@
+/**
+ * FailoverNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.headless.JsonLinesNotification;
+
+/**
+ * This class displays each notification with the first of an ordered chain of notifications that succeeds,
+ * e.g. Growl, then the desktop's own notifications, then a log file written by {@link JsonLinesNotification}.
+ *
+ * <p>Each notification in the chain has a {@link CircuitBreaker}. A notification that fails repeatedly is skipped
+ * without being called until its breaker lets a probe through, so a backend that is down adds no delay.
+ * Should every breaker be open, the last notification in the chain is tried regardless.
+ *
+ * <p>For example:
+ * <pre>
+ * Notification notif = new FailoverNotification(new GrowlNotification("Test Application"),
+ *         new LinuxNotification("Test Application"),
+ *         new JsonLinesNotification("Test Application", new File("logs/notifications.jsonl")));
+ * notif.open();
+ * notif.show("Hello", "World");</pre>
+ *
+ * @see     CircuitBreaker
+ * @since   1.3
+ */
+public class FailoverNotification extends AbstractNotification {
+
+	/**
+	 * The default number of consecutive failures that open a circuit breaker
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+	/**
+	 * The default time a circuit breaker stays open before a probe is allowed
+	 */
+	public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+	private final List<Link> chain;
+
+	/**
+	 * Constructs a failover chain
+	 * @param chain the notifications to try, in order
+	 * @throws IllegalArgumentException if the chain is empty or contains null
+	 * @since 1.3
+	 */
+	public FailoverNotification(Notification... chain) {
+		this(Arrays.asList(chain));
+	}
+
+	/**
+	 * Constructs a failover chain
+	 * @param chain the notifications to try, in order
+	 * @throws IllegalArgumentException if the chain is empty or contains null
+	 * @since 1.3
+	 */
+	public FailoverNotification(List<? extends Notification> chain) {
+		if(chain == null || chain.isEmpty())
+			throw new IllegalArgumentException("At least one notification is required");
+		List<Link> links = new ArrayList<Link>(chain.size());
+		for (Notification notification : chain) {
+			if(notification == null)
+				throw new IllegalArgumentException("Notification cannot be null");
+			links.add(new Link(notification, new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS)));
+		}
+		this.chain = Collections.unmodifiableList(links);
+	}
+
+	/**
+	 * Replaces the circuit breaker of every notification in the chain
+	 *
+	 * @param failure_threshold the number of consecutive failures that open a breaker
+	 * @param open_time the time a breaker stays open before a probe is allowed
+	 * @param unit the time unit of the <tt>open_time</tt>
+	 * @throws IllegalArgumentException if the unit is null, the threshold is less than 1 or the open time is negative
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	public FailoverNotification circuitBreaker(int failure_threshold, long open_time, TimeUnit unit){
+		for (Link link : chain) {
+			link.breaker = new CircuitBreaker(failure_threshold, open_time, unit);
+		}
+		return this;
+	}
+
+	/**
+	 * Opens every notification in the chain
+	 *
+	 * <p>A notification that cannot be opened has its circuit breaker opened, and is opened again when probed.
+	 *
+	 * @throws NotificationException if no notification in the chain can be opened
+	 * @since 1.3
+	 */
+	@Override
+	public void open() throws NotificationException {
+		NotificationException failure = null;
+		boolean opened = false;
+		for (Link link : chain) {
+			try {
+				link.open();
+				opened = true;
+			} catch (NotificationException e) {
+				link.trip();
+				failure = e;
+			}
+		}
+		if(!opened)
+			throw new NotificationException("No notification in the failover chain could be opened", failure);
+		openDispatcher();
+	}
+
+	/**
+	 * Displays a notification with the first notification in the chain that succeeds
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if every notification in the chain fails or is unavailable
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a notification of a given priority with the first notification in the chain that succeeds
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if every notification in the chain fails or is unavailable
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a notification with the first notification in the chain that succeeds
+	 *
+	 * @param  message the notification to display.
+	 * @throws NotificationException if every notification in the chain fails or is unavailable
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		NotificationException failure = null;
+		boolean attempted = false;
+		for (Link link : chain) {
+			CircuitBreaker breaker = link.breaker;
+			if(!breaker.allowRequest())
+				continue;
+			attempted = true;
+			boolean shown = false;
+			try {
+				link.show(message);
+				shown = true;
+				return;
+			} catch (NotificationException e) {
+				failure = e;
+			} finally {
+				/* Reported whatever is thrown, so a failed probe cannot leave the breaker half-open */
+				report(breaker, shown);
+			}
+		}
+
+		if(!attempted){
+			// Every breaker is open - the last resort is tried regardless
+			Link last = chain.get(chain.size() - 1);
+			boolean shown = false;
+			try {
+				last.show(message);
+				shown = true;
+			} catch (NotificationException e) {
+				throw new NotificationException("Every notification in the failover chain is unavailable", e);
+			} finally {
+				report(last.breaker, shown);
+			}
+			return;
+		}
+		throw new NotificationException("Every notification in the failover chain failed", failure);
+	}
+
+	/**
+	 * Displays several notifications, passing any that fail on to the next notification in the chain
+	 *
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if none of the notifications can be displayed
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<NotificationMessage> all = new ArrayList<NotificationMessage>(messages);
+		NotificationResult[] results = new NotificationResult[all.size()];
+		List<Integer> pending = new ArrayList<Integer>(all.size());
+		for (int i = 0; i < all.size(); i++) {
+			pending.add(i);
+		}
+
+		NotificationException failure = null;
+		boolean attempted = false;
+		for (int l = 0; l < chain.size() && !pending.isEmpty(); l++) {
+			Link link = chain.get(l);
+			CircuitBreaker breaker = link.breaker;
+			boolean last_resort = !attempted && l == chain.size() - 1;
+			if(!breaker.allowRequest() && !last_resort)
+				continue;
+			attempted = true;
+
+			List<NotificationMessage> batch = new ArrayList<NotificationMessage>(pending.size());
+			for (int index : pending) {
+				batch.add(all.get(index));
+			}
+			boolean shown = false;
+			try {
+				List<NotificationResult> batch_results = link.showAll(batch);
+				List<Integer> failed = new ArrayList<Integer>();
+				for (int i = 0; i < batch_results.size(); i++) {
+					int index = pending.get(i);
+					results[index] = batch_results.get(i);
+					if(!batch_results.get(i).isSuccess())
+						failed.add(index);
+				}
+				shown = failed.size() < pending.size();
+				pending = failed;
+			} catch (NotificationException e) {
+				failure = e;
+				for (int index : pending) {
+					results[index] = NotificationResult.failure(all.get(index), e);
+				}
+			} finally {
+				report(breaker, shown);
+			}
+		}
+
+		if(pending.size() == all.size() && !all.isEmpty())
+			throw new NotificationException("Every notification in the failover chain failed", failure);
+		return Arrays.asList(results);
+	}
+
+	/*
+	 * Report the outcome of a call the breaker let through
+	 */
+	private static void report(CircuitBreaker breaker, boolean succeeded) {
+		if(succeeded){
+			breaker.succeeded();
+		}else{
+			breaker.failed();
+		}
+	}
+
+	/**
+	 * Closes every notification in the chain
+	 * @throws NotificationException if any notification cannot be closed, once every other has been
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		closeDispatcher();
+		NotificationException failure = null;
+		for (Link link : chain) {
+			try {
+				link.close();
+			} catch (NotificationException e) {
+				failure = e;
+			}
+		}
+		if(failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Get the state of the circuit breaker of a notification in the chain
+	 * @param index the position of the notification in the chain
+	 * @return the breaker's state
+	 * @throws IndexOutOfBoundsException if there is no notification at the index
+	 * @since 1.3
+	 */
+	public CircuitBreaker.State getState(int index) {
+		return chain.get(index).breaker.getState();
+	}
+
+	/**
+	 * Get the notifications in the chain
+	 * @return the notifications, in the order they are tried
+	 * @since 1.3
+	 */
+	public List<Notification> getChain() {
+		List<Notification> notifications = new ArrayList<Notification>(chain.size());
+		for (Link link : chain) {
+			notifications.add(link.notification);
+		}
+		return notifications;
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification sticky(){
+		return sticky(true);
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification sticky(boolean sticky){
+		super.sticky(sticky);
+		for (Link link : chain) {
+			link.notification.sticky(sticky);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a callback url to notifications of every notification in the chain that supports callbacks
+	 *
+	 * @param callback_url the callback URL to open - <tt>null</tt> can be used to remove the callback as can {@link #removeCallback()}
+	 * @see #removeCallback()
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification callbackUrl(URL callback_url){
+		super.callbackUrl(callback_url);
+		for (Link link : chain) {
+			link.notification.callbackUrl(callback_url);
+		}
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification removeCallback(){
+		return callbackUrl(null);
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>FailoverNotification</tt> object
+	 */
+	@Override
+	public FailoverNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+	/*
+	 * A notification in the chain, its breaker and whether it has been opened
+	 */
+	private static class Link {
+
+		final Notification notification;
+		volatile CircuitBreaker breaker;
+		private volatile boolean opened;
+
+		Link(Notification notification, CircuitBreaker breaker) {
+			this.notification = notification;
+			this.breaker = breaker;
+		}
+
+		void open() throws NotificationException {
+			if(opened)
+				return;
+			synchronized (this) {
+				if(!opened){
+					notification.open();
+					opened = true;
+				}
+			}
+		}
+
+		/*
+		 * Open the breaker straight away
+		 */
+		void trip() {
+			CircuitBreaker current = breaker;
+			while(current.getState() != CircuitBreaker.State.OPEN){
+				current.failed();
+			}
+		}
+
+		/*
+		 * A notification that could not be opened is opened again before use
+		 */
+		void show(NotificationMessage message) throws NotificationException {
+			open();
+			notification.show(message);
+		}
+
+		List<NotificationResult> showAll(List<NotificationMessage> messages) throws NotificationException {
+			open();
+			return notification.showAll(messages);
+		}
+
+		synchronized void close() throws NotificationException {
+			opened = false;
+			notification.close();
+		}
+	}
+
+}
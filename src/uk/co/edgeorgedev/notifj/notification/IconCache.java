@@ -0,0 +1,460 @@
+/**
+ * IconCache.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * A bounded cache of icon images, keyed by a hash of their content.
+ *
+ * <p>An icon made from a file, URL or bytes is read, decoded and - should it be larger than the maximum
+ * dimension - shrunk and re-encoded as a PNG, once. Icons with the same content share one entry however they were
+ * made, and the entry's ID, a hash of the content, identifies the image to GNTP servers so that it need only be sent
+ * once per connection. Files are read again only once they have changed; a URL is assumed to keep its content.
+ *
+ * <p>The cache holds at most <tt>max_bytes</tt> of images, evicting the least recently used. Images that cannot
+ * be decoded, e.g. <tt>.icns</tt> files, are cached as they are.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @see     NotificationIcon
+ * @since   1.3
+ */
+public class IconCache {
+
+	/**
+	 * The default maximum number of image bytes held
+	 */
+	public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+	/**
+	 * The default maximum width and height of a cached image, in pixels
+	 */
+	public static final int DEFAULT_MAX_DIMENSION = 128;
+
+	private static final int MAX_SOURCE_BYTES = 16 * 1024 * 1024;
+	private static final int MAX_LOCATIONS = 1024;
+	private static final String METRICS_SOURCE = IconCache.class.getSimpleName();
+
+	private static final Object DEFAULT_LOCK = new Object();
+	private static volatile IconCache default_cache;
+
+	private final long max_bytes;
+	private final int max_dimension;
+
+	/*
+	 * Entries by content hash, least recently used first, and the content hash last read from each file or URL
+	 * - both guarded by the entries map
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final LinkedHashMap<String, String> locations = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_LOCATIONS;
+		}
+	};
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructs a cache with the default bounds
+	 * @since 1.3
+	 */
+	public IconCache() {
+		this(DEFAULT_MAX_BYTES, DEFAULT_MAX_DIMENSION);
+	}
+
+	/**
+	 * Constructs a cache
+	 * @param max_bytes the maximum number of image bytes held
+	 * @param max_dimension the maximum width and height of a cached image, in pixels - larger images are shrunk
+	 * @throws IllegalArgumentException if either bound is less than 1
+	 * @since 1.3
+	 */
+	public IconCache(long max_bytes, int max_dimension) {
+		if(max_bytes < 1 || max_dimension < 1)
+			throw new IllegalArgumentException("Cache bounds cannot be less than 1");
+		this.max_bytes = max_bytes;
+		this.max_dimension = max_dimension;
+	}
+
+	/**
+	 * Get the cache shared by every notification
+	 * @return the shared cache, created with the default bounds on first use
+	 * @since 1.3
+	 */
+	public static IconCache getDefault() {
+		IconCache cache = default_cache;
+		if(cache == null){
+			synchronized (DEFAULT_LOCK) {
+				cache = default_cache;
+				if(cache == null){
+					cache = new IconCache();
+					default_cache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Get the image of an icon, loading it on first use
+	 * @param icon the icon
+	 * @return the cached image - <tt>null</tt> if the icon is null or a name
+	 * @throws NotificationException if the icon's file or URL cannot be read
+	 * @since 1.3
+	 */
+	public Entry get(NotificationIcon icon) throws NotificationException {
+		if(icon == null || icon.getSource() == NotificationIcon.Source.NAME)
+			return null;
+
+		String location = locationOf(icon);
+		String hash = icon.getSource() == NotificationIcon.Source.BYTES ? icon.digest() : null;
+		synchronized (entries) {
+			if(hash == null)
+				hash = locations.get(location);
+			Entry entry = hash == null ? null : entries.get(hash);
+			if(entry != null){
+				hits++;
+				MetricsRegistry.get().recordProbe(METRICS_SOURCE, true);
+				return entry;
+			}
+			misses++;
+		}
+		MetricsRegistry.get().recordProbe(METRICS_SOURCE, false);
+
+		/* Read and shrink the image without holding the lock - two threads may occasionally both load it */
+		byte[] source = read(icon);
+		if(hash == null)
+			hash = digest(source);
+		Entry entry = new Entry(hash, shrink(source));
+		synchronized (entries) {
+			if(location != null)
+				locations.put(location, hash);
+			Entry existing = entries.get(hash);
+			if(existing != null)
+				return existing;
+			if(entry.data.length <= max_bytes){
+				entries.put(hash, entry);
+				bytes += entry.data.length;
+				evict();
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Get the number of images held
+	 * @return the number of entries
+	 * @since 1.3
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Get the number of image bytes held
+	 * @return the total size of every entry
+	 * @since 1.3
+	 */
+	public long getBytes() {
+		synchronized (entries) {
+			return bytes;
+		}
+	}
+
+	/**
+	 * Get the number of icons found in the cache
+	 * @return the number of cache hits
+	 * @since 1.3
+	 */
+	public long getHits() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Get the number of icons that had to be loaded
+	 * @return the number of cache misses
+	 * @since 1.3
+	 */
+	public long getMisses() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Removes every image - entries already handed out remain usable
+	 * @since 1.3
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			locations.clear();
+			bytes = 0;
+		}
+	}
+
+	/*
+	 * Remove the least recently used entries until the cache is within its bound
+	 */
+	private void evict() {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while(bytes > max_bytes && eldest.hasNext()){
+			bytes -= eldest.next().data.length;
+			eldest.remove();
+		}
+	}
+
+	/*
+	 * The key under which the content hash of a file or URL is remembered - a file's key changes with the file
+	 */
+	private static String locationOf(NotificationIcon icon) {
+		switch (icon.getSource()) {
+		case FILE:
+			File file = new File(icon.getLocation());
+			return "file:" + icon.getLocation() + "\n" + file.lastModified() + "\n" + file.length();
+		case URL:
+			return "url:" + icon.getLocation();
+		default:
+			return null;
+		}
+	}
+
+	/*
+	 * Read the image bytes of a file, URL or bytes icon
+	 */
+	private static byte[] read(NotificationIcon icon) throws NotificationException {
+		if(icon.getSource() == NotificationIcon.Source.BYTES)
+			return icon.bytes();
+		try {
+			if(icon.getSource() == NotificationIcon.Source.FILE){
+				File file = new File(icon.getLocation());
+				if(file.length() > MAX_SOURCE_BYTES)
+					throw new NotificationException("Icon " + file + " is larger than " + MAX_SOURCE_BYTES + " bytes");
+				return Files.readAllBytes(file.toPath());
+			}
+			InputStream in = new URL(icon.getLocation()).openStream();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+				byte[] buffer = new byte[8192];
+				int count;
+				while((count = in.read(buffer)) != -1){
+					out.write(buffer, 0, count);
+					if(out.size() > MAX_SOURCE_BYTES)
+						throw new NotificationException("Icon " + icon.getLocation() + " is larger than " + MAX_SOURCE_BYTES + " bytes");
+				}
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new NotificationException("Could not read icon " + icon.getLocation(), e);
+		}
+	}
+
+	/*
+	 * Shrink an image larger than the maximum dimension to a PNG - other images are kept as they are
+	 */
+	private byte[] shrink(byte[] source) {
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+			if(image == null || (image.getWidth() <= max_dimension && image.getHeight() <= max_dimension))
+				return source;
+
+			double scale = Math.min((double) max_dimension / image.getWidth(), (double) max_dimension / image.getHeight());
+			int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+			int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = scaled.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(image, 0, 0, width, height, null);
+			} finally {
+				graphics.dispose();
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(width * height);
+			if(!ImageIO.write(scaled, "png", out))
+				return source;
+			return out.toByteArray();
+		} catch (IOException e) {
+			// Passed on undecoded for the backend to make sense of
+			return source;
+		} catch (RuntimeException e) {
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+			return source;
+		}
+	}
+
+	/*
+	 * The hexadecimal MD5 hash of some bytes, as recommended for GNTP resource identifiers
+	 */
+	static String digest(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("MD5").digest(data);
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is not available", e);
+		}
+	}
+
+	/**
+	 * A cached icon image.
+	 *
+	 * @since 1.3
+	 */
+	public static final class Entry {
+
+		private static final Object FILE_LOCK = new Object();
+
+		/*
+		 * The directory icon files are written to - guarded by FILE_LOCK
+		 */
+		private static File directory;
+
+		private final String id;
+		private final byte[] data;
+		private volatile File file;
+
+		private Entry(String id, byte[] data) {
+			this.id = id;
+			this.data = data;
+		}
+
+		/**
+		 * Get the ID of the image - the same for every icon with the same content
+		 * @return the hexadecimal MD5 hash of the icon's original content
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Get the size of the image
+		 * @return the number of image bytes
+		 */
+		public int getLength() {
+			return data.length;
+		}
+
+		/**
+		 * Get the image
+		 * @return a read-only buffer of the image bytes
+		 */
+		public ByteBuffer getData() {
+			return ByteBuffer.wrap(data).asReadOnlyBuffer();
+		}
+
+		/**
+		 * Read the image
+		 * @return a new stream of the image bytes
+		 */
+		public InputStream openStream() {
+			return new ByteArrayInputStream(data);
+		}
+
+		/**
+		 * Get the image as a file, for backends that only take file paths
+		 *
+		 * <p>The image is written once, named by its ID, to a directory of the system's temporary directory that is
+		 * created for this process and, where the file system supports it, readable only by the current user. The
+		 * directory is deleted when the JVM exits.
+		 *
+		 * @return the image file
+		 * @throws NotificationException if the file cannot be written
+		 */
+		public File toFile() throws NotificationException {
+			File current = file;
+			if(current != null && current.isFile())
+				return current;
+			synchronized (FILE_LOCK) {
+				File target;
+				try {
+					target = new File(directory(), id + extension());
+					if(!target.isFile()){
+						File partial = File.createTempFile(id, ".tmp", target.getParentFile());
+						Files.write(partial.toPath(), data);
+						if(!partial.renameTo(target)){
+							partial.delete();
+							throw new IOException("Could not rename " + partial + " to " + target);
+						}
+						target.deleteOnExit();
+					}
+				} catch (IOException e) {
+					throw new NotificationException("Could not write icon " + id, e);
+				}
+				file = target;
+				return target;
+			}
+		}
+
+		/*
+		 * A private directory of this process - a shared directory with predictable names would let another user
+		 * plant an image, or a link, under an icon's name before it is written
+		 */
+		private static File directory() throws IOException {
+			if(directory == null || !directory.isDirectory()){
+				directory = Files.createTempDirectory("notifj-icons").toFile();
+				directory.deleteOnExit();
+			}
+			return directory;
+		}
+
+		/*
+		 * A file extension from the image's magic number
+		 */
+		private String extension() {
+			if(data.length >= 4 && (data[0] & 0xff) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G')
+				return ".png";
+			if(data.length >= 2 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8)
+				return ".jpg";
+			if(data.length >= 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F')
+				return ".gif";
+			if(data.length >= 4 && data[0] == 'i' && data[1] == 'c' && data[2] == 'n' && data[3] == 's')
+				return ".icns";
+			return ".img";
+		}
+
+		@Override
+		public String toString() {
+			return "IconCache.Entry[" + id + ", " + data.length + " bytes]";
+		}
+	}
+
+}
@@ -29,6 +29,9 @@
 package uk.co.edgeorgedev.notifj.notification;
 
 import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
 
@@ -67,6 +70,97 @@ public interface Notification {
 	 */
 	public abstract void show(String title, String message) throws NotificationException;
 
+	/**
+	 * Displays a notification to the user with a given priority.
+	 *
+	 * <p>Backends without a notion of priority display the notification as they would any other.
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @param priority the priority of the notification.
+	 * 
+	 * @throws NotificationException if the creation or displaying of any notification(s) fails.
+	 * @since 1.3
+	 */
+	public abstract void show(String title, String message, NotificationPriority priority) throws NotificationException;
+
+	/**
+	 * Displays a notification to the user.
+	 *
+	 * <p>Any sticky, callback, icon or type setting of the message applies to it alone, in place of this object's setting.
+	 *
+	 * @param message the notification to display.
+	 * 
+	 * @throws NotificationException if the creation or displaying of any notification(s) fails.
+	 * @since 1.3
+	 */
+	public abstract void show(NotificationMessage message) throws NotificationException;
+
+	/**
+	 * Displays a notification that can later be updated in place or dismissed through the returned handle.
+	 *
+	 * <p>Backends that cannot replace a notification display each update as a new one.
+	 *
+	 * @param message the initial state of the notification.
+	 * 
+	 * @return a handle to update or dismiss the notification
+	 * @throws NotificationException if the creation or displaying of the notification fails.
+	 * @see NotificationHandle
+	 * @since 1.3
+	 */
+	public abstract NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException;
+
+	/**
+	 * Queues a notification to be displayed without blocking the calling thread.
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * 
+	 * @throws NotificationException if the notification cannot be queued.
+	 * @see NotificationDispatcher
+	 * @since 1.3
+	 */
+	public abstract Future<Void> showAsync(String title, String message) throws NotificationException;
+
+	/**
+	 * Queues a notification to be displayed without blocking the calling thread, ahead of any queued notifications of a lower priority.
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @param priority the priority of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * 
+	 * @throws NotificationException if the notification cannot be queued.
+	 * @see NotificationDispatcher
+	 * @since 1.3
+	 */
+	public abstract Future<Void> showAsync(String title, String message, NotificationPriority priority) throws NotificationException;
+
+	/**
+	 * Queues a notification to be displayed without blocking the calling thread, ahead of any queued notifications of a lower priority.
+	 *
+	 * @param message the notification to display.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * 
+	 * @throws NotificationException if the notification cannot be queued.
+	 * @see NotificationDispatcher
+	 * @since 1.3
+	 */
+	public abstract Future<Void> showAsync(NotificationMessage message) throws NotificationException;
+
+	/**
+	 * Displays several notifications to the user, using as few backend round-trips as possible.
+	 *
+	 * @param messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * 
+	 * @throws NotificationException if none of the notifications can be displayed, e.g. if
+	 *         {@link #open()} has not been called.
+	 * @since 1.3
+	 */
+	public abstract List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException;
+
 	/**
 	 * Completes any cleanup required once a Notification is no longer to be used.
 	 * @throws NotificationException if the cleanup fails.
@@ -0,0 +1,306 @@
+/**
+ * NotificationCoalescer.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * This class folds repeated notifications that arrive within a time window into a single notification.
+ *
+ * <p>The first notification with a given key is displayed straight away. Any further notifications with
+ * the same key inside the window are counted rather than displayed, and once the window closes a single
+ * summary is displayed with the number of occurrences appended to its title, e.g. <tt>Disk full (x214)</tt>.
+ *
+ * <p>At most <tt>max_keys</tt> keys are tracked at once. Should a new key arrive when the index is full,
+ * the oldest key's window is closed early.
+ *
+ * @see     Notification
+ * @since   1.3
+ */
+public class NotificationCoalescer {
+
+	/**
+	 * The default maximum number of keys tracked at once
+	 */
+	public static final int DEFAULT_MAX_KEYS = 1024;
+
+	/**
+	 * Determines which notifications are considered to be repeats of each other
+	 * @since 1.3
+	 */
+	public interface KeyFunction {
+		/**
+		 * Get the key of a notification
+		 * @param title the title of the notification.
+		 * @param message the message body of the notification.
+		 * @return the key - notifications with equal keys are coalesced
+		 */
+		String keyOf(String title, String message);
+	}
+
+	/**
+	 * Treats notifications with the same title and message as repeats
+	 */
+	public static final KeyFunction IDENTICAL = new KeyFunction() {
+		@Override
+		public String keyOf(String title, String message) {
+			return title + '\n' + message;
+		}
+	};
+
+	/**
+	 * Treats notifications with the same title as repeats
+	 */
+	public static final KeyFunction SAME_TITLE = new KeyFunction() {
+		@Override
+		public String keyOf(String title, String message) {
+			return String.valueOf(title);
+		}
+	};
+
+	private static final long MIN_SWEEP_MILLIS = 10;
+	private static final String METRICS_SOURCE = NotificationCoalescer.class.getSimpleName();
+
+	private final NotificationSink sink;
+	private final KeyFunction key_function;
+	private final long window_nanos;
+	private final int max_keys;
+	private final LinkedHashMap<String, Occurrences> index = new LinkedHashMap<String, Occurrences>();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Constructs a coalescer that treats notifications with the same title and message as repeats
+	 * @param sink receives the notifications that are not suppressed
+	 * @param window the length of the window
+	 * @param unit the time unit of the <tt>window</tt>
+	 * @since 1.3
+	 */
+	public NotificationCoalescer(NotificationSink sink, long window, TimeUnit unit) {
+		this(sink, window, unit, IDENTICAL, DEFAULT_MAX_KEYS);
+	}
+
+	/**
+	 * Constructs a coalescer
+	 * @param sink receives the notifications that are not suppressed
+	 * @param window the length of the window
+	 * @param unit the time unit of the <tt>window</tt>
+	 * @param key_function determines which notifications are repeats of each other
+	 * @param max_keys the maximum number of keys tracked at once
+	 * @throws IllegalArgumentException if any argument is null, the window is less than 1 or
+	 *         the maximum number of keys is less than 1
+	 * @since 1.3
+	 */
+	public NotificationCoalescer(NotificationSink sink, long window, TimeUnit unit, KeyFunction key_function, int max_keys) {
+		if(sink == null || unit == null || key_function == null)
+			throw new IllegalArgumentException("Sink, time unit and key function cannot be null");
+		if(window < 1)
+			throw new IllegalArgumentException("Window cannot be less than 1");
+		if(max_keys < 1)
+			throw new IllegalArgumentException("Maximum keys cannot be less than 1");
+		this.sink = sink;
+		this.key_function = key_function;
+		this.window_nanos = unit.toNanos(window);
+		this.max_keys = max_keys;
+	}
+
+	/**
+	 * Displays a notification unless it repeats one displayed within the current window
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @throws NotificationException if the notification is displayed and fails
+	 * @since 1.3
+	 */
+	public void show(String title, String message) throws NotificationException {
+		show(new NotificationMessage(title, message));
+	}
+
+	/**
+	 * Displays a notification unless it repeats one displayed within the current window
+	 *
+	 * <p>A summary is built from the first notification of its window, with the highest priority of the notifications it counts.
+	 *
+	 * @param message the notification.
+	 * @throws NotificationException if the notification is displayed and fails
+	 * @since 1.3
+	 */
+	public void show(NotificationMessage message) throws NotificationException {
+		NotificationPriority priority = message.getPriority();
+		String key = key_function.keyOf(message.getTitle(), message.getMessage());
+		List<Occurrences> expired = new ArrayList<Occurrences>();
+		boolean first;
+
+		synchronized (index) {
+			long now = System.nanoTime();
+			expire(now, expired);
+
+			Occurrences occurrences = index.get(key);
+			first = occurrences == null;
+			if(first){
+				if(index.size() >= max_keys)
+					evictEldest(expired);
+				index.put(key, new Occurrences(message, now));
+				startSweeper();
+			}else{
+				occurrences.count++;
+				if(priority.compareTo(occurrences.priority) > 0)
+					occurrences.priority = priority;
+				suppressed.incrementAndGet();
+			}
+		}
+
+		summarise(expired);
+		if(first)
+			sink.show(message);
+	}
+
+	/**
+	 * Closes every open window, displaying summaries of any suppressed notifications
+	 * @since 1.3
+	 */
+	public void flush() {
+		List<Occurrences> expired = new ArrayList<Occurrences>();
+		synchronized (index) {
+			expired.addAll(index.values());
+			index.clear();
+		}
+		summarise(expired);
+	}
+
+	/**
+	 * Flushes any open windows and stops the background sweep
+	 * @since 1.3
+	 */
+	public void close() {
+		synchronized (index) {
+			if(sweeper != null){
+				sweeper.shutdownNow();
+				sweeper = null;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Get the number of notifications that were folded into a summary rather than displayed
+	 * @return the number of suppressed notifications
+	 * @since 1.3
+	 */
+	public long getSuppressed() {
+		return suppressed.get();
+	}
+
+	/**
+	 * Get the number of keys with an open window
+	 * @return the number of tracked keys
+	 * @since 1.3
+	 */
+	public int size() {
+		synchronized (index) {
+			return index.size();
+		}
+	}
+
+	/*
+	 * Remove keys whose window has closed - keys are held in the order their windows opened
+	 */
+	private void expire(long now, List<Occurrences> expired) {
+		Iterator<Map.Entry<String, Occurrences>> iterator = index.entrySet().iterator();
+		while(iterator.hasNext()){
+			Occurrences occurrences = iterator.next().getValue();
+			if(now - occurrences.opened < window_nanos)
+				return;
+			iterator.remove();
+			expired.add(occurrences);
+		}
+	}
+
+	private void evictEldest(List<Occurrences> expired) {
+		Iterator<Map.Entry<String, Occurrences>> iterator = index.entrySet().iterator();
+		expired.add(iterator.next().getValue());
+		iterator.remove();
+	}
+
+	/*
+	 * Display a summary for each closed window that suppressed a notification
+	 */
+	private void summarise(List<Occurrences> expired) {
+		for (Occurrences occurrences : expired) {
+			if(occurrences.count < 2)
+				continue;
+			try {
+				sink.show(occurrences.first.toBuilder()
+						.title(occurrences.first.getTitle() + " (x" + occurrences.count + ")")
+						.priority(occurrences.priority)
+						.build());
+			} catch (NotificationException e) {
+				// A summary has no caller to report to
+				MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+			}
+		}
+	}
+
+	/*
+	 * Lazily start the task that closes windows when no further notifications arrive
+	 */
+	private void startSweeper() {
+		if(sweeper != null)
+			return;
+
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NotifJ-Coalescer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		long period = Math.max(MIN_SWEEP_MILLIS, TimeUnit.NANOSECONDS.toMillis(window_nanos) / 4);
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				List<Occurrences> expired = new ArrayList<Occurrences>();
+				synchronized (index) {
+					expire(System.nanoTime(), expired);
+				}
+				summarise(expired);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * The first notification of a window and the number of times it occurred
+	 */
+	private static class Occurrences {
+
+		final NotificationMessage first;
+		final long opened;
+		int count = 1;
+		NotificationPriority priority;
+
+		Occurrences(NotificationMessage first, long opened) {
+			this.first = first;
+			this.priority = first.getPriority();
+			this.opened = opened;
+		}
+	}
+
+}
@@ -0,0 +1,449 @@
+/**
+ * NotificationDispatcher.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+import uk.co.edgeorgedev.notifj.notification.metrics.NotificationMetrics;
+
+/**
+ * This class hands notifications to a {@link Notification} on a dedicated worker thread so that
+ * callers are never held up by the desktop backend.
+ *
+ * <p>Submitted notifications are held in a bounded queue. When the queue is full the
+ * {@link OverflowPolicy} given at construction decides what happens to the new notification.
+ *
+ * <p>Queued notifications are displayed highest {@link NotificationPriority} first, and in the order they were
+ * submitted within a priority. A waiting notification is treated as one level higher for every <tt>aging</tt>
+ * period it has been queued, so low priority notifications are still displayed during a flood of higher ones.
+ * {@link NotificationPriority#EMERGENCY} notifications take a fast lane ahead of everything else. The fast lane
+ * holds up to <tt>capacity</tt> notifications of its own, so a queue full of other notifications never holds them
+ * back; should the fast lane itself fill up, the overflow policy applies to them too, and <tt>DROP_OLDEST</tt>
+ * drops the oldest of them.
+ *
+ * <p>The worker thread is started on the first submission and is stopped by {@link #shutdown(long, TimeUnit)},
+ * which drains any notifications still queued.
+ *
+ * <p>By default the worker displays one notification at a time. With a <tt>concurrency</tt> greater than 1 it
+ * instead hands each notification to a thread of its own, so that many blocking backend calls - a GNTP round-trip
+ * or an AppleScript evaluation - are in flight at once, up to the concurrency. On Java 21 and later each call runs
+ * on a new virtual thread; on older JVMs a fixed pool of <tt>concurrency</tt> platform threads is used. The worker
+ * waits for a free slot before taking the next notification, so priorities are still honoured and the bounded
+ * queue still applies back-pressure. Notifications may then be displayed out of order, and the backend must
+ * be safe for concurrent use.
+ *
+ * <p>The queue depth after each submission, and every dropped notification, are recorded to the
+ * {@link MetricsRegistry} under the simple class name of the notification.
+ *
+ * @see     Notification#showAsync(String, String)
+ * @since   1.3
+ */
+public class NotificationDispatcher {
+
+	/**
+	 * The default number of notifications that may be queued
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The default time a queued notification waits before its priority is raised by a level
+	 */
+	public static final long DEFAULT_AGING_MILLIS = 1000;
+
+	/**
+	 * The default number of notifications displayed at once - one after another on the worker thread
+	 */
+	public static final int DEFAULT_CONCURRENCY = 1;
+
+	/**
+	 * The action taken when a notification is submitted to a full queue
+	 * @since 1.3
+	 */
+	public enum OverflowPolicy {
+		/** Wait until space becomes available in the queue */
+		BLOCK,
+		/** Discard the oldest queued notification of the lowest priority to make room, or the new notification should its priority be lower still */
+		DROP_OLDEST,
+		/** Discard the notification being submitted */
+		DROP_NEWEST,
+		/** Throw a <tt>NotificationException</tt> back to the caller */
+		FAIL_FAST
+	}
+
+	private static final long POLL_INTERVAL_MILLIS = 100;
+
+	private final Notification notification;
+	private final OverflowPolicy policy;
+	private final NotificationScheduler<DispatchTask> queue;
+	private final String metrics_source;
+	private final int concurrency;
+	private final Semaphore in_flight;
+
+	private ExecutorService executor;
+	private boolean virtual;
+	private Thread worker;
+	private volatile boolean running = true;
+
+	/**
+	 * Constructs a dispatcher with the default capacity that blocks callers when full
+	 * @param notification the notification used to display queued messages
+	 * @since 1.3
+	 */
+	public NotificationDispatcher(Notification notification) {
+		this(notification, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Constructs a dispatcher
+	 * @param notification the notification used to display queued messages
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the notification or policy are null or the capacity is less than 1
+	 * @since 1.3
+	 */
+	public NotificationDispatcher(Notification notification, int capacity, OverflowPolicy policy) {
+		this(notification, capacity, policy, DEFAULT_AGING_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructs a dispatcher
+	 * @param notification the notification used to display queued messages
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param aging the time a queued notification waits before its priority is raised by a level
+	 * @param unit the time unit of the <tt>aging</tt>
+	 * @throws IllegalArgumentException if the notification, policy or unit are null, the capacity is less than 1
+	 *         or the aging time is less than 1
+	 * @since 1.3
+	 */
+	public NotificationDispatcher(Notification notification, int capacity, OverflowPolicy policy, long aging, TimeUnit unit) {
+		this(notification, capacity, policy, aging, unit, DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * Constructs a dispatcher
+	 * @param notification the notification used to display queued messages
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param aging the time a queued notification waits before its priority is raised by a level
+	 * @param unit the time unit of the <tt>aging</tt>
+	 * @param concurrency the maximum number of notifications displayed at once - 1 to display them one after
+	 *        another on the worker thread
+	 * @throws IllegalArgumentException if the notification, policy or unit are null, the capacity is less than 1,
+	 *         the aging time is less than 1 or the concurrency is less than 1
+	 * @since 1.3
+	 */
+	public NotificationDispatcher(Notification notification, int capacity, OverflowPolicy policy, long aging, TimeUnit unit,
+			int concurrency) {
+		if(notification == null)
+			throw new IllegalArgumentException("Notification cannot be null");
+		if(policy == null || unit == null)
+			throw new IllegalArgumentException("Overflow policy and time unit cannot be null");
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity cannot be less than 1");
+		if(aging < 1)
+			throw new IllegalArgumentException("Aging time cannot be less than 1");
+		if(concurrency < 1)
+			throw new IllegalArgumentException("Concurrency cannot be less than 1");
+		this.notification = notification;
+		this.concurrency = concurrency;
+		this.in_flight = new Semaphore(concurrency);
+		this.policy = policy;
+		this.queue = new NotificationScheduler<DispatchTask>(capacity, capacity, aging, unit);
+		this.metrics_source = notification.getClass().getSimpleName();
+	}
+
+	/**
+	 * Queues a notification to be displayed on the worker thread
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed. Should the
+	 *         notification be dropped or fail, {@link Future#get()} throws an <tt>ExecutionException</tt>
+	 *         caused by a <tt>NotificationException</tt>.
+	 * @throws NotificationException if the dispatcher has been shut down, or the queue is full
+	 *         and the policy is {@link OverflowPolicy#FAIL_FAST}
+	 * @since 1.3
+	 */
+	public Future<Void> submit(String title, String message) throws NotificationException {
+		return submit(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Queues a notification to be displayed on the worker thread ahead of any queued notifications of a lower priority
+	 *
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @param priority the priority of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed. Should the
+	 *         notification be dropped or fail, {@link Future#get()} throws an <tt>ExecutionException</tt>
+	 *         caused by a <tt>NotificationException</tt>.
+	 * @throws NotificationException if the dispatcher has been shut down, or the queue is full
+	 *         and the policy is {@link OverflowPolicy#FAIL_FAST}
+	 * @throws IllegalArgumentException if the priority is null
+	 * @since 1.3
+	 */
+	public Future<Void> submit(String title, String message, NotificationPriority priority) throws NotificationException {
+		return submit(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Queues a notification to be displayed on the worker thread ahead of any queued notifications of a lower priority
+	 *
+	 * @param message the notification to display.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed. Should the
+	 *         notification be dropped or fail, {@link Future#get()} throws an <tt>ExecutionException</tt>
+	 *         caused by a <tt>NotificationException</tt>.
+	 * @throws NotificationException if the dispatcher has been shut down, or the queue is full
+	 *         and the policy is {@link OverflowPolicy#FAIL_FAST}
+	 * @throws IllegalArgumentException if the message is null
+	 * @since 1.3
+	 */
+	public Future<Void> submit(final NotificationMessage message) throws NotificationException {
+		if(message == null)
+			throw new IllegalArgumentException("Message cannot be null");
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				notification.show(message);
+				return null;
+			}
+		}, message.getPriority());
+	}
+
+	/*
+	 * Queue a unit of work according to the overflow policy
+	 */
+	private Future<Void> submit(Callable<Void> work, NotificationPriority priority) throws NotificationException {
+		if(!running)
+			throw new NotificationException("Dispatcher has been shut down");
+
+		DispatchTask task = new DispatchTask(work);
+		startWorker();
+
+		NotificationMetrics metrics = MetricsRegistry.get();
+		switch (policy) {
+		case BLOCK:
+			try {
+				queue.put(task, priority);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NotificationException("Interrupted waiting for space in the dispatch queue", e);
+			}
+			break;
+		case DROP_OLDEST:
+			while(!queue.offer(task, priority)){
+				DispatchTask oldest = queue.evict(priority);
+				metrics.recordDrop(metrics_source);
+				if(oldest == null){
+					task.fail(new NotificationException("Notification dropped - dispatch queue is full of higher priority notifications"));
+					break;
+				}
+				oldest.fail(new NotificationException("Notification dropped - dispatch queue is full"));
+			}
+			break;
+		case DROP_NEWEST:
+			if(!queue.offer(task, priority)){
+				metrics.recordDrop(metrics_source);
+				task.fail(new NotificationException("Notification dropped - dispatch queue is full"));
+			}
+			break;
+		case FAIL_FAST:
+			if(!queue.offer(task, priority)){
+				metrics.recordDrop(metrics_source);
+				throw new NotificationException("Dispatch queue is full");
+			}
+			break;
+		}
+
+		/*
+		 * Shut down while the notification was being queued - the worker may have exited and the queue been drained
+		 * already, so fail it unless the worker or shutdown() has taken it. Queuing before reading running orders
+		 * this against shutdown()
+		 */
+		if(!running && queue.remove(task))
+			task.fail(new NotificationException("Dispatcher was shut down before the notification was displayed"));
+		metrics.recordQueueDepth(metrics_source, queue.size());
+		return task;
+	}
+
+	/**
+	 * Get the number of notifications waiting to be displayed
+	 * @return the number of queued notifications
+	 * @since 1.3
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Get the maximum number of notifications displayed at once
+	 * @return the concurrency
+	 * @since 1.3
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Check if notifications are displayed on virtual threads
+	 * @return <tt>true</tt> if the concurrency is greater than 1 and the JVM supports virtual threads
+	 * @since 1.3
+	 */
+	public synchronized boolean isVirtual() {
+		return concurrency > 1 && (executor == null ? VirtualThreads.isSupported() : virtual);
+	}
+
+	/**
+	 * Get the policy applied when the queue is full
+	 * @return the overflow policy
+	 * @since 1.3
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Stops accepting notifications and waits for those already queued to be displayed.
+	 *
+	 * <p>Any notifications still queued once the timeout elapses are failed. Notifications already handed to
+	 * a thread of their own are given the rest of the timeout to finish, but are not interrupted.
+	 *
+	 * @param timeout the maximum time to wait for the queue to drain
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @throws InterruptedException if interrupted while waiting
+	 * @since 1.3
+	 */
+	public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Thread current;
+		ExecutorService calls;
+		synchronized (this) {
+			running = false;
+			current = worker;
+			calls = executor;
+		}
+
+		if(current != null)
+			TimeUnit.NANOSECONDS.timedJoin(current, Math.max(1, deadline - System.nanoTime()));
+		if(calls != null){
+			calls.shutdown();
+			calls.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+
+		List<DispatchTask> remaining = new ArrayList<DispatchTask>();
+		queue.drainTo(remaining);
+		for (DispatchTask task : remaining) {
+			task.fail(new NotificationException("Dispatcher was shut down before the notification was displayed"));
+		}
+	}
+
+	/*
+	 * Lazily start the worker thread
+	 */
+	private synchronized void startWorker() {
+		if(worker != null || !running)
+			return;
+
+		if(concurrency > 1)
+			startExecutor();
+		final ExecutorService calls = executor;
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(running || !queue.isEmpty()){
+					try {
+						if(calls == null){
+							DispatchTask task = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+							if(task != null)
+								task.run();
+						}else{
+							in_flight.acquire();
+							DispatchTask task = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+							if(task != null){
+								launch(calls, task);
+							}else{
+								in_flight.release();
+							}
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "NotifJ-Dispatcher");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/*
+	 * Create the threads that display notifications concurrently - virtual where the JVM supports them
+	 */
+	private void startExecutor() {
+		executor = VirtualThreads.newThreadPerTaskExecutor("NotifJ-Dispatcher-");
+		virtual = executor != null;
+		if(executor == null){
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "NotifJ-Dispatcher-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/*
+	 * Display a notification on a thread of its own, holding one of the in-flight permits until it is done
+	 */
+	private void launch(ExecutorService calls, final DispatchTask task) {
+		try {
+			calls.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						in_flight.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			in_flight.release();
+			task.fail(new NotificationException("Dispatcher was shut down before the notification was displayed", e));
+		}
+	}
+
+	/*
+	 * Queued unit of work that can be failed without being run
+	 */
+	private static class DispatchTask extends FutureTask<Void> {
+
+		DispatchTask(Callable<Void> work) {
+			super(work);
+		}
+
+		void fail(Throwable cause) {
+			setException(cause);
+		}
+	}
+
+}
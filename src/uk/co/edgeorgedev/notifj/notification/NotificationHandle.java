@@ -0,0 +1,309 @@
+/**
+ * NotificationHandle.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * A displayed notification that can be updated in place, e.g. to report progress, and dismissed.
+ *
+ * <p>Updates are throttled: at most one is pushed to the backend per <tt>min_interval</tt>. An update that arrives
+ * sooner is held back, replacing any update already held back, and pushed by a background thread once the interval
+ * has passed - so a tight loop of updates costs a bounded number of backend calls and the latest state is always
+ * displayed. Held back updates that fail are recorded as errors with the {@link MetricsRegistry}.
+ *
+ * <p>For example:
+ * <pre>
+ * NotificationHandle progress = notif.showUpdatable(new NotificationMessage("Deploying", "0%"));
+ * for (int done = 1; done &lt;= 100; done++) {
+ *     deployNext();
+ *     progress.update("Deploying", done + "%");
+ * }
+ * progress.dismiss();</pre>
+ *
+ * <p>This class is thread-safe.
+ *
+ * @see     Notification#showUpdatable(NotificationMessage)
+ * @since   1.3
+ */
+public abstract class NotificationHandle {
+
+	/**
+	 * The default minimum time between updates pushed to the backend, in milliseconds
+	 */
+	public static final long DEFAULT_MIN_INTERVAL_MILLIS = 250;
+
+	private static final String METRICS_SOURCE = NotificationHandle.class.getSimpleName();
+
+	private static final Object FLUSHER_LOCK = new Object();
+	private static ScheduledExecutorService flusher;
+
+	private final Object lock = new Object();
+	private final long min_interval_nanos;
+	private final Runnable flush_task = new Runnable() {
+		@Override
+		public void run() {
+			flushPending();
+		}
+	};
+
+	/*
+	 * Guarded by lock - the latest state, the state held back for the flusher, and when the last push began
+	 */
+	private NotificationMessage latest;
+	private NotificationMessage pending;
+	private long last_push;
+	private boolean pushing;
+	private boolean scheduled;
+	private boolean dismissed;
+	private long superseded;
+
+	/**
+	 * Constructs a handle that has not yet displayed anything - the first {@link #update(NotificationMessage)}
+	 * is pushed straight away
+	 * @param min_interval the minimum time between pushes
+	 * @param unit the time unit of the <tt>min_interval</tt>
+	 * @throws IllegalArgumentException if the interval is negative or the unit is null
+	 * @since 1.3
+	 */
+	protected NotificationHandle(long min_interval, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(min_interval < 0)
+			throw new IllegalArgumentException("Interval cannot be negative");
+		this.min_interval_nanos = unit.toNanos(min_interval);
+		this.last_push = System.nanoTime() - min_interval_nanos;
+	}
+
+	/**
+	 * Displays a state of the notification, replacing the state displayed before where the backend can
+	 * @param message the state to display
+	 * @throws NotificationException if the state cannot be displayed
+	 * @since 1.3
+	 */
+	protected abstract void push(NotificationMessage message) throws NotificationException;
+
+	/**
+	 * Removes the notification from the screen, where the backend can
+	 * @throws NotificationException if the notification cannot be removed
+	 * @since 1.3
+	 */
+	protected abstract void remove() throws NotificationException;
+
+	/**
+	 * Updates the notification
+	 *
+	 * <p>The update is pushed straight away, and any failure thrown, unless one was pushed within the minimum
+	 * interval, in which case it is held back and pushed later.
+	 *
+	 * @param message the new state of the notification
+	 * @throws NotificationException if the notification has been dismissed or the update is pushed and fails
+	 * @throws IllegalArgumentException if the message is null
+	 * @since 1.3
+	 */
+	public void update(NotificationMessage message) throws NotificationException {
+		if(message == null)
+			throw new IllegalArgumentException("Message cannot be null");
+		synchronized (lock) {
+			if(dismissed)
+				throw new NotificationException("Notification has been dismissed");
+			latest = message;
+			long now = System.nanoTime();
+			if(pushing || scheduled || now - last_push < min_interval_nanos){
+				if(pending != null)
+					superseded++;
+				pending = message;
+				schedule(now);
+				return;
+			}
+			pushing = true;
+			last_push = now;
+		}
+		deliver(message);
+	}
+
+	/**
+	 * Updates the title and message body of the notification, keeping its other settings
+	 * @param title the new title of the notification.
+	 * @param message the new message body of the notification.
+	 * @throws NotificationException if the notification has been dismissed or the update is pushed and fails
+	 * @since 1.3
+	 */
+	public void update(String title, String message) throws NotificationException {
+		NotificationMessage current = getMessage();
+		update(current == null ? new NotificationMessage(title, message) : current.toBuilder().title(title).message(message).build());
+	}
+
+	/**
+	 * Pushes any held back update straight away, waiting for an update being pushed by another thread first
+	 * @throws NotificationException if the held back update fails
+	 * @since 1.3
+	 */
+	public void flush() throws NotificationException {
+		NotificationMessage next;
+		synchronized (lock) {
+			awaitPush();
+			if(dismissed || pending == null)
+				return;
+			next = pending;
+			pending = null;
+			pushing = true;
+			last_push = System.nanoTime();
+		}
+		deliver(next);
+	}
+
+	/**
+	 * Removes the notification, discarding any held back update - further updates are refused
+	 *
+	 * <p>Backends that cannot remove a notification leave it to time out.
+	 *
+	 * @throws NotificationException if the notification cannot be removed
+	 * @since 1.3
+	 */
+	public void dismiss() throws NotificationException {
+		synchronized (lock) {
+			if(dismissed)
+				return;
+			dismissed = true;
+			pending = null;
+			awaitPush();
+		}
+		remove();
+	}
+
+	/**
+	 * Check if the notification has been dismissed
+	 * @return <tt>true</tt> if {@link #dismiss()} has been called and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public boolean isDismissed() {
+		synchronized (lock) {
+			return dismissed;
+		}
+	}
+
+	/**
+	 * Get the latest state of the notification, which may not yet have been pushed
+	 * @return the latest message - <tt>null</tt> if none has been given
+	 * @since 1.3
+	 */
+	public NotificationMessage getMessage() {
+		synchronized (lock) {
+			return latest;
+		}
+	}
+
+	/**
+	 * Get the number of updates that were replaced by a later update before being pushed
+	 * @return the number of updates never displayed
+	 * @since 1.3
+	 */
+	public long getSuperseded() {
+		synchronized (lock) {
+			return superseded;
+		}
+	}
+
+	/*
+	 * Push a state, then schedule anything held back meanwhile
+	 */
+	private void deliver(NotificationMessage message) throws NotificationException {
+		try {
+			push(message);
+		} finally {
+			synchronized (lock) {
+				pushing = false;
+				if(pending != null)
+					schedule(System.nanoTime());
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/*
+	 * Push the held back state once the interval has passed - run by the flusher
+	 */
+	private void flushPending() {
+		NotificationMessage next;
+		synchronized (lock) {
+			scheduled = false;
+			/* Should a push still be running, it schedules the held back state itself when done */
+			if(dismissed || pushing || pending == null)
+				return;
+			long now = System.nanoTime();
+			if(now - last_push < min_interval_nanos){
+				schedule(now);
+				return;
+			}
+			next = pending;
+			pending = null;
+			pushing = true;
+			last_push = now;
+		}
+		try {
+			deliver(next);
+		} catch (NotificationException e) {
+			// A held back update has no caller to report to
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+		} catch (RuntimeException e) {
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+		}
+	}
+
+	/*
+	 * Schedule the flusher for when the interval since the last push has passed - called holding the lock
+	 */
+	private void schedule(long now) {
+		if(scheduled || pushing)
+			return;
+		scheduled = true;
+		long delay = Math.max(0, last_push + min_interval_nanos - now);
+		flusher().schedule(flush_task, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * Wait for a push by another thread to finish - called holding the lock
+	 */
+	private void awaitPush() {
+		boolean interrupted = false;
+		while(pushing){
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/*
+	 * The thread shared by every handle that pushes held back updates, started on first use
+	 */
+	private static ScheduledExecutorService flusher() {
+		synchronized (FLUSHER_LOCK) {
+			if(flusher == null){
+				flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "NotifJ-Updates");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			return flusher;
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/**
+ * NotificationIcon.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable icon displayed with a notification: an icon or application name, an image file, an image URL
+ * or the bytes of an image.
+ *
+ * <p>Files, URLs and bytes are loaded through an {@link IconCache}, which decodes and shrinks large images once
+ * and shares the result between notifications with the same content. Names are passed to the backend as they are:
+ * Growl on OS X takes an application name and the freedesktop Notifications service an icon theme name.
+ *
+ * @see     NotificationMessage#getIcon()
+ * @since   1.3
+ */
+public final class NotificationIcon {
+
+	/**
+	 * Where an icon comes from
+	 * @since 1.3
+	 */
+	public enum Source {
+		/** An icon theme or application name */
+		NAME,
+		/** An image file */
+		FILE,
+		/** An image URL */
+		URL,
+		/** The bytes of an image */
+		BYTES
+	}
+
+	/* At least two characters, so that Windows drive letters are not taken as schemes */
+	private static final Pattern URL_SCHEME = Pattern.compile("[A-Za-z][A-Za-z0-9+.-]+:");
+
+	private final Source source;
+	private final String location;
+	private final byte[] bytes;
+	private volatile String digest;
+
+	private NotificationIcon(Source source, String location, byte[] bytes) {
+		this.source = source;
+		this.location = location;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Constructs an icon of a given name
+	 * @param name an icon theme name, e.g. <tt>dialog-information</tt>, or an application name, e.g. <tt>Script Editor</tt>
+	 * @return a new <tt>NotificationIcon</tt>
+	 * @throws IllegalArgumentException if the name is null
+	 * @since 1.3
+	 */
+	public static NotificationIcon named(String name) {
+		if(name == null)
+			throw new IllegalArgumentException("Icon name cannot be null");
+		return new NotificationIcon(Source.NAME, name, null);
+	}
+
+	/**
+	 * Constructs an icon from an image file, which is read when the icon is first displayed
+	 * @param file the image file, e.g. a PNG
+	 * @return a new <tt>NotificationIcon</tt>
+	 * @throws IllegalArgumentException if the file is null
+	 * @since 1.3
+	 */
+	public static NotificationIcon fromFile(File file) {
+		if(file == null)
+			throw new IllegalArgumentException("Icon file cannot be null");
+		return new NotificationIcon(Source.FILE, file.getAbsolutePath(), null);
+	}
+
+	/**
+	 * Constructs an icon from an image URL, which is read when the icon is first displayed
+	 * @param url the image URL
+	 * @return a new <tt>NotificationIcon</tt>
+	 * @throws IllegalArgumentException if the URL is null
+	 * @since 1.3
+	 */
+	public static NotificationIcon fromUrl(URL url) {
+		if(url == null)
+			throw new IllegalArgumentException("Icon URL cannot be null");
+		return new NotificationIcon(Source.URL, url.toString(), null);
+	}
+
+	/**
+	 * Constructs an icon from the bytes of an image
+	 * @param bytes the encoded image, e.g. a PNG - the array is copied
+	 * @return a new <tt>NotificationIcon</tt>
+	 * @throws IllegalArgumentException if the bytes are null or empty
+	 * @since 1.3
+	 */
+	public static NotificationIcon fromBytes(byte[] bytes) {
+		if(bytes == null || bytes.length == 0)
+			throw new IllegalArgumentException("Icon bytes cannot be empty");
+		return new NotificationIcon(Source.BYTES, null, bytes.clone());
+	}
+
+	/**
+	 * Constructs an icon from a name, file path or URL
+	 *
+	 * <p>Text starting with a URL scheme, e.g. <tt>file:</tt> or <tt>http:</tt>, is taken as a URL, an absolute path or
+	 * text containing a path separator as a file, and anything else as a name.
+	 *
+	 * @param icon an icon name, file path or URL
+	 * @return a new <tt>NotificationIcon</tt> - <tt>null</tt> if <tt>icon</tt> is null
+	 * @throws IllegalArgumentException if the text looks like a URL but is not valid
+	 * @since 1.3
+	 */
+	public static NotificationIcon of(String icon) {
+		if(icon == null)
+			return null;
+		if(URL_SCHEME.matcher(icon).lookingAt()){
+			try {
+				return fromUrl(new URL(icon));
+			} catch (MalformedURLException e) {
+				throw new IllegalArgumentException("Invalid icon URL: " + icon, e);
+			}
+		}
+		if(new File(icon).isAbsolute() || icon.indexOf('/') >= 0 || icon.indexOf(File.separatorChar) >= 0)
+			return fromFile(new File(icon));
+		return named(icon);
+	}
+
+	/**
+	 * Get where the icon comes from
+	 * @return the icon source
+	 * @since 1.3
+	 */
+	public Source getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the name, absolute file path or URL of the icon
+	 * @return the location - <tt>null</tt> for an icon made from bytes
+	 * @since 1.3
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * Get the bytes of an icon made from bytes
+	 * @return a copy of the image bytes - <tt>null</tt> for other icons
+	 * @since 1.3
+	 */
+	public byte[] getBytes() {
+		return bytes == null ? null : bytes.clone();
+	}
+
+	/*
+	 * The image bytes without copying, for the icon cache
+	 */
+	byte[] bytes() {
+		return bytes;
+	}
+
+	/*
+	 * The content hash of an icon made from bytes, computed once
+	 */
+	String digest() {
+		String hash = digest;
+		if(hash == null){
+			hash = IconCache.digest(bytes);
+			digest = hash;
+		}
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(this == other)
+			return true;
+		if(!(other instanceof NotificationIcon))
+			return false;
+		NotificationIcon that = (NotificationIcon) other;
+		return source == that.source && (location == null ? that.location == null : location.equals(that.location))
+				&& Arrays.equals(bytes, that.bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * source.hashCode() + (location == null ? 0 : location.hashCode())) + Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return "NotificationIcon[" + source + (location == null ? ", " + bytes.length + " bytes]" : ", " + location + "]");
+	}
+
+}
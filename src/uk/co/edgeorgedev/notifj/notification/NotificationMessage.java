@@ -0,0 +1,312 @@
+/**
+ * NotificationMessage.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.net.URL;
+
+/**
+ * An immutable notification: its title, message body, priority and any settings that override those of the
+ * {@link Notification} displaying it.
+ *
+ * <p>As a message cannot change once built, one instance can be shared between threads and cached, e.g. as a
+ * constant for a recurring alert. Settings that are not given - sticky, callback URL, icon and type - fall back to
+ * the displaying notification's own.
+ *
+ * <p>For example:
+ * <pre>
+ * NotificationMessage alert = NotificationMessage.builder()
+ *         .title("Build failed")
+ *         .message("3 tests failed")
+ *         .priority(NotificationPriority.HIGH)
+ *         .sticky(true)
+ *         .build();
+ * notif.show(alert);</pre>
+ *
+ * @see     Notification#show(NotificationMessage)
+ * @since   1.3
+ */
+public class NotificationMessage {
+
+	private final String title;
+	private final String message;
+	private final NotificationPriority priority;
+	private final Boolean sticky;
+	private final URL callback_url;
+	private final NotificationIcon icon;
+	private final String type;
+
+	/**
+	 * Constructs a <code>NotificationMessage</code> object of {@link NotificationPriority#NORMAL} priority.
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @since 1.3
+	 */
+	public NotificationMessage(String title, String message) {
+		this(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Constructs a <code>NotificationMessage</code> object.
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @param priority the priority of the notification.
+	 * @throws IllegalArgumentException if the priority is null
+	 * @since 1.3
+	 */
+	public NotificationMessage(String title, String message, NotificationPriority priority) {
+		this(title, message, priority, null, null, null, null);
+	}
+
+	private NotificationMessage(String title, String message, NotificationPriority priority, Boolean sticky,
+			URL callback_url, NotificationIcon icon, String type) {
+		if(priority == null)
+			throw new IllegalArgumentException("Priority cannot be null");
+		this.title = title;
+		this.message = message;
+		this.priority = priority;
+		this.sticky = sticky;
+		this.callback_url = callback_url;
+		this.icon = icon;
+		this.type = type;
+	}
+
+	/**
+	 * Constructs an empty builder
+	 * @return a new <tt>Builder</tt>
+	 * @since 1.3
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Constructs a builder holding the values of this message
+	 * @return a new <tt>Builder</tt>
+	 * @since 1.3
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		builder.title = title;
+		builder.message = message;
+		builder.priority = priority;
+		builder.sticky = sticky;
+		builder.callback_url = callback_url;
+		builder.icon = icon;
+		builder.type = type;
+		return builder;
+	}
+
+	/**
+	 * Get the title of the notification
+	 * @return the title
+	 * @since 1.3
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Get the message body of the notification
+	 * @return the message body
+	 * @since 1.3
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Get the priority of the notification
+	 * @return the priority
+	 * @since 1.3
+	 */
+	public NotificationPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Get whether the notification is displayed until dismissed
+	 * @return <tt>true</tt> or <tt>false</tt> - <tt>null</tt> if the displaying notification's setting applies
+	 * @since 1.3
+	 */
+	public Boolean getSticky() {
+		return sticky;
+	}
+
+	/**
+	 * Get the URL opened when the notification is clicked
+	 * @return the callback URL - <tt>null</tt> if the displaying notification's callback applies
+	 * @since 1.3
+	 */
+	public URL getCallbackUrl() {
+		return callback_url;
+	}
+
+	/**
+	 * Get the icon of the notification
+	 * @return the icon - <tt>null</tt> if the displaying notification's icon applies
+	 * @since 1.3
+	 */
+	public NotificationIcon getIcon() {
+		return icon;
+	}
+
+	/**
+	 * Get the notification type, e.g. a type registered with Growl
+	 * @return the type - <tt>null</tt> if the displaying notification's default type applies
+	 * @since 1.3
+	 */
+	public String getType() {
+		return type;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(this == other)
+			return true;
+		if(!(other instanceof NotificationMessage))
+			return false;
+		NotificationMessage that = (NotificationMessage) other;
+		return priority == that.priority && equal(title, that.title) && equal(message, that.message)
+				&& equal(sticky, that.sticky) && equal(callback_url == null ? null : callback_url.toString(),
+						that.callback_url == null ? null : that.callback_url.toString())
+				&& equal(icon, that.icon) && equal(type, that.type);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = priority.hashCode();
+		hash = 31 * hash + (title == null ? 0 : title.hashCode());
+		hash = 31 * hash + (message == null ? 0 : message.hashCode());
+		hash = 31 * hash + (sticky == null ? 0 : sticky.hashCode());
+		hash = 31 * hash + (callback_url == null ? 0 : callback_url.toString().hashCode());
+		hash = 31 * hash + (icon == null ? 0 : icon.hashCode());
+		return 31 * hash + (type == null ? 0 : type.hashCode());
+	}
+
+	@Override
+	public String toString() {
+		return "NotificationMessage[" + title + ": " + message + "]";
+	}
+
+	private static boolean equal(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+	/**
+	 * Builds {@link NotificationMessage} objects.
+	 *
+	 * <p>A builder may be reused: each call to {@link #build()} returns a new message holding the values set so far.
+	 * Builders are not safe for use by several threads at once; the messages they build are.
+	 *
+	 * @since 1.3
+	 */
+	public static class Builder {
+
+		private String title;
+		private String message;
+		private NotificationPriority priority = NotificationPriority.NORMAL;
+		private Boolean sticky;
+		private URL callback_url;
+		private NotificationIcon icon;
+		private String type;
+
+		private Builder() {}
+
+		/**
+		 * Sets the title
+		 * @param title the title of the notification.
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder title(String title) {
+			this.title = title;
+			return this;
+		}
+
+		/**
+		 * Sets the message body
+		 * @param message the message body of the notification.
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder message(String message) {
+			this.message = message;
+			return this;
+		}
+
+		/**
+		 * Sets the priority - {@link NotificationPriority#NORMAL} by default
+		 * @param priority the priority of the notification.
+		 * @throws IllegalArgumentException if the priority is null
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder priority(NotificationPriority priority) {
+			if(priority == null)
+				throw new IllegalArgumentException("Priority cannot be null");
+			this.priority = priority;
+			return this;
+		}
+
+		/**
+		 * Sets whether the notification is displayed until dismissed
+		 * @param sticky <tt>true</tt> if the notification is sticky and <tt>false</tt> otherwise.
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder sticky(boolean sticky) {
+			this.sticky = sticky;
+			return this;
+		}
+
+		/**
+		 * Sets the URL opened when the notification is clicked
+		 * @param callback_url the callback URL - <tt>null</tt> for the displaying notification's callback
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder callbackUrl(URL callback_url) {
+			this.callback_url = callback_url;
+			return this;
+		}
+
+		/**
+		 * Sets the icon
+		 * @param icon an icon name, file path or URL - <tt>null</tt> for the displaying notification's icon
+		 * @return the modified <tt>Builder</tt> object
+		 * @throws IllegalArgumentException if the icon looks like a URL but is not valid
+		 * @see NotificationIcon#of(String)
+		 */
+		public Builder icon(String icon) {
+			this.icon = NotificationIcon.of(icon);
+			return this;
+		}
+
+		/**
+		 * Sets the icon, e.g. one made from the bytes of an image
+		 * @param icon the icon - <tt>null</tt> for the displaying notification's icon
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder icon(NotificationIcon icon) {
+			this.icon = icon;
+			return this;
+		}
+
+		/**
+		 * Sets the notification type, which must have been declared with the displaying notification
+		 * @param type the type - <tt>null</tt> for the displaying notification's default type
+		 * @return the modified <tt>Builder</tt> object
+		 */
+		public Builder type(String type) {
+			this.type = type;
+			return this;
+		}
+
+		/**
+		 * Builds a message from the values set so far
+		 * @return a new <tt>NotificationMessage</tt>
+		 */
+		public NotificationMessage build() {
+			return new NotificationMessage(title, message, priority, sticky, callback_url, icon, type);
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * NotificationPriority.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+/**
+ * The importance of a notification, using the GNTP priority levels of -2 to 2.
+ *
+ * <p>Growl on both Windows and OS X takes the level as it is; the freedesktop Notifications service
+ * maps it to an urgency of low, normal or critical. Queued notifications of a higher priority are
+ * displayed first, and {@link #EMERGENCY} notifications skip coalescing and rate limits altogether.
+ *
+ * @see     NotificationDispatcher
+ * @since   1.3
+ */
+public enum NotificationPriority {
+
+	/** GNTP priority -2 */
+	VERY_LOW(-2),
+	/** GNTP priority -1 */
+	MODERATE(-1),
+	/** GNTP priority 0, used when no priority is given */
+	NORMAL(0),
+	/** GNTP priority 1 */
+	HIGH(1),
+	/** GNTP priority 2, for critical alerts */
+	EMERGENCY(2);
+
+	private final int value;
+
+	private NotificationPriority(int value) {
+		this.value = value;
+	}
+
+	/**
+	 * Get the GNTP priority level
+	 * @return the level, from -2 to 2
+	 * @since 1.3
+	 */
+	public int getValue() {
+		return value;
+	}
+
+	/**
+	 * Get the priority with a GNTP priority level
+	 * @param value the level, from -2 to 2
+	 * @return the priority
+	 * @throws IllegalArgumentException if the level is outside -2 to 2
+	 * @since 1.3
+	 */
+	public static NotificationPriority valueOf(int value) {
+		if(value < VERY_LOW.value || value > EMERGENCY.value)
+			throw new IllegalArgumentException("Priority must be between -2 and 2");
+		return values()[value - VERY_LOW.value];
+	}
+
+}
@@ -0,0 +1,293 @@
+/**
+ * NotificationRateLimiter.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * This class limits the rate at which notifications are displayed, per application and per notification type.
+ *
+ * <p>Each limit is a token bucket that refills at a fixed rate up to a maximum burst. Buckets are
+ * implemented with a single compare-and-set on a timestamp, so admitting a notification takes no locks.
+ * A notification must be admitted by both its application's and its type's bucket, where configured.
+ *
+ * <p>What happens to a notification that exceeds a limit is decided by the {@link OverflowAction}. Dropped
+ * notifications are also recorded to the {@link MetricsRegistry}.
+ *
+ * @see     NotificationSink
+ * @since   1.3
+ */
+public class NotificationRateLimiter {
+
+	/**
+	 * The default longest time a notification is delayed by {@link OverflowAction#DELAY}
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 5000;
+
+	private static final String METRICS_SOURCE = NotificationRateLimiter.class.getSimpleName();
+
+	/**
+	 * The action taken when a notification exceeds a limit
+	 * @since 1.3
+	 */
+	public enum OverflowAction {
+		/** Wait until the notification is within the limit, dropping it should the wait exceed the maximum delay */
+		DELAY,
+		/** Discard the notification */
+		DROP,
+		/** Discard the notification and mention it in the next notification of the same type to be displayed */
+		SUMMARIZE
+	}
+
+	private final NotificationSink sink;
+	private final OverflowAction action;
+	private final ConcurrentMap<String, TokenBucket> application_limits = new ConcurrentHashMap<String, TokenBucket>();
+	private final ConcurrentMap<String, TokenBucket> type_limits = new ConcurrentHashMap<String, TokenBucket>();
+	private final ConcurrentMap<String, AtomicInteger> summarised = new ConcurrentHashMap<String, AtomicInteger>();
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong delayed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile long max_delay_nanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS);
+
+	/**
+	 * Constructs a rate limiter with no limits
+	 * @param sink receives the admitted notifications
+	 * @param action the action taken when a notification exceeds a limit
+	 * @throws IllegalArgumentException if either argument is null
+	 * @since 1.3
+	 */
+	public NotificationRateLimiter(NotificationSink sink, OverflowAction action) {
+		if(sink == null || action == null)
+			throw new IllegalArgumentException("Sink and overflow action cannot be null");
+		this.sink = sink;
+		this.action = action;
+	}
+
+	/**
+	 * Limits the rate of notifications from an application
+	 * @param application_name the application name
+	 * @param per_second the sustained number of notifications per second
+	 * @param burst the number of notifications that may be displayed at once after a quiet period
+	 * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+	 * @since 1.3
+	 * @return the modified <tt>NotificationRateLimiter</tt> object
+	 */
+	public NotificationRateLimiter limitApplication(String application_name, double per_second, int burst) {
+		application_limits.put(String.valueOf(application_name), new TokenBucket(per_second, burst));
+		return this;
+	}
+
+	/**
+	 * Limits the rate of notifications of a notification type
+	 * @param notification_type the notification type
+	 * @param per_second the sustained number of notifications per second
+	 * @param burst the number of notifications that may be displayed at once after a quiet period
+	 * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+	 * @since 1.3
+	 * @return the modified <tt>NotificationRateLimiter</tt> object
+	 */
+	public NotificationRateLimiter limitType(String notification_type, double per_second, int burst) {
+		type_limits.put(String.valueOf(notification_type), new TokenBucket(per_second, burst));
+		return this;
+	}
+
+	/**
+	 * Sets the longest time a notification is delayed by {@link OverflowAction#DELAY}
+	 * @param max_delay the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>max_delay</tt>
+	 * @throws IllegalArgumentException if the delay is negative or the unit is null
+	 * @since 1.3
+	 * @return the modified <tt>NotificationRateLimiter</tt> object
+	 */
+	public NotificationRateLimiter maxDelay(long max_delay, TimeUnit unit) {
+		if(max_delay < 0)
+			throw new IllegalArgumentException("Maximum delay cannot be negative");
+		if(unit == null)
+			throw new IllegalArgumentException("Time unit cannot be null");
+		this.max_delay_nanos = unit.toNanos(max_delay);
+		return this;
+	}
+
+	/**
+	 * Passes a notification to the sink if it is within the limits of its application and type
+	 *
+	 * @param application_name the application sending the notification
+	 * @param notification_type the type of the notification
+	 * @param title the title of the notification.
+	 * @param message the message body of the notification.
+	 * @return <tt>true</tt> if the notification was passed to the sink and <tt>false</tt> if it was dropped
+	 * @throws NotificationException if the sink fails, or the thread is interrupted while delayed
+	 * @since 1.3
+	 */
+	public boolean show(String application_name, String notification_type, String title, String message) throws NotificationException {
+		return show(application_name, notification_type, new NotificationMessage(title, message));
+	}
+
+	/**
+	 * Passes a notification to the sink if it is within the limits of its application and type
+	 *
+	 * @param application_name the application sending the notification
+	 * @param notification_type the type of the notification
+	 * @param message the notification.
+	 * @return <tt>true</tt> if the notification was passed to the sink and <tt>false</tt> if it was dropped
+	 * @throws NotificationException if the sink fails, or the thread is interrupted while delayed
+	 * @since 1.3
+	 */
+	public boolean show(String application_name, String notification_type, NotificationMessage message) throws NotificationException {
+		TokenBucket application = application_limits.get(String.valueOf(application_name));
+		TokenBucket type = type_limits.get(String.valueOf(notification_type));
+
+		/* Reserve from both buckets before waiting, giving the type's token back if the application refuses */
+		long type_wait = reserve(type);
+		if(type_wait < 0)
+			return drop(notification_type);
+		long application_wait = reserve(application);
+		if(application_wait < 0){
+			if(type != null)
+				type.release();
+			return drop(notification_type);
+		}
+		await(Math.max(type_wait, application_wait));
+
+		admitted.incrementAndGet();
+		if(action == OverflowAction.SUMMARIZE){
+			AtomicInteger count = summarised.get(String.valueOf(notification_type));
+			int suppressed = count == null ? 0 : count.getAndSet(0);
+			if(suppressed > 0)
+				message = message.toBuilder()
+						.message(message.getMessage() + "\n(" + suppressed + " similar " + (suppressed == 1 ? "notification" : "notifications") + " suppressed)")
+						.build();
+		}
+		sink.show(message);
+		return true;
+	}
+
+	/**
+	 * Get the number of notifications passed to the sink
+	 * @return the number of admitted notifications
+	 * @since 1.3
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * Get the number of notifications that waited before being admitted
+	 * @return the number of delayed notifications
+	 * @since 1.3
+	 */
+	public long getDelayed() {
+		return delayed.get();
+	}
+
+	/**
+	 * Get the number of notifications that were not passed to the sink
+	 * @return the number of dropped notifications
+	 * @since 1.3
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/*
+	 * Take a token from the bucket, reserving a later one if the action allows it
+	 * - returns the nanoseconds to wait for it, or -1 if refused
+	 */
+	private long reserve(TokenBucket bucket) {
+		if(bucket == null)
+			return 0;
+		return bucket.tryAcquire(action == OverflowAction.DELAY ? max_delay_nanos : 0);
+	}
+
+	/*
+	 * Wait for the reserved tokens
+	 */
+	private void await(long wait) throws NotificationException {
+		if(wait <= 0)
+			return;
+
+		delayed.incrementAndGet();
+		try {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted while delayed by rate limit", e);
+		}
+	}
+
+	private boolean drop(String notification_type) {
+		dropped.incrementAndGet();
+		MetricsRegistry.get().recordDrop(METRICS_SOURCE);
+		if(action == OverflowAction.SUMMARIZE)
+			counter(notification_type).incrementAndGet();
+		return false;
+	}
+
+	private AtomicInteger counter(String notification_type) {
+		String key = String.valueOf(notification_type);
+		AtomicInteger count = summarised.get(key);
+		if(count == null){
+			AtomicInteger created = new AtomicInteger();
+			count = summarised.putIfAbsent(key, created);
+			if(count == null)
+				count = created;
+		}
+		return count;
+	}
+
+	/*
+	 * Lock-free token bucket using the generic cell rate algorithm - the state is the time
+	 * at which the bucket will next be full, advanced by one interval per token taken
+	 */
+	private static class TokenBucket {
+
+		private final long interval_nanos;
+		private final long capacity_nanos;
+		private final AtomicLong full_at = new AtomicLong(System.nanoTime());
+
+		TokenBucket(double per_second, int burst) {
+			if(!(per_second > 0))
+				throw new IllegalArgumentException("Rate must be positive");
+			if(burst < 1)
+				throw new IllegalArgumentException("Burst cannot be less than 1");
+			this.interval_nanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / per_second));
+			this.capacity_nanos = interval_nanos * burst;
+		}
+
+		/*
+		 * Take a token, reserving one up to max_wait nanoseconds in the future if none is available
+		 * - returns 0 if taken now, the nanoseconds to wait if reserved, or -1 if refused
+		 */
+		long tryAcquire(long max_wait) {
+			while(true){
+				long now = System.nanoTime();
+				long current = full_at.get();
+				long next = Math.max(current, now) + interval_nanos;
+				long wait = next - now - capacity_nanos;
+				if(wait > max_wait)
+					return -1;
+				if(full_at.compareAndSet(current, next))
+					return Math.max(0, wait);
+			}
+		}
+
+		/*
+		 * Give back a token taken by tryAcquire
+		 */
+		void release() {
+			full_at.addAndGet(-interval_nanos);
+		}
+	}
+
+}
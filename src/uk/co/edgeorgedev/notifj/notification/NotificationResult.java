@@ -0,0 +1,81 @@
+/**
+ * NotificationResult.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * The outcome of displaying a single {@link NotificationMessage}.
+ *
+ * @see     Notification#showAll(java.util.Collection)
+ * @since   1.3
+ */
+public class NotificationResult {
+
+	private final NotificationMessage message;
+	private final NotificationException cause;
+
+	private NotificationResult(NotificationMessage message, NotificationException cause) {
+		this.message = message;
+		this.cause = cause;
+	}
+
+	/**
+	 * Constructs the result of a notification that was displayed
+	 * @param message the notification that was displayed
+	 * @return a successful <tt>NotificationResult</tt>
+	 * @since 1.3
+	 */
+	public static NotificationResult success(NotificationMessage message) {
+		return new NotificationResult(message, null);
+	}
+
+	/**
+	 * Constructs the result of a notification that could not be displayed
+	 * @param message the notification that failed
+	 * @param cause the reason the notification failed
+	 * @return a failed <tt>NotificationResult</tt>
+	 * @since 1.3
+	 */
+	public static NotificationResult failure(NotificationMessage message, NotificationException cause) {
+		if(cause == null)
+			throw new IllegalArgumentException("Cause cannot be null");
+		return new NotificationResult(message, cause);
+	}
+
+	/**
+	 * Get the notification this result is for
+	 * @return the notification
+	 * @since 1.3
+	 */
+	public NotificationMessage getMessage() {
+		return message;
+	}
+
+	/**
+	 * Check if the notification was displayed
+	 * @return <tt>true</tt> if the notification was displayed and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public boolean isSuccess() {
+		return cause == null;
+	}
+
+	/**
+	 * Get the reason the notification was not displayed
+	 * @return the cause of failure - <tt>null</tt> if the notification was displayed
+	 * @since 1.3
+	 */
+	public NotificationException getCause() {
+		return cause;
+	}
+
+	@Override
+	public String toString() {
+		return "NotificationResult[" + message + (cause == null ? ", displayed]" : ", failed: " + cause.getMessage() + "]");
+	}
+
+}
@@ -0,0 +1,264 @@
+/**
+ * NotificationScheduler.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue that hands out the highest priority item first.
+ *
+ * <p>Each priority has its own first-in first-out lane. An item's priority rises by one level for every
+ * <tt>aging</tt> period it has waited, so a steady stream of high priority items cannot hold back lower ones
+ * indefinitely. {@link NotificationPriority#EMERGENCY} items use a separate fast lane that is always taken
+ * first and has a capacity of its own, so a queue full of other items never refuses or blocks them.
+ *
+ * @see     NotificationDispatcher
+ * @since   1.3
+ */
+final class NotificationScheduler<T> {
+
+	private static final int FAST_LANE = NotificationPriority.EMERGENCY.ordinal();
+
+	private final int capacity;
+	private final int fast_capacity;
+	private final long aging_nanos;
+	private final List<ArrayDeque<Entry<T>>> lanes;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition not_empty = lock.newCondition();
+	private final Condition not_full = lock.newCondition();
+	private final Condition fast_not_full = lock.newCondition();
+
+	/*
+	 * The number of items outside the fast lane
+	 */
+	private int queued;
+
+	/*
+	 * The number of items in the fast lane
+	 */
+	private int fast_queued;
+
+	/*
+	 * The number of items in every lane - written under the lock, read without it
+	 */
+	private volatile int count;
+
+	NotificationScheduler(int capacity, int fast_capacity, long aging, TimeUnit unit) {
+		this.capacity = capacity;
+		this.fast_capacity = fast_capacity;
+		this.aging_nanos = Math.max(1, unit.toNanos(aging));
+		this.lanes = new ArrayList<ArrayDeque<Entry<T>>>(NotificationPriority.values().length);
+		for (int i = 0; i < NotificationPriority.values().length; i++) {
+			lanes.add(new ArrayDeque<Entry<T>>());
+		}
+	}
+
+	/*
+	 * Queue an item if there is room
+	 */
+	boolean offer(T item, NotificationPriority priority) {
+		lock.lock();
+		try {
+			if(isFull(priority))
+				return false;
+			enqueue(item, priority);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Queue an item, waiting for room if necessary
+	 */
+	void put(T item, NotificationPriority priority) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(isFull(priority)){
+				if(priority.ordinal() == FAST_LANE){
+					fast_not_full.await();
+				}else{
+					not_full.await();
+				}
+			}
+			enqueue(item, priority);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Remove the oldest item of the lowest queued priority, provided it is no higher than the given priority - for
+	 * the fast lane, which only has room for its own items, the oldest item in it
+	 */
+	T evict(NotificationPriority priority) {
+		lock.lock();
+		try {
+			if(priority.ordinal() == FAST_LANE){
+				Entry<T> entry = pollFast();
+				return entry == null ? null : entry.item;
+			}
+			for (int i = 0; i <= priority.ordinal(); i++) {
+				Entry<T> entry = lanes.get(i).pollFirst();
+				if(entry != null){
+					queued--;
+					count--;
+					not_full.signal();
+					return entry.item;
+				}
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Remove an item should it still be queued - false if it has already been taken
+	 */
+	boolean remove(T item) {
+		lock.lock();
+		try {
+			for (int i = 0; i < lanes.size(); i++) {
+				Iterator<Entry<T>> entries = lanes.get(i).iterator();
+				while(entries.hasNext()){
+					if(entries.next().item != item)
+						continue;
+					entries.remove();
+					if(i == FAST_LANE){
+						fast_queued--;
+						fast_not_full.signal();
+					}else{
+						queued--;
+						not_full.signal();
+					}
+					count--;
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Take the next item, waiting up to the timeout for one to be queued
+	 */
+	T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(true){
+				Entry<T> entry = next();
+				if(entry != null)
+					return entry.item;
+				if(remaining <= 0)
+					return null;
+				remaining = not_empty.awaitNanos(remaining);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Remove every queued item, in the order they would have been taken
+	 */
+	void drainTo(Collection<? super T> items) {
+		lock.lock();
+		try {
+			Entry<T> entry;
+			while((entry = next()) != null){
+				items.add(entry.item);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		return count;
+	}
+
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+	private boolean isFull(NotificationPriority priority) {
+		return priority.ordinal() == FAST_LANE ? fast_queued >= fast_capacity : queued >= capacity;
+	}
+
+	private void enqueue(T item, NotificationPriority priority) {
+		lanes.get(priority.ordinal()).addLast(new Entry<T>(item, System.nanoTime()));
+		if(priority.ordinal() == FAST_LANE){
+			fast_queued++;
+		}else{
+			queued++;
+		}
+		count++;
+		not_empty.signal();
+	}
+
+	private Entry<T> pollFast() {
+		Entry<T> fast = lanes.get(FAST_LANE).pollFirst();
+		if(fast != null){
+			fast_queued--;
+			count--;
+			fast_not_full.signal();
+		}
+		return fast;
+	}
+
+	/*
+	 * Remove the head of the fast lane, otherwise the lane head with the highest aged priority - ties go to the higher lane
+	 */
+	private Entry<T> next() {
+		Entry<T> fast = pollFast();
+		if(fast != null)
+			return fast;
+
+		long now = System.nanoTime();
+		int best = -1;
+		long best_level = Long.MIN_VALUE;
+		for (int i = FAST_LANE - 1; i >= 0; i--) {
+			Entry<T> head = lanes.get(i).peekFirst();
+			if(head == null)
+				continue;
+			long level = i + (now - head.queued_at) / aging_nanos;
+			if(level > best_level){
+				best = i;
+				best_level = level;
+			}
+		}
+		if(best < 0)
+			return null;
+
+		queued--;
+		count--;
+		not_full.signal();
+		return lanes.get(best).pollFirst();
+	}
+
+	private static class Entry<T> {
+
+		final T item;
+		final long queued_at;
+
+		Entry(T item, long queued_at) {
+			this.item = item;
+			this.queued_at = queued_at;
+		}
+	}
+
+}
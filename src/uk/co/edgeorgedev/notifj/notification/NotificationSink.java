@@ -0,0 +1,25 @@
+/**
+ * NotificationSink.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Receives the notifications passed on by a processing stage such as a {@link NotificationCoalescer}.
+ *
+ * @since   1.3
+ */
+public interface NotificationSink {
+
+	/**
+	 * Displays a notification, or passes it on to the next stage
+	 * @param message the notification.
+	 * @throws NotificationException if the notification cannot be displayed
+	 * @since 1.3
+	 */
+	public abstract void show(NotificationMessage message) throws NotificationException;
+
+}
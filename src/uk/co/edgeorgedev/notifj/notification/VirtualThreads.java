@@ -0,0 +1,89 @@
+/**
+ * VirtualThreads.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that start a virtual thread per task, where the JVM has them.
+ *
+ * <p>NotifJ is built for Java 7, so the Java 21 API is called reflectively. The lookup is made once; on older
+ * JVMs, or a Java 19 or 20 JVM without preview features enabled, no executor is available.
+ *
+ * @see     NotificationDispatcher
+ * @since   1.3
+ */
+final class VirtualThreads {
+
+	private static final Factory FACTORY = Factory.lookup();
+
+	private VirtualThreads() {}
+
+	/*
+	 * Whether virtual threads can be created
+	 */
+	static boolean isSupported() {
+		return FACTORY != null;
+	}
+
+	/*
+	 * An executor that runs each task on a new virtual thread with the given name prefix, or null if unsupported
+	 */
+	static ExecutorService newThreadPerTaskExecutor(String name_prefix) {
+		return FACTORY == null ? null : FACTORY.newExecutor(name_prefix);
+	}
+
+	/*
+	 * The reflected Thread.Builder.OfVirtual and Executors.newThreadPerTaskExecutor methods
+	 */
+	private static class Factory {
+
+		private final Method of_virtual;
+		private final Method name;
+		private final Method factory;
+		private final Method new_executor;
+
+		private Factory(Method of_virtual, Method name, Method factory, Method new_executor) {
+			this.of_virtual = of_virtual;
+			this.name = name;
+			this.factory = factory;
+			this.new_executor = new_executor;
+		}
+
+		static Factory lookup() {
+			try {
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				Factory found = new Factory(Thread.class.getMethod("ofVirtual"),
+						builder.getMethod("name", String.class, long.class),
+						builder.getMethod("factory"),
+						Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class));
+				/* Preview releases refuse to create virtual threads unless preview features are enabled */
+				ExecutorService probe = found.newExecutor("NotifJ-Probe-");
+				if(probe == null)
+					return null;
+				probe.shutdown();
+				return found;
+			} catch (Exception e) {
+				return null;
+			} catch (LinkageError e) {
+				return null;
+			}
+		}
+
+		ExecutorService newExecutor(String name_prefix) {
+			try {
+				Object builder = name.invoke(of_virtual.invoke(null), name_prefix, 0L);
+				return (ExecutorService) new_executor.invoke(null, factory.invoke(builder));
+			} catch (Exception e) {
+				return null;
+			}
+		}
+	}
+
+}
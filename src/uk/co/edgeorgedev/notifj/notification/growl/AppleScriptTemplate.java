@@ -0,0 +1,163 @@
+/**
+ * AppleScriptTemplate.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * An AppleScript handler that is compiled once and then called with different arguments.
+ *
+ * <p>When the script engine implements {@link Compilable}, the handler is compiled on first use and
+ * each call binds its arguments through the engine's <tt>javax_script_function</tt> and
+ * {@link ScriptEngine#ARGV} attributes, so the source is never parsed again.
+ *
+ * <p>Otherwise the handler source is kept and a single call line, with each argument rendered as an
+ * escaped AppleScript literal, is appended to it for every evaluation.
+ *
+ * <p>Compilation times, and compilations that fail, are recorded to the {@link MetricsRegistry}.
+ *
+ * @see     OSXGrowlNotification
+ * @since   1.3
+ */
+class AppleScriptTemplate {
+
+	/*
+	 * Context attribute naming the handler to call in a compiled script
+	 */
+	static final String FUNCTION_ATTRIBUTE = "javax_script_function";
+
+	private static final String METRICS_SOURCE = AppleScriptTemplate.class.getSimpleName();
+
+	private final String handler;
+	private final String source;
+
+	private ScriptEngine compiled_for;
+	private CompiledScript compiled;
+
+	/*
+	 * handler - the name of the handler defined by source
+	 */
+	AppleScriptTemplate(String handler, String source) {
+		this.handler = handler;
+		this.source = source;
+	}
+
+	/*
+	 * Call the handler with the given arguments
+	 * - callers must serialise access to the engine
+	 */
+	Object eval(ScriptEngine engine, Object... args) throws ScriptException {
+		CompiledScript script = compile(engine);
+		if(script == null)
+			return engine.eval(source + "\n" + call(args), engine.getContext());
+
+		Bindings bindings = engine.createBindings();
+		bindings.put(FUNCTION_ATTRIBUTE, handler);
+		bindings.put(ScriptEngine.ARGV, arguments(args));
+
+		ScriptContext context = new SimpleScriptContext();
+		context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+		return script.eval(context);
+	}
+
+	/*
+	 * Compile the handler once per engine, or return null if the engine cannot compile
+	 */
+	private CompiledScript compile(ScriptEngine engine) {
+		if(engine != compiled_for){
+			compiled_for = engine;
+			compiled = null;
+			if(engine instanceof Compilable){
+				long started = System.nanoTime();
+				try {
+					compiled = ((Compilable) engine).compile(source);
+					MetricsRegistry.get().recordCompile(METRICS_SOURCE, System.nanoTime() - started);
+				} catch (ScriptException e) {
+					// Fall back to evaluating the source for this engine
+					MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+				}
+			}
+		}
+		return compiled;
+	}
+
+	/*
+	 * Render a call to the handler with literal arguments
+	 */
+	private String call(Object... args) {
+		StringBuilder builder = new StringBuilder("return ").append(handler).append("(");
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			literal(builder, args[i]);
+		}
+		return builder.append(")").toString();
+	}
+
+	/*
+	 * Convert array arguments to lists for the script engine
+	 */
+	private static List<Object> arguments(Object... args) {
+		List<Object> arguments = new ArrayList<Object>(args.length);
+		for (Object arg : args) {
+			arguments.add(arg instanceof Object[] ? Arrays.asList((Object[]) arg) : arg);
+		}
+		return arguments;
+	}
+
+	/*
+	 * Append a value as an AppleScript literal
+	 */
+	private static void literal(StringBuilder builder, Object value) {
+		if (value instanceof Boolean || value instanceof Number) {
+			builder.append(value);
+		} else if (value instanceof Object[] || value instanceof Collection) {
+			Collection<?> values = value instanceof Object[] ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+			builder.append("{");
+			boolean first = true;
+			for (Object item : values) {
+				if (!first) {
+					builder.append(", ");
+				}
+				literal(builder, item);
+				first = false;
+			}
+			builder.append("}");
+		} else {
+			builder.append(quote(value == null ? "" : value.toString()));
+		}
+	}
+
+	/*
+	 * Quote text as an AppleScript string literal, escaping backslashes and double quotes
+	 */
+	static String quote(String text) {
+		StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\');
+			}
+			builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * FanOutResult.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * The outcome of sending a single {@link NotificationMessage} to every host of a {@link GntpFanOutNotification}.
+ *
+ * @see     GntpFanOutNotification#deliver(NotificationMessage)
+ * @since   1.3
+ */
+public class FanOutResult {
+
+	private final NotificationMessage message;
+	private final List<InetSocketAddress> delivered;
+	private final Map<InetSocketAddress, NotificationException> failures;
+
+	FanOutResult(NotificationMessage message, List<InetSocketAddress> delivered, Map<InetSocketAddress, NotificationException> failures) {
+		this.message = message;
+		this.delivered = Collections.unmodifiableList(delivered);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * Get the notification this result is for
+	 * @return the notification
+	 * @since 1.3
+	 */
+	public NotificationMessage getMessage() {
+		return message;
+	}
+
+	/**
+	 * Get the hosts that displayed the notification
+	 * @return an unmodifiable list of host addresses, in the order the hosts were given
+	 * @since 1.3
+	 */
+	public List<InetSocketAddress> getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * Get the hosts that did not display the notification and why
+	 * @return an unmodifiable map of host addresses to the cause of failure, in the order the hosts were given
+	 * @since 1.3
+	 */
+	public Map<InetSocketAddress, NotificationException> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Check if at least one host displayed the notification
+	 * @return <tt>true</tt> if the notification was delivered anywhere and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public boolean isSuccess() {
+		return !delivered.isEmpty();
+	}
+
+	/**
+	 * Check if every host displayed the notification
+	 * @return <tt>true</tt> if no host failed and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public boolean isComplete() {
+		return failures.isEmpty();
+	}
+
+	/*
+	 * Any one of the failures, used as the cause when no host displayed the notification
+	 */
+	NotificationException getCause() {
+		return failures.isEmpty() ? null : failures.values().iterator().next();
+	}
+
+	@Override
+	public String toString() {
+		return "FanOutResult[" + message + ", " + delivered.size() + " delivered, " + failures.size() + " failed]";
+	}
+
+}
@@ -0,0 +1,469 @@
+/**
+ * GntpConnectionPool.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import uk.co.edgeorgedev.notifj.notification.IconCache;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+import com.google.code.jgntp.Gntp;
+import com.google.code.jgntp.GntpApplicationInfo;
+import com.google.code.jgntp.GntpClient;
+import com.google.code.jgntp.GntpErrorStatus;
+import com.google.code.jgntp.GntpListener;
+import com.google.code.jgntp.GntpNotification;
+import com.google.code.jgntp.GntpNotificationBuilder;
+import com.google.code.jgntp.GntpNotificationInfo;
+
+/**
+ * A fixed-size pool of registered jgntp clients that lets concurrent notifications be sent in parallel.
+ *
+ * <p>Each connection is checked before it is used and by a periodic keep-alive task. A connection that
+ * fails is shut down and rebuilt once an exponentially increasing back-off has elapsed.
+ *
+ * <p>jgntp only reports the outcome of a notification to its listener, and retries a failed connection on its own
+ * schedule. So each send waits for its notification's response, and a connection whose notification is never
+ * answered - because the host dropped or refused the connection - counts as failed. jgntp's own retries are turned
+ * off, leaving the back-off here as the only retry policy.
+ *
+ * @see     WindowsGrowlNotification
+ * @since   1.3
+ */
+class GntpConnectionPool implements GntpSender {
+
+	static final long MIN_BACKOFF_MILLIS = 100;
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final String application_name;
+	private final String host;
+	private final int port;
+	private final List<Connection> connections;
+	private final LinkedBlockingQueue<Connection> idle;
+
+	private GntpApplicationInfo application_info;
+	private Map<String, GntpNotificationInfo> notification_info;
+	private ScheduledExecutorService keep_alive;
+	private volatile boolean shutdown;
+
+	GntpConnectionPool(String application_name, String host, int port, int size) {
+		if(size < 1)
+			throw new IllegalArgumentException("Pool size cannot be less than 1");
+		this.application_name = application_name;
+		this.host = host;
+		this.port = port;
+		this.connections = new ArrayList<Connection>(size);
+		this.idle = new LinkedBlockingQueue<Connection>(size);
+		for (int i = 0; i < size; i++) {
+			connections.add(new Connection());
+		}
+	}
+
+	/*
+	 * Connect and register every connection, failing only if none can be registered
+	 */
+	@Override
+	public void open(String[] notification_types, long timeout, TimeUnit unit) throws NotificationException {
+		try{
+			application_info = Gntp.appInfo(application_name).build();
+			notification_info = new HashMap<String, GntpNotificationInfo>();
+			for (String type : notification_types) {
+				notification_info.put(type, Gntp.notificationInfo(application_info, type).build());
+			}
+		}catch(Exception e){
+			throw new NotificationException(e);
+		}
+
+		Exception failure = null;
+		boolean registered = false;
+		for (Connection connection : connections) {
+			try {
+				connection.connect(timeout, unit);
+				registered = true;
+			} catch (Exception e) {
+				connection.failed();
+				failure = e;
+			}
+			idle.add(connection);
+		}
+
+		if(!registered){
+			shutdown(timeout, unit);
+			throw new NotificationException("Could not register with GNTP server " + host + ":" + port, failure);
+		}
+
+		keep_alive = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NotifJ-GntpKeepAlive");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		keep_alive.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkIdleConnections();
+			}
+		}, KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/*
+	 * Send a notification over the first healthy idle connection
+	 */
+	@Override
+	public void notify(NotificationMessage message, String coalescing_id, long timeout, TimeUnit unit) throws NotificationException {
+		Connection connection = borrow(timeout, unit);
+		try {
+			send(connection, message, coalescing_id, timeout, unit);
+		} finally {
+			idle.offer(connection);
+		}
+	}
+
+	/*
+	 * Send every notification over the same connection - jgntp cannot pipeline requests
+	 */
+	@Override
+	public List<NotificationResult> notifyBatch(List<NotificationMessage> messages, long timeout, TimeUnit unit) throws NotificationException {
+		List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+		Connection connection = borrow(timeout, unit);
+		try {
+			for (NotificationMessage message : messages) {
+				try {
+					send(connection, message, null, timeout, unit);
+					results.add(NotificationResult.success(message));
+				} catch (NotificationException e) {
+					results.add(NotificationResult.failure(message, e));
+				}
+			}
+		} finally {
+			idle.offer(connection);
+		}
+		return results;
+	}
+
+	/*
+	 * Set the icon - jgntp sends images itself, so file and byte icons are passed as decoded images
+	 */
+	private static void icon(GntpNotificationBuilder builder, NotificationIcon icon) throws NotificationException {
+		if(icon == null || icon.getSource() == NotificationIcon.Source.NAME)
+			return;
+		try {
+			if(icon.getSource() == NotificationIcon.Source.URL){
+				builder.icon(URI.create(icon.getLocation()));
+				return;
+			}
+			IconCache.Entry entry = IconCache.getDefault().get(icon);
+			BufferedImage image = ImageIO.read(entry.openStream());
+			if(image != null)
+				builder.icon(image);
+			else
+				builder.icon(entry.toFile().toURI());
+		} catch (IOException e) {
+			throw new NotificationException("Could not decode icon " + icon, e);
+		} catch (IllegalArgumentException e) {
+			throw new NotificationException("Invalid icon URL", e);
+		}
+	}
+
+	/*
+	 * Send a notification over a borrowed connection
+	 */
+	private void send(Connection connection, NotificationMessage message, String coalescing_id, long timeout, TimeUnit unit) throws NotificationException {
+		GntpNotificationBuilder builder = Gntp.notification(notification_info.get(message.getType()), message.getTitle())
+				.text(message.getMessage())
+				.sticky(Boolean.TRUE.equals(message.getSticky()))
+				.priority(priority(message.getPriority()));
+		icon(builder, message.getIcon());
+		if(coalescing_id != null)
+			builder.coalescingId(coalescing_id);
+		try {
+			if(message.getCallbackUrl() != null)
+				builder.callbackTarget(URI.create(message.getCallbackUrl().toString()));
+		} catch (IllegalArgumentException e) {
+			throw new NotificationException("Invalid icon or callback URL", e);
+		}
+		GntpNotification notification = builder.build();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			Outcome outcome = connection.expect(notification);
+			if(!connection.client.notify(notification, timeout, unit) || !outcome.await(deadline)){
+				connection.failed();
+				throw new NotificationException("Timed out sending notification to " + host + ":" + port);
+			}
+			if(outcome.failure != null){
+				connection.failed();
+				throw new NotificationException("Could not send notification to " + host + ":" + port, outcome.failure);
+			}
+			connection.succeeded();
+			if(outcome.error != null)
+				throw new NotificationException("GNTP error " + outcome.error + ": " + outcome.description);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted sending notification", e);
+		} catch (NotificationException e) {
+			throw e;
+		} catch (Exception e) {
+			connection.failed();
+			throw new NotificationException(e);
+		}
+	}
+
+	/*
+	 * Shut down every connection
+	 */
+	@Override
+	public void shutdown(long timeout, TimeUnit unit) {
+		shutdown = true;
+		if(keep_alive != null)
+			keep_alive.shutdownNow();
+		for (Connection connection : connections) {
+			connection.close(timeout, unit);
+		}
+		idle.clear();
+	}
+
+	/*
+	 * The jgntp priority with the same GNTP level
+	 */
+	private static GntpNotification.Priority priority(NotificationPriority priority) {
+		switch (priority) {
+		case VERY_LOW:
+			return GntpNotification.Priority.LOWEST;
+		case MODERATE:
+			return GntpNotification.Priority.LOW;
+		case HIGH:
+			return GntpNotification.Priority.HIGH;
+		case EMERGENCY:
+			return GntpNotification.Priority.HIGHEST;
+		default:
+			return GntpNotification.Priority.NORMAL;
+		}
+	}
+
+	int size() {
+		return connections.size();
+	}
+
+	/*
+	 * Take a healthy connection, reconnecting any whose back-off has elapsed
+	 */
+	private Connection borrow(long timeout, TimeUnit unit) throws NotificationException {
+		if(shutdown)
+			throw new NotificationException("GNTP connection pool has been shut down");
+
+		for (int attempt = 0; attempt < connections.size(); attempt++) {
+			Connection connection;
+			try {
+				connection = idle.poll(timeout, unit);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NotificationException("Interrupted waiting for a GNTP connection", e);
+			}
+
+			if(connection == null)
+				throw new NotificationException("Timed out waiting for a GNTP connection");
+
+			if(connection.isHealthy() || connection.reconnect(timeout, unit))
+				return connection;
+
+			idle.offer(connection);
+		}
+		throw new NotificationException("No healthy GNTP connection to " + host + ":" + port);
+	}
+
+	/*
+	 * Keep-alive task - rebuild unhealthy connections that are not in use
+	 */
+	private void checkIdleConnections() {
+		int count = idle.size();
+		for (int i = 0; i < count && !shutdown; i++) {
+			Connection connection = idle.poll();
+			if(connection == null)
+				return;
+			if(!connection.isHealthy())
+				connection.reconnect(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+			idle.offer(connection);
+		}
+	}
+
+	/*
+	 * The response to a notification, as reported by jgntp's listener
+	 */
+	private static class Outcome {
+
+		final GntpNotification notification;
+		final CountDownLatch answered = new CountDownLatch(1);
+		volatile GntpErrorStatus error;
+		volatile String description;
+		volatile Throwable failure;
+
+		Outcome(GntpNotification notification) {
+			this.notification = notification;
+		}
+
+		boolean await(long deadline) throws InterruptedException {
+			return answered.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/*
+	 * Passes the responses of one client to the notification its connection is waiting on
+	 * - events from a client that has since been replaced are ignored
+	 */
+	private static class Listener implements GntpListener {
+
+		private final Connection connection;
+		volatile boolean current = true;
+
+		Listener(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void onNotificationSuccess(GntpNotification notification) {
+			Outcome outcome = outcome(notification);
+			if(outcome != null)
+				outcome.answered.countDown();
+		}
+
+		@Override
+		public void onNotificationError(GntpNotification notification, GntpErrorStatus status, String description) {
+			Outcome outcome = outcome(notification);
+			if(outcome != null){
+				outcome.error = status;
+				outcome.description = description;
+				outcome.answered.countDown();
+			}
+		}
+
+		@Override
+		public void onCommunicationError(Throwable failure) {
+			Outcome outcome = current ? connection.outcome : null;
+			if(outcome != null){
+				outcome.failure = failure;
+				outcome.answered.countDown();
+			}
+		}
+
+		@Override
+		public void onRegistrationSuccess() {
+		}
+
+		@Override
+		public void onRegistrationError(GntpErrorStatus status, String description) {
+		}
+
+		@Override
+		public void onClickCallback(GntpNotification notification) {
+		}
+
+		@Override
+		public void onCloseCallback(GntpNotification notification) {
+		}
+
+		@Override
+		public void onTimeoutCallback(GntpNotification notification) {
+		}
+
+		private Outcome outcome(GntpNotification notification) {
+			Outcome outcome = connection.outcome;
+			return current && outcome != null && outcome.notification == notification ? outcome : null;
+		}
+	}
+
+	/*
+	 * A single GNTP client and its reconnection state
+	 * - only accessed by the thread that has taken it from the idle queue, bar the outcome its listener reports
+	 */
+	private class Connection {
+
+		GntpClient client;
+		Listener listener;
+		int failures;
+		long retry_at;
+		volatile Outcome outcome;
+
+		void connect(long timeout, TimeUnit unit) throws Exception {
+			listener = new Listener(this);
+			client = Gntp.client(application_info).forHost(host).onPort(port).listener(listener).withoutRetry().build();
+			client.register();
+			if(!client.waitRegistration(timeout, unit))
+				throw new NotificationException("Timed out registering with " + host + ":" + port);
+			succeeded();
+		}
+
+		boolean isHealthy() {
+			return failures == 0 && client != null && !client.isShutdown() && client.isRegistered();
+		}
+
+		boolean reconnect(long timeout, TimeUnit unit) {
+			if(System.currentTimeMillis() < retry_at)
+				return false;
+			close(timeout, unit);
+			try {
+				connect(timeout, unit);
+				return true;
+			} catch (Exception e) {
+				if(e instanceof InterruptedException)
+					Thread.currentThread().interrupt();
+				failed();
+				return false;
+			}
+		}
+
+		Outcome expect(GntpNotification notification) {
+			outcome = new Outcome(notification);
+			return outcome;
+		}
+
+		void succeeded() {
+			failures = 0;
+			retry_at = 0;
+		}
+
+		void failed() {
+			long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures, 16));
+			failures++;
+			retry_at = System.currentTimeMillis() + backoff;
+		}
+
+		void close(long timeout, TimeUnit unit) {
+			if(client == null)
+				return;
+			listener.current = false;
+			outcome = null;
+			try {
+				client.shutdown(timeout, unit);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				client = null;
+			}
+		}
+	}
+
+}
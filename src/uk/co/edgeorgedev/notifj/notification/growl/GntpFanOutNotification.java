@@ -0,0 +1,619 @@
+/**
+ * GntpFanOutNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.edgeorgedev.notifj.notification.CircuitBreaker;
+import uk.co.edgeorgedev.notifj.notification.FailoverNotification;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * This class sends each notification to Growl on many hosts at once, e.g. to forward alerts to every operator's desktop.
+ *
+ * <p>Each host has its own pool of in-project NIO GNTP connections and its own sending threads, so notifications
+ * reach every host concurrently and a slow or unreachable host cannot hold up the others: a host that has not
+ * answered within the host timeout is reported as failed while the rest are unaffected. Each host also has a
+ * {@link CircuitBreaker}, so a host that fails repeatedly is skipped until its breaker lets a probe through.
+ *
+ * <p>The application is registered with each host once. A host that cannot be reached when the notification is
+ * opened is registered by the first notification sent to it afterwards.
+ *
+ * <p>Unlike the desktop notifications, this class works on any operating system. <tt>show()</tt> succeeds if any
+ * host displays the notification; {@link #deliver(NotificationMessage)} reports the result for every host.
+ *
+ * <p>For example:
+ * <pre>
+ * GntpFanOutNotification notif = new GntpFanOutNotification("Monitoring",
+ *         new InetSocketAddress("noc-desk-01", 23053), new InetSocketAddress("noc-desk-02", 23053));
+ * notif.open();
+ * FanOutResult result = notif.deliver(new NotificationMessage("Disk full", "/var on db-7 is at 98%"));
+ * System.out.println(result.getDelivered().size() + " delivered, failed: " + result.getFailures().keySet());</pre>
+ *
+ * @see     FanOutResult
+ * @since   1.3
+ */
+public class GntpFanOutNotification extends GrowlNotification {
+
+	/**
+	 * The number of seconds each host is given to display a notification unless another timeout is set
+	 * @since 1.3
+	 */
+	public static final long DEFAULT_HOST_TIMEOUT_SECONDS = 3;
+
+	private final List<Host> hosts;
+	private final Object lifecycle = new Object();
+	private volatile boolean opened;
+	private volatile long timeout = DEFAULT_HOST_TIMEOUT_SECONDS;
+	private volatile TimeUnit time_unit = TimeUnit.SECONDS;
+	private volatile int pool_size = WindowsGrowlNotification.DEFAULT_POOL_SIZE;
+
+	/**
+	 * Constructs a notification that sends to several GNTP hosts
+	 * @param application_name the application name registered with each host
+	 * @param hosts the GNTP address of each host, e.g. port 23053 of a machine running Growl for Windows
+	 * @throws IllegalArgumentException if no hosts are given, or a host is null or given twice
+	 * @since 1.3
+	 */
+	public GntpFanOutNotification(String application_name, InetSocketAddress... hosts) {
+		this(application_name, Arrays.asList(hosts));
+	}
+
+	/**
+	 * Constructs a notification that sends to several GNTP hosts
+	 * @param application_name the application name registered with each host
+	 * @param hosts the GNTP address of each host, e.g. port 23053 of a machine running Growl for Windows
+	 * @throws IllegalArgumentException if no hosts are given, or a host is null or given twice
+	 * @since 1.3
+	 */
+	public GntpFanOutNotification(String application_name, List<InetSocketAddress> hosts) {
+		super();
+		if(hosts == null || hosts.isEmpty())
+			throw new IllegalArgumentException("At least one host is required");
+		List<Host> all = new ArrayList<Host>(hosts.size());
+		for (InetSocketAddress address : hosts) {
+			if(address == null)
+				throw new IllegalArgumentException("Host cannot be null");
+			for (Host host : all) {
+				if(host.address.equals(address))
+					throw new IllegalArgumentException("Host " + address + " was given twice");
+			}
+			all.add(new Host(address));
+		}
+		this.hosts = Collections.unmodifiableList(all);
+		setApplicationName(application_name);
+	}
+
+	/**
+	 * Opens the connection pool of every host and registers the application's notification types with each host in parallel
+	 *
+	 * <p>Calling <tt>open()</tt> again has no effect until {@link #close()}.
+	 *
+	 * @throws NotificationException if no host can be registered within the host timeout
+	 * @since 1.3
+	 */
+	@Override
+	public void open() throws NotificationException {
+		synchronized (lifecycle) {
+			if(opened)
+				return;
+			for (Host host : hosts) {
+				host.start(application_name, pool_size);
+			}
+
+			String[] types = notification_types;
+			long deadline = System.nanoTime() + time_unit.toNanos(timeout);
+			List<Future<Void>> registrations = new ArrayList<Future<Void>>(hosts.size());
+			for (Host host : hosts) {
+				registrations.add(host.submit(register(host, types)));
+			}
+
+			NotificationException failure = null;
+			boolean registered = false;
+			for (int i = 0; i < hosts.size(); i++) {
+				try {
+					await(registrations.get(i), hosts.get(i), deadline);
+					registered = true;
+				} catch (NotificationException e) {
+					hosts.get(i).breaker.failed();
+					failure = e;
+				}
+			}
+			if(!registered){
+				for (Host host : hosts) {
+					host.stop(timeout, time_unit);
+				}
+				throw new NotificationException("Could not register with any of " + hosts.size() + " GNTP hosts", failure);
+			}
+			opened = true;
+		}
+		openDispatcher();
+	}
+
+	/**
+	 * Displays a notification on every host
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if no host displays the notification
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a notification of a given priority on every host
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification, sent as the GNTP <tt>Notification-Priority</tt>
+	 * @throws NotificationException if no host displays the notification
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a notification on every host
+	 *
+	 * <p>A host that fails is not reported unless every host fails - use {@link #deliver(NotificationMessage)} for
+	 * the result on each host. Should coalescing or rate limiting be enabled, the notification passes through them
+	 * first, as with any <tt>GrowlNotification</tt>.
+	 *
+	 * @param  message the notification to display.
+	 * @throws NotificationException if no host displays the notification
+	 * @see #coalesce(long, TimeUnit)
+	 * @see #rateLimit(double, int, uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter.OverflowAction)
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		super.show(message);
+	}
+
+	/*
+	 * Send a notification that has passed any coalescing and rate limits to every host
+	 */
+	@Override
+	protected void display(NotificationMessage message) throws NotificationException {
+		FanOutResult result = deliver(message);
+		if(!result.isSuccess())
+			throw new NotificationException("Could not deliver to any of " + hosts.size() + " GNTP hosts", result.getCause());
+	}
+
+	/**
+	 * Displays a notification on every host and reports the result on each
+	 *
+	 * @param  message the notification to display.
+	 * @return the hosts that displayed the notification and those that did not
+	 * @throws NotificationException if the notification has not been opened or is being closed
+	 * @since 1.3
+	 */
+	public FanOutResult deliver(NotificationMessage message) throws NotificationException {
+		return deliverAll(Collections.singletonList(message)).get(0);
+	}
+
+	/**
+	 * Displays several notifications on every host, pipelined over one connection to each host
+	 *
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if no host displays any of the notifications
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<FanOutResult> delivered = deliverAll(messages);
+		List<NotificationResult> results = new ArrayList<NotificationResult>(delivered.size());
+		NotificationException failure = null;
+		boolean displayed = false;
+		for (FanOutResult result : delivered) {
+			if(result.isSuccess()){
+				results.add(NotificationResult.success(result.getMessage()));
+				displayed = true;
+			}else{
+				failure = new NotificationException("Could not deliver to any of " + hosts.size() + " GNTP hosts", result.getCause());
+				results.add(NotificationResult.failure(result.getMessage(), failure));
+			}
+		}
+		if(!displayed && failure != null)
+			throw failure;
+		return results;
+	}
+
+	/**
+	 * Displays several notifications on every host and reports the result on each
+	 *
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if the notification has not been opened or is being closed
+	 * @since 1.3
+	 */
+	public List<FanOutResult> deliverAll(Collection<NotificationMessage> messages) throws NotificationException {
+		return deliverAll(messages, null);
+	}
+
+	/**
+	 * Displays a notification on every host that can later be updated in place
+	 *
+	 * <p>Every state is sent with the same GNTP <tt>Notification-Coalescing-ID</tt>, so each host replaces the
+	 * notification while it is still displayed. An update fails only if no host displays it. GNTP cannot remove a
+	 * notification, so dismissing it only stops further updates. Updates are throttled by the update interval.
+	 *
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update the notification
+	 * @throws NotificationException if no host displays the notification
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		final String coalescing_id = UUID.randomUUID().toString();
+		NotificationHandle handle = new NotificationHandle(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS) {
+			@Override
+			protected void push(NotificationMessage state) throws NotificationException {
+				FanOutResult result = deliverAll(Collections.singletonList(state), coalescing_id).get(0);
+				if(!result.isSuccess())
+					throw new NotificationException("Could not deliver to any of " + hosts.size() + " GNTP hosts", result.getCause());
+			}
+
+			@Override
+			protected void remove() {
+				// Left to time out
+			}
+		};
+		handle.update(message);
+		return handle;
+	}
+
+	/*
+	 * Count a call that sends notifications to every host - a coalescing ID is only given for a single notification
+	 */
+	private List<FanOutResult> deliverAll(Collection<NotificationMessage> messages, String coalescing_id) throws NotificationException {
+		long started = beginCall();
+		List<FanOutResult> results = null;
+		try {
+			results = fanOut(new ArrayList<NotificationMessage>(messages), coalescing_id);
+			return results;
+		} finally {
+			endCall();
+			if(results == null){
+				recordSends(started, messages, null);
+			}else{
+				for (FanOutResult result : results) {
+					recordSend(started, result.isSuccess());
+				}
+			}
+		}
+	}
+
+	/*
+	 * Send the notifications to every available host at once, then wait up to the host timeout for each host
+	 */
+	private List<FanOutResult> fanOut(List<NotificationMessage> messages, String coalescing_id) throws NotificationException {
+		if(!opened)
+			throw new NotificationException("No GNTP hosts available - Have you called open()?");
+
+		/* Notifications of an undeclared type are failed on every host rather than sent */
+		final List<NotificationMessage> resolved = new ArrayList<NotificationMessage>(messages.size());
+		NotificationException[] undeclared = new NotificationException[messages.size()];
+		for (int i = 0; i < messages.size(); i++) {
+			try {
+				resolved.add(resolve(messages.get(i)));
+			} catch (NotificationException e) {
+				undeclared[i] = e;
+			}
+		}
+
+		long deadline = System.nanoTime() + time_unit.toNanos(timeout);
+		String[] types = notification_types;
+		List<Future<List<NotificationResult>>> sends = new ArrayList<Future<List<NotificationResult>>>(hosts.size());
+		NotificationException[] unavailable = new NotificationException[hosts.size()];
+		for (int i = 0; i < hosts.size(); i++) {
+			Host host = hosts.get(i);
+			Future<List<NotificationResult>> send = null;
+			if(resolved.isEmpty()){
+				// Nothing to send
+			}else if(!host.breaker.allowRequest()){
+				unavailable[i] = new NotificationException("GNTP host " + host.address + " is unavailable after repeated failures");
+			}else if((send = host.submit(send(host, types, resolved, coalescing_id))) == null){
+				/* Reported, as the breaker may have let this through as its probe */
+				host.breaker.failed();
+				unavailable[i] = new NotificationException("GNTP host " + host.address + " is not accepting notifications");
+			}
+			sends.add(send);
+		}
+
+		List<List<InetSocketAddress>> delivered = new ArrayList<List<InetSocketAddress>>(messages.size());
+		List<Map<InetSocketAddress, NotificationException>> failures = new ArrayList<Map<InetSocketAddress, NotificationException>>(messages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			delivered.add(new ArrayList<InetSocketAddress>(hosts.size()));
+			failures.add(new LinkedHashMap<InetSocketAddress, NotificationException>());
+		}
+
+		for (int h = 0; h < hosts.size(); h++) {
+			Host host = hosts.get(h);
+			List<NotificationResult> sent = null;
+			NotificationException cause = unavailable[h];
+			if(sends.get(h) != null){
+				try {
+					sent = await(sends.get(h), host, deadline);
+					host.breaker.succeeded();
+				} catch (NotificationException e) {
+					host.breaker.failed();
+					cause = e;
+				}
+			}
+
+			/* Line the host's results up against the caller's messages, skipping those that were never sent */
+			int next = 0;
+			for (int i = 0; i < messages.size(); i++) {
+				NotificationException failure = undeclared[i];
+				if(failure == null){
+					failure = sent == null ? cause : sent.get(next).getCause();
+					next++;
+				}
+				if(failure == null){
+					delivered.get(i).add(host.address);
+				}else{
+					failures.get(i).put(host.address, failure);
+				}
+			}
+		}
+
+		List<FanOutResult> results = new ArrayList<FanOutResult>(messages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			results.add(new FanOutResult(messages.get(i), delivered.get(i), failures.get(i)));
+		}
+		return results;
+	}
+
+	/*
+	 * Register with a host unless already registered
+	 */
+	private Callable<Void> register(final Host host, final String[] types) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws NotificationException {
+				host.register(types, timeout, time_unit);
+				return null;
+			}
+		};
+	}
+
+	/*
+	 * Register with a host if necessary, then pipeline the notifications to it - or send the single update
+	 * with a coalescing ID
+	 */
+	private Callable<List<NotificationResult>> send(final Host host, final String[] types, final List<NotificationMessage> messages,
+			final String coalescing_id) {
+		return new Callable<List<NotificationResult>>() {
+			@Override
+			public List<NotificationResult> call() throws NotificationException {
+				host.register(types, timeout, time_unit);
+				if(coalescing_id == null)
+					return host.sender.notifyBatch(messages, timeout, time_unit);
+				host.sender.notify(messages.get(0), coalescing_id, timeout, time_unit);
+				return Collections.singletonList(NotificationResult.success(messages.get(0)));
+			}
+		};
+	}
+
+	/*
+	 * Wait for a host's task until the deadline, leaving a late task to finish on its own
+	 */
+	private static <T> T await(Future<T> future, Host host, long deadline) throws NotificationException {
+		if(future == null)
+			throw new NotificationException("GNTP host " + host.address + " is not accepting notifications");
+		try {
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw new NotificationException("Timed out sending to GNTP host " + host.address);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof NotificationException)
+				throw (NotificationException) e.getCause();
+			throw new NotificationException("Could not send to GNTP host " + host.address, e.getCause());
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted sending to GNTP host " + host.address, e);
+		}
+	}
+
+	/**
+	 * Shuts down the connection pool and sending threads of every host
+	 *
+	 * <p>Queued notifications, those being sent by other threads and any pending coalesced summaries are finished first.
+	 *
+	 * @throws NotificationException if queued notifications cannot be drained
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		super.close();
+		synchronized (lifecycle) {
+			beginDrain();
+			try {
+				opened = false;
+				for (Host host : hosts) {
+					host.stop(timeout, time_unit);
+				}
+			} finally {
+				endDrain();
+			}
+		}
+	}
+
+	/**
+	 * Get the GNTP address of every host
+	 * @return an unmodifiable list of host addresses, in the order they were given
+	 * @since 1.3
+	 */
+	public List<InetSocketAddress> getHosts() {
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(hosts.size());
+		for (Host host : hosts) {
+			addresses.add(host.address);
+		}
+		return Collections.unmodifiableList(addresses);
+	}
+
+	/**
+	 * Get the circuit breaker of a host
+	 * @param address the GNTP address of the host
+	 * @return the host's circuit breaker - <tt>null</tt> if the address is not one of the hosts
+	 * @since 1.3
+	 */
+	public CircuitBreaker getCircuitBreaker(InetSocketAddress address) {
+		for (Host host : hosts) {
+			if(host.address.equals(address))
+				return host.breaker;
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the circuit breaker of every host
+	 *
+	 * @param failure_threshold the number of consecutive failures that open a breaker
+	 * @param open_time the time a breaker stays open before a probe is allowed
+	 * @param unit the time unit of the <tt>open_time</tt>
+	 * @throws IllegalArgumentException if the unit is null, the threshold is less than 1 or the open time is negative
+	 * @since 1.3
+	 * @return the modified <tt>GntpFanOutNotification</tt> object
+	 */
+	public GntpFanOutNotification circuitBreaker(int failure_threshold, long open_time, TimeUnit unit){
+		for (Host host : hosts) {
+			host.breaker = new CircuitBreaker(failure_threshold, open_time, unit);
+		}
+		return this;
+	}
+
+	/**
+	 * Set the time each host is given to display a notification, or to register on <tt>open()</tt>
+	 * <p>The default is 3 seconds. A host that has not answered in time is reported as failed.
+	 *
+	 * @param timeout the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @throws IllegalArgumentException if the unit is null or the timeout is less than 1
+	 * @since 1.3
+	 */
+	public void setHostTimeout(long timeout, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(timeout < 1)
+			throw new IllegalArgumentException("Timeout cannot be less than 1");
+		this.time_unit = unit;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Set the number of GNTP connections, and sending threads, used for each host.
+	 * <p>The default is 2. Takes effect on the next call to {@link #open()}.
+	 *
+	 * @param pool_size the number of connections per host
+	 * @throws IllegalArgumentException if the pool size is less than 1
+	 * @since 1.3
+	 */
+	public void setPoolSize(int pool_size) {
+		if(pool_size < 1)
+			throw new IllegalArgumentException("Pool size cannot be less than 1");
+		this.pool_size = pool_size;
+	}
+
+	/*
+	 * A GNTP host with its own connections, sending threads and circuit breaker
+	 */
+	private static class Host {
+
+		final InetSocketAddress address;
+		volatile CircuitBreaker breaker = new CircuitBreaker(FailoverNotification.DEFAULT_FAILURE_THRESHOLD,
+				FailoverNotification.DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+		volatile NativeGntpSender sender;
+		volatile ExecutorService executor;
+		private boolean registered;
+
+		Host(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		/*
+		 * Create the connection pool and sending threads - nothing is connected until registration
+		 */
+		void start(String application_name, int pool_size) {
+			final AtomicInteger count = new AtomicInteger();
+			synchronized (this) {
+				registered = false;
+			}
+			sender = new NativeGntpSender(application_name, address.getHostString(), address.getPort(), pool_size);
+			executor = Executors.newFixedThreadPool(pool_size, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "NotifJ-FanOut-" + address.getHostString() + ":" + address.getPort() + "-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		/*
+		 * Queue a task on the host's sending threads - null if the host has been stopped
+		 */
+		<T> Future<T> submit(Callable<T> task) {
+			try {
+				return executor.submit(task);
+			} catch (RejectedExecutionException e) {
+				return null;
+			}
+		}
+
+		/*
+		 * Register the notification types once - registration is held by the server rather than the connection
+		 */
+		synchronized void register(String[] types, long timeout, TimeUnit unit) throws NotificationException {
+			if(registered)
+				return;
+			sender.open(types, timeout, unit);
+			registered = true;
+		}
+
+		void stop(long timeout, TimeUnit unit) {
+			ExecutorService current = executor;
+			if(current != null)
+				current.shutdownNow();
+			NativeGntpSender pool = sender;
+			if(pool != null)
+				pool.shutdown(timeout, unit);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * GntpSender.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A means of registering with and sending notifications to a GNTP server.
+ *
+ * @see     WindowsGrowlNotification.Transport
+ * @since   1.3
+ */
+interface GntpSender {
+
+	/*
+	 * Connect and register the notification types
+	 */
+	void open(String[] notification_types, long timeout, TimeUnit unit) throws NotificationException;
+
+	/*
+	 * Send a notification whose type and sticky setting have been resolved
+	 * - one with a coalescing ID replaces a displayed notification with the same ID
+	 */
+	void notify(NotificationMessage message, String coalescing_id, long timeout, TimeUnit unit) throws NotificationException;
+
+	/*
+	 * Send several resolved notifications over a single connection
+	 */
+	List<NotificationResult> notifyBatch(List<NotificationMessage> messages, long timeout, TimeUnit unit) throws NotificationException;
+
+	/*
+	 * Release any connections
+	 */
+	void shutdown(long timeout, TimeUnit unit);
+
+}
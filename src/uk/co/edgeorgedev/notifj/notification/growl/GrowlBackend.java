@@ -0,0 +1,97 @@
+/**
+ * GrowlBackend.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.SystemUtils;
+
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackend;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackends;
+
+/**
+ * The {@link NotificationBackend} provider for Growl for Mac OS X and Growl for Windows.
+ *
+ * <p>{@link GrowlNotification} also displays through the highest priority supported provider of this class, so
+ * a provider that extends it and overrides {@link #createPlatformNotification()} changes where every Growl
+ * notification is sent.
+ *
+ * @see     GrowlNotification
+ * @since   1.3
+ */
+public class GrowlBackend implements NotificationBackend {
+
+	/**
+	 * The priority of the Growl backend
+	 */
+	public static final int PRIORITY = 100;
+
+	@Override
+	public String getName() {
+		return "growl";
+	}
+
+	@Override
+	public int getPriority() {
+		return PRIORITY;
+	}
+
+	@Override
+	public boolean isSupported() {
+		return SystemUtils.IS_OS_WINDOWS || SystemUtils.IS_OS_MAC_OSX;
+	}
+
+	/*
+	 * GFW notifications are neither sticky nor have callbacks
+	 */
+	@Override
+	public Set<Capability> getCapabilities() {
+		if(SystemUtils.IS_OS_MAC_OSX)
+			return Collections.unmodifiableSet(EnumSet.of(Capability.STICKY, Capability.CALLBACKS, Capability.BATCHING));
+		return Collections.unmodifiableSet(EnumSet.of(Capability.BATCHING));
+	}
+
+	@Override
+	public Notification create(String application_name) throws NotificationException {
+		return new GrowlNotification(application_name);
+	}
+
+	/**
+	 * Creates the platform notification that a {@link GrowlNotification} displays through - a
+	 * {@link WindowsGrowlNotification} on Windows and an {@link OSXGrowlNotification} otherwise
+	 *
+	 * <p>It must not be a <tt>GrowlNotification</tt> itself, which would display through another platform notification.
+	 *
+	 * @return an unopened platform notification
+	 * @throws NotificationException if the notification cannot be created
+	 * @since 1.3
+	 */
+	protected GrowlNotification createPlatformNotification() throws NotificationException {
+		return SystemUtils.IS_OS_WINDOWS ? new WindowsGrowlNotification() : new OSXGrowlNotification();
+	}
+
+	/*
+	 * The highest priority Growl provider supported here, discovered and ordered as NotificationBackends.create()
+	 * does - or this one should none be listed at all, e.g. in a jar whose service files were not merged
+	 */
+	static GrowlBackend select() {
+		for (NotificationBackend backend : NotificationBackends.available()) {
+			if(backend instanceof GrowlBackend)
+				return (GrowlBackend) backend;
+		}
+		for (NotificationBackend backend : NotificationBackends.all()) {
+			if(backend instanceof GrowlBackend)
+				return null;
+		}
+		GrowlBackend builtin = new GrowlBackend();
+		return builtin.isSupported() ? builtin : null;
+	}
+
+}
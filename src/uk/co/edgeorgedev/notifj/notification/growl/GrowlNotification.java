@@ -8,12 +8,26 @@
 package uk.co.edgeorgedev.notifj.notification.growl;
 
 import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.SystemUtils;
-
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
 import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationCoalescer;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter;
+import uk.co.edgeorgedev.notifj.notification.NotificationRateLimiter.OverflowAction;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.NotificationSink;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSystemException;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackends;
 
 /**
  * This class consists of methods to create Growl Notification messages that can be displayed on both Windows and Mac OS X
@@ -24,40 +38,50 @@ import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSyst
  * <p>It should also be noted that <tt>open()</tt> will throw a <tt>NotificationOperatingSystemException</tt>
  * should it be called on a non-OSX operating system.
  *
+ * <p>Notifications are displayed through a platform notification created by the highest priority supported
+ * {@link GrowlBackend} provider, discovered and ordered as {@link NotificationBackends#create} does.
+ *
  * @author  Ed George
  * @see     Notification
  * @see     WindowsGrowlNotification
  * @see     OSXGrowlNotification
+ * @see     GrowlBackend
  * @since   1.2
  */
-public class GrowlNotification implements Notification{
+public class GrowlNotification extends AbstractNotification{
+
+	/**
+	 * The notification type registered with Growl when no others are declared
+	 * @since 1.3
+	 */
+	public static final String DEFAULT_NOTIFICATION_TYPE = "Notification";
+
+	private final Object lock = new Object();
+	private volatile GrowlBackend backend;
+	private volatile GrowlNotification notification;
+	private volatile boolean opened;
+	protected volatile String[] notification_types = { DEFAULT_NOTIFICATION_TYPE };
+	protected volatile NotificationIcon icon;
 
-	private GrowlNotification notification;
-	protected String application_name;
-	protected boolean sticky;
-	protected URL callback_url;
+	private volatile NotificationCoalescer coalescer;
+	private volatile NotificationRateLimiter rate_limiter;
 	
 	/**
 	 * Constructs an unregistered named Growl notification application
 	 * 
-	 * <p>The registration process occurs within the {@link #open()} method.
+	 * <p>The registration process occurs when the first notification is displayed after {@link #open()}.
 	 * 
 	 * <p>This class creates notifications that can be viewed by Growl for OSX <b>and</b> Growl for Windows (GFW)
 	 * 
+	 * <p>It can be constructed on any operating system, so that code using it can run on headless servers;
+	 * {@link #open()} fails on those other than Windows and Mac OS X.
+	 * 
 	 * @since 1.2
 	 *
 	 */
 	public GrowlNotification(String application_name) throws NotificationException {
 		
 		setApplicationName(application_name);
-		
-		if(SystemUtils.IS_OS_WINDOWS){
-			notification = new WindowsGrowlNotification();
-		}else if (SystemUtils.IS_OS_MAC_OSX){
-			notification = new OSXGrowlNotification();
-		}else{
-			throw new NotificationOperatingSystemException("Only Windows and Mac OS X operrating systems are supported");
-		}
 	
 	}
 
@@ -66,39 +90,326 @@ public class GrowlNotification implements Notification{
 	 */
 	protected GrowlNotification(){}
 
-	/*
-	 * Application name setter for child classes
-	 */
-	protected void setApplicationName(String application_name){
-		this.application_name = application_name;
-	}
-
 	/**
-	 * Creates relevant platform variables required 
+	 * Prepares the Growl Notification to be displayed
+	 * 
+	 * <p>The platform notification is created, and the application registered with Growl, when the first
+	 * notification is displayed. Any registration failure is therefore thrown by that <tt>show()</tt>.
 	 * 
+	 * @throws NotificationOperatingSystemException if no {@link GrowlBackend} supports this system - by default,
+	 * if the operating system is not Windows or Mac OS X
 	 * @throws NotificationException if the client registration fails
-	 * @throws NotificationOperatingSystemException if the system operating system is <i>not</i> Windows
 	 * @since 1.2
 	 */
 	@Override
 	public void open() throws NotificationException {
-		notification.open();
+		GrowlBackend selected = GrowlBackend.select();
+		if(selected == null){
+			throw new NotificationOperatingSystemException("Only Windows and Mac OS X operrating systems are supported");
+		}
+		backend = selected;
+		opened = true;
+		openDispatcher();
+	}
+
+	/*
+	 * Create and open the selected backend's platform notification on first use - settings are copied once here
+	 * and thereafter whenever they change
+	 */
+	private GrowlNotification delegate() throws NotificationException {
+		GrowlNotification current = notification;
+		if(current != null)
+			return current;
+
+		synchronized (lock) {
+			if(notification != null)
+				return notification;
+			if(!opened)
+				throw new NotificationException("Growl has not been opened - Have you called open()?");
+			current = backend.createPlatformNotification();
+			current.setApplicationName(application_name);
+			current.notificationTypes(notification_types);
+			current.sticky(sticky);
+			current.callbackUrl(callback_url);
+			current.icon(icon);
+			current.setUpdateInterval(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS);
+			try {
+				current.open();
+			} catch (NotificationException e) {
+				current.close();
+				throw e;
+			}
+			notification = current;
+			return current;
+		}
 	}
 
 	/**
 	 * Displays a Growl Notification with a given title and message
 	 * 
+	 * <p>Should coalescing be enabled, repeats of a recently displayed notification are counted rather than displayed.
+	 * Should rate limiting be enabled, notifications that exceed the limit are delayed or dropped.
+	 * 
 	 * @param  title the title of the notification.
 	 * @param  message the message body of the notification. 
 	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #coalesce(long, TimeUnit)
+	 * @see #rateLimit(double, int, OverflowAction)
 	 * @since 1.2
 	 */
 	@Override
 	public void show(String title, String message) throws NotificationException {
-		notification.setApplicationName(application_name);
-		notification.callbackUrl(callback_url);
-		notification.sticky(sticky);
-		notification.show(title, message);
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a Growl Notification with a given title, message and priority
+	 * 
+	 * <p>{@link NotificationPriority#EMERGENCY} notifications are displayed straight away, bypassing any
+	 * coalescing and rate limits.
+	 * 
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification. 
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a Growl Notification
+	 * 
+	 * <p>The message's sticky, callback, icon and type settings apply to it alone.
+	 * {@link NotificationPriority#EMERGENCY} notifications are displayed straight away, bypassing any
+	 * coalescing and rate limits.
+	 * 
+	 * @param  message the notification to display.
+	 * @throws NotificationException if an error occurs trying to display the message, or its type was not declared
+	 * @see #notificationTypes(String...)
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		if(message.getPriority() == NotificationPriority.EMERGENCY){
+			display(message);
+			return;
+		}
+		NotificationCoalescer current = coalescer;
+		if(current != null){
+			current.show(message);
+		}else{
+			limit(message);
+		}
+	}
+
+	/**
+	 * Displays a Growl Notification that can later be updated in place
+	 * 
+	 * <p>Every state is sent with the same Growl identifier, so Growl replaces the notification while it is still
+	 * displayed. Updates bypass any coalescing and rate limits, and are throttled by the update interval instead.
+	 * 
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update the notification
+	 * @throws NotificationException if an error occurs trying to display the message, or its type was not declared
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		return delegate().showUpdatable(message);
+	}
+
+	@Override
+	public void setUpdateInterval(long interval, TimeUnit unit) {
+		synchronized (lock) {
+			super.setUpdateInterval(interval, unit);
+			if(notification != null)
+				notification.setUpdateInterval(interval, unit);
+		}
+	}
+
+	/*
+	 * Pass a notification through the rate limiter, if any
+	 */
+	private void limit(NotificationMessage message) throws NotificationException {
+		NotificationRateLimiter current = rate_limiter;
+		if(current != null){
+			current.show(application_name, typeOf(message), message);
+		}else{
+			display(message);
+		}
+	}
+
+	/*
+	 * Display a notification that has passed any coalescing and rate limits - by default through the platform delegate
+	 */
+	protected void display(NotificationMessage message) throws NotificationException {
+		delegate().show(message);
+	}
+
+	/*
+	 * The declared notification type of a message, defaulting to the first
+	 */
+	protected String typeOf(NotificationMessage message) throws NotificationException {
+		String[] types = notification_types;
+		String type = message.getType();
+		if(type == null)
+			return types[0];
+		for (String declared : types) {
+			if(declared.equals(type))
+				return type;
+		}
+		throw new NotificationException("Notification type " + type + " was not declared with notificationTypes()");
+	}
+
+	/*
+	 * Fill in the type, sticky setting, callback and icon a message leaves to this object - a complete message is returned as it is
+	 */
+	protected NotificationMessage resolve(NotificationMessage message) throws NotificationException {
+		String type = typeOf(message);
+		NotificationIcon default_icon = icon;
+		if(type.equals(message.getType()) && message.getSticky() != null && (message.getCallbackUrl() != null || callback_url == null)
+				&& (message.getIcon() != null || default_icon == null))
+			return message;
+		return message.toBuilder()
+				.type(type)
+				.sticky(isSticky(message))
+				.callbackUrl(getCallbackUrl(message))
+				.icon(message.getIcon() == null ? default_icon : message.getIcon())
+				.build();
+	}
+
+	/**
+	 * Displays several Growl Notifications in a single backend round-trip
+	 * 
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if none of the notifications can be displayed
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		return delegate().showAll(messages);
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 * 
+	 * <p>By default up to {@link NotificationDispatcher#DEFAULT_CAPACITY} notifications are queued
+	 * and callers block while the queue is full.
+	 * 
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	@Override
+	public GrowlNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	@Override
+	public GrowlNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+	/**
+	 * Folds identical notifications displayed within a time window into a single notification
+	 * 
+	 * @param window the length of the window
+	 * @param unit the time unit of the <tt>window</tt>
+	 * @see #coalesce(long, TimeUnit, NotificationCoalescer.KeyFunction)
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	public GrowlNotification coalesce(long window, TimeUnit unit){
+		return coalesce(window, unit, NotificationCoalescer.IDENTICAL);
+	}
+
+	/**
+	 * Folds notifications with matching keys displayed within a time window into a single notification
+	 * 
+	 * <p>The first notification with a key is displayed straight away. Once the window closes, a summary is
+	 * displayed with the number of occurrences appended to its title, e.g. <tt>Disk full (x214)</tt>.
+	 * 
+	 * @param window the length of the window
+	 * @param unit the time unit of the <tt>window</tt>
+	 * @param key_function determines which notifications are repeats of each other
+	 * @throws IllegalArgumentException if the unit or key function is null or the window is less than 1
+	 * @see NotificationCoalescer
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	public GrowlNotification coalesce(long window, TimeUnit unit, NotificationCoalescer.KeyFunction key_function){
+		NotificationCoalescer created = new NotificationCoalescer(new NotificationSink() {
+			@Override
+			public void show(NotificationMessage message) throws NotificationException {
+				limit(message);
+			}
+		}, window, unit, key_function, NotificationCoalescer.DEFAULT_MAX_KEYS);
+		NotificationCoalescer previous;
+		synchronized (lock) {
+			previous = coalescer;
+			coalescer = created;
+		}
+		/* Closing displays its pending summaries, which is done outside the lock */
+		if(previous != null)
+			previous.close();
+		return this;
+	}
+
+	/**
+	 * Limits the rate at which this application's notifications are displayed
+	 * 
+	 * <p>Replaces any previous rate limits. Further limits can be set with {@link #getRateLimiter()}.
+	 * 
+	 * @param per_second the sustained number of notifications per second
+	 * @param burst the number of notifications that may be displayed at once after a quiet period
+	 * @param action the action taken when a notification exceeds the limit
+	 * @throws IllegalArgumentException if the action is null, the rate is not positive or the burst is less than 1
+	 * @see NotificationRateLimiter
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	public GrowlNotification rateLimit(double per_second, int burst, OverflowAction action){
+		NotificationRateLimiter limiter = new NotificationRateLimiter(new NotificationSink() {
+			@Override
+			public void show(NotificationMessage message) throws NotificationException {
+				display(message);
+			}
+		}, action);
+		limiter.limitApplication(application_name, per_second, burst);
+		synchronized (lock) {
+			rate_limiter = limiter;
+		}
+		return this;
+	}
+
+	/**
+	 * Get the rate limiter, which also counts admitted, delayed and dropped notifications
+	 * @since 1.3
+	 * @return the rate limiter - <tt>null</tt> if rate limiting is not enabled
+	 */
+	public NotificationRateLimiter getRateLimiter() {
+		return rate_limiter;
 	}
 
 	/**
@@ -108,10 +419,58 @@ public class GrowlNotification implements Notification{
 	 */
 	@Override
 	public void close() throws NotificationException {
-		notification.close();	
+		closeDispatcher();
+		NotificationCoalescer current = coalescer;
+		if(current != null)
+			current.close();
+		GrowlNotification platform;
+		synchronized (lock) {
+			platform = notification;
+			notification = null;
+			opened = false;
+		}
+		if(platform != null)
+			platform.close();
 	}
 
 
+	/**
+	 * Declares the notification types registered with Growl when the first notification is displayed
+	 * 
+	 * <p>The first type is used for notifications displayed by {@link #show(String, String)}.
+	 * Notifications are registered as {@link #DEFAULT_NOTIFICATION_TYPE} unless other types are declared.
+	 * Types declared after a notification has been displayed are registered by the next notification on OS X,
+	 * and when the notification is next opened on Windows.
+	 * 
+	 * @param types the names of the notification types
+	 * @throws IllegalArgumentException if no types are given or any type is null
+	 * @since 1.3
+	 * @return the modified <tt>GrowlNotification</tt> object
+	 */
+	public GrowlNotification notificationTypes(String... types){
+		if(types == null || types.length == 0)
+			throw new IllegalArgumentException("At least one notification type is required");
+		for (String type : types) {
+			if(type == null)
+				throw new IllegalArgumentException("Notification type cannot be null");
+		}
+		synchronized (lock) {
+			this.notification_types = types.clone();
+			if(notification != null)
+				notification.notificationTypes(types);
+		}
+		return this;
+	}
+
+	/**
+	 * Get the notification types registered with Growl
+	 * @since 1.3
+	 * @return a copy of the declared notification types
+	 */
+	public String[] getNotificationTypes() {
+		return notification_types.clone();
+	}
+
 	/**
 	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
 	 * 
@@ -120,9 +479,9 @@ public class GrowlNotification implements Notification{
 	 * @since 1.2
 	 * @return the modified <tt>GrowlNotification</tt> object
 	 */
+	@Override
 	public GrowlNotification sticky(){
-		this.sticky = true;
-		return this;
+		return sticky(true);
 	}
 
 	/**
@@ -135,20 +494,16 @@ public class GrowlNotification implements Notification{
 	 * @since 1.2
 	 * @return the modified <tt>GrowlNotification</tt> object
 	 */
+	@Override
 	public GrowlNotification sticky(boolean sticky){
-		this.sticky = sticky;
+		synchronized (lock) {
+			super.sticky(sticky);
+			if(notification != null)
+				notification.sticky(sticky);
+		}
 		return this;
 	}
 
-	/**
-	 * Check if notifications are sticky
-	 * @since 1.2
-	 * @return <tt>true</tt> if notifications generated by this object are sticky and <tt>false</tt> otherwise.
-	 */
-	public boolean isSticky() {
-		return sticky;
-	}
-
 	/**
 	 * Adds a callback url to notifications. 
 	 * 
@@ -159,30 +514,56 @@ public class GrowlNotification implements Notification{
 	 * @since 1.2
 	 * @return the modified <tt>GrowlNotification</tt> object
 	 */
+	@Override
 	public GrowlNotification callbackUrl(URL callback_url){
-		this.callback_url = callback_url;
+		synchronized (lock) {
+			super.callbackUrl(callback_url);
+			if(notification != null)
+				notification.callbackUrl(callback_url);
+		}
 		return this;
 	}
 
 	/**
-	 * Removes any previously associated callback. 
+	 * Sets the icon displayed with notifications that do not have their own
 	 * 
-	 * @see #callbackUrl(URL)
-	 * @since 1.2
+	 * <p>Growl for Windows and remote Growl hosts are sent file and byte icons once per connection. On OS X a named icon
+	 * is taken as an application name, whose icon is registered as the application's own.
+	 * 
+	 * @param icon the default icon - <tt>null</tt> for Growl's default
+	 * @see NotificationMessage.Builder#icon(NotificationIcon)
+	 * @since 1.3
 	 * @return the modified <tt>GrowlNotification</tt> object
 	 */
-	public GrowlNotification removeCallback(){
-		callback_url = null;
+	public GrowlNotification icon(NotificationIcon icon){
+		synchronized (lock) {
+			this.icon = icon;
+			if(notification != null)
+				notification.icon(icon);
+		}
 		return this;
 	}
 
 	/**
-	 * Get the notification's callback URL
+	 * Get the icon displayed with notifications that do not have their own
+	 * @return the default icon - <tt>null</tt> for Growl's default
+	 * @since 1.3
+	 */
+	public NotificationIcon getIcon() {
+		return icon;
+	}
+
+	/**
+	 * Removes any previously associated callback. 
+	 * 
+	 * @see #callbackUrl(URL)
 	 * @since 1.2
-	 * @return the callback URL - <tt>null</tt> if the callback is not set
+	 * @return the modified <tt>GrowlNotification</tt> object
 	 */
-	public URL getCallbackUrl() {
-		return callback_url;
+	@Override
+	public GrowlNotification removeCallback(){
+		return callbackUrl(null);
 	}
 
+
 }
@@ -0,0 +1,134 @@
+/**
+ * GrowlProbeCache.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * Caches the result of checking whether a Growl process is running for a fixed time-to-live.
+ *
+ * <p>A stale positive result continues to be served while a single background thread refreshes it,
+ * whereas a stale or missing negative result is always re-checked on the calling thread so that
+ * a newly started Growl process is found straight away.
+ *
+ * <p>Hits and misses are also recorded to the {@link MetricsRegistry}.
+ *
+ * @see     OSXGrowlNotification
+ * @since   1.3
+ */
+class GrowlProbeCache {
+
+	/*
+	 * The check being cached
+	 */
+	interface Probe {
+		boolean isRunning();
+	}
+
+	private static final String METRICS_SOURCE = GrowlProbeCache.class.getSimpleName();
+
+	private final Probe probe;
+	private final long ttl_nanos;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private volatile Result result;
+
+	GrowlProbeCache(Probe probe, long ttl, TimeUnit unit) {
+		if(ttl < 0)
+			throw new IllegalArgumentException("Time-to-live cannot be negative");
+		this.probe = probe;
+		this.ttl_nanos = unit.toNanos(ttl);
+	}
+
+	/*
+	 * Return the cached result, probing only when it has expired
+	 */
+	boolean isRunning() {
+		Result current = result;
+		if(current != null){
+			if(System.nanoTime() - current.timestamp < ttl_nanos){
+				hits.incrementAndGet();
+				MetricsRegistry.get().recordProbe(METRICS_SOURCE, true);
+				return current.running;
+			}
+			if(current.running){
+				hits.incrementAndGet();
+				MetricsRegistry.get().recordProbe(METRICS_SOURCE, true);
+				refreshInBackground();
+				return true;
+			}
+		}
+		misses.incrementAndGet();
+		MetricsRegistry.get().recordProbe(METRICS_SOURCE, false);
+		return refresh();
+	}
+
+	/*
+	 * Forget the cached result, forcing the next call to probe
+	 */
+	void invalidate() {
+		result = null;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	/*
+	 * Probe on the calling thread and cache the result
+	 */
+	private boolean refresh() {
+		boolean running = probe.isRunning();
+		result = new Result(running, System.nanoTime());
+		return running;
+	}
+
+	/*
+	 * Probe on a background thread, unless a refresh is already underway
+	 */
+	private void refreshInBackground() {
+		if(!refreshing.compareAndSet(false, true))
+			return;
+
+		Thread refresher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} finally {
+					refreshing.set(false);
+				}
+			}
+		}, "NotifJ-GrowlProbe");
+		refresher.setDaemon(true);
+		refresher.start();
+	}
+
+	/*
+	 * Immutable probe result
+	 */
+	private static class Result {
+
+		final boolean running;
+		final long timestamp;
+
+		Result(boolean running, long timestamp) {
+			this.running = running;
+			this.timestamp = timestamp;
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * NativeGntpSender.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.IconCache;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpNotify;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpRegister;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpResponse;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpTransport;
+
+/**
+ * Sends notifications over a fixed number of in-project NIO {@link GntpTransport} connections.
+ *
+ * @see     WindowsGrowlNotification.Transport#NATIVE
+ * @since   1.3
+ */
+class NativeGntpSender implements GntpSender {
+
+	private final String application_name;
+	private final List<GntpTransport> transports;
+	private final LinkedBlockingQueue<GntpTransport> idle;
+
+	NativeGntpSender(String application_name, String host, int port, int size) {
+		if(size < 1)
+			throw new IllegalArgumentException("Pool size cannot be less than 1");
+		this.application_name = application_name;
+		this.transports = new ArrayList<GntpTransport>(size);
+		this.idle = new LinkedBlockingQueue<GntpTransport>(size);
+		for (int i = 0; i < size; i++) {
+			transports.add(new GntpTransport(host, port));
+		}
+	}
+
+	/*
+	 * Register once - registration is held by the server rather than the connection
+	 */
+	@Override
+	public void open(String[] notification_types, long timeout, TimeUnit unit) throws NotificationException {
+		GntpTransport transport = transports.get(0);
+		check(transport.send(new GntpRegister(application_name, notification_types), timeout, unit));
+		idle.addAll(transports);
+	}
+
+	@Override
+	public void notify(NotificationMessage message, String coalescing_id, long timeout, TimeUnit unit) throws NotificationException {
+		GntpNotify request = request(application_name, message).coalescingId(coalescing_id);
+		GntpTransport transport = borrow(timeout, unit);
+		try {
+			check(transport.send(request, timeout, unit));
+		} finally {
+			idle.offer(transport);
+		}
+	}
+
+	/*
+	 * Pipeline every notification over one connection
+	 */
+	@Override
+	public List<NotificationResult> notifyBatch(List<NotificationMessage> messages, long timeout, TimeUnit unit) throws NotificationException {
+		if(messages.isEmpty())
+			return Collections.emptyList();
+
+		/* A notification whose icon cannot be read fails alone rather than failing the batch */
+		List<GntpNotify> requests = new ArrayList<GntpNotify>(messages.size());
+		NotificationException[] unreadable = new NotificationException[messages.size()];
+		for (int i = 0; i < messages.size(); i++) {
+			try {
+				requests.add(request(application_name, messages.get(i)));
+			} catch (NotificationException e) {
+				unreadable[i] = e;
+			}
+		}
+
+		List<GntpResponse> responses = Collections.emptyList();
+		if(!requests.isEmpty()){
+			GntpTransport transport = borrow(timeout, unit);
+			try {
+				responses = transport.send(requests, timeout, unit);
+			} finally {
+				idle.offer(transport);
+			}
+		}
+
+		List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+		int sent = 0;
+		for (int i = 0; i < messages.size(); i++) {
+			if(unreadable[i] != null){
+				results.add(NotificationResult.failure(messages.get(i), unreadable[i]));
+				continue;
+			}
+			try {
+				check(responses.get(sent++));
+				results.add(NotificationResult.success(messages.get(i)));
+			} catch (NotificationException e) {
+				results.add(NotificationResult.failure(messages.get(i), e));
+			}
+		}
+		return results;
+	}
+
+	/*
+	 * The NOTIFY request for a resolved notification
+	 * - file and byte icons are sent as resources, only once per connection, so that remote servers can show them
+	 */
+	static GntpNotify request(String application_name, NotificationMessage message) throws NotificationException {
+		GntpNotify request = new GntpNotify(application_name, message.getType(), message.getTitle(), message.getMessage())
+				.sticky(Boolean.TRUE.equals(message.getSticky()))
+				.priority(message.getPriority().getValue())
+				.callbackTarget(message.getCallbackUrl() == null ? null : message.getCallbackUrl().toString());
+		NotificationIcon icon = message.getIcon();
+		if(icon != null && icon.getSource() == NotificationIcon.Source.URL){
+			request.icon(icon.getLocation());
+		} else {
+			IconCache.Entry image = IconCache.getDefault().get(icon);
+			if(image != null)
+				request.icon(image.getId(), image.getData());
+		}
+		return request;
+	}
+
+	@Override
+	public void shutdown(long timeout, TimeUnit unit) {
+		idle.clear();
+		for (GntpTransport transport : transports) {
+			transport.close();
+		}
+	}
+
+	/*
+	 * Take an idle connection
+	 */
+	private GntpTransport borrow(long timeout, TimeUnit unit) throws NotificationException {
+		try {
+			GntpTransport transport = idle.poll(timeout, unit);
+			if(transport == null)
+				throw new NotificationException("Timed out waiting for a GNTP connection");
+			return transport;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted waiting for a GNTP connection", e);
+		}
+	}
+
+	/*
+	 * Convert an -ERROR response into an exception
+	 */
+	static void check(GntpResponse response) throws NotificationException {
+		if(!response.isOk())
+			throw new NotificationException("GNTP error " + response.getErrorCode() + ": " + response.getErrorDescription());
+	}
+
+}
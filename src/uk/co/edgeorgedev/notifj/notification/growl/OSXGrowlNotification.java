@@ -27,12 +27,30 @@
  */
 package uk.co.edgeorgedev.notifj.notification.growl;
 
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
 import org.apache.commons.lang3.SystemUtils;
 
+import uk.co.edgeorgedev.notifj.notification.IconCache;
 import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSystemException;
 
@@ -44,6 +62,9 @@ import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSyst
  * 
  * <p>It should also be noted that <tt>open()</tt> will throw a <tt>NotificationOperatingSystemException</tt>
  * should it be called on a non OS X operating system.
+ * 
+ * <p>An instance may be shared by any number of threads. Notifications are evaluated by the AppleScript
+ * engine one at a time, and <tt>close()</tt> waits for those in progress before the engine is released.
  *
  * @author  Ed George
  * @see     GrowlNotification
@@ -55,8 +76,23 @@ public class OSXGrowlNotification extends GrowlNotification {
 	private static final String GROWL_APPLICATION = "com.Growl.GrowlHelperApp";
 	private static final String SYSTEM_EVENTS = "System Events";
 	private static final String DEFAULT_ICON_NAME = "Script Editor";
-
-	private ScriptEngine mScriptEngine;
+	private static final long DEFAULT_PROBE_TTL_SECONDS = 5;
+
+	private static final String GROWL_ENABLED_SOURCE = growlEnabledSource();
+	private static final String REGISTRATION_SOURCE = registrationSource();
+	private static final String MESSAGE_SOURCE = messageSource();
+	private static final String UPDATE_SOURCE = updateSource();
+	private static final String BATCH_SOURCE = batchSource();
+
+	private final Object lifecycle = new Object();
+	private volatile ScriptEngine mScriptEngine;
+	private final AppleScriptTemplate mGrowlEnabledScript = new AppleScriptTemplate("growl_enabled", GROWL_ENABLED_SOURCE);
+	private final AppleScriptTemplate mRegistrationScript = new AppleScriptTemplate("register_growl", REGISTRATION_SOURCE);
+	private final AppleScriptTemplate mMessageScript = new AppleScriptTemplate("notify_growl", MESSAGE_SOURCE);
+	private final AppleScriptTemplate mUpdateScript = new AppleScriptTemplate("update_growl", UPDATE_SOURCE);
+	private final AppleScriptTemplate mBatchScript = new AppleScriptTemplate("notify_all_growl", BATCH_SOURCE);
+	private final Set<String> mRegisteredTypes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile GrowlProbeCache mProbeCache = newProbeCache(DEFAULT_PROBE_TTL_SECONDS, TimeUnit.SECONDS);
 
 	/**
 	 * Constructs an unregistered named Growl notification application
@@ -71,7 +107,11 @@ public class OSXGrowlNotification extends GrowlNotification {
 	}
 
 	/**
-	 * Creates new ApppleScript Engine which is used to create notifications
+	 * Creates new ApppleScript Engine which is used to create notifications and registers 
+	 * the application's notification types with Growl
+	 * 
+	 * <p>Should no Growl process be running, registration is deferred until the first notification is displayed.
+	 * 
 	 * @throws NotificationOperatingSystemException if the system operating system is <i>not</i> Mac OSX
 	 * @since   1.0
 	 */
@@ -80,15 +120,22 @@ public class OSXGrowlNotification extends GrowlNotification {
 		if(!SystemUtils.IS_OS_MAC_OSX)
 			throw new NotificationOperatingSystemException("Operating System is not Mac OSX");
 
-		ScriptEngineManager engineManager = new ScriptEngineManager();
-		mScriptEngine = engineManager.getEngineByName("AppleScript");
+		synchronized (lifecycle) {
+			ScriptEngineManager engineManager = new ScriptEngineManager();
+			mScriptEngine = engineManager.getEngineByName("AppleScript");
+
+			if(mScriptEngine != null && mProbeCache.isRunning()){
+				register();
+			}
+		}
+		openDispatcher();
 	}
 
 	/**
 	 * Displays a Growl Notification with a given title and message
 	 * 
-	 * <p>Should the application, specified by the {@code application_name}, not be registered
-	 * within the Growl Notification settings, it is first registered before a message is displayed.
+	 * <p>Should the application, specified by the {@code application_name}, not yet be registered
+	 * by {@link #open()}, it is first registered before a message is displayed.
 	 * 
 	 * <p>As of Growl Version 2.1.3, this method correctly generates and displays notifications.
 	 * 
@@ -100,26 +147,280 @@ public class OSXGrowlNotification extends GrowlNotification {
 	 */
 	@Override
 	public void show(String title, String message) throws NotificationException{
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a Growl Notification with a given title, message and priority
+	 * 
+	 * <p>Growl's AppleScript priority takes the same -2 to 2 levels as GNTP.
+	 * 
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification. 
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if no Script Engine is available or no Growl process
+	 *         is running. 
+	 * @since   1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException{
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a Growl Notification, applying the message's own sticky, callback, icon and type settings
+	 * 
+	 * @param  message the notification to display.
+	 * @throws NotificationException if no Script Engine is available, no Growl process
+	 *         is running or the message's type was not declared
+	 * @since   1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException{
+		long started = beginCall();
+		boolean sent = false;
+		try {
+			display(message, null);
+			sent = true;
+		} finally {
+			endCall();
+			recordSend(started, sent);
+		}
+	}
+
+	/**
+	 * Displays a Growl Notification that can later be updated in place
+	 * 
+	 * <p>Every state is displayed with the same Growl identifier, so Growl replaces the notification while it is
+	 * still displayed. Growl's AppleScript cannot remove a notification, so dismissing it only stops further updates.
+	 * Updates are throttled by the update interval.
+	 * 
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update the notification
+	 * @throws NotificationException if no Script Engine is available, no Growl process
+	 *         is running or the message's type was not declared
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		final String identifier = UUID.randomUUID().toString();
+		NotificationHandle handle = new NotificationHandle(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS) {
+			@Override
+			protected void push(NotificationMessage state) throws NotificationException {
+				long started = beginCall();
+				boolean sent = false;
+				try {
+					display(state, identifier);
+					sent = true;
+				} finally {
+					endCall();
+					recordSend(started, sent);
+				}
+			}
+
+			@Override
+			protected void remove() {
+				// Left to time out
+			}
+		};
+		handle.update(message);
+		return handle;
+	}
+
+	/*
+	 * Display a notification once the call has been counted - one with an identifier replaces the displayed
+	 * notification with the same identifier
+	 */
+	private void display(NotificationMessage message, String identifier) throws NotificationException{
+		if (mScriptEngine == null) {
+			throw new NotificationException("No AppleScriptEngine available - Have you called open()?");
+		}
+
+		if(!mProbeCache.isRunning()){
+			throw new NotificationException("No Growl process located");
+		}
+
+		if(!isRegistered()){
+			register();
+		}
+
+		String type = typeOf(message);
+		URL callback = getCallbackUrl(message);
+		String[] icon = iconOf(message);
+		boolean shown;
+		try {
+			if(identifier == null){
+				shown = Boolean.TRUE.equals(runScript(mMessageScript, super.application_name, type,
+						message.getTitle(), message.getMessage(), callback == null ? "" : callback.toString(),
+						isSticky(message), message.getPriority().getValue(), icon[0], icon[1]));
+			}else{
+				shown = Boolean.TRUE.equals(runScript(mUpdateScript, super.application_name, type,
+						message.getTitle(), message.getMessage(), callback == null ? "" : callback.toString(),
+						isSticky(message), message.getPriority().getValue(), icon[0], icon[1], identifier));
+			}
+		} catch (Exception e) {
+			mProbeCache.invalidate();
+			throw new NotificationException(e);
+		}
+
+		if(!shown){
+			mProbeCache.invalidate();
+			throw new NotificationException("No Growl process located");
+		}
+
+	}
+
+	/**
+	 * Displays several Growl Notifications using a single AppleScript evaluation
+	 * 
+	 * <p>A notification whose type was not declared, or whose icon cannot be read, fails without being sent.
+	 * 
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if no Script Engine is available or no Growl process
+	 *         is running. 
+	 * @since   1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		long started = beginCall();
+		List<NotificationResult> results = null;
+		try {
+			results = displayAll(messages);
+			return results;
+		} finally {
+			endCall();
+			recordSends(started, messages, results);
+		}
+	}
+
+	/*
+	 * Display several notifications once the call has been counted
+	 */
+	private List<NotificationResult> displayAll(Collection<NotificationMessage> messages) throws NotificationException {
 		if (mScriptEngine == null) {
 			throw new NotificationException("No AppleScriptEngine available - Have you called open()?");
 		}
 
-		if(!isGrowlEnabled()){
+		List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+		if (messages.isEmpty()) {
+			return results;
+		}
+
+		if(!mProbeCache.isRunning()){
 			throw new NotificationException("No Growl process located");
 		}
 
-		runScript(messageScript(title, message).build(), 0L);
+		if(!isRegistered()){
+			register();
+		}
+
+		List<NotificationMessage> sent = new ArrayList<NotificationMessage>(messages.size());
+		List<String> types = new ArrayList<String>(messages.size());
+		List<String> titles = new ArrayList<String>(messages.size());
+		List<String> bodies = new ArrayList<String>(messages.size());
+		List<String> callbacks = new ArrayList<String>(messages.size());
+		List<Boolean> stickies = new ArrayList<Boolean>(messages.size());
+		List<Integer> priorities = new ArrayList<Integer>(messages.size());
+		List<String> icon_kinds = new ArrayList<String>(messages.size());
+		List<String> icons = new ArrayList<String>(messages.size());
+		Map<NotificationMessage, NotificationException> unsent = new IdentityHashMap<NotificationMessage, NotificationException>();
+		NotificationException undeclared = null;
+		for (NotificationMessage message : messages) {
+			String type;
+			String[] icon;
+			try {
+				type = typeOf(message);
+				icon = iconOf(message);
+			} catch (NotificationException e) {
+				undeclared = e;
+				unsent.put(message, e);
+				continue;
+			}
+			URL callback = getCallbackUrl(message);
+			sent.add(message);
+			types.add(type);
+			icon_kinds.add(icon[0]);
+			icons.add(icon[1]);
+			titles.add(message.getTitle() == null ? "" : message.getTitle());
+			bodies.add(message.getMessage() == null ? "" : message.getMessage());
+			callbacks.add(callback == null ? "" : callback.toString());
+			stickies.add(isSticky(message));
+			priorities.add(message.getPriority().getValue());
+		}
+		if(sent.isEmpty())
+			throw undeclared;
+
+		Object shown;
+		try {
+			shown = runScript(mBatchScript, super.application_name, types, titles, bodies, callbacks, stickies, priorities, icon_kinds, icons);
+		} catch (Exception e) {
+			mProbeCache.invalidate();
+			throw new NotificationException(e);
+		}
+
+		List<?> outcomes = shown instanceof List ? (List<?>) shown : Collections.emptyList();
+		if(outcomes.isEmpty()){
+			mProbeCache.invalidate();
+			throw new NotificationException("No Growl process located");
+		}
 
+		int i = 0;
+		for (NotificationMessage message : messages) {
+			if(i >= sent.size() || sent.get(i) != message){
+				results.add(NotificationResult.failure(message, unsent.get(message)));
+				continue;
+			}
+			if(i < outcomes.size() && Boolean.TRUE.equals(outcomes.get(i))){
+				results.add(NotificationResult.success(message));
+			}else{
+				results.add(NotificationResult.failure(message, new NotificationException("Growl could not display the notification")));
+			}
+			i++;
+		}
+		return results;
 	}
 
 	/**
 	 * Cleans-up object by resetting the script engine and application name 
+	 * 
+	 * <p>Queued notifications, and those being displayed by other threads, are finished first.
+	 * 
+	 * @throws NotificationException if queued notifications cannot be drained
 	 * @since   1.0
 	 */
 	@Override
 	public void close() throws NotificationException {
-		mScriptEngine = null;
-		super.application_name = null;
+		closeDispatcher();
+		synchronized (lifecycle) {
+			beginDrain();
+			try {
+				mScriptEngine = null;
+				mProbeCache.invalidate();
+				mRegisteredTypes.clear();
+				super.application_name = null;
+			} finally {
+				endDrain();
+			}
+		}
+	}
+
+	/**
+	 * Sets the icon displayed with notifications that do not have their own
+	 * 
+	 * <p>A named icon is taken as the name of an application, e.g. <tt>Mail</tt>, whose icon is registered as this
+	 * application's own the next time a notification is displayed. Other icons are displayed with each notification.
+	 * 
+	 * @param icon the default icon - <tt>null</tt> for Script Editor's icon
+	 * @since 1.3
+	 * @return the modified <tt>OSXGrowlNotification</tt> object
+	 */
+	@Override
+	public OSXGrowlNotification icon(NotificationIcon icon) {
+		super.icon(icon);
+		mRegisteredTypes.clear();
+		return this;
 	}
 
 	/**
@@ -129,80 +430,261 @@ public class OSXGrowlNotification extends GrowlNotification {
 	 * @since   1.0
 	 */
 	public boolean isGrowlEnabled() {
-		String script = getGrowlEnabledScript().build();
-		long count = runScript(script, 0L);
-		return count > 0;
+		return Boolean.TRUE.equals(runScriptOrDefault(mGrowlEnabledScript, Boolean.FALSE));
 	}
 
 	/*
-	 * Generate AppleScript to test if Growl Notifications are enabled
+	 * Register the declared notification types with Growl
 	 */
-	private ScriptBuilder getGrowlEnabledScript() {
-		return script().add("tell application ").quote(SYSTEM_EVENTS).newLine(
-				"return count of (every process whose bundle identifier is ").quote(
-						GROWL_APPLICATION).add(") > 0").newLine("end tell");
+	private void register() throws NotificationException {
+		String[] types = notification_types;
+		boolean registered;
+		try {
+			registered = Boolean.TRUE.equals(runScript(mRegistrationScript, super.application_name, types, applicationIcon()));
+		} catch (Exception e) {
+			mProbeCache.invalidate();
+			throw new NotificationException("Could not register with Growl", e);
+		}
+
+		if(!registered){
+			mProbeCache.invalidate();
+			throw new NotificationException("No Growl process located");
+		}
+
+		Collections.addAll(mRegisteredTypes, types);
 	}
 
 	/*
-	 * Generate AppleScript to generate Growl Notification
+	 * The application whose icon is registered - a named default icon, or Script Editor
 	 */
-	private ScriptBuilder messageScript(String title, String message) {
-		ScriptBuilder script = script()
-				.add("tell application ").quote(SYSTEM_EVENTS)
-				.newLine("set isRunning to (count of (every process whose bundle identifier is ").quote(GROWL_APPLICATION).add(")) > 0")
-				.newLine("end tell")
-				.newLine("if isRunning then")
-				.newLine("tell application id ").quote(GROWL_APPLICATION)
-				.newLine("set the allNotificationsList to ").cont().newLine().array(title)
-				.newLine("set the enabledNotificationsList to ").cont().newLine().array(title)
-				.newLine("register as application ").cont()
-				.newLine().quote(super.application_name).add(" all notifications allNotificationsList ").cont()
-				.newLine("default notifications enabledNotificationsList ").cont()
-				.newLine("icon of application ").quote(DEFAULT_ICON_NAME)
-				.newLine("notify with name ").cont()
-				.newLine().quote(title).add(" title ").cont()
-				.newLine().quote(title).add(" description ").cont()
-				.newLine().quote(message).add(" application name ").quote(super.application_name);
+	private String applicationIcon() {
+		NotificationIcon default_icon = icon;
+		return default_icon != null && default_icon.getSource() == NotificationIcon.Source.NAME ? default_icon.getLocation() : DEFAULT_ICON_NAME;
+	}
 
-		if(callback_url != null){
-			script.add(" callback URL ").cont()
-			.newLine().quote(super.callback_url.toString());
+	/*
+	 * The kind and value of a message's icon, as passed to the notify handlers - a named default icon is already
+	 * the application's icon, so only other default icons are passed
+	 */
+	private String[] iconOf(NotificationMessage message) throws NotificationException {
+		NotificationIcon message_icon = message.getIcon();
+		if(message_icon == null){
+			message_icon = icon;
+			if(message_icon == null || message_icon.getSource() == NotificationIcon.Source.NAME)
+				return new String[] { "", "" };
+		}
+		switch (message_icon.getSource()) {
+		case NAME:
+			return new String[] { "application", message_icon.getLocation() };
+		case URL:
+			return new String[] { "location", message_icon.getLocation() };
+		default:
+			/* Growl takes images by location, so file and byte icons are shrunk once into a cached file */
+			return new String[] { "location", IconCache.getDefault().get(message_icon).toFile().toURI().toString() };
 		}
+	}
 
-		if(super.isSticky()){
-			script.add(" with sticky");
+	/*
+	 * Check that every declared notification type has been registered
+	 */
+	private boolean isRegistered() {
+		String[] types = notification_types;
+		for (String type : types) {
+			if(!mRegisteredTypes.contains(type))
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Sets how long the result of checking for a running Growl process is reused
+	 * <p>The default is 5 seconds. A time-to-live of 0 checks before every notification.
+	 * 
+	 * @param ttl the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>ttl</tt>
+	 * @throws IllegalArgumentException if the time-to-live is negative or the unit is null
+	 * @since 1.3
+	 */
+	public void setProbeTtl(long ttl, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		mProbeCache = newProbeCache(ttl, unit);
+	}
+
+	/**
+	 * Get the number of notifications that reused a cached Growl process check
+	 * @return the number of cache hits
+	 * @since 1.3
+	 */
+	public long getProbeCacheHits() {
+		return mProbeCache.getHits();
+	}
+
+	/**
+	 * Get the number of notifications that had to check for a running Growl process
+	 * @return the number of cache misses
+	 * @since 1.3
+	 */
+	public long getProbeCacheMisses() {
+		return mProbeCache.getMisses();
+	}
+
+	/*
+	 * Create a cache of isGrowlEnabled()
+	 */
+	private GrowlProbeCache newProbeCache(long ttl, TimeUnit unit) {
+		return new GrowlProbeCache(new GrowlProbeCache.Probe() {
+			@Override
+			public boolean isRunning() {
+				return isGrowlEnabled();
+			}
+		}, ttl, unit);
+	}
+
+	/*
+	 * AppleScript handler to test if Growl Notifications are enabled
+	 */
+	private static String growlEnabledSource() {
+		return script().add("on growl_enabled()")
+				.newLine("tell application ").quote(SYSTEM_EVENTS)
+				.newLine("return (count of (every process whose bundle identifier is ").quote(GROWL_APPLICATION).add(")) > 0")
+				.newLine("end tell")
+				.newLine("end growl_enabled").build();
+	}
 
-		script.newLine("end tell")
-		.newLine("end if");
-		return script;
+	/*
+	 * AppleScript handler to register the application and its notification types
+	 */
+	private static String registrationSource() {
+		return script().add("on register_growl(appName, notificationTypes, appIcon)")
+				.newLine("if not growl_enabled() then return false")
+				.newLine("tell application id ").quote(GROWL_APPLICATION)
+				.newLine("register as application appName ").cont()
+				.newLine("all notifications notificationTypes ").cont()
+				.newLine("default notifications notificationTypes ").cont()
+				.newLine("icon of application appIcon")
+				.newLine("end tell")
+				.newLine("return true")
+				.newLine("end register_growl")
+				.newLine(growlEnabledSource()).build();
+	}
+
+	/*
+	 * AppleScript handler to generate Growl Notification
+	 * - an empty callbackUrl displays the notification without a callback, and an empty iconKind with the application's icon
+	 */
+	private static String messageSource() {
+		ScriptBuilder script = script().add("on notify_growl(appName, notificationName, theTitle, theMessage, callbackUrl, isSticky, thePriority, iconKind, theIcon)")
+				.newLine("if not growl_enabled() then return false")
+				.newLine("tell application id ").quote(GROWL_APPLICATION);
+		return notifyCommands(script, "notificationName", "theTitle", "theMessage", "callbackUrl", "isSticky", "thePriority", "iconKind", "theIcon", "")
+				.newLine("end tell")
+				.newLine("return true")
+				.newLine("end notify_growl")
+				.newLine(growlEnabledSource()).build();
+	}
+
+	/*
+	 * AppleScript handler to generate or replace a Growl Notification with the given identifier
+	 */
+	private static String updateSource() {
+		ScriptBuilder script = script().add("on update_growl(appName, notificationName, theTitle, theMessage, callbackUrl, isSticky, thePriority, iconKind, theIcon, theIdentifier)")
+				.newLine("if not growl_enabled() then return false")
+				.newLine("tell application id ").quote(GROWL_APPLICATION);
+		return notifyCommands(script, "notificationName", "theTitle", "theMessage", "callbackUrl", "isSticky", "thePriority", "iconKind", "theIcon", " identifier theIdentifier")
+				.newLine("end tell")
+				.newLine("return true")
+				.newLine("end update_growl")
+				.newLine(growlEnabledSource()).build();
+	}
+
+	/*
+	 * AppleScript handler to generate several Growl Notifications, returning whether each was displayed
+	 */
+	private static String batchSource() {
+		ScriptBuilder script = script().add("on notify_all_growl(appName, theTypes, theTitles, theMessages, theCallbacks, theStickies, thePriorities, theIconKinds, theIcons)")
+				.newLine("set results to {}")
+				.newLine("if not growl_enabled() then return results")
+				.newLine("tell application id ").quote(GROWL_APPLICATION)
+				.newLine("repeat with i from 1 to count of theTitles")
+				.newLine("try");
+		return notifyCommands(script, "(item i of theTypes)", "(item i of theTitles)", "(item i of theMessages)", "(item i of theCallbacks)",
+				"(item i of theStickies)", "(item i of thePriorities)", "(item i of theIconKinds)", "(item i of theIcons)", "")
+				.newLine("set end of results to true")
+				.newLine("on error")
+				.newLine("set end of results to false")
+				.newLine("end try")
+				.newLine("end repeat")
+				.newLine("end tell")
+				.newLine("return results")
+				.newLine("end notify_all_growl")
+				.newLine(growlEnabledSource()).build();
+	}
+
+	/*
+	 * Append a notify command for each kind of icon - an image location, an application or none - as AppleScript
+	 * cannot leave out an optional parameter by its value; <tt>options</tt> are added to every command
+	 */
+	private static ScriptBuilder notifyCommands(ScriptBuilder script, String type, String title, String description,
+			String callback, String sticky, String priority, String icon_kind, String icon, String options) {
+		script.newLine("if " + icon_kind + " is \"location\" then");
+		notifyCommand(script, type, title, description, callback, sticky, priority, " image from location " + icon + options);
+		script.newLine("else if " + icon_kind + " is \"application\" then");
+		notifyCommand(script, type, title, description, callback, sticky, priority, " icon of application " + icon + options);
+		script.newLine("else");
+		notifyCommand(script, type, title, description, callback, sticky, priority, options);
+		return script.newLine("end if");
+	}
+
+	/*
+	 * Append a notify command with or without a callback - an empty callback displays the notification without one
+	 */
+	private static void notifyCommand(ScriptBuilder script, String type, String title, String description,
+			String callback, String sticky, String priority, String clauses) {
+		String notify = "notify with name " + type + " title " + title + " description " + description + " ";
+		String options = clauses + " sticky " + sticky + " priority " + priority;
+		script.newLine("if " + callback + " is \"\" then")
+				.newLine(notify).cont()
+				.newLine("application name appName" + options)
+				.newLine("else")
+				.newLine(notify).cont()
+				.newLine("application name appName callback URL " + callback + options)
+				.newLine("end if");
 	}
 
 	/*
 	 * Return new ScriptBuilder
 	 */
-	private ScriptBuilder script() {
+	private static ScriptBuilder script() {
 		return new ScriptBuilder();
 	}
 
 	/*
-	 * Run AppleScript and specify a default value on failure
+	 * Run AppleScript handler and specify a default value on failure - the failure is recorded as an error
 	 */
 	@SuppressWarnings("unchecked")
-	private <T> T runScript(String script, T defaultValue) {
+	private <T> T runScriptOrDefault(AppleScriptTemplate template, T defaultValue, Object... args) {
 		try {
-			return (T) runScript(script);
+			return (T) runScript(template, args);
 		} catch (Exception e) {
+			recordError(e);
 			return defaultValue;
 		}
 	}
 
 	/*
-	 * Run AppleScript using the AppleScript Script Engine
+	 * Run AppleScript handler using the AppleScript Script Engine
+	 * - serialised as the probe cache may refresh from a background thread
 	 */
-	private Object runScript(String script) throws Exception {
+	private Object runScript(AppleScriptTemplate template, Object... args) throws Exception {
+		ScriptEngine engine = mScriptEngine;
+		if (engine == null) {
+			throw new Exception("No AppleScriptEngine available");
+		}
 		try {
-			return mScriptEngine.eval(script, mScriptEngine.getContext());
+			synchronized (engine) {
+				return template.eval(engine, args);
+			}
 		} catch (Exception e) {
 			throw new Exception("Could not execute script", e);
 		}
@@ -211,7 +693,7 @@ public class OSXGrowlNotification extends GrowlNotification {
 	/*
 	 * Helper class to Build valid AppleScript
 	 */
-	private class ScriptBuilder {
+	private static class ScriptBuilder {
 
 		StringBuilder builder = new StringBuilder();
 
@@ -224,12 +706,10 @@ public class OSXGrowlNotification extends GrowlNotification {
 		}
 
 		/*
-		 * Append quoted text to current line
+		 * Append quoted and escaped text to current line
 		 */
 		public ScriptBuilder quote(String text) {
-			this.builder.append("\"");
-			this.builder.append(text);
-			this.builder.append("\"");
+			this.builder.append(AppleScriptTemplate.quote(text));
 			return this;
 		}
 
@@ -269,9 +749,7 @@ public class OSXGrowlNotification extends GrowlNotification {
 					this.builder.append(", ");
 				}
 
-				this.builder.append("\"");
-				this.builder.append(values[i]);
-				this.builder.append("\"");
+				this.builder.append(AppleScriptTemplate.quote(values[i]));
 			}
 
 			this.builder.append("}");
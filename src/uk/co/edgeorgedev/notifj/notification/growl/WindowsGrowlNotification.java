@@ -27,18 +27,28 @@
  */
 package uk.co.edgeorgedev.notifj.notification.growl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.SystemUtils;
 
 import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
 import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSystemException;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpCallback;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpCallbackListener;
+import uk.co.edgeorgedev.notifj.notification.growl.gntp.GntpCallbackReceiver;
 
 import com.google.code.jgntp.Gntp;
-import com.google.code.jgntp.GntpApplicationInfo;
-import com.google.code.jgntp.GntpClient;
-import com.google.code.jgntp.GntpNotificationInfo;
 
 /**
  * This class consists of methods to create 
@@ -50,6 +60,14 @@ import com.google.code.jgntp.GntpNotificationInfo;
  * 
  * <p>It should also be noted that <tt>open()</tt> will throw a <tt>NotificationOperatingSystemException</tt>
  * should it be called on a non-Windows operating system.
+ * 
+ * <p>An instance may be shared by any number of threads, whose notifications are sent in parallel over the
+ * pooled connections. <tt>close()</tt> waits for notifications in progress before the connections are shut down.
+ * 
+ * <p>While a {@link GntpCallbackListener} is registered, each notification without a callback URL requests a GNTP
+ * socket callback instead and is sent over its own connection, which a {@link GntpCallbackReceiver} holds open until
+ * the notification is clicked, closed or times out. The listener is then called with the notification's
+ * <tt>NotificationMessage</tt> as the callback's attachment.
  *
  * @author  Ed George
  * @see     GrowlNotification
@@ -58,11 +76,39 @@ import com.google.code.jgntp.GntpNotificationInfo;
  */
 public class WindowsGrowlNotification extends GrowlNotification {
 
-	private GntpClient mClient;
-	private GntpApplicationInfo mApplicationInfo;
-	private String application_name;
-	private TimeUnit time_unit;
-	private long duration;
+	/**
+	 * The host notifications are sent to unless another is set
+	 * @since 1.3
+	 */
+	public static final String DEFAULT_HOST = "localhost";
+
+	/**
+	 * The number of GNTP connections opened unless another is set
+	 * @since 1.3
+	 */
+	public static final int DEFAULT_POOL_SIZE = 2;
+
+	/**
+	 * The GNTP implementation used to send notifications
+	 * @since 1.3
+	 */
+	public enum Transport {
+		/** Pooled clients of the bundled jgntp library */
+		JGNTP,
+		/** Pooled in-project NIO connections that pipeline requests */
+		NATIVE
+	}
+
+	private final Object lifecycle = new Object();
+	private volatile GntpSender mSender;
+	private volatile GntpCallbackReceiver mCallbacks;
+	private final List<GntpCallbackListener> callback_listeners = new CopyOnWriteArrayList<GntpCallbackListener>();
+	private volatile Transport transport = Transport.JGNTP;
+	private volatile TimeUnit time_unit = TimeUnit.SECONDS;
+	private volatile long duration = 3;
+	private volatile String host = DEFAULT_HOST;
+	private volatile int port = Gntp.WINDOWS_TCP_PORT;
+	private volatile int pool_size = DEFAULT_POOL_SIZE;
 
 	/**
 	 * Constructs an unregistered named GFW notification application
@@ -76,7 +122,12 @@ public class WindowsGrowlNotification extends GrowlNotification {
 	}
 
 	/**
-	 * Creates a new Growl Notification Transport Protocol (GNTP) client which is used to create notifications
+	 * Creates a pool of Growl Notification Transport Protocol (GNTP) connections which are used to create notifications
+	 * and registers the application's notification types
+	 * 
+	 * <p>With the {@link Transport#JGNTP} transport, registration only fails if none of the pooled connections can be registered.
+	 * The connections are used by <tt>show()</tt> only once registration has finished, and calling <tt>open()</tt> again
+	 * has no effect until {@link #close()}.
 	 * 
 	 * @throws NotificationException if the client registration fails
 	 * @throws NotificationOperatingSystemException if the system operating system is <i>not</i> Windows
@@ -84,20 +135,60 @@ public class WindowsGrowlNotification extends GrowlNotification {
 	 */
 	@Override
 	public void open() throws NotificationException {
-		if (!SystemUtils.IS_OS_WINDOWS)
+		if (!isOperatingSystemSupported())
 			throw new NotificationOperatingSystemException("Operating System is not Windows");
-		try{
-			mApplicationInfo = Gntp.appInfo(application_name).build();
-			mClient = Gntp.client(mApplicationInfo).forHost("localhost").build();
-			mClient.register();
-		}catch(Exception e){
-			throw new NotificationException(e);
+		synchronized (lifecycle) {
+			if(mSender != null)
+				return;
+			GntpSender sender;
+			if(transport == Transport.NATIVE){
+				sender = new NativeGntpSender(application_name, host, port, pool_size);
+			}else{
+				sender = new GntpConnectionPool(application_name, host, port, pool_size);
+			}
+			try {
+				sender.open(notification_types, duration, time_unit);
+			} catch (NotificationException e) {
+				sender.shutdown(duration, time_unit);
+				throw e;
+			}
+			GntpCallbackReceiver callbacks = new GntpCallbackReceiver(host, port);
+			callbacks.addListener(new GntpCallbackListener() {
+				@Override
+				public void onCallback(GntpCallback callback) {
+					for (GntpCallbackListener listener : callback_listeners) {
+						try {
+							listener.onCallback(callback);
+						} catch (RuntimeException e) {
+							// A listener has no caller to report to
+							recordError(e);
+						}
+					}
+				}
+			});
+			mCallbacks = callbacks;
+			mSender = sender;
 		}
+		openDispatcher();
+	}
+
+	/**
+	 * Check if {@link #open()} may connect on this operating system - only Windows runs Growl for Windows
+	 * 
+	 * <p>Subclasses that send to another GNTP server, such as a test server, may override this.
+	 * 
+	 * @return <tt>true</tt> if the operating system is Windows
+	 * @since 1.3
+	 */
+	protected boolean isOperatingSystemSupported() {
+		return SystemUtils.IS_OS_WINDOWS;
 	}
 
 	/**
 	 * Displays a GFW Notification with a given title and message
 	 * 
+	 * <p>Concurrent calls are sent in parallel over the pooled connections.
+	 * 
 	 * @param  title the title of the notification.
 	 * @param  message the message body of the notification. 
 	 * @throws NotificationException if an error occurs trying to display the message
@@ -105,30 +196,231 @@ public class WindowsGrowlNotification extends GrowlNotification {
 	 */
 	@Override
 	public void show(String title, String message) throws NotificationException {
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a Growl Notification with a given title, message and priority
+	 * 
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification. 
+	 * @param  priority the priority of the notification, sent as the GNTP <tt>Notification-Priority</tt>
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a Growl Notification, applying the message's own sticky, callback, icon and type settings
+	 * 
+	 * @param  message the notification to display.
+	 * @throws NotificationException if an error occurs trying to display the message, or its type was not declared
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		long started = beginCall();
+		boolean sent = false;
 		try {
-			GntpNotificationInfo notificationInfo = Gntp.notificationInfo(mApplicationInfo, application_name).build();
-			mClient.notify(Gntp.notification(notificationInfo, title).text(message).build(), duration, time_unit);
-		} catch (Exception e) {
-			throw new NotificationException(e);
+			send(sender(), message, null);
+			sent = true;
+		} finally {
+			endCall();
+			recordSend(started, sent);
 		}
 	}
 
 	/**
-	 * Cleans-up object by shutting down GNTP client
+	 * Displays a GFW Notification that can later be updated in place
+	 * 
+	 * <p>Every state is sent with the same GNTP <tt>Notification-Coalescing-ID</tt>, so Growl replaces the
+	 * notification while it is still displayed. GNTP cannot remove a notification, so dismissing it only stops
+	 * further updates. Updates are throttled by the update interval.
 	 * 
-	 * @throws NotificationException if GNTP client shutdown fails
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update the notification
+	 * @throws NotificationException if an error occurs trying to display the message, or its type was not declared
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		final String coalescing_id = UUID.randomUUID().toString();
+		NotificationHandle handle = new NotificationHandle(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS) {
+			@Override
+			protected void push(NotificationMessage state) throws NotificationException {
+				long started = beginCall();
+				boolean sent = false;
+				try {
+					send(sender(), state, coalescing_id);
+					sent = true;
+				} finally {
+					endCall();
+					recordSend(started, sent);
+				}
+			}
+
+			@Override
+			protected void remove() {
+				// Left to time out
+			}
+		};
+		handle.update(message);
+		return handle;
+	}
+
+	/**
+	 * Displays several GFW Notifications over a single GNTP connection
+	 * 
+	 * <p>With the {@link Transport#NATIVE} transport the notifications are pipelined, otherwise they are
+	 * sent one after another.
+	 * 
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if no GNTP connection is available
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		long started = beginCall();
+		List<NotificationResult> results = null;
+		try {
+			results = sendAll(sender(), messages);
+			return results;
+		} finally {
+			endCall();
+			recordSends(started, messages, results);
+		}
+	}
+
+	/*
+	 * The open GNTP sender - only read within a counted call
+	 */
+	private GntpSender sender() throws NotificationException {
+		GntpSender sender = mSender;
+		if (sender == null) {
+			throw new NotificationException("No GNTP connection available - Have you called open()?");
+		}
+		return sender;
+	}
+
+	/*
+	 * Send one notification - over its own connection if callback listeners are waiting for it, otherwise over the pool
+	 * - one with a coalescing ID replaces the displayed notification with the same ID
+	 */
+	private void send(GntpSender sender, NotificationMessage message, String coalescing_id) throws NotificationException {
+		NotificationMessage resolved = resolve(message);
+		GntpCallbackReceiver callbacks = mCallbacks;
+		if(callbacks != null && !callback_listeners.isEmpty() && resolved.getCallbackUrl() == null){
+			callbacks.send(NativeGntpSender.request(application_name, resolved).coalescingId(coalescing_id), message, duration, time_unit);
+		}else{
+			sender.notify(resolved, coalescing_id, duration, time_unit);
+		}
+	}
+
+	/*
+	 * Send several notifications, reporting each result against the caller's message
+	 */
+	private List<NotificationResult> sendAll(GntpSender sender, Collection<NotificationMessage> messages) throws NotificationException {
+		if(!callback_listeners.isEmpty()){
+			/* Each notification awaiting a callback needs its own connection, so none are batched */
+			List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+			for (NotificationMessage message : messages) {
+				try {
+					send(sender, message, null);
+					results.add(NotificationResult.success(message));
+				} catch (NotificationException e) {
+					results.add(NotificationResult.failure(message, e));
+				}
+			}
+			return results;
+		}
+
+		List<NotificationMessage> resolved = new ArrayList<NotificationMessage>(messages.size());
+		NotificationException undeclared = null;
+		for (NotificationMessage message : messages) {
+			try {
+				resolved.add(resolve(message));
+			} catch (NotificationException e) {
+				undeclared = e;
+			}
+		}
+		if(resolved.isEmpty() && undeclared != null)
+			throw undeclared;
+
+		/* Report each result against the caller's message rather than its resolved copy */
+		Iterator<NotificationResult> sent = sender.notifyBatch(resolved, duration, time_unit).iterator();
+		List<NotificationResult> results = new ArrayList<NotificationResult>(messages.size());
+		for (NotificationMessage message : messages) {
+			NotificationException cause;
+			try {
+				typeOf(message);
+				cause = sent.next().getCause();
+			} catch (NotificationException e) {
+				cause = e;
+			}
+			results.add(cause == null ? NotificationResult.success(message) : NotificationResult.failure(message, cause));
+		}
+		return results;
+	}
+
+	/**
+	 * Cleans-up object by shutting down the pooled GNTP clients
+	 * 
+	 * <p>Queued notifications, and those being sent by other threads, are finished first.
+	 * 
+	 * @throws NotificationException if queued notifications cannot be drained
 	 * @since 1.2
 	 */
 	@Override
 	public void close() throws NotificationException {
-		try {
-			application_name = null;
-			mClient.shutdown(duration, time_unit);
-		} catch (Exception e) {
-			throw new NotificationException(e);
+		closeDispatcher();
+		synchronized (lifecycle) {
+			beginDrain();
+			try {
+				GntpSender sender = mSender;
+				GntpCallbackReceiver callbacks = mCallbacks;
+				mSender = null;
+				mCallbacks = null;
+				application_name = null;
+				if (sender != null)
+					sender.shutdown(duration, time_unit);
+				if (callbacks != null)
+					callbacks.close();
+			} finally {
+				endDrain();
+			}
 		}
 	}
 
+	/**
+	 * Registers a listener for the click, close and timeout callbacks of subsequent notifications
+	 * 
+	 * <p>Notifications given a callback URL open the URL instead and are not reported to the listener.
+	 * 
+	 * @param listener the listener, called with the <tt>NotificationMessage</tt> that was shown as the callback's attachment
+	 * @throws IllegalArgumentException if the listener is null.
+	 * @since 1.3
+	 */
+	public void addCallbackListener(GntpCallbackListener listener) {
+		if(listener == null)
+			throw new IllegalArgumentException("Listener cannot be null");
+		callback_listeners.add(listener);
+	}
+
+	/**
+	 * Removes a previously registered callback listener
+	 * 
+	 * @param listener the listener
+	 * @since 1.3
+	 */
+	public void removeCallbackListener(GntpCallbackListener listener) {
+		callback_listeners.remove(listener);
+	}
+
 	/**
 	 * Set the TimeUnit of the notification's duration
 	 * <p>The default is <tt>TimeUnit.SECONDS</tt>.
@@ -157,4 +449,60 @@ public class WindowsGrowlNotification extends GrowlNotification {
 		this.duration = duration;
 	}
 
+	/**
+	 * Set the host running GFW that notifications are sent to.
+	 * <p>The default is <tt>localhost</tt>. Takes effect on the next call to {@link #open()}.
+	 * 
+	 * @param host the host name or address
+	 * @throws IllegalArgumentException if the host is null.
+	 * @since 1.3
+	 */
+	public void setHost(String host) {
+		if(host == null)
+			throw new IllegalArgumentException("Host cannot be null");
+		this.host = host;
+	}
+
+	/**
+	 * Set the GNTP port that notifications are sent to.
+	 * <p>The default is the GFW port, 23053. Takes effect on the next call to {@link #open()}.
+	 * 
+	 * @param port the TCP port
+	 * @throws IllegalArgumentException if the port is not between 1 and 65535
+	 * @since 1.3
+	 */
+	public void setPort(int port) {
+		if(port < 1 || port > 65535)
+			throw new IllegalArgumentException("Port must be between 1 and 65535");
+		this.port = port;
+	}
+
+	/**
+	 * Set the GNTP implementation used to send notifications.
+	 * <p>The default is {@link Transport#JGNTP}. Takes effect on the next call to {@link #open()}.
+	 * 
+	 * @param transport the GNTP implementation
+	 * @throws IllegalArgumentException if the transport is null.
+	 * @since 1.3
+	 */
+	public void setTransport(Transport transport) {
+		if(transport == null)
+			throw new IllegalArgumentException("Transport cannot be null");
+		this.transport = transport;
+	}
+
+	/**
+	 * Set the number of GNTP connections used to send notifications in parallel.
+	 * <p>The default is 2. Takes effect on the next call to {@link #open()}.
+	 * 
+	 * @param pool_size the number of connections
+	 * @throws IllegalArgumentException if the pool size is less than 1
+	 * @since 1.3
+	 */
+	public void setPoolSize(int pool_size) {
+		if(pool_size < 1)
+			throw new IllegalArgumentException("Pool size cannot be less than 1");
+		this.pool_size = pool_size;
+	}
+
 }
@@ -0,0 +1,99 @@
+/**
+ * GntpCallback.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+/**
+ * A socket callback sent by a GNTP server when the user clicks or closes a notification, or it times out.
+ *
+ * @see     GntpCallbackReceiver
+ * @see     GntpCallbackListener
+ * @since   1.3
+ */
+public final class GntpCallback {
+
+	/**
+	 * What happened to the notification, taken from the <tt>Notification-Callback-Result</tt> header
+	 * @since 1.3
+	 */
+	public enum Result {
+		/** The user clicked the notification */
+		CLICKED,
+		/** The user closed the notification */
+		CLOSED,
+		/** The notification was dismissed without the user interacting with it */
+		TIMEDOUT;
+
+		/*
+		 * The result for a header value - servers send either the past or the present tense
+		 */
+		static Result parse(String value) {
+			if(value == null)
+				return null;
+			String upper = value.trim().toUpperCase();
+			if("CLICKED".equals(upper) || "CLICK".equals(upper))
+				return CLICKED;
+			if("CLOSED".equals(upper) || "CLOSE".equals(upper))
+				return CLOSED;
+			if("TIMEDOUT".equals(upper) || "TIMEOUT".equals(upper))
+				return TIMEDOUT;
+			return null;
+		}
+	}
+
+	private final String notification_id;
+	private final Result result;
+	private final String timestamp;
+	private final Object attachment;
+
+	GntpCallback(String notification_id, Result result, String timestamp, Object attachment) {
+		this.notification_id = notification_id;
+		this.result = result;
+		this.timestamp = timestamp;
+		this.attachment = attachment;
+	}
+
+	/**
+	 * Get the ID the notification was sent with
+	 * @return the notification ID returned by {@link GntpCallbackReceiver#send(GntpNotify, Object, long, java.util.concurrent.TimeUnit)}
+	 * @since 1.3
+	 */
+	public String getNotificationId() {
+		return notification_id;
+	}
+
+	/**
+	 * Get what happened to the notification
+	 * @return the callback result
+	 * @since 1.3
+	 */
+	public Result getResult() {
+		return result;
+	}
+
+	/**
+	 * Get when the server says the callback happened
+	 * @return the <tt>Notification-Callback-Timestamp</tt> header - <tt>null</tt> if not sent
+	 * @since 1.3
+	 */
+	public String getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get the object the notification was sent with, e.g. its <tt>NotificationMessage</tt>
+	 * @return the attachment - <tt>null</tt> if none was given
+	 * @since 1.3
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	@Override
+	public String toString() {
+		return "GntpCallback[" + notification_id + ", " + result + "]";
+	}
+
+}
@@ -0,0 +1,26 @@
+/**
+ * GntpCallbackListener.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+/**
+ * Receives the click, close and timeout callbacks of GNTP notifications.
+ *
+ * <p>Callbacks are delivered on the executor of the {@link GntpCallbackReceiver}, never on its selector thread,
+ * so a listener may block or send further notifications.
+ *
+ * @see     GntpCallbackReceiver#addListener(GntpCallbackListener)
+ * @since   1.3
+ */
+public interface GntpCallbackListener {
+
+	/**
+	 * Called once for each notification the user interacted with or that timed out
+	 * @param callback the callback
+	 * @since 1.3
+	 */
+	public void onCallback(GntpCallback callback);
+
+}
@@ -0,0 +1,550 @@
+/**
+ * GntpCallbackReceiver.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.metrics.MetricsRegistry;
+
+/**
+ * Sends GNTP notifications that request socket callbacks and delivers the callbacks to {@link GntpCallbackListener}s.
+ *
+ * <p>A GNTP server sends a socket callback over the connection the notification was sent on, once the user has
+ * clicked or closed the notification or it has timed out, so each outstanding notification holds a connection open.
+ * Every connection is served by a single selector thread, which lets thousands of notifications await their
+ * callbacks at once. Callbacks are matched to their notification through an index of notification IDs and handed
+ * to the listeners on an executor.
+ *
+ * <p>A notification whose callback has not arrived within the expiry time, ten minutes by default, is dropped from
+ * the index and its connection closed.
+ *
+ * <p>For example:
+ * <pre>
+ * GntpCallbackReceiver receiver = new GntpCallbackReceiver("localhost", 23053);
+ * receiver.addListener(new GntpCallbackListener() {
+ *     public void onCallback(GntpCallback callback) {
+ *         System.out.println(callback.getAttachment() + " was " + callback.getResult());
+ *     }
+ * });
+ * receiver.send(new GntpNotify("Test App", "General", "Build", "Passed"), "build-42", 3, TimeUnit.SECONDS);</pre>
+ *
+ * <p>This class is thread-safe.
+ *
+ * @see     GntpNotify#callbackContext(String, String)
+ * @since   1.3
+ */
+public class GntpCallbackReceiver {
+
+	/**
+	 * The number of minutes a notification waits for its callback unless another expiry is set
+	 * @since 1.3
+	 */
+	public static final long DEFAULT_EXPIRY_MINUTES = 10;
+
+	/**
+	 * The <tt>Notification-Callback-Context-Type</tt> sent with each notification
+	 * @since 1.3
+	 */
+	public static final String CONTEXT_TYPE = "NotifJ-ID";
+
+	private static final int READ_BUFFER_SIZE = 4096;
+	private static final long SWEEP_MILLIS = 1000;
+	private static final long CLOSE_WAIT_MILLIS = 1000;
+	private static final String METRICS_SOURCE = GntpCallbackReceiver.class.getSimpleName();
+
+	private final InetSocketAddress address;
+	private final Executor executor;
+	private final ExecutorService owned_executor;
+	private final List<GntpCallbackListener> listeners = new CopyOnWriteArrayList<GntpCallbackListener>();
+	private final ConcurrentHashMap<String, Pending> index = new ConcurrentHashMap<String, Pending>();
+	private final ConcurrentLinkedQueue<Pending> registrations = new ConcurrentLinkedQueue<Pending>();
+	private final GntpEncoder encoder = new GntpEncoder();
+	private final ByteBuffer read_buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private final AtomicLong sequence = new AtomicLong();
+	private final String id_prefix = Long.toHexString(new Random().nextLong() >>> 1) + "-";
+
+	private volatile long expiry_nanos = TimeUnit.MINUTES.toNanos(DEFAULT_EXPIRY_MINUTES);
+	private volatile Selector selector;
+	private volatile boolean closed;
+	private Thread worker;
+
+	/**
+	 * Constructs a receiver that delivers callbacks on its own daemon thread
+	 * @param host the GNTP server host name or address
+	 * @param port the GNTP server port
+	 * @since 1.3
+	 */
+	public GntpCallbackReceiver(String host, int port) {
+		this.address = new InetSocketAddress(host, port);
+		this.owned_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NotifJ-GntpCallbackListeners");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor = owned_executor;
+	}
+
+	/**
+	 * Constructs a receiver that delivers callbacks on an executor
+	 * @param host the GNTP server host name or address
+	 * @param port the GNTP server port
+	 * @param executor runs the listeners - it is not shut down by {@link #close()}
+	 * @throws IllegalArgumentException if the executor is null
+	 * @since 1.3
+	 */
+	public GntpCallbackReceiver(String host, int port, Executor executor) {
+		if(executor == null)
+			throw new IllegalArgumentException("Executor cannot be null");
+		this.address = new InetSocketAddress(host, port);
+		this.owned_executor = null;
+		this.executor = executor;
+	}
+
+	/**
+	 * Registers a listener for every subsequent callback
+	 * @param listener the listener
+	 * @throws IllegalArgumentException if the listener is null
+	 * @since 1.3
+	 */
+	public void addListener(GntpCallbackListener listener) {
+		if(listener == null)
+			throw new IllegalArgumentException("Listener cannot be null");
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a previously registered listener
+	 * @param listener the listener
+	 * @since 1.3
+	 */
+	public void removeListener(GntpCallbackListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sends a notification over its own connection and waits for the server to accept it
+	 *
+	 * <p>The connection is then kept open by the selector thread until the callback arrives or the notification expires.
+	 *
+	 * @param request the notification - its ID and callback context are replaced and any callback target must not be set
+	 * @param attachment returned with the callback by {@link GntpCallback#getAttachment()} - may be null
+	 * @param timeout the maximum time to wait for the server to accept the notification
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @return the ID the notification was sent with
+	 * @throws NotificationException if the notification cannot be sent, is refused or is not accepted in time, or the receiver is closed
+	 * @since 1.3
+	 */
+	public String send(GntpNotify request, Object attachment, long timeout, TimeUnit unit) throws NotificationException {
+		Selector selector = start();
+		String id = id_prefix + sequence.incrementAndGet();
+
+		ByteBuffer bytes;
+		synchronized (encoder) {
+			request.id(id).callbackContext(id, CONTEXT_TYPE);
+			encoder.clear().forgetResources();
+			request.encode(encoder);
+			ByteBuffer encoded = encoder.flip();
+			bytes = ByteBuffer.allocate(encoded.remaining());
+			bytes.put(encoded).flip();
+		}
+
+		Pending pending = new Pending(id, attachment, bytes, System.nanoTime() + expiry_nanos);
+		index.put(id, pending);
+		registrations.add(pending);
+		selector.wakeup();
+
+		try {
+			if(!pending.await(timeout, unit)){
+				cancel(pending);
+				throw new NotificationException("Timed out communicating with GNTP server " + address);
+			}
+		} catch (InterruptedException e) {
+			cancel(pending);
+			Thread.currentThread().interrupt();
+			throw new NotificationException("Interrupted communicating with GNTP server " + address, e);
+		}
+		return id;
+	}
+
+	/**
+	 * Set how long a notification waits for its callback before it is dropped
+	 * <p>The default is 10 minutes. Takes effect for notifications sent afterwards.
+	 *
+	 * @param expiry the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>expiry</tt>
+	 * @throws IllegalArgumentException if the unit is null or the expiry is less than 1
+	 * @since 1.3
+	 */
+	public void setExpiry(long expiry, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(expiry < 1)
+			throw new IllegalArgumentException("Expiry cannot be less than 1");
+		this.expiry_nanos = unit.toNanos(expiry);
+	}
+
+	/**
+	 * Get the number of notifications awaiting their callback
+	 * @return the number of outstanding notifications
+	 * @since 1.3
+	 */
+	public int getOutstanding() {
+		return index.size();
+	}
+
+	/**
+	 * Get the address of the GNTP server
+	 * @return the server address
+	 * @since 1.3
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Closes every connection and stops the selector thread - outstanding notifications receive no callback
+	 *
+	 * <p>Callbacks already handed to the executor are still delivered. A closed receiver cannot be reused.
+	 *
+	 * @since 1.3
+	 */
+	public void close() {
+		Thread worker;
+		synchronized (this) {
+			if(closed)
+				return;
+			closed = true;
+			worker = this.worker;
+		}
+		if(worker != null){
+			selector.wakeup();
+			try {
+				worker.join(CLOSE_WAIT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(owned_executor != null)
+			owned_executor.shutdown();
+	}
+
+	/*
+	 * Lazily open the selector and start its thread
+	 */
+	private synchronized Selector start() throws NotificationException {
+		if(closed)
+			throw new NotificationException("GNTP callback receiver has been closed");
+		if(selector != null)
+			return selector;
+
+		final Selector opened;
+		try {
+			opened = Selector.open();
+		} catch (IOException e) {
+			throw new NotificationException("Could not open a selector for GNTP callbacks", e);
+		}
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				select(opened);
+			}
+		}, "NotifJ-GntpCallbacks");
+		worker.setDaemon(true);
+		selector = opened;
+		worker.start();
+		return opened;
+	}
+
+	/*
+	 * The selector loop - connects new notifications, serves ready connections and closes expired ones
+	 */
+	private void select(Selector selector) {
+		long next_sweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+		try {
+			while(!closed){
+				selector.select(SWEEP_MILLIS);
+
+				Pending pending;
+				while((pending = registrations.poll()) != null){
+					connect(selector, pending);
+				}
+
+				for (SelectionKey key : selector.selectedKeys()) {
+					serve(key);
+				}
+				selector.selectedKeys().clear();
+
+				long now = System.nanoTime();
+				if(now - next_sweep >= 0){
+					sweep(selector, now);
+					next_sweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+				}
+			}
+		} catch (IOException e) {
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+		} catch (RuntimeException e) {
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+		} finally {
+			closed = true;
+			NotificationException cause = new NotificationException("GNTP callback receiver has been closed");
+			for (SelectionKey key : selector.keys()) {
+				drop((Pending) key.attachment(), key, cause);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Nothing further to release
+			}
+			Pending pending;
+			while((pending = registrations.poll()) != null){
+				drop(pending, null, cause);
+			}
+		}
+	}
+
+	/*
+	 * Open a non-blocking connection for a newly sent notification
+	 */
+	private void connect(Selector selector, Pending pending) {
+		if(pending.cancelled)
+			return;
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			int operation = channel.connect(address) ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT;
+			channel.register(selector, operation, pending);
+		} catch (IOException e) {
+			close(channel);
+			drop(pending, null, new NotificationException("Could not connect to GNTP server " + address, e));
+		}
+	}
+
+	/*
+	 * Advance a connection that is ready: finish connecting, write the request or read responses
+	 */
+	private void serve(SelectionKey key) {
+		Pending pending = (Pending) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			if(!key.isValid())
+				return;
+			if(key.isConnectable()){
+				try {
+					if(channel.finishConnect())
+						key.interestOps(SelectionKey.OP_WRITE);
+				} catch (IOException e) {
+					drop(pending, key, new NotificationException("Could not connect to GNTP server " + address, e));
+				}
+			}else if(key.isWritable()){
+				channel.write(pending.request);
+				if(!pending.request.hasRemaining()){
+					pending.request = null;
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}else if(key.isReadable()){
+				read(key, channel, pending);
+			}
+		} catch (IOException e) {
+			drop(pending, key, new NotificationException("Could not communicate with GNTP server " + address, e));
+		} catch (NotificationException e) {
+			drop(pending, key, e);
+		}
+	}
+
+	/*
+	 * Read the -OK or -ERROR response to the notification, then its callback
+	 */
+	private void read(SelectionKey key, SocketChannel channel, Pending pending) throws IOException, NotificationException {
+		read_buffer.clear();
+		if(channel.read(read_buffer) < 0){
+			drop(pending, key, new NotificationException("GNTP server " + address + " closed the connection"));
+			return;
+		}
+		read_buffer.flip();
+		pending.decoder.feed(read_buffer);
+
+		GntpResponse response;
+		while((response = pending.decoder.next()) != null){
+			if(response.getType() == GntpResponse.Type.CALLBACK){
+				pending.accept(null);
+				callback(response, pending);
+				drop(pending, key, null);
+				return;
+			}
+			if(!response.isOk()){
+				drop(pending, key, new NotificationException("GNTP error " + response.getErrorCode() + ": " + response.getErrorDescription()));
+				return;
+			}
+			pending.accept(null);
+		}
+	}
+
+	/*
+	 * Match a callback to its notification and hand it to the listeners
+	 */
+	private void callback(GntpResponse response, Pending pending) {
+		String id = response.getHeader("Notification-Callback-Context");
+		if(id == null)
+			id = response.getHeader("Notification-ID");
+		Pending notified = id == null ? null : index.remove(id);
+		if(notified == null && index.remove(pending.id, pending))
+			notified = pending;
+		if(notified == null)
+			return;
+
+		GntpCallback.Result result = GntpCallback.Result.parse(response.getHeader("Notification-Callback-Result"));
+		if(result == null){
+			MetricsRegistry.get().recordError(METRICS_SOURCE, new NotificationException("Unknown GNTP callback result: "
+					+ response.getHeader("Notification-Callback-Result")));
+			return;
+		}
+		deliver(new GntpCallback(notified.id, result, response.getHeader("Notification-Callback-Timestamp"), notified.attachment));
+	}
+
+	/*
+	 * Run every listener on the executor
+	 */
+	private void deliver(final GntpCallback callback) {
+		if(listeners.isEmpty())
+			return;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (GntpCallbackListener listener : listeners) {
+						try {
+							listener.onCallback(callback);
+						} catch (RuntimeException e) {
+							// A listener has no caller to report to
+							MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			MetricsRegistry.get().recordError(METRICS_SOURCE, e);
+		}
+	}
+
+	/*
+	 * Close the connections of cancelled notifications and those whose callback has expired
+	 */
+	private void sweep(Selector selector, long now) {
+		for (SelectionKey key : selector.keys()) {
+			Pending pending = (Pending) key.attachment();
+			if(pending.cancelled){
+				drop(pending, key, null);
+			}else if(now - pending.expires >= 0){
+				MetricsRegistry.get().recordDrop(METRICS_SOURCE);
+				drop(pending, key, new NotificationException("GNTP callback expired"));
+			}
+		}
+	}
+
+	/*
+	 * Stop waiting for a notification's callback - the selector thread closes its connection on the next sweep
+	 */
+	private void cancel(Pending pending) {
+		pending.cancelled = true;
+		index.remove(pending.id, pending);
+	}
+
+	/*
+	 * Remove a notification from the index and close its connection, failing its sender if it is still waiting
+	 */
+	private void drop(Pending pending, SelectionKey key, NotificationException cause) {
+		index.remove(pending.id, pending);
+		pending.accept(cause);
+		if(key != null){
+			key.cancel();
+			close(key.channel());
+		}
+	}
+
+	private static void close(Channel channel) {
+		try {
+			if(channel != null)
+				channel.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	/*
+	 * A notification awaiting acceptance and then its callback
+	 */
+	private static class Pending {
+
+		final String id;
+		final Object attachment;
+		final long expires;
+		final GntpResponseDecoder decoder = new GntpResponseDecoder();
+		final CountDownLatch accepted = new CountDownLatch(1);
+
+		/*
+		 * Only used by the selector thread
+		 */
+		ByteBuffer request;
+
+		volatile NotificationException failure;
+		volatile boolean cancelled;
+
+		Pending(String id, Object attachment, ByteBuffer request, long expires) {
+			this.id = id;
+			this.attachment = attachment;
+			this.request = request;
+			this.expires = expires;
+		}
+
+		/*
+		 * Release the sender - with a failure if the notification was not accepted; only the first call counts
+		 */
+		void accept(NotificationException cause) {
+			if(accepted.getCount() == 0)
+				return;
+			failure = cause;
+			accepted.countDown();
+		}
+
+		/*
+		 * Wait for the server to accept the notification, returning false on timeout
+		 */
+		boolean await(long timeout, TimeUnit unit) throws InterruptedException, NotificationException {
+			if(!accepted.await(timeout, unit))
+				return false;
+			if(failure != null)
+				throw failure;
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * GntpEncoder.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Encodes GNTP/1.0 requests into a reusable direct <tt>ByteBuffer</tt>.
+ *
+ * <p>Text is encoded as UTF-8 straight into the buffer, which doubles in size whenever a request
+ * does not fit, so that steady-state encoding allocates no further buffers. Several requests may be
+ * encoded back-to-back before the buffer is flipped and written to a channel in one go.
+ *
+ * <p>The encoder also remembers which binary resources have been sent over the current connection, so that
+ * each is only sent once until the connection is re-opened.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @see     GntpTransport
+ * @since   1.3
+ */
+final class GntpEncoder {
+
+	static final String VERSION = "GNTP/1.0";
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final CharsetEncoder encoder = UTF_8.newEncoder();
+	private final Set<String> resources = new HashSet<String>();
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+	/*
+	 * Discard any previously encoded requests
+	 */
+	GntpEncoder clear() {
+		buffer.clear();
+		return this;
+	}
+
+	/*
+	 * Begin a request with the information line - e.g. GNTP/1.0 NOTIFY NONE
+	 */
+	GntpEncoder request(String type) {
+		text(VERSION);
+		text(" ");
+		text(type);
+		text(" NONE");
+		return crlf();
+	}
+
+	/*
+	 * Append a header, skipping null values
+	 */
+	GntpEncoder header(String name, Object value) {
+		if(value == null)
+			return this;
+		text(name);
+		text(": ");
+		text(sanitise(value.toString()));
+		return crlf();
+	}
+
+	/*
+	 * Append a boolean header using GNTP's True/False values
+	 */
+	GntpEncoder header(String name, boolean value) {
+		return header(name, value ? "True" : "False");
+	}
+
+	/*
+	 * End the current section of headers with a blank line
+	 */
+	GntpEncoder end() {
+		return crlf();
+	}
+
+	/*
+	 * Append a binary resource section - its headers, the data and the closing blank lines
+	 */
+	GntpEncoder resource(String identifier, ByteBuffer data) {
+		header("Identifier", identifier);
+		header("Length", Integer.valueOf(data.remaining()));
+		end();
+		ensureCapacity(data.remaining());
+		buffer.put(data.duplicate());
+		return crlf().crlf();
+	}
+
+	/*
+	 * Mark a resource as sent over the current connection
+	 * - returns false if it already has been and need not be sent again
+	 */
+	boolean markResource(String identifier) {
+		return resources.add(identifier);
+	}
+
+	/*
+	 * Forget every resource sent, e.g. as the connection has been re-opened
+	 */
+	GntpEncoder forgetResources() {
+		resources.clear();
+		return this;
+	}
+
+	/*
+	 * Flip the buffer ready to be written
+	 * - the returned buffer is only valid until the next call to clear()
+	 */
+	ByteBuffer flip() {
+		buffer.flip();
+		return buffer;
+	}
+
+	private GntpEncoder crlf() {
+		ensureCapacity(2);
+		buffer.put((byte) '\r').put((byte) '\n');
+		return this;
+	}
+
+	/*
+	 * Encode text as UTF-8, growing the buffer as required
+	 */
+	private void text(String text) {
+		CharBuffer in = CharBuffer.wrap(text);
+		encoder.reset();
+		while(true){
+			CoderResult result = encoder.encode(in, buffer, true);
+			if(result.isOverflow()){
+				ensureCapacity(Math.max(in.remaining(), 16));
+				continue;
+			}
+			result = encoder.flush(buffer);
+			if(result.isOverflow()){
+				ensureCapacity(16);
+				continue;
+			}
+			return;
+		}
+	}
+
+	private void ensureCapacity(int required) {
+		if(buffer.remaining() >= required)
+			return;
+		int capacity = buffer.capacity() * 2;
+		while(capacity - buffer.position() < required){
+			capacity *= 2;
+		}
+		ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+
+	/*
+	 * Header values may contain line feeds but not carriage returns
+	 */
+	private static String sanitise(String value) {
+		if(value.indexOf('\r') < 0)
+			return value;
+		return value.replace("\r\n", "\n").replace('\r', '\n');
+	}
+
+}
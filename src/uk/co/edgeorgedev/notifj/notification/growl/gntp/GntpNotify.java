@@ -0,0 +1,174 @@
+/**
+ * GntpNotify.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A GNTP <tt>NOTIFY</tt> request.
+ *
+ * @see     GntpTransport
+ * @since   1.3
+ */
+public class GntpNotify extends GntpRequest {
+
+	static final String RESOURCE_SCHEME = "x-growl-resource://";
+
+	private final String application_name;
+	private final String notification_name;
+	private final String title;
+	private final String text;
+	private boolean sticky;
+	private int priority;
+	private String icon;
+	private String icon_id;
+	private ByteBuffer icon_data;
+	private String callback_target;
+	private String id;
+	private String coalescing_id;
+	private String callback_context;
+	private String callback_context_type;
+
+	/**
+	 * Constructs a <tt>NOTIFY</tt> request
+	 * @param application_name the registered application name
+	 * @param notification_name the registered notification type
+	 * @param title the title of the notification.
+	 * @param text the message body of the notification.
+	 * @since 1.3
+	 */
+	public GntpNotify(String application_name, String notification_name, String title, String text) {
+		this.application_name = application_name;
+		this.notification_name = notification_name;
+		this.title = title;
+		this.text = text;
+	}
+
+	/**
+	 * Enables/Disables the notification being displayed until dismissed
+	 * @param sticky <tt>true</tt> if the notification is sticky and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify sticky(boolean sticky) {
+		this.sticky = sticky;
+		return this;
+	}
+
+	/**
+	 * Sets the priority of the notification
+	 * @param priority the GNTP priority level, from -2 to 2 - 0 is the default
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify priority(int priority) {
+		this.priority = priority;
+		return this;
+	}
+
+	/**
+	 * Sets the icon displayed with the notification
+	 * @param icon the URL of the icon - <tt>null</tt> for the application's icon
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify icon(String icon) {
+		this.icon = icon;
+		this.icon_id = null;
+		this.icon_data = null;
+		return this;
+	}
+
+	/**
+	 * Sets the icon displayed with the notification to an image sent with the request
+	 *
+	 * <p>The image is referenced as <tt>x-growl-resource://identifier</tt> and only sent the first time it is used
+	 * on a connection, so the identifier must be unique to the image's content, e.g. a hash of it.
+	 *
+	 * @param identifier the identifier of the image
+	 * @param data the image bytes - read from its position to its limit, which are left unchanged
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify icon(String identifier, ByteBuffer data) {
+		this.icon = RESOURCE_SCHEME + identifier;
+		this.icon_id = identifier;
+		this.icon_data = data;
+		return this;
+	}
+
+	/**
+	 * Sets the URL opened when the notification is clicked
+	 * @param callback_target the URL to open - <tt>null</tt> for no callback
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify callbackTarget(String callback_target) {
+		this.callback_target = callback_target;
+		return this;
+	}
+
+	/**
+	 * Sets the unique ID of the notification, which the server returns with any callback
+	 * @param id the notification ID - <tt>null</tt> for none
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify id(String id) {
+		this.id = id;
+		return this;
+	}
+
+	/**
+	 * Sets the ID shared by every state of a notification that is updated in place - the server replaces a
+	 * notification with the same coalescing ID that is still displayed
+	 * @param coalescing_id the coalescing ID - <tt>null</tt> for a new notification
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify coalescingId(String coalescing_id) {
+		this.coalescing_id = coalescing_id;
+		return this;
+	}
+
+	/**
+	 * Requests a socket callback, sent over the same connection when the notification is clicked, closed or times out
+	 *
+	 * <p>Servers only send a socket callback when no callback target is set.
+	 *
+	 * @param context the value returned with the callback - <tt>null</tt> for no callback
+	 * @param context_type describes the type of the <tt>context</tt> value
+	 * @see GntpCallbackReceiver
+	 * @since 1.3
+	 * @return the modified <tt>GntpNotify</tt> object
+	 */
+	public GntpNotify callbackContext(String context, String context_type) {
+		this.callback_context = context;
+		this.callback_context_type = context == null ? null : context_type;
+		return this;
+	}
+
+	@Override
+	void encode(GntpEncoder encoder) {
+		encoder.request("NOTIFY")
+		.header("Application-Name", application_name)
+		.header("Notification-Name", notification_name)
+		.header("Notification-ID", id)
+		.header("Notification-Coalescing-ID", coalescing_id)
+		.header("Notification-Title", title)
+		.header("Notification-Text", text)
+		.header("Notification-Sticky", sticky)
+		.header("Notification-Priority", priority == 0 ? null : Integer.valueOf(priority))
+		.header("Notification-Icon", icon)
+		.header("Notification-Callback-Context", callback_context)
+		.header("Notification-Callback-Context-Type", callback_context_type)
+		.header("Notification-Callback-Target", callback_target)
+		.end();
+		if(icon_id != null && encoder.markResource(icon_id))
+			encoder.resource(icon_id, icon_data);
+	}
+
+}
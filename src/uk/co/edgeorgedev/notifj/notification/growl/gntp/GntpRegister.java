@@ -0,0 +1,47 @@
+/**
+ * GntpRegister.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+/**
+ * A GNTP <tt>REGISTER</tt> request declaring an application and its notification types.
+ *
+ * @see     GntpTransport
+ * @since   1.3
+ */
+public class GntpRegister extends GntpRequest {
+
+	private final String application_name;
+	private final String[] notification_types;
+
+	/**
+	 * Constructs a <tt>REGISTER</tt> request with every notification type enabled
+	 * @param application_name the application name
+	 * @param notification_types the names of the notification types
+	 * @throws IllegalArgumentException if no notification types are given
+	 * @since 1.3
+	 */
+	public GntpRegister(String application_name, String... notification_types) {
+		if(notification_types == null || notification_types.length == 0)
+			throw new IllegalArgumentException("At least one notification type is required");
+		this.application_name = application_name;
+		this.notification_types = notification_types.clone();
+	}
+
+	@Override
+	void encode(GntpEncoder encoder) {
+		encoder.request("REGISTER")
+		.header("Application-Name", application_name)
+		.header("Notifications-Count", notification_types.length)
+		.end();
+
+		for (String type : notification_types) {
+			encoder.header("Notification-Name", type)
+			.header("Notification-Enabled", true)
+			.end();
+		}
+	}
+
+}
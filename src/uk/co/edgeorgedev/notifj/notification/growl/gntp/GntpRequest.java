@@ -0,0 +1,27 @@
+/**
+ * GntpRequest.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+/**
+ * A request that can be sent to a GNTP server by a {@link GntpTransport}.
+ *
+ * @see     GntpRegister
+ * @see     GntpNotify
+ * @since   1.3
+ */
+public abstract class GntpRequest {
+
+	/*
+	 * Requests are only defined within this package
+	 */
+	GntpRequest() {}
+
+	/*
+	 * Append this request to the encoder
+	 */
+	abstract void encode(GntpEncoder encoder);
+
+}
@@ -0,0 +1,145 @@
+/**
+ * GntpResponse.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A response received from a GNTP server.
+ *
+ * @see     GntpTransport
+ * @since   1.3
+ */
+public class GntpResponse {
+
+	/**
+	 * The kind of response, taken from the response's information line
+	 * @since 1.3
+	 */
+	public enum Type {
+		/** The request succeeded */
+		OK,
+		/** The request failed - see {@link GntpResponse#getErrorCode()} */
+		ERROR,
+		/** The user interacted with a notification that requested a socket callback */
+		CALLBACK
+	}
+
+	private final Type type;
+	private final Map<String, String> headers;
+
+	private GntpResponse(Type type, Map<String, String> headers) {
+		this.type = type;
+		this.headers = Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * Get the kind of response
+	 * @return the response type
+	 * @since 1.3
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Check if the request succeeded
+	 * @return <tt>true</tt> if this is an <tt>-OK</tt> response and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public boolean isOk() {
+		return type == Type.OK;
+	}
+
+	/**
+	 * Get a header of the response
+	 * @param name the header name, e.g. <tt>Response-Action</tt>
+	 * @return the header value - <tt>null</tt> if the header was not sent
+	 * @since 1.3
+	 */
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Get every header of the response
+	 * @return an unmodifiable map of header names to values
+	 * @since 1.3
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Get the request type this response is for
+	 * @return the <tt>Response-Action</tt> header, e.g. <tt>NOTIFY</tt>
+	 * @since 1.3
+	 */
+	public String getAction() {
+		return headers.get("Response-Action");
+	}
+
+	/**
+	 * Get the error code of an <tt>-ERROR</tt> response
+	 * @return the <tt>Error-Code</tt> header - <tt>-1</tt> if the header is missing or invalid
+	 * @since 1.3
+	 */
+	public int getErrorCode() {
+		try {
+			return Integer.parseInt(headers.get("Error-Code"));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the error description of an <tt>-ERROR</tt> response
+	 * @return the <tt>Error-Description</tt> header - <tt>null</tt> if not sent
+	 * @since 1.3
+	 */
+	public String getErrorDescription() {
+		return headers.get("Error-Description");
+	}
+
+	@Override
+	public String toString() {
+		return "GntpResponse[" + type + ", " + headers + "]";
+	}
+
+	/*
+	 * Parse a response frame, excluding its terminating blank line
+	 */
+	static GntpResponse parse(String frame) throws NotificationException {
+		String[] lines = frame.split("\r\n");
+		String[] information = lines[0].split(" ");
+		if(information.length < 2 || !information[0].startsWith("GNTP/"))
+			throw new NotificationException("Invalid GNTP response: " + lines[0]);
+
+		Type type;
+		if("-OK".equals(information[1])){
+			type = Type.OK;
+		}else if("-ERROR".equals(information[1])){
+			type = Type.ERROR;
+		}else if("-CALLBACK".equals(information[1])){
+			type = Type.CALLBACK;
+		}else{
+			throw new NotificationException("Unknown GNTP response type: " + information[1]);
+		}
+
+		Map<String, String> headers = new HashMap<String, String>();
+		for (int i = 1; i < lines.length; i++) {
+			int separator = lines[i].indexOf(':');
+			if(separator > 0)
+				headers.put(lines[i].substring(0, separator).trim(), lines[i].substring(separator + 1).trim());
+		}
+		return new GntpResponse(type, headers);
+	}
+
+}
@@ -0,0 +1,68 @@
+/**
+ * GntpResponseDecoder.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.nio.ByteBuffer;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * Splits bytes read from a GNTP connection into responses, each terminated by a blank line.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @see     GntpTransport
+ * @since   1.3
+ */
+final class GntpResponseDecoder {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private byte[] data = new byte[INITIAL_CAPACITY];
+	private int length;
+	private int scanned;
+
+	/*
+	 * Discard any partially received response
+	 */
+	void reset() {
+		length = 0;
+		scanned = 0;
+	}
+
+	/*
+	 * Append the readable bytes of the buffer
+	 */
+	void feed(ByteBuffer buffer) {
+		int count = buffer.remaining();
+		if(length + count > data.length){
+			byte[] bigger = new byte[Math.max(data.length * 2, length + count)];
+			System.arraycopy(data, 0, bigger, 0, length);
+			data = bigger;
+		}
+		buffer.get(data, length, count);
+		length += count;
+	}
+
+	/*
+	 * Return the next complete response, or null if more bytes are needed
+	 */
+	GntpResponse next() throws NotificationException {
+		for (int i = Math.max(scanned, 3); i < length; i++) {
+			if(data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r'){
+				String frame = new String(data, 0, i - 3, GntpEncoder.UTF_8);
+				int consumed = i + 1;
+				System.arraycopy(data, consumed, data, 0, length - consumed);
+				length -= consumed;
+				scanned = 0;
+				return GntpResponse.parse(frame);
+			}
+		}
+		scanned = length;
+		return null;
+	}
+
+}
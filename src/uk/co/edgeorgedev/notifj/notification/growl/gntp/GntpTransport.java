@@ -0,0 +1,256 @@
+/**
+ * GntpTransport.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.growl.gntp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A GNTP/1.0 client connection built on a non-blocking <tt>SocketChannel</tt>.
+ *
+ * <p>Requests passed to {@link #send(List, long, TimeUnit)} are encoded back-to-back into a single
+ * direct buffer and written to the connection together, and their responses are then read in order.
+ * Should the server close the connection before every response has been received, the connection is
+ * re-opened and the unanswered requests are sent again. A server that closes the connection after
+ * answering a request, as GNTP servers may do, is taken not to keep connections open: from then on
+ * requests are sent one per connection rather than pipelined.
+ *
+ * <p>Delivery is at-least-once. A request the server processed but closed the connection before
+ * answering is sent, and so displayed, again.
+ *
+ * <p>The connection is opened on first use and kept open between calls. Calls are serialised.
+ *
+ * @since   1.3
+ */
+public class GntpTransport {
+
+	private static final int READ_BUFFER_SIZE = 4096;
+	private static final int MAX_RETRIES = 3;
+
+	private final InetSocketAddress address;
+	private final GntpEncoder encoder = new GntpEncoder();
+	private final GntpResponseDecoder decoder = new GntpResponseDecoder();
+	private final ByteBuffer read_buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+	private Selector selector;
+	private SocketChannel channel;
+
+	/*
+	 * Cleared once the server closes a connection after answering a request
+	 */
+	private boolean keep_alive = true;
+
+	/**
+	 * Constructs an unconnected transport
+	 * @param host the GNTP server host name or address
+	 * @param port the GNTP server port
+	 * @since 1.3
+	 */
+	public GntpTransport(String host, int port) {
+		this.address = new InetSocketAddress(host, port);
+	}
+
+	/**
+	 * Sends a single request and waits for its response
+	 *
+	 * @param request the request to send
+	 * @param timeout the maximum time to wait
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @return the server's response
+	 * @throws NotificationException if the request cannot be sent or no response is received in time
+	 * @since 1.3
+	 */
+	public GntpResponse send(GntpRequest request, long timeout, TimeUnit unit) throws NotificationException {
+		return send(Collections.singletonList(request), timeout, unit).get(0);
+	}
+
+	/**
+	 * Pipelines several requests over the connection and waits for every response
+	 *
+	 * <p>Requests left unanswered when the server closes the connection are sent again, so a request may be
+	 * received more than once.
+	 *
+	 * @param requests the requests to send
+	 * @param timeout the maximum time to wait for all responses
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @return the server's responses, in the same order as the requests
+	 * @throws NotificationException if the requests cannot be sent or not every response is received in time
+	 * @since 1.3
+	 */
+	public synchronized List<GntpResponse> send(List<? extends GntpRequest> requests, long timeout, TimeUnit unit) throws NotificationException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		List<GntpResponse> responses = new ArrayList<GntpResponse>(requests.size());
+		int retries = 0;
+
+		try {
+			while(responses.size() < requests.size()){
+				int answered = responses.size();
+				int batch = keep_alive ? requests.size() : answered + 1;
+				connect(deadline);
+
+				encoder.clear();
+				for (int i = answered; i < batch; i++) {
+					requests.get(i).encode(encoder);
+				}
+
+				boolean closed = false;
+				try {
+					write(encoder.flip(), deadline);
+					while(responses.size() < batch){
+						GntpResponse response = read(deadline);
+						if(response == null){
+							closed = true;
+							break;
+						}
+						if(response.getType() != GntpResponse.Type.CALLBACK)
+							responses.add(response);
+					}
+				} catch (IOException e) {
+					// Treated as the server closing the connection
+					closed = true;
+				}
+
+				if(closed){
+					disconnect();
+					if(responses.size() > answered){
+						/* Answered then closed - resending the whole batch each time would send it N^2/2 times */
+						keep_alive = false;
+					}else if(++retries > MAX_RETRIES){
+						throw new NotificationException("GNTP server " + address + " closed the connection");
+					}
+				}else if(!keep_alive){
+					disconnect();
+				}
+			}
+		} catch (IOException e) {
+			disconnect();
+			throw new NotificationException("Could not connect to GNTP server " + address, e);
+		} catch (NotificationException e) {
+			disconnect();
+			throw e;
+		}
+		return responses;
+	}
+
+	/**
+	 * Check if the connection is currently open
+	 * @return <tt>true</tt> if connected and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public synchronized boolean isConnected() {
+		return channel != null && channel.isConnected();
+	}
+
+	/**
+	 * Closes the connection - it is re-opened by the next call to <tt>send</tt>
+	 * @since 1.3
+	 */
+	public synchronized void close() {
+		disconnect();
+	}
+
+	/**
+	 * Get the address of the GNTP server
+	 * @return the server address
+	 * @since 1.3
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/*
+	 * Open the connection if not already open
+	 */
+	private void connect(long deadline) throws IOException, NotificationException {
+		if(channel != null && channel.isOpen())
+			return;
+
+		selector = Selector.open();
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.register(selector, 0);
+		decoder.reset();
+		encoder.forgetResources();
+
+		if(!channel.connect(address)){
+			while(!channel.finishConnect()){
+				await(SelectionKey.OP_CONNECT, deadline);
+			}
+		}
+	}
+
+	/*
+	 * Write the whole buffer, waiting for the socket to become writable as needed
+	 */
+	private void write(ByteBuffer buffer, long deadline) throws IOException, NotificationException {
+		while(buffer.hasRemaining()){
+			if(channel.write(buffer) == 0)
+				await(SelectionKey.OP_WRITE, deadline);
+		}
+	}
+
+	/*
+	 * Read the next response, or return null if the server closed the connection
+	 */
+	private GntpResponse read(long deadline) throws IOException, NotificationException {
+		while(true){
+			GntpResponse response = decoder.next();
+			if(response != null)
+				return response;
+
+			read_buffer.clear();
+			int count = channel.read(read_buffer);
+			if(count < 0)
+				return null;
+			if(count == 0){
+				await(SelectionKey.OP_READ, deadline);
+				continue;
+			}
+			read_buffer.flip();
+			decoder.feed(read_buffer);
+		}
+	}
+
+	/*
+	 * Wait until the channel is ready for the operation or the deadline passes
+	 */
+	private void await(int operation, long deadline) throws IOException, NotificationException {
+		long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if(remaining <= 0)
+			throw new NotificationException("Timed out communicating with GNTP server " + address);
+
+		channel.keyFor(selector).interestOps(operation);
+		selector.select(remaining);
+		selector.selectedKeys().clear();
+	}
+
+	private void disconnect() {
+		try {
+			if(channel != null)
+				channel.close();
+			if(selector != null)
+				selector.close();
+		} catch (IOException e) {
+			// Nothing further to release
+		} finally {
+			channel = null;
+			selector = null;
+		}
+	}
+
+}
@@ -0,0 +1,623 @@
+/**
+ * JsonLinesNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.headless;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * This class writes notifications to a file as JSON lines rather than displaying them, for headless servers,
+ * audit trails and load tests of the dispatch pipeline.
+ *
+ * <p>Each notification is one line, for example:
+ * <pre>
+ * {"time":1414749600000,"application":"Test Application","title":"Disk full","message":"/var is at 98%","priority":"HIGH","sticky":false}</pre>
+ * <tt>callback</tt>, <tt>icon</tt> and <tt>type</tt> are added when set.
+ *
+ * <p>Lines are encoded by the calling thread and copied into a buffer, which is written when full, by {@link #flush()},
+ * by {@link #close()} and by a background thread every flush interval - notifications shown just before a crash
+ * may be lost. Once the file would grow past its maximum size it is rotated: <tt>alerts.jsonl</tt> is renamed
+ * <tt>alerts.jsonl.1</tt>, <tt>alerts.jsonl.1</tt> <tt>alerts.jsonl.2</tt> and so on, and the oldest beyond the
+ * number of files kept is deleted.
+ *
+ * <p>For example:
+ * <pre>
+ * Notification notif = new FailoverNotification(new GrowlNotification("Test Application"),
+ *         new JsonLinesNotification("Test Application", new File("logs/notifications.jsonl")));
+ * notif.open();
+ * notif.show("Hello", "World");</pre>
+ *
+ * @see     Notification
+ * @see     MemoryNotification
+ * @since   1.3
+ */
+public class JsonLinesNotification extends AbstractNotification {
+
+	/**
+	 * The default size a file may grow to before it is rotated, in bytes
+	 * @since 1.3
+	 */
+	public static final long DEFAULT_MAX_FILE_SIZE = 64L << 20;
+
+	/**
+	 * The default number of rotated files kept besides the file being written
+	 * @since 1.3
+	 */
+	public static final int DEFAULT_MAX_FILES = 5;
+
+	/**
+	 * The default time between writes of buffered notifications, in milliseconds
+	 * @since 1.3
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+	private static final int BUFFER_SIZE = 64 << 10;
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private static final ThreadLocal<JsonLine> LINES = new ThreadLocal<JsonLine>() {
+		@Override
+		protected JsonLine initialValue() {
+			return new JsonLine();
+		}
+	};
+
+	private final File file;
+	private final long max_file_size;
+	private final int max_files;
+	private volatile long flush_interval_millis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+	/*
+	 * Guarded by lock - the open file, the bytes written to it and those buffered for it
+	 */
+	private final Object lock = new Object();
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int buffered;
+	private OutputStream mOutput;
+	private long file_size;
+	private long rotations;
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * Constructs a named notification application that writes to a file with the default size and rotation settings
+	 * @param application_name the application name written with each notification
+	 * @param file the file written to, created with any missing directories by {@link #open()}
+	 * @throws IllegalArgumentException if the file is null
+	 * @since 1.3
+	 */
+	public JsonLinesNotification(String application_name, File file) {
+		this(application_name, file, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * Constructs a named notification application that writes to a file, rotating it once it reaches a given size
+	 * @param application_name the application name written with each notification
+	 * @param file the file written to, created with any missing directories by {@link #open()}
+	 * @param max_file_size the size in bytes the file may grow to before it is rotated
+	 * @param max_files the number of rotated files kept - 0 to discard the file when it is rotated
+	 * @throws IllegalArgumentException if the file is null, the size is less than 1 or the number of files is negative
+	 * @since 1.3
+	 */
+	public JsonLinesNotification(String application_name, File file, long max_file_size, int max_files) {
+		if(file == null)
+			throw new IllegalArgumentException("File cannot be null");
+		if(max_file_size < 1)
+			throw new IllegalArgumentException("Maximum file size cannot be less than 1");
+		if(max_files < 0)
+			throw new IllegalArgumentException("Maximum number of files cannot be negative");
+		setApplicationName(application_name);
+		this.file = file.getAbsoluteFile();
+		this.max_file_size = max_file_size;
+		this.max_files = max_files;
+	}
+
+	/**
+	 * Opens the file for appending and starts the background flush
+	 * @throws NotificationException if the file cannot be opened
+	 * @since 1.3
+	 */
+	@Override
+	public void open() throws NotificationException {
+		synchronized (lock) {
+			if(mOutput != null)
+				return;
+			try {
+				openFile();
+			} catch (IOException e) {
+				throw new NotificationException("Could not open " + file, e);
+			}
+			startFlusher();
+		}
+		openDispatcher();
+	}
+
+	/**
+	 * Writes a notification with a given title and message
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if the notification has not been opened or cannot be written
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(new NotificationMessage(title, message));
+	}
+
+	/**
+	 * Writes a notification with a given title, message and priority
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if the notification has not been opened or cannot be written
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Writes a notification, applying the message's own settings
+	 *
+	 * @param  message the notification to write.
+	 * @throws NotificationException if the notification has not been opened or cannot be written
+	 * @throws IllegalArgumentException if the message is null
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		if(message == null)
+			throw new IllegalArgumentException("Message cannot be null");
+		long started = beginCall();
+		boolean sent = false;
+		try {
+			JsonLine line = encode(message);
+			synchronized (lock) {
+				ensureOpen();
+				append(line.bytes, line.length);
+			}
+			sent = true;
+		} catch (IOException e) {
+			throw new NotificationException("Could not write notification to " + file, e);
+		} finally {
+			endCall();
+			recordSend(started, sent);
+		}
+	}
+
+	/**
+	 * Writes several notifications, taking the lock once
+	 *
+	 * @param  messages the notifications to write.
+	 * @return a successful result for each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if the notification has not been opened or the notifications cannot be written
+	 * @throws IllegalArgumentException if any message is null
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<NotificationMessage> batch = new ArrayList<NotificationMessage>(messages);
+		List<byte[]> lines = new ArrayList<byte[]>(batch.size());
+		for (NotificationMessage message : batch) {
+			if(message == null)
+				throw new IllegalArgumentException("Message cannot be null");
+			JsonLine line = encode(message);
+			lines.add(Arrays.copyOf(line.bytes, line.length));
+		}
+		List<NotificationResult> results = null;
+		long started = beginCall();
+		try {
+			synchronized (lock) {
+				ensureOpen();
+				for (byte[] line : lines) {
+					append(line, line.length);
+				}
+			}
+			results = new ArrayList<NotificationResult>(batch.size());
+			for (NotificationMessage message : batch) {
+				results.add(NotificationResult.success(message));
+			}
+		} catch (IOException e) {
+			throw new NotificationException("Could not write notifications to " + file, e);
+		} finally {
+			endCall();
+			recordSends(started, batch, results);
+		}
+		return results;
+	}
+
+	/**
+	 * Writes any buffered notifications to the file
+	 * @throws NotificationException if the notifications cannot be written
+	 * @since 1.3
+	 */
+	public void flush() throws NotificationException {
+		synchronized (lock) {
+			try {
+				writeBuffer();
+			} catch (IOException e) {
+				throw new NotificationException("Could not write notifications to " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Drains queued notifications, then writes any buffered notifications and closes the file
+	 * @throws NotificationException if the buffered notifications cannot be written
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		closeDispatcher();
+		beginDrain();
+		try {
+			synchronized (lock) {
+				if(flusher != null)
+					flusher.shutdownNow();
+				flusher = null;
+				if(mOutput == null)
+					return;
+				try {
+					writeBuffer();
+				} finally {
+					closeFile();
+				}
+			}
+		} catch (IOException e) {
+			throw new NotificationException("Could not write notifications to " + file, e);
+		} finally {
+			endDrain();
+		}
+	}
+
+	/**
+	 * Set the time between writes of buffered notifications.
+	 * <p>The default is 1 second. Takes effect on the next call to {@link #open()}.
+	 *
+	 * @param interval the length to be applied to the <tt>unit</tt>
+	 * @param unit the time unit of the <tt>interval</tt>
+	 * @throws IllegalArgumentException if the interval is less than 1 millisecond or the unit is null
+	 * @since 1.3
+	 */
+	public void setFlushInterval(long interval, TimeUnit unit) {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(unit.toMillis(interval) < 1)
+			throw new IllegalArgumentException("Interval cannot be less than 1 millisecond");
+		this.flush_interval_millis = unit.toMillis(interval);
+	}
+
+	/**
+	 * Get the file notifications are written to
+	 * @return the absolute file
+	 * @since 1.3
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Get the number of times the file has been rotated since construction
+	 * @return the number of rotations
+	 * @since 1.3
+	 */
+	public long getRotations() {
+		synchronized (lock) {
+			return rotations;
+		}
+	}
+
+	/*
+	 * Encode a notification as a line of JSON into the calling thread's reusable line, outside the lock
+	 */
+	private JsonLine encode(NotificationMessage message) {
+		JsonLine line = LINES.get();
+		line.length = 0;
+		line.ascii("{\"time\":").number(System.currentTimeMillis());
+		line.field("application", application_name);
+		line.field("title", message.getTitle());
+		line.field("message", message.getMessage());
+		line.field("priority", message.getPriority().name());
+		line.ascii(isSticky(message) ? ",\"sticky\":true" : ",\"sticky\":false");
+		URL callback = getCallbackUrl(message);
+		if(callback != null)
+			line.field("callback", callback.toString());
+		NotificationIcon icon = message.getIcon();
+		if(icon != null)
+			line.field("icon", icon.getLocation() == null ? icon.getSource().name().toLowerCase() : icon.getLocation());
+		if(message.getType() != null)
+			line.field("type", message.getType());
+		line.ascii("}\n");
+		return line;
+	}
+
+	/*
+	 * Buffer a line, rotating the file first should the line not fit in it - called holding the lock
+	 */
+	private void append(byte[] line, int length) throws IOException {
+		if(file_size + buffered > 0 && file_size + buffered + length > max_file_size)
+			rotate();
+		if(length > buffer.length - buffered){
+			writeBuffer();
+			if(length > buffer.length){
+				write(line, length);
+				return;
+			}
+		}
+		System.arraycopy(line, 0, buffer, buffered, length);
+		buffered += length;
+	}
+
+	/*
+	 * Called holding the lock
+	 */
+	private void writeBuffer() throws IOException {
+		if(buffered == 0 || mOutput == null)
+			return;
+		write(buffer, buffered);
+		buffered = 0;
+	}
+
+	private void write(byte[] bytes, int length) throws IOException {
+		mOutput.write(bytes, 0, length);
+		file_size += length;
+	}
+
+	/*
+	 * Close the full file, shift the rotated files along and start an empty file - called holding the lock
+	 */
+	private void rotate() throws IOException {
+		writeBuffer();
+		closeFile();
+		File oldest = rotated(max_files);
+		if(oldest.exists() && !oldest.delete())
+			throw new IOException("Could not delete " + oldest);
+		for (int index = max_files - 1; index >= 0; index--) {
+			File from = index == 0 ? file : rotated(index);
+			if(from.exists() && !from.renameTo(rotated(index + 1)))
+				throw new IOException("Could not rename " + from + " to " + rotated(index + 1));
+		}
+		rotations++;
+		openFile();
+	}
+
+	private File rotated(int index) {
+		return index == 0 ? file : new File(file.getPath() + "." + index);
+	}
+
+	private void openFile() throws IOException {
+		File directory = file.getParentFile();
+		if(directory != null && !directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+		mOutput = new FileOutputStream(file, true);
+		file_size = file.length();
+	}
+
+	private void closeFile() throws IOException {
+		OutputStream output = mOutput;
+		mOutput = null;
+		if(output != null)
+			output.close();
+	}
+
+	private void ensureOpen() throws NotificationException {
+		if(mOutput == null)
+			throw new NotificationException("File " + file + " is not open - Have you called open()?");
+	}
+
+	/*
+	 * Called holding the lock
+	 */
+	private void startFlusher() {
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NotifJ-JsonLines");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long interval = flush_interval_millis;
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (NotificationException e) {
+					recordError(e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification sticky(){
+		super.sticky();
+		return this;
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification sticky(boolean sticky){
+		super.sticky(sticky);
+		return this;
+	}
+
+	/**
+	 * Adds a callback url to notifications.
+	 *
+	 * @param callback_url the callback URL written with notifications without their own - <tt>null</tt> to remove it
+	 * @see #removeCallback()
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification callbackUrl(URL callback_url){
+		super.callbackUrl(callback_url);
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification removeCallback(){
+		super.removeCallback();
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>JsonLinesNotification</tt> object
+	 */
+	@Override
+	public JsonLinesNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+	/*
+	 * A line of JSON encoded straight to UTF-8, reused by each thread so that no intermediate String is built
+	 */
+	private static final class JsonLine {
+
+		byte[] bytes = new byte[256];
+		int length;
+
+		JsonLine ascii(String text) {
+			ensure(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte) text.charAt(i);
+			}
+			return this;
+		}
+
+		JsonLine number(long value) {
+			return ascii(Long.toString(value));
+		}
+
+		void field(String name, String value) {
+			ascii(",\"").ascii(name).ascii("\":");
+			if(value == null){
+				ascii("null");
+				return;
+			}
+			/* Escapes take at most 6 bytes per character, and a character at most 3 bytes of UTF-8 */
+			ensure(value.length() * 6 + 2);
+			bytes[length++] = '"';
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c == '"' || c == '\\'){
+					bytes[length++] = '\\';
+					bytes[length++] = (byte) c;
+				} else if(c == '\n'){
+					bytes[length++] = '\\';
+					bytes[length++] = 'n';
+				} else if(c == '\r'){
+					bytes[length++] = '\\';
+					bytes[length++] = 'r';
+				} else if(c == '\t'){
+					bytes[length++] = '\\';
+					bytes[length++] = 't';
+				} else if(c < 0x20 || c == '\u2028' || c == '\u2029'){
+					/* Control characters, and the separators that end a line in JavaScript */
+					bytes[length++] = '\\';
+					bytes[length++] = 'u';
+					bytes[length++] = HEX[c >> 12 & 0xF];
+					bytes[length++] = HEX[c >> 8 & 0xF];
+					bytes[length++] = HEX[c >> 4 & 0xF];
+					bytes[length++] = HEX[c & 0xF];
+				} else if(c < 0x80){
+					bytes[length++] = (byte) c;
+				} else if(c < 0x800){
+					bytes[length++] = (byte) (0xC0 | c >> 6);
+					bytes[length++] = (byte) (0x80 | c & 0x3F);
+				} else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+					int point = Character.toCodePoint(c, value.charAt(++i));
+					bytes[length++] = (byte) (0xF0 | point >> 18);
+					bytes[length++] = (byte) (0x80 | point >> 12 & 0x3F);
+					bytes[length++] = (byte) (0x80 | point >> 6 & 0x3F);
+					bytes[length++] = (byte) (0x80 | point & 0x3F);
+				} else if(Character.isSurrogate(c)){
+					/* An unpaired surrogate cannot be encoded, so is replaced as String.getBytes() would */
+					bytes[length++] = '?';
+				} else {
+					bytes[length++] = (byte) (0xE0 | c >> 12);
+					bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+					bytes[length++] = (byte) (0x80 | c & 0x3F);
+				}
+			}
+			bytes[length++] = '"';
+		}
+
+		private void ensure(int more) {
+			if(length + more > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+		}
+
+	}
+
+}
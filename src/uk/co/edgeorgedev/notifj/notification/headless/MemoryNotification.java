@@ -0,0 +1,568 @@
+/**
+ * MemoryNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.headless;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * This class keeps notifications in memory rather than displaying them, for tests, headless servers and load tests
+ * of the dispatch pipeline.
+ *
+ * <p>The latest notifications are held in a fixed-size ring buffer, overwriting the oldest once it is full.
+ * Showing a notification takes no lock: each claims a slot with a single atomic increment, so any number of
+ * threads can show notifications at millions per second. The query methods return snapshots, which skip
+ * notifications still being written.
+ *
+ * <p>For example:
+ * <pre>
+ * MemoryNotification notif = new MemoryNotification("Test Application");
+ * notif.open();
+ * alerter.checkDiskSpace(notif);
+ * assertEquals("Disk full", notif.getLast().getMessage().getTitle());</pre>
+ *
+ * <p>It is never chosen by {@link uk.co.edgeorgedev.notifj.notification.spi.NotificationBackends}, which would
+ * otherwise quietly swallow notifications on systems without a desktop; add it to a
+ * {@link uk.co.edgeorgedev.notifj.notification.FailoverNotification} chain to keep notifications no backend could display.
+ *
+ * @see     Notification
+ * @see     JsonLinesNotification
+ * @since   1.3
+ */
+public class MemoryNotification extends AbstractNotification {
+
+	/**
+	 * The default number of notifications held
+	 * @since 1.3
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private final AtomicReferenceArray<Entry> ring;
+	private final int mask;
+
+	/*
+	 * Sequence numbers are claimed before an entry is written and counted as published once it has been
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong published = new AtomicLong();
+	private volatile long cleared;
+	private volatile boolean opened;
+
+	/*
+	 * Entry times are derived from the start of each call rather than reading the clock again
+	 */
+	private final long epoch_millis = System.currentTimeMillis();
+	private final long epoch_nanos = System.nanoTime();
+
+	private final Object arrivals = new Object();
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	/**
+	 * Constructs a named notification application holding the latest {@link #DEFAULT_CAPACITY} notifications
+	 * @param application_name the application name recorded with each notification
+	 * @since 1.3
+	 */
+	public MemoryNotification(String application_name) {
+		this(application_name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a named notification application holding a given number of the latest notifications
+	 * @param application_name the application name recorded with each notification
+	 * @param capacity the number of notifications held, rounded up to a power of two
+	 * @throws IllegalArgumentException if the capacity is less than 1 or more than 2<sup>30</sup>
+	 * @since 1.3
+	 */
+	public MemoryNotification(String application_name, int capacity) {
+		if(capacity < 1 || capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+		setApplicationName(application_name);
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		this.ring = new AtomicReferenceArray<Entry>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Prepares the notification to record notifications - there is nothing to connect to
+	 * @since 1.3
+	 */
+	@Override
+	public void open() {
+		opened = true;
+		openDispatcher();
+	}
+
+	/**
+	 * Records a notification with a given title and message
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if the notification has not been opened
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(new NotificationMessage(title, message));
+	}
+
+	/**
+	 * Records a notification with a given title, message and priority
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if the notification has not been opened
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Records a notification, overwriting the oldest should the buffer be full
+	 *
+	 * @param  message the notification to record.
+	 * @throws NotificationException if the notification has not been opened
+	 * @throws IllegalArgumentException if the message is null
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		if(message == null)
+			throw new IllegalArgumentException("Message cannot be null");
+		long started = beginCall();
+		boolean sent = false;
+		try {
+			ensureOpen();
+			long sequence = claimed.getAndIncrement();
+			write(entryOf(sequence, started, message));
+			published.incrementAndGet();
+			sent = true;
+		} finally {
+			endCall();
+			recordSend(started, sent);
+		}
+		signal();
+	}
+
+	/**
+	 * Records several notifications, claiming their slots with a single atomic increment
+	 *
+	 * @param  messages the notifications to record.
+	 * @return a successful result for each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if the notification has not been opened
+	 * @throws IllegalArgumentException if any message is null
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<NotificationMessage> batch = new ArrayList<NotificationMessage>(messages);
+		if(batch.contains(null))
+			throw new IllegalArgumentException("Message cannot be null");
+		List<NotificationResult> results = null;
+		long started = beginCall();
+		try {
+			ensureOpen();
+			long sequence = claimed.getAndAdd(batch.size());
+			results = new ArrayList<NotificationResult>(batch.size());
+			for (NotificationMessage message : batch) {
+				write(entryOf(sequence++, started, message));
+				results.add(NotificationResult.success(message));
+			}
+			published.addAndGet(batch.size());
+		} finally {
+			endCall();
+			recordSends(started, batch, results);
+		}
+		signal();
+		return results;
+	}
+
+	/**
+	 * Drains queued notifications - recorded notifications are kept and can still be queried
+	 * @throws NotificationException if interrupted while draining
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		closeDispatcher();
+		beginDrain();
+		opened = false;
+		endDrain();
+	}
+
+	/**
+	 * Get the notifications held, oldest first
+	 * @return a snapshot of the entries recorded since the last {@link #clear()} that have not been overwritten
+	 * @since 1.3
+	 */
+	public List<Entry> getEntries() {
+		return getEntriesSince(0);
+	}
+
+	/**
+	 * Get the notifications held with at least a given sequence number, oldest first
+	 *
+	 * <p>Passing one more than the sequence number of the last entry seen returns only the notifications recorded since.
+	 *
+	 * @param sequence the lowest sequence number to return
+	 * @return a snapshot of the matching entries
+	 * @since 1.3
+	 */
+	public List<Entry> getEntriesSince(long sequence) {
+		long end = claimed.get();
+		long start = Math.max(Math.max(sequence, cleared), end - ring.length());
+		if(start >= end)
+			return Collections.emptyList();
+		List<Entry> entries = new ArrayList<Entry>((int) (end - start));
+		for (long next = start; next < end; next++) {
+			Entry entry = ring.get((int) next & mask);
+			/* Skip a slot still being written, or already overwritten */
+			if(entry != null && entry.sequence == next)
+				entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Get the messages of the notifications held, oldest first
+	 * @return a snapshot of the messages
+	 * @since 1.3
+	 */
+	public List<NotificationMessage> getMessages() {
+		List<Entry> entries = getEntries();
+		List<NotificationMessage> messages = new ArrayList<NotificationMessage>(entries.size());
+		for (Entry entry : entries) {
+			messages.add(entry.message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Get the notifications held with a given title, oldest first
+	 * @param title the title to match
+	 * @return a snapshot of the matching entries
+	 * @since 1.3
+	 */
+	public List<Entry> find(String title) {
+		List<Entry> found = new ArrayList<Entry>();
+		for (Entry entry : getEntries()) {
+			String entry_title = entry.message.getTitle();
+			if(title == null ? entry_title == null : title.equals(entry_title))
+				found.add(entry);
+		}
+		return found;
+	}
+
+	/**
+	 * Get the most recently recorded notification
+	 * @return the latest entry - <tt>null</tt> if none is held
+	 * @since 1.3
+	 */
+	public Entry getLast() {
+		long end = claimed.get();
+		long start = Math.max(cleared, end - ring.length());
+		for (long next = end - 1; next >= start; next--) {
+			Entry entry = ring.get((int) next & mask);
+			if(entry != null && entry.sequence == next)
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the number of notifications recorded since construction, including those cleared or overwritten
+	 * @return the number of notifications recorded
+	 * @since 1.3
+	 */
+	public long getCount() {
+		return published.get();
+	}
+
+	/**
+	 * Get the number of notifications overwritten by later notifications before being cleared
+	 * @return the number of notifications no longer held because the buffer was full
+	 * @since 1.3
+	 */
+	public long getOverwritten() {
+		return Math.max(0, claimed.get() - cleared - ring.length());
+	}
+
+	/**
+	 * Get the number of notifications held when full
+	 * @return the capacity of the ring buffer
+	 * @since 1.3
+	 */
+	public int getCapacity() {
+		return ring.length();
+	}
+
+	/**
+	 * Discards the notifications held - the count of notifications recorded is kept
+	 * @since 1.3
+	 */
+	public void clear() {
+		cleared = claimed.get();
+	}
+
+	/**
+	 * Waits until a number of notifications have been recorded since construction, e.g. by {@link #showAsync(String, String)}
+	 * @param count the number of notifications to wait for, as returned by {@link #getCount()}
+	 * @param timeout the maximum time to wait
+	 * @param unit the time unit of the <tt>timeout</tt>
+	 * @return <tt>true</tt> if the notifications were recorded and <tt>false</tt> if the timeout passed first
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalArgumentException if the unit is null
+	 * @since 1.3
+	 */
+	public boolean await(long count, long timeout, TimeUnit unit) throws InterruptedException {
+		if(unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		if(published.get() >= count)
+			return true;
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		/* Registered before the count is checked again, so that a notification recorded meanwhile signals */
+		waiters.incrementAndGet();
+		try {
+			synchronized (arrivals) {
+				while(published.get() < count){
+					if(remaining <= 0)
+						return false;
+					TimeUnit.NANOSECONDS.timedWait(arrivals, remaining);
+					remaining = deadline - System.nanoTime();
+				}
+				return true;
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Wake any thread in await() - the lock is only taken while one is waiting
+	 */
+	private void signal() {
+		if(waiters.get() > 0){
+			synchronized (arrivals) {
+				arrivals.notifyAll();
+			}
+		}
+	}
+
+	private Entry entryOf(long sequence, long started, NotificationMessage message) {
+		long time = epoch_millis + TimeUnit.NANOSECONDS.toMillis(started - epoch_nanos);
+		return new Entry(sequence, time, application_name, message, isSticky(message), getCallbackUrl(message));
+	}
+
+	/*
+	 * Store an entry in its slot, unless a thread that wrapped around the buffer has already stored a later one
+	 */
+	private void write(Entry entry) {
+		int slot = (int) entry.sequence & mask;
+		Entry current;
+		do {
+			current = ring.get(slot);
+			if(current != null && current.sequence > entry.sequence)
+				return;
+		} while(!ring.compareAndSet(slot, current, entry));
+	}
+
+	private void ensureOpen() throws NotificationException {
+		if(!opened)
+			throw new NotificationException("Notification has not been opened - Have you called open()?");
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification sticky(){
+		super.sticky();
+		return this;
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification sticky(boolean sticky){
+		super.sticky(sticky);
+		return this;
+	}
+
+	/**
+	 * Adds a callback url to notifications.
+	 *
+	 * @param callback_url the callback URL recorded with notifications without their own - <tt>null</tt> to remove it
+	 * @see #removeCallback()
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification callbackUrl(URL callback_url){
+		super.callbackUrl(callback_url);
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification removeCallback(){
+		super.removeCallback();
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>MemoryNotification</tt> object
+	 */
+	@Override
+	public MemoryNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+	/**
+	 * A notification recorded by a {@link MemoryNotification}, with the settings in effect when it was shown.
+	 *
+	 * @since   1.3
+	 */
+	public static final class Entry {
+
+		private final long sequence;
+		private final long time;
+		private final String application_name;
+		private final NotificationMessage message;
+		private final boolean sticky;
+		private final URL callback_url;
+
+		private Entry(long sequence, long time, String application_name, NotificationMessage message, boolean sticky, URL callback_url) {
+			this.sequence = sequence;
+			this.time = time;
+			this.application_name = application_name;
+			this.message = message;
+			this.sticky = sticky;
+			this.callback_url = callback_url;
+		}
+
+		/**
+		 * Get the position of the notification in the order recorded, starting at 0
+		 * @return the sequence number
+		 * @since 1.3
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Get when the notification was recorded
+		 * @return the time in milliseconds since the epoch
+		 * @since 1.3
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Get the application name the notification was shown under
+		 * @return the application name
+		 * @since 1.3
+		 */
+		public String getApplicationName() {
+			return application_name;
+		}
+
+		/**
+		 * Get the notification as it was shown
+		 * @return the message
+		 * @since 1.3
+		 */
+		public NotificationMessage getMessage() {
+			return message;
+		}
+
+		/**
+		 * Check if the notification would have been displayed until dismissed
+		 * @return the message's own sticky setting, or the notification's should the message have none
+		 * @since 1.3
+		 */
+		public boolean isSticky() {
+			return sticky;
+		}
+
+		/**
+		 * Get the callback URL the notification would have opened
+		 * @return the message's own callback URL, or the notification's - <tt>null</tt> if neither is set
+		 * @since 1.3
+		 */
+		public URL getCallbackUrl() {
+			return callback_url;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry[" + sequence + ", " + message + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,441 @@
+/**
+ * DBusConnection.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A client connection to a D-Bus message bus built on a non-blocking <tt>SocketChannel</tt>.
+ *
+ * <p>The connection authenticates with the <tt>EXTERNAL</tt> mechanism, falling back to <tt>ANONYMOUS</tt>,
+ * and is opened on first use and kept open between calls. Calls are serialised, and any signals received
+ * while waiting for a reply are discarded.
+ *
+ * <p><tt>unix:path=</tt> addresses require Java 16 or later, which added Unix domain socket channels.
+ * <tt>tcp:</tt> addresses are supported on every version.
+ *
+ * @since   1.3
+ */
+final class DBusConnection {
+
+	static final String BUS_NAME = "org.freedesktop.DBus";
+	static final String BUS_PATH = "/org/freedesktop/DBus";
+
+	private static final int READ_BUFFER_SIZE = 4096;
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private final String address;
+	private final DBusWriter writer = new DBusWriter(512);
+	private final DBusWriter body = new DBusWriter(512);
+
+	private ByteBuffer read_buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private Selector selector;
+	private SocketChannel channel;
+	private String description;
+	private String unique_name;
+	private long serial;
+
+	/**
+	 * Constructs an unconnected bus connection
+	 * @param address the D-Bus server address, e.g. <tt>unix:path=/run/user/1000/bus</tt>
+	 */
+	DBusConnection(String address) {
+		this.address = address;
+	}
+
+	/*
+	 * The session bus address from the environment, or null if there is none
+	 */
+	static String sessionBusAddress() {
+		String address = System.getenv("DBUS_SESSION_BUS_ADDRESS");
+		if(address != null && !address.isEmpty())
+			return address;
+		String runtime = System.getenv("XDG_RUNTIME_DIR");
+		if(runtime != null && new File(runtime, "bus").exists())
+			return "unix:path=" + new File(runtime, "bus").getPath();
+		return null;
+	}
+
+	/*
+	 * Call a method and wait for its reply
+	 */
+	synchronized List<Object> call(String destination, String path, String interface_name, String member,
+			String signature, long timeout, TimeUnit unit, Object... args) throws NotificationException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean reused = channel != null;
+		DBusMessage reply;
+		try {
+			connect(deadline);
+			try {
+				reply = invoke(destination, path, interface_name, member, signature, deadline, args);
+			} catch (IOException e) {
+				if(!reused)
+					throw e;
+				// The bus may have dropped an idle connection - retry once on a new one
+				disconnect();
+				connect(deadline);
+				reply = invoke(destination, path, interface_name, member, signature, deadline, args);
+			}
+		} catch (IOException e) {
+			disconnect();
+			throw new NotificationException("D-Bus call " + interface_name + "." + member + " to " + description + " failed", e);
+		} catch (NotificationException e) {
+			// A partly read reply would leave the connection out of step
+			disconnect();
+			throw e;
+		}
+
+		if(reply.getType() == DBusMessage.ERROR){
+			List<Object> details = reply.getBody();
+			String detail = details.isEmpty() ? "" : ": " + details.get(0);
+			throw new NotificationException(reply.getErrorName() + detail);
+		}
+		return reply.getBody();
+	}
+
+	/*
+	 * Check if the connection is currently open
+	 */
+	synchronized boolean isConnected() {
+		return channel != null && channel.isConnected();
+	}
+
+	/*
+	 * The unique bus name assigned to this connection, or null if not connected
+	 */
+	synchronized String getUniqueName() {
+		return unique_name;
+	}
+
+	/*
+	 * Close the connection - it is re-opened by the next call
+	 */
+	synchronized void close() {
+		disconnect();
+	}
+
+	/*
+	 * Send a method call and read messages until its reply or error arrives
+	 */
+	private DBusMessage invoke(String destination, String path, String interface_name, String member,
+			String signature, long deadline, Object... args) throws IOException, NotificationException {
+		long call_serial = nextSerial();
+		DBusMessage.encodeMethodCall(writer, body, call_serial, destination, path, interface_name, member, signature, args);
+		write(writer.flip(), deadline);
+
+		while(true){
+			DBusMessage reply = readMessage(deadline);
+			if(reply.getReplySerial() == call_serial)
+				return reply;
+		}
+	}
+
+	private long nextSerial() {
+		serial = (serial + 1) & 0xffffffffL;
+		if(serial == 0)
+			serial = 1;
+		return serial;
+	}
+
+	/*
+	 * Open, authenticate and register the connection if not already open
+	 */
+	private void connect(long deadline) throws IOException, NotificationException {
+		if(channel != null && channel.isOpen())
+			return;
+
+		if(address == null)
+			throw new NotificationException("No D-Bus address - is DBUS_SESSION_BUS_ADDRESS set?");
+
+		NotificationException failure = null;
+		for (String entry : address.split(";")) {
+			if(entry.isEmpty())
+				continue;
+			try {
+				open(entry, deadline);
+				failure = null;
+				break;
+			} catch (IOException e) {
+				disconnect();
+				failure = new NotificationException("Could not connect to D-Bus at " + entry, e);
+			} catch (NotificationException e) {
+				disconnect();
+				failure = e;
+			}
+		}
+		if(failure != null)
+			throw failure;
+		if(channel == null)
+			throw new NotificationException("No usable D-Bus address in " + address);
+
+		try {
+			authenticate(deadline);
+			DBusMessage hello = invoke(BUS_NAME, BUS_PATH, BUS_NAME, "Hello", "", deadline);
+			if(hello.getType() == DBusMessage.ERROR)
+				throw new NotificationException("D-Bus registration failed: " + hello.getErrorName());
+			unique_name = (String) hello.getBody().get(0);
+		} catch (IOException e) {
+			disconnect();
+			throw e;
+		} catch (NotificationException e) {
+			disconnect();
+			throw e;
+		}
+	}
+
+	/*
+	 * Open a socket to a single server address
+	 */
+	private void open(String entry, long deadline) throws IOException, NotificationException {
+		int colon = entry.indexOf(':');
+		if(colon < 0)
+			throw new NotificationException("Invalid D-Bus address " + entry);
+		String transport = entry.substring(0, colon);
+		Map<String, String> keys = keys(entry.substring(colon + 1));
+
+		SocketAddress remote;
+		if(transport.equals("unix") && keys.containsKey("path")){
+			remote = unixAddress(keys.get("path"));
+			channel = openUnixChannel();
+		}else if(transport.equals("tcp") && keys.containsKey("port")){
+			String host = keys.containsKey("host") ? keys.get("host") : "localhost";
+			try {
+				remote = new InetSocketAddress(host, Integer.parseInt(keys.get("port")));
+			} catch (NumberFormatException e) {
+				throw new NotificationException("Invalid D-Bus address " + entry, e);
+			}
+			channel = SocketChannel.open();
+		}else{
+			throw new NotificationException("Unsupported D-Bus address " + entry);
+		}
+		description = entry;
+
+		selector = Selector.open();
+		channel.configureBlocking(false);
+		channel.register(selector, 0);
+		read_buffer.clear();
+		serial = 0;
+
+		if(!channel.connect(remote)){
+			while(!channel.finishConnect()){
+				await(SelectionKey.OP_CONNECT, deadline);
+			}
+		}
+	}
+
+	/*
+	 * Authenticate as the current user, or anonymously should the server reject that
+	 */
+	private void authenticate(long deadline) throws IOException, NotificationException {
+		String uid = currentUid();
+		String initial = uid == null ? "" : " " + hex(uid);
+		write(ByteBuffer.wrap(("\0AUTH EXTERNAL" + initial + "\r\n").getBytes(DBusWriter.UTF_8)), deadline);
+
+		String line = readLine(deadline);
+		if(line.startsWith("DATA")){
+			write(ByteBuffer.wrap("DATA\r\n".getBytes(DBusWriter.UTF_8)), deadline);
+			line = readLine(deadline);
+		}
+		if(line.startsWith("REJECTED")){
+			write(ByteBuffer.wrap("AUTH ANONYMOUS\r\n".getBytes(DBusWriter.UTF_8)), deadline);
+			line = readLine(deadline);
+		}
+		if(!line.startsWith("OK"))
+			throw new NotificationException("D-Bus authentication failed: " + line);
+		write(ByteBuffer.wrap("BEGIN\r\n".getBytes(DBusWriter.UTF_8)), deadline);
+	}
+
+	/*
+	 * Write the whole buffer, waiting for the socket to become writable as needed
+	 */
+	private void write(ByteBuffer buffer, long deadline) throws IOException, NotificationException {
+		while(buffer.hasRemaining()){
+			if(channel.write(buffer) == 0)
+				await(SelectionKey.OP_WRITE, deadline);
+		}
+	}
+
+	/*
+	 * Read a CRLF terminated line of the authentication protocol
+	 */
+	private String readLine(long deadline) throws IOException, NotificationException {
+		while(true){
+			read_buffer.flip();
+			int end = indexOf(read_buffer, CRLF);
+			if(end >= 0){
+				byte[] line = new byte[end];
+				read_buffer.get(line);
+				read_buffer.position(read_buffer.position() + CRLF.length);
+				read_buffer.compact();
+				return new String(line, DBusWriter.UTF_8);
+			}
+			read_buffer.compact();
+			fill(deadline);
+		}
+	}
+
+	/*
+	 * Read the next complete message
+	 */
+	private DBusMessage readMessage(long deadline) throws IOException, NotificationException {
+		while(true){
+			read_buffer.flip();
+			int length = DBusMessage.length(read_buffer);
+			if(length >= 0 && read_buffer.remaining() >= length){
+				ByteBuffer message = ByteBuffer.allocate(length);
+				int limit = read_buffer.limit();
+				read_buffer.limit(read_buffer.position() + length);
+				message.put(read_buffer);
+				read_buffer.limit(limit);
+				read_buffer.compact();
+				message.flip();
+				return DBusMessage.decode(message);
+			}
+			read_buffer.compact();
+			if(length > read_buffer.capacity()){
+				ByteBuffer larger = ByteBuffer.allocate(length);
+				read_buffer.flip();
+				larger.put(read_buffer);
+				read_buffer = larger;
+			}
+			fill(deadline);
+		}
+	}
+
+	/*
+	 * Read whatever is available into the buffer, waiting until something is
+	 */
+	private void fill(long deadline) throws IOException, NotificationException {
+		while(true){
+			int count = channel.read(read_buffer);
+			if(count < 0)
+				throw new IOException("D-Bus server closed the connection");
+			if(count > 0)
+				return;
+			await(SelectionKey.OP_READ, deadline);
+		}
+	}
+
+	/*
+	 * Wait until the channel is ready for the operation or the deadline passes
+	 */
+	private void await(int operation, long deadline) throws IOException, NotificationException {
+		long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if(remaining <= 0)
+			throw new NotificationException("Timed out communicating with D-Bus at " + description);
+
+		channel.keyFor(selector).interestOps(operation);
+		selector.select(remaining);
+		selector.selectedKeys().clear();
+	}
+
+	private void disconnect() {
+		try {
+			if(channel != null)
+				channel.close();
+			if(selector != null)
+				selector.close();
+		} catch (IOException e) {
+			// Nothing further to release
+		} finally {
+			channel = null;
+			selector = null;
+			unique_name = null;
+		}
+	}
+
+	/*
+	 * Unix domain socket channels were added in Java 16, so are looked up reflectively
+	 */
+	private static SocketChannel openUnixChannel() throws NotificationException {
+		try {
+			ProtocolFamily unix = Enum.valueOf(StandardProtocolFamily.class, "UNIX");
+			return (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+		} catch (Exception e) {
+			throw new NotificationException("Unix domain sockets require Java 16 or later - use a tcp: D-Bus address", e);
+		}
+	}
+
+	private static SocketAddress unixAddress(String path) throws NotificationException {
+		try {
+			Class<?> address_class = Class.forName("java.net.UnixDomainSocketAddress");
+			return (SocketAddress) address_class.getMethod("of", String.class).invoke(null, path);
+		} catch (Exception e) {
+			throw new NotificationException("Unix domain sockets require Java 16 or later - use a tcp: D-Bus address", e);
+		}
+	}
+
+	/*
+	 * Parse the comma separated, percent-escaped key=value pairs of an address
+	 */
+	private static Map<String, String> keys(String pairs) throws NotificationException {
+		Map<String, String> keys = new HashMap<String, String>();
+		for (String pair : pairs.split(",")) {
+			int equals = pair.indexOf('=');
+			if(equals < 0)
+				continue;
+			try {
+				keys.put(pair.substring(0, equals), URLDecoder.decode(pair.substring(equals + 1).replace("+", "%2B"), "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				throw new NotificationException(e);
+			} catch (IllegalArgumentException e) {
+				throw new NotificationException("Invalid D-Bus address value " + pair, e);
+			}
+		}
+		return keys;
+	}
+
+	/*
+	 * The numeric user id, from the owner of this process's /proc entry
+	 */
+	private static String currentUid() {
+		try {
+			return String.valueOf(Files.getAttribute(Paths.get("/proc/self"), "unix:uid"));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static String hex(String value) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : value.getBytes(DBusWriter.UTF_8)) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+		for (int i = buffer.position(); i <= buffer.limit() - pattern.length; i++) {
+			boolean match = true;
+			for (int j = 0; j < pattern.length && match; j++) {
+				match = buffer.get(i + j) == pattern[j];
+			}
+			if(match)
+				return i - buffer.position();
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * DBusMessage.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A received D-Bus message, and the encoding of outgoing method calls.
+ *
+ * @since   1.3
+ */
+final class DBusMessage {
+
+	static final int METHOD_CALL = 1;
+	static final int METHOD_RETURN = 2;
+	static final int ERROR = 3;
+	static final int SIGNAL = 4;
+
+	static final int FIELD_PATH = 1;
+	static final int FIELD_INTERFACE = 2;
+	static final int FIELD_MEMBER = 3;
+	static final int FIELD_ERROR_NAME = 4;
+	static final int FIELD_REPLY_SERIAL = 5;
+	static final int FIELD_DESTINATION = 6;
+	static final int FIELD_SIGNATURE = 8;
+
+	/*
+	 * Length of the fixed part of the header, up to and including the header field array length
+	 */
+	static final int FIXED_HEADER_LENGTH = 16;
+
+	private static final int MAX_MESSAGE_LENGTH = 1 << 27;
+	private static final int PROTOCOL_VERSION = 1;
+
+	private final int type;
+	private final Map<Object, Object> fields;
+	private final List<Object> body;
+
+	private DBusMessage(int type, Map<Object, Object> fields, List<Object> body) {
+		this.type = type;
+		this.fields = fields;
+		this.body = body;
+	}
+
+	int getType() {
+		return type;
+	}
+
+	/*
+	 * The serial of the call this message replies to, or -1 if it is not a reply
+	 */
+	long getReplySerial() {
+		Object serial = fields.get((byte) FIELD_REPLY_SERIAL);
+		return serial == null ? -1 : (Long) serial;
+	}
+
+	String getErrorName() {
+		return (String) fields.get((byte) FIELD_ERROR_NAME);
+	}
+
+	List<Object> getBody() {
+		return body;
+	}
+
+	/*
+	 * Encode a method call into the writer
+	 */
+	static void encodeMethodCall(DBusWriter writer, DBusWriter body, long serial, String destination, String path,
+			String interface_name, String member, String signature, Object... args) {
+		body.clear();
+		if(!signature.isEmpty())
+			body.write(signature, args);
+
+		writer.clear();
+		writer.writeByte('l');
+		writer.writeByte(METHOD_CALL);
+		writer.writeByte(0);
+		writer.writeByte(PROTOCOL_VERSION);
+		writer.writeUInt32(body.position());
+		writer.writeUInt32(serial);
+
+		writer.writeUInt32(0);
+		int length_at = writer.position() - 4;
+		writer.align(8);
+		int start = writer.position();
+		writeField(writer, FIELD_PATH, "o", path);
+		writeField(writer, FIELD_INTERFACE, "s", interface_name);
+		writeField(writer, FIELD_MEMBER, "s", member);
+		writeField(writer, FIELD_DESTINATION, "s", destination);
+		writeField(writer, FIELD_SIGNATURE, "g", signature.isEmpty() ? null : signature);
+		writer.putUInt32(length_at, writer.position() - start);
+		writer.align(8);
+		writer.writeBytes(body.flip());
+	}
+
+	private static void writeField(DBusWriter writer, int code, String signature, Object value) {
+		if(value == null)
+			return;
+		writer.align(8);
+		writer.writeByte(code);
+		writer.writeSignature(signature);
+		writer.write(signature, value);
+	}
+
+	/*
+	 * The total length of the message starting at the buffer's position, or -1 if the fixed header is incomplete
+	 */
+	static int length(ByteBuffer buffer) throws NotificationException {
+		if(buffer.remaining() < FIXED_HEADER_LENGTH)
+			return -1;
+		ByteBuffer header = buffer.duplicate().order(order(buffer.get(buffer.position())));
+		long body_length = header.getInt(buffer.position() + 4) & 0xffffffffL;
+		long fields_length = header.getInt(buffer.position() + 12) & 0xffffffffL;
+		long length = ((FIXED_HEADER_LENGTH + fields_length + 7) & ~7L) + body_length;
+		if(length > MAX_MESSAGE_LENGTH)
+			throw new NotificationException("D-Bus message of " + length + " bytes exceeds the maximum length");
+		return (int) length;
+	}
+
+	/*
+	 * Decode a complete message - the buffer's position zero must be the start of the message
+	 */
+	@SuppressWarnings("unchecked")
+	static DBusMessage decode(ByteBuffer message) throws NotificationException {
+		message.order(order(message.get(0)));
+		int type = message.get(1);
+
+		DBusReader reader = new DBusReader(message);
+		reader.position(12);
+		// Header fields are an array of (yv) structs, laid out exactly as a dictionary
+		Map<Object, Object> fields = (Map<Object, Object>) reader.read("a{yv}").get(0);
+
+		int body_start = (message.position() + 7) & ~7;
+		reader.position(body_start);
+		String signature = (String) fields.get((byte) FIELD_SIGNATURE);
+		List<Object> body = signature == null ? Collections.emptyList() : reader.read(signature);
+		return new DBusMessage(type, fields, body);
+	}
+
+	private static ByteOrder order(byte endianness) throws NotificationException {
+		if(endianness == 'l')
+			return ByteOrder.LITTLE_ENDIAN;
+		if(endianness == 'B')
+			return ByteOrder.BIG_ENDIAN;
+		throw new NotificationException("Invalid D-Bus message byte order '" + (char) endianness + "'");
+	}
+
+}
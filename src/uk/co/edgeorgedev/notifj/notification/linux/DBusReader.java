@@ -0,0 +1,148 @@
+/**
+ * DBusReader.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unmarshals values from the D-Bus wire format, in either byte order.
+ *
+ * <p>Strings, object paths and signatures are read as <tt>String</tt>, <tt>u</tt> as <tt>Long</tt>,
+ * <tt>q</tt> as <tt>Integer</tt>, <tt>ay</tt> as <tt>byte[]</tt>, other arrays as <tt>List</tt>, dictionaries
+ * as <tt>Map</tt> and structs as <tt>Object[]</tt>. Variants are read as their contained value.
+ *
+ * @see     DBusWriter
+ * @since   1.3
+ */
+final class DBusReader {
+
+	private final ByteBuffer buffer;
+
+	/*
+	 * The buffer's position zero must be the start of the message, and its byte order set
+	 */
+	DBusReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	void position(int position) {
+		buffer.position(position);
+	}
+
+	/*
+	 * Read one value for each complete type of the signature
+	 */
+	List<Object> read(String signature) {
+		List<Object> values = new ArrayList<Object>();
+		int index = 0;
+		while(index < signature.length()){
+			values.add(readValue(signature, index));
+			index = DBusWriter.skip(signature, index);
+		}
+		return values;
+	}
+
+	/*
+	 * Read the single complete type starting at index
+	 */
+	private Object readValue(String signature, int index) {
+		char code = signature.charAt(index);
+		switch (code) {
+		case 'y':
+			return buffer.get();
+		case 'b':
+			align(4);
+			return buffer.getInt() != 0;
+		case 'n':
+			align(2);
+			return buffer.getShort();
+		case 'q':
+			align(2);
+			return buffer.getShort() & 0xffff;
+		case 'i':
+			align(4);
+			return buffer.getInt();
+		case 'u':
+			align(4);
+			return buffer.getInt() & 0xffffffffL;
+		case 'x':
+		case 't':
+			align(8);
+			return buffer.getLong();
+		case 'd':
+			align(8);
+			return buffer.getDouble();
+		case 's':
+		case 'o':
+			align(4);
+			return readString(buffer.getInt());
+		case 'g':
+			return readString(buffer.get() & 0xff);
+		case 'v':
+			String contained = readString(buffer.get() & 0xff);
+			return readValue(contained, 0);
+		case 'a':
+			return readArray(signature, index);
+		case '(':
+			align(8);
+			List<Object> fields = new ArrayList<Object>();
+			int next = index + 1;
+			while(signature.charAt(next) != ')'){
+				fields.add(readValue(signature, next));
+				next = DBusWriter.skip(signature, next);
+			}
+			return fields.toArray();
+		default:
+			throw new IllegalArgumentException("Unsupported D-Bus type '" + code + "' in " + signature);
+		}
+	}
+
+	private Object readArray(String signature, int index) {
+		String element = signature.substring(index + 1, DBusWriter.skip(signature, index + 1));
+		align(4);
+		int length = buffer.getInt();
+		align(DBusWriter.alignment(element.charAt(0)));
+		int end = buffer.position() + length;
+
+		if(element.charAt(0) == '{'){
+			int value_index = DBusWriter.skip(element, 1);
+			Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+			while(buffer.position() < end){
+				align(8);
+				Object key = readValue(element, 1);
+				entries.put(key, readValue(element, value_index));
+			}
+			return entries;
+		}
+		if(element.equals("y")){
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return bytes;
+		}
+		List<Object> items = new ArrayList<Object>();
+		while(buffer.position() < end){
+			items.add(readValue(element, 0));
+		}
+		return items;
+	}
+
+	private String readString(int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		buffer.get();
+		return new String(bytes, DBusWriter.UTF_8);
+	}
+
+	private void align(int alignment) {
+		int padding = (alignment - buffer.position() % alignment) % alignment;
+		buffer.position(buffer.position() + padding);
+	}
+
+}
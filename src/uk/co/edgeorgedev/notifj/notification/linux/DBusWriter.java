@@ -0,0 +1,278 @@
+/**
+ * DBusWriter.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Marshals values into the little-endian D-Bus wire format.
+ *
+ * <p>Values are written against a type signature: <tt>s</tt>, <tt>o</tt> and <tt>g</tt> take a <tt>String</tt>,
+ * the integer types any <tt>Number</tt>, <tt>b</tt> a <tt>Boolean</tt>, arrays a <tt>Collection</tt>, an
+ * <tt>Object[]</tt> or a <tt>byte[]</tt>, dictionaries a <tt>Map</tt>, structs an <tt>Object[]</tt> and variants
+ * any value whose signature can be inferred from its class.
+ *
+ * <p>Alignment is relative to the start of the buffer, which must therefore be the start of the message
+ * or of the 8-byte aligned message body.
+ *
+ * @since   1.3
+ */
+final class DBusWriter {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+
+	DBusWriter(int capacity) {
+		buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	void clear() {
+		buffer.clear();
+	}
+
+	int position() {
+		return buffer.position();
+	}
+
+	/*
+	 * The bytes written so far, ready to be read
+	 */
+	ByteBuffer flip() {
+		ByteBuffer written = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		written.flip();
+		return written;
+	}
+
+	/*
+	 * Write each value against the next complete type of the signature
+	 */
+	void write(String signature, Object... values) {
+		int index = 0;
+		for (Object value : values) {
+			if(index >= signature.length())
+				throw new IllegalArgumentException("More values than signature " + signature + " allows");
+			index = writeValue(signature, index, value);
+		}
+		if(index != signature.length())
+			throw new IllegalArgumentException("Too few values for signature " + signature);
+	}
+
+	void writeByte(int value) {
+		ensure(1).put((byte) value);
+	}
+
+	void writeUInt32(long value) {
+		align(4);
+		ensure(4).putInt((int) value);
+	}
+
+	void putUInt32(int position, long value) {
+		buffer.putInt(position, (int) value);
+	}
+
+	void writeString(String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		align(4);
+		ensure(bytes.length + 5).putInt(bytes.length);
+		buffer.put(bytes).put((byte) 0);
+	}
+
+	void writeSignature(String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		ensure(bytes.length + 2).put((byte) bytes.length);
+		buffer.put(bytes).put((byte) 0);
+	}
+
+	void writeBytes(ByteBuffer bytes) {
+		ensure(bytes.remaining()).put(bytes);
+	}
+
+	void align(int alignment) {
+		int padding = (alignment - buffer.position() % alignment) % alignment;
+		ensure(padding);
+		for (int i = 0; i < padding; i++) {
+			buffer.put((byte) 0);
+		}
+	}
+
+	/*
+	 * Write a single complete type and return the index following it in the signature
+	 */
+	private int writeValue(String signature, int index, Object value) {
+		char code = signature.charAt(index);
+		switch (code) {
+		case 'y':
+			writeByte(((Number) value).byteValue());
+			return index + 1;
+		case 'b':
+			align(4);
+			ensure(4).putInt(Boolean.TRUE.equals(value) ? 1 : 0);
+			return index + 1;
+		case 'n':
+		case 'q':
+			align(2);
+			ensure(2).putShort(((Number) value).shortValue());
+			return index + 1;
+		case 'i':
+		case 'u':
+			align(4);
+			ensure(4).putInt(((Number) value).intValue());
+			return index + 1;
+		case 'x':
+		case 't':
+			align(8);
+			ensure(8).putLong(((Number) value).longValue());
+			return index + 1;
+		case 'd':
+			align(8);
+			ensure(8).putDouble(((Number) value).doubleValue());
+			return index + 1;
+		case 's':
+		case 'o':
+			writeString((String) value);
+			return index + 1;
+		case 'g':
+			writeSignature((String) value);
+			return index + 1;
+		case 'v':
+			String inferred = signatureOf(value);
+			writeSignature(inferred);
+			writeValue(inferred, 0, value);
+			return index + 1;
+		case 'a':
+			return writeArray(signature, index, value);
+		case '(':
+			align(8);
+			Object[] fields = (Object[]) value;
+			int next = index + 1;
+			for (Object field : fields) {
+				next = writeValue(signature, next, field);
+			}
+			if(signature.charAt(next) != ')')
+				throw new IllegalArgumentException("Struct does not match signature " + signature);
+			return next + 1;
+		default:
+			throw new IllegalArgumentException("Unsupported D-Bus type '" + code + "' in " + signature);
+		}
+	}
+
+	private int writeArray(String signature, int index, Object value) {
+		int end = skip(signature, index + 1);
+		String element = signature.substring(index + 1, end);
+
+		align(4);
+		int length_at = buffer.position();
+		ensure(4).putInt(0);
+		align(alignment(element.charAt(0)));
+		int start = buffer.position();
+
+		if(element.charAt(0) == '{'){
+			int value_index = skip(element, 1);
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				align(8);
+				writeValue(element, 1, entry.getKey());
+				writeValue(element, value_index, entry.getValue());
+			}
+		}else if(value instanceof byte[]){
+			byte[] bytes = (byte[]) value;
+			ensure(bytes.length).put(bytes);
+		}else if(value instanceof Object[]){
+			for (Object item : (Object[]) value) {
+				writeValue(element, 0, item);
+			}
+		}else{
+			for (Object item : (Collection<?>) value) {
+				writeValue(element, 0, item);
+			}
+		}
+
+		buffer.putInt(length_at, buffer.position() - start);
+		return end;
+	}
+
+	/*
+	 * Make room for at least the given number of bytes
+	 */
+	private ByteBuffer ensure(int bytes) {
+		if(buffer.remaining() < bytes){
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		return buffer;
+	}
+
+	/*
+	 * The signature of a variant's value
+	 */
+	static String signatureOf(Object value) {
+		if(value instanceof String)
+			return "s";
+		if(value instanceof Boolean)
+			return "b";
+		if(value instanceof Byte)
+			return "y";
+		if(value instanceof Short)
+			return "n";
+		if(value instanceof Integer)
+			return "i";
+		if(value instanceof Long)
+			return "x";
+		if(value instanceof Double)
+			return "d";
+		if(value instanceof byte[])
+			return "ay";
+		throw new IllegalArgumentException("Cannot infer D-Bus type of " + value);
+	}
+
+	/*
+	 * The index following the complete type starting at index
+	 */
+	static int skip(String signature, int index) {
+		char code = signature.charAt(index);
+		if(code == 'a')
+			return skip(signature, index + 1);
+		if(code != '(' && code != '{')
+			return index + 1;
+
+		int depth = 0;
+		do {
+			code = signature.charAt(index++);
+			if(code == '(' || code == '{')
+				depth++;
+			else if(code == ')' || code == '}')
+				depth--;
+		} while(depth > 0);
+		return index;
+	}
+
+	static int alignment(char code) {
+		switch (code) {
+		case 'y':
+		case 'g':
+		case 'v':
+			return 1;
+		case 'n':
+		case 'q':
+			return 2;
+		case 'x':
+		case 't':
+		case 'd':
+		case '(':
+		case '{':
+			return 8;
+		default:
+			return 4;
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * LinuxBackend.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackend;
+
+/**
+ * The {@link NotificationBackend} provider for desktops implementing the freedesktop.org Notifications interface.
+ *
+ * <p>The backend is supported wherever a D-Bus session bus address is available.
+ *
+ * @see     LinuxNotification
+ * @since   1.3
+ */
+public class LinuxBackend implements NotificationBackend {
+
+	/**
+	 * The priority of the Linux backend
+	 */
+	public static final int PRIORITY = 50;
+
+	@Override
+	public String getName() {
+		return "freedesktop";
+	}
+
+	@Override
+	public int getPriority() {
+		return PRIORITY;
+	}
+
+	@Override
+	public boolean isSupported() {
+		return DBusConnection.sessionBusAddress() != null;
+	}
+
+	@Override
+	public Set<Capability> getCapabilities() {
+		return Collections.unmodifiableSet(EnumSet.of(Capability.STICKY, Capability.UPDATE_IN_PLACE));
+	}
+
+	@Override
+	public Notification create(String application_name) {
+		return new LinuxNotification(application_name);
+	}
+
+}
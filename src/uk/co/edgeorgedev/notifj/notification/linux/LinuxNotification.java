@@ -0,0 +1,531 @@
+/**
+ * LinuxNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.linux;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.IconCache;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * This class consists of methods to create desktop notifications on Linux and other systems that implement the
+ * <a href="https://specifications.freedesktop.org/notification-spec/">freedesktop.org Desktop Notifications</a>
+ * D-Bus interface, such as GNOME, KDE and XFCE
+ *
+ * <p>Notifications are sent over a single persistent connection to the D-Bus session bus, opened by {@link #open()}
+ * and re-opened should the bus drop it. No <tt>notify-send</tt> process is started.
+ *
+ * <p>The bus address is read from the <tt>DBUS_SESSION_BUS_ADDRESS</tt> environment variable. Unix socket
+ * addresses, the norm on Linux, require Java 16 or later; <tt>tcp:</tt> addresses work on every version.
+ *
+ * <p>Callback URLs are not supported by the freedesktop interface and are ignored.
+ *
+ * <p>An instance may be shared by any number of threads, whose calls are multiplexed over the one connection.
+ * <tt>close()</tt> waits for notifications in progress before the connection is closed.
+ *
+ * @see     Notification
+ * @since   1.3
+ */
+public class LinuxNotification extends AbstractNotification {
+
+	/**
+	 * The bus name of the notification server
+	 * @since 1.3
+	 */
+	public static final String NOTIFICATIONS_BUS_NAME = "org.freedesktop.Notifications";
+
+	/**
+	 * The maximum number of titles remembered by {@link #updateInPlace(boolean)}
+	 * @since 1.3
+	 */
+	public static final int MAX_TRACKED_TITLES = 256;
+
+	private static final String NOTIFICATIONS_PATH = "/org/freedesktop/Notifications";
+	private static final String NOTIFY_SIGNATURE = "susssasa{sv}i";
+	private static final String CLOSE_SIGNATURE = "u";
+	private static final int EXPIRE_DEFAULT = -1;
+	private static final int EXPIRE_NEVER = 0;
+	private static final Byte URGENCY_LOW = 0;
+	private static final Byte URGENCY_NORMAL = 1;
+	private static final Byte URGENCY_CRITICAL = 2;
+	private static final String[] NO_ACTIONS = {};
+
+	private final Object lifecycle = new Object();
+	private volatile DBusConnection mConnection;
+	private volatile String bus_address;
+	private volatile String icon = "";
+	private volatile TimeUnit time_unit = TimeUnit.SECONDS;
+	private volatile long duration = 3;
+	private volatile boolean update_in_place;
+
+	private final Map<String, Long> mDisplayed = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_TRACKED_TITLES;
+		}
+	};
+
+	/**
+	 * Constructs a named notification application that sends notifications over the D-Bus session bus
+	 *
+	 * <p>The connection is made within the {@link #open()} method.
+	 *
+	 * @param application_name the application name shown with each notification
+	 * @since 1.3
+	 */
+	public LinuxNotification(String application_name) {
+		setApplicationName(application_name);
+		this.bus_address = DBusConnection.sessionBusAddress();
+	}
+
+	/**
+	 * Connects and authenticates to the D-Bus session bus
+	 *
+	 * @throws NotificationException if no session bus is available or the connection fails
+	 * @since 1.3
+	 */
+	@Override
+	public void open() throws NotificationException {
+		String address = bus_address;
+		if(address == null)
+			throw new NotificationException("No D-Bus session bus - is DBUS_SESSION_BUS_ADDRESS set?");
+		synchronized (lifecycle) {
+			if(mConnection != null)
+				return;
+			DBusConnection connection = new DBusConnection(address);
+			try {
+				connection.call(DBusConnection.BUS_NAME, DBusConnection.BUS_PATH, "org.freedesktop.DBus.Peer", "Ping", "", duration, time_unit);
+			} catch (NotificationException e) {
+				connection.close();
+				throw e;
+			}
+			mConnection = connection;
+		}
+		openDispatcher();
+	}
+
+	/**
+	 * Displays a desktop notification with a given title and message
+	 *
+	 * <p>Should updating in place be enabled, a notification replaces the last one displayed with the same title.
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #updateInPlace(boolean)
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Displays a desktop notification with a given title, message and priority
+	 *
+	 * <p>The priority is sent as the notification's urgency: {@link NotificationPriority#VERY_LOW} and
+	 * {@link NotificationPriority#MODERATE} are low, {@link NotificationPriority#EMERGENCY} is critical and the rest are normal.
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #updateInPlace(boolean)
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Displays a desktop notification, applying the message's own sticky setting and icon
+	 *
+	 * <p>The message's type and callback URL are ignored.
+	 *
+	 * @param  message the notification to display.
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #updateInPlace(boolean)
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		if(!update_in_place){
+			show(message, 0);
+			return;
+		}
+
+		String title = message.getTitle();
+		Long previous;
+		synchronized (mDisplayed) {
+			previous = mDisplayed.get(title);
+		}
+		long id = show(message, previous == null ? 0 : previous);
+		synchronized (mDisplayed) {
+			mDisplayed.put(title, id);
+		}
+	}
+
+	/**
+	 * Displays a desktop notification, replacing a notification that is still displayed
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  replaces_id the id of the notification to replace, or 0 to display a new notification
+	 * @return the id of the displayed notification - the same as <tt>replaces_id</tt> if it was replaced
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	public long show(String title, String message, long replaces_id) throws NotificationException {
+		return show(new NotificationMessage(title, message), replaces_id);
+	}
+
+	/**
+	 * Displays a desktop notification, replacing a notification that is still displayed
+	 *
+	 * @param  message the notification to display.
+	 * @param  replaces_id the id of the notification to replace, or 0 to display a new notification
+	 * @return the id of the displayed notification - the same as <tt>replaces_id</tt> if it was replaced
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @since 1.3
+	 */
+	public long show(NotificationMessage message, long replaces_id) throws NotificationException {
+		long started = beginCall();
+		boolean sent = false;
+		try {
+			long id = sendNotify(connection(), message, replaces_id);
+			sent = true;
+			return id;
+		} finally {
+			endCall();
+			recordSend(started, sent);
+		}
+	}
+
+	/**
+	 * Displays a desktop notification that can later be updated in place or closed
+	 *
+	 * <p>Each update replaces the displayed notification by its id, and dismissing it calls the service's
+	 * <tt>CloseNotification</tt>. Updates are throttled by the update interval.
+	 *
+	 * @param  message the initial state of the notification.
+	 * @return a handle to update or close the notification
+	 * @throws NotificationException if an error occurs trying to display the message
+	 * @see #setUpdateInterval(long, TimeUnit)
+	 * @since 1.3
+	 */
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		NotificationHandle handle = new NotificationHandle(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS) {
+			/* Written by one push at a time - pushes are serialised by the handle */
+			private volatile long id;
+
+			@Override
+			protected void push(NotificationMessage state) throws NotificationException {
+				id = show(state, id);
+			}
+
+			@Override
+			protected void remove() throws NotificationException {
+				if(id != 0)
+					closeNotification(id);
+			}
+		};
+		handle.update(message);
+		return handle;
+	}
+
+	/**
+	 * Closes a displayed notification
+	 *
+	 * @param  id the id of the notification, as returned by {@link #show(NotificationMessage, long)}
+	 * @throws NotificationException if the server cannot be reached
+	 * @since 1.3
+	 */
+	public void closeNotification(long id) throws NotificationException {
+		beginCall();
+		try {
+			connection().call(NOTIFICATIONS_BUS_NAME, NOTIFICATIONS_PATH, NOTIFICATIONS_BUS_NAME, "CloseNotification",
+					CLOSE_SIGNATURE, duration, time_unit, id);
+		} finally {
+			endCall();
+		}
+	}
+
+	/*
+	 * The open D-Bus connection - only read within a counted call
+	 */
+	private DBusConnection connection() throws NotificationException {
+		DBusConnection connection = mConnection;
+		if(connection == null)
+			throw new NotificationException("No D-Bus connection available - Have you called open()?");
+		return connection;
+	}
+
+	/*
+	 * Call Notify, returning the id of the displayed notification
+	 */
+	private long sendNotify(DBusConnection connection, NotificationMessage message, long replaces_id) throws NotificationException {
+		boolean message_sticky = isSticky(message);
+		NotificationPriority priority = message.getPriority();
+		Map<String, Object> hints = new HashMap<String, Object>();
+		if(message_sticky)
+			hints.put("resident", true);
+		if(priority != NotificationPriority.NORMAL)
+			hints.put("urgency", urgencyOf(priority));
+		List<Object> reply = connection.call(NOTIFICATIONS_BUS_NAME, NOTIFICATIONS_PATH, NOTIFICATIONS_BUS_NAME, "Notify",
+				NOTIFY_SIGNATURE, duration, time_unit,
+				String.valueOf(application_name), replaces_id, iconOf(message),
+				message.getTitle(), message.getMessage(), NO_ACTIONS, hints,
+				message_sticky ? EXPIRE_NEVER : EXPIRE_DEFAULT);
+		return (Long) reply.get(0);
+	}
+
+	/*
+	 * A message's icon as an icon name or file URI - images are shrunk once into a cached file, as the
+	 * Notifications service only takes icons by name or path
+	 */
+	private String iconOf(NotificationMessage message) throws NotificationException {
+		NotificationIcon message_icon = message.getIcon();
+		if(message_icon == null)
+			return icon;
+		if(message_icon.getSource() == NotificationIcon.Source.NAME)
+			return message_icon.getLocation();
+		return IconCache.getDefault().get(message_icon).toFile().toURI().toString();
+	}
+
+	/*
+	 * The freedesktop urgency - 0 low, 1 normal or 2 critical
+	 */
+	private static Byte urgencyOf(NotificationPriority priority) {
+		switch (priority) {
+		case VERY_LOW:
+		case MODERATE:
+			return URGENCY_LOW;
+		case EMERGENCY:
+			return URGENCY_CRITICAL;
+		default:
+			return URGENCY_NORMAL;
+		}
+	}
+
+	/**
+	 * Get the optional features supported by the notification server, e.g. <tt>body</tt> or <tt>persistence</tt>
+	 *
+	 * @return the server's capabilities
+	 * @throws NotificationException if the server cannot be reached
+	 * @since 1.3
+	 */
+	public String[] getCapabilities() throws NotificationException {
+		beginCall();
+		try {
+			List<?> capabilities = (List<?>) connection().call(NOTIFICATIONS_BUS_NAME, NOTIFICATIONS_PATH, NOTIFICATIONS_BUS_NAME,
+					"GetCapabilities", "", duration, time_unit).get(0);
+			return capabilities.toArray(new String[capabilities.size()]);
+		} finally {
+			endCall();
+		}
+	}
+
+	/**
+	 * Cleans-up object by closing the D-Bus connection
+	 *
+	 * <p>Queued notifications, and those being sent by other threads, are finished first.
+	 *
+	 * @throws NotificationException if queued notifications cannot be drained
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		closeDispatcher();
+		synchronized (lifecycle) {
+			beginDrain();
+			try {
+				DBusConnection connection = mConnection;
+				mConnection = null;
+				if(connection != null)
+					connection.close();
+			} finally {
+				endDrain();
+			}
+		}
+		synchronized (mDisplayed) {
+			mDisplayed.clear();
+		}
+	}
+
+	/**
+	 * Enables/Disables replacing the last notification displayed with the same title, rather than displaying another
+	 *
+	 * <p>This suits progress and status notifications. Up to {@link #MAX_TRACKED_TITLES} titles are remembered.
+	 *
+	 * @param update_in_place <tt>true</tt> if notifications are to be updated in place and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	public LinuxNotification updateInPlace(boolean update_in_place){
+		this.update_in_place = update_in_place;
+		return this;
+	}
+
+	/**
+	 * Set the D-Bus address of the bus the notification server is on.
+	 * <p>The default is the session bus. Takes effect on the next call to {@link #open()}.
+	 *
+	 * @param bus_address the address, e.g. <tt>unix:path=/run/user/1000/bus</tt> or <tt>tcp:host=localhost,port=12345</tt>
+	 * @throws IllegalArgumentException if the address is null.
+	 * @since 1.3
+	 */
+	public void setBusAddress(String bus_address) {
+		if(bus_address == null)
+			throw new IllegalArgumentException("Bus address cannot be null");
+		this.bus_address = bus_address;
+	}
+
+	/**
+	 * Set the icon displayed with notifications.
+	 * <p>The default is no icon.
+	 *
+	 * @param icon an icon theme name, e.g. <tt>dialog-information</tt>, or a <tt>file://</tt> URI
+	 * @throws IllegalArgumentException if the icon is null.
+	 * @since 1.3
+	 */
+	public void setIcon(String icon) {
+		if(icon == null)
+			throw new IllegalArgumentException("Icon cannot be null");
+		this.icon = icon;
+	}
+
+	/**
+	 * Set the TimeUnit of the D-Bus call timeout
+	 * <p>The default is <tt>TimeUnit.SECONDS</tt>.
+	 *
+	 * @param time_unit the time unit to apply to the <tt>duration</tt>
+	 * @throws IllegalArgumentException if the time unit is null.
+	 * @since 1.3
+	 */
+	public void setTimeUnit(TimeUnit time_unit) {
+		if(time_unit == null)
+			throw new IllegalArgumentException("Time Unit cannot be null");
+		this.time_unit = time_unit;
+	}
+
+	/**
+	 * Set the time to wait for the notification server to answer each call.
+	 * <p>The default is 3 and uses <tt>time_unit</tt> to set the time to wait.
+	 *
+	 * @param duration the length to be applied to the <tt>time_unit</tt>
+	 * @throws IllegalArgumentException if the duration is less than 1
+	 * @since 1.3
+	 */
+	public void setDuration(long duration) {
+		if(duration < 1)
+			throw new IllegalArgumentException("Duration cannot be less than 1");
+		this.duration = duration;
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 *
+	 * <p>Notifications created by <tt>LinuxNotification</tt> are non-sticky by default
+	 *
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification sticky(){
+		super.sticky();
+		return this;
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification sticky(boolean sticky){
+		super.sticky(sticky);
+		return this;
+	}
+
+	/**
+	 * Has no effect - the freedesktop interface does not support callback URLs
+	 *
+	 * @param callback_url the callback URL, which is remembered but not used
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification callbackUrl(URL callback_url){
+		super.callbackUrl(callback_url);
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification removeCallback(){
+		super.removeCallback();
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>LinuxNotification</tt> object
+	 */
+	@Override
+	public LinuxNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+}
@@ -0,0 +1,253 @@
+/**
+ * BackendMetrics.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The measurements recorded by {@link DefaultNotificationMetrics} for one backend or component.
+ *
+ * <p>Every counter is updated without locking and may be read at any time.
+ *
+ * @since   1.3
+ */
+public class BackendMetrics implements BackendMetricsMXBean {
+
+	private final String source;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram compile = new LatencyHistogram();
+	private final ThroughputWindow throughput = new ThroughputWindow();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong probe_hits = new AtomicLong();
+	private final AtomicLong probe_misses = new AtomicLong();
+	private final AtomicInteger max_queue_depth = new AtomicInteger();
+
+	private volatile int queue_depth;
+
+	BackendMetrics(String source) {
+		this.source = source;
+	}
+
+	void send(long latency_nanos, boolean success) {
+		latency.record(latency_nanos);
+		throughput.mark();
+		(success ? sent : failed).incrementAndGet();
+	}
+
+	void drop() {
+		dropped.incrementAndGet();
+	}
+
+	void queueDepth(int depth) {
+		queue_depth = depth;
+		int current;
+		while(depth > (current = max_queue_depth.get()) && !max_queue_depth.compareAndSet(current, depth)){
+			/* Retry until the deeper queue is stored or another thread stores a deeper one */
+		}
+	}
+
+	void probe(boolean cache_hit) {
+		(cache_hit ? probe_hits : probe_misses).incrementAndGet();
+	}
+
+	void compile(long latency_nanos) {
+		compile.record(latency_nanos);
+	}
+
+	void error() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * Get the name of the backend or component measured
+	 * @return the source
+	 */
+	@Override
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the number of notifications sent
+	 * @return the count
+	 */
+	@Override
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * Get the number of notifications that failed to send
+	 * @return the count
+	 */
+	@Override
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Get the number of notifications discarded without being sent
+	 * @return the count
+	 */
+	@Override
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get the number of errors handled without reaching the caller
+	 * @return the count
+	 */
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Get the approximate number of notifications sent or failed per second, over the last minute
+	 * @return the rate
+	 */
+	@Override
+	public double getThroughput() {
+		return throughput.perSecond();
+	}
+
+	/**
+	 * Get the number of notifications queued when last measured
+	 * @return the depth
+	 */
+	@Override
+	public int getQueueDepth() {
+		return queue_depth;
+	}
+
+	/**
+	 * Get the largest number of notifications measured in the queue
+	 * @return the depth
+	 */
+	@Override
+	public int getMaxQueueDepth() {
+		return max_queue_depth.get();
+	}
+
+	/**
+	 * Get the number of service checks answered from a cache
+	 * @return the count
+	 */
+	@Override
+	public long getProbeHits() {
+		return probe_hits.get();
+	}
+
+	/**
+	 * Get the number of service checks that had to probe the service
+	 * @return the count
+	 */
+	@Override
+	public long getProbeMisses() {
+		return probe_misses.get();
+	}
+
+	/**
+	 * Get the send latencies, successful or not
+	 * @return the latency histogram
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Get the script compilation times
+	 * @return the compilation histogram
+	 */
+	public LatencyHistogram getCompileTimes() {
+		return compile;
+	}
+
+	/**
+	 * Get the mean send latency
+	 * @return the mean in nanoseconds
+	 */
+	@Override
+	public double getLatencyMean() {
+		return latency.getMean();
+	}
+
+	/**
+	 * Get the median send latency
+	 * @return the latency in nanoseconds
+	 */
+	@Override
+	public long getLatency50thPercentile() {
+		return latency.getValueAtPercentile(50);
+	}
+
+	/**
+	 * Get the 99th percentile send latency
+	 * @return the latency in nanoseconds
+	 */
+	@Override
+	public long getLatency99thPercentile() {
+		return latency.getValueAtPercentile(99);
+	}
+
+	/**
+	 * Get the largest send latency
+	 * @return the latency in nanoseconds
+	 */
+	@Override
+	public long getLatencyMax() {
+		return latency.getMax();
+	}
+
+	/**
+	 * Get the number of scripts compiled
+	 * @return the count
+	 */
+	@Override
+	public long getCompileCount() {
+		return compile.getCount();
+	}
+
+	/**
+	 * Get the mean script compilation time
+	 * @return the mean in nanoseconds
+	 */
+	@Override
+	public double getCompileMean() {
+		return compile.getMean();
+	}
+
+	/**
+	 * Clears every counter and histogram
+	 *
+	 * <p>Measurements recorded during the reset may be partly kept. The throughput is not cleared.
+	 */
+	@Override
+	public void reset() {
+		latency.reset();
+		compile.reset();
+		sent.set(0);
+		failed.set(0);
+		dropped.set(0);
+		errors.set(0);
+		probe_hits.set(0);
+		probe_misses.set(0);
+		queue_depth = 0;
+		max_queue_depth.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return source + "[sent=" + sent + ", failed=" + failed + ", dropped=" + dropped + ", p99="
+				+ getLatency99thPercentile() + "ns]";
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * BackendMetricsMXBean.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+/**
+ * The management interface of {@link BackendMetrics}, registered by {@link DefaultNotificationMetrics#registerMBeans()}
+ * as <tt>uk.co.edgeorgedev.notifj:type=NotificationMetrics,source=</tt><i>source</i>.
+ *
+ * <p>Latencies are in nanoseconds.
+ *
+ * @since   1.3
+ */
+public interface BackendMetricsMXBean {
+
+	public abstract String getSource();
+
+	public abstract long getSent();
+
+	public abstract long getFailed();
+
+	public abstract long getDropped();
+
+	public abstract long getErrors();
+
+	public abstract double getThroughput();
+
+	public abstract int getQueueDepth();
+
+	public abstract int getMaxQueueDepth();
+
+	public abstract long getProbeHits();
+
+	public abstract long getProbeMisses();
+
+	public abstract double getLatencyMean();
+
+	public abstract long getLatency50thPercentile();
+
+	public abstract long getLatency99thPercentile();
+
+	public abstract long getLatencyMax();
+
+	public abstract long getCompileCount();
+
+	public abstract double getCompileMean();
+
+	public abstract void reset();
+
+}
@@ -0,0 +1,203 @@
+/**
+ * DefaultNotificationMetrics.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * The built-in {@link NotificationMetrics}, which keeps a {@link BackendMetrics} for each source in memory.
+ *
+ * <p>Recording takes no lock and does not allocate once a source has been seen, so it is cheap enough to leave
+ * on all the time. The measurements can be read with {@link #get(String)}, or over JMX once
+ * {@link #registerMBeans()} has been called.
+ *
+ * <p>For example:
+ * <pre>
+ * DefaultNotificationMetrics metrics = (DefaultNotificationMetrics) MetricsRegistry.get();
+ * BackendMetrics growl = metrics.get("WindowsGrowlNotification");
+ * System.out.println(growl.getLatency().getValueAtPercentile(99.9) + "ns");</pre>
+ *
+ * @see     MetricsRegistry
+ * @since   1.3
+ */
+public class DefaultNotificationMetrics implements NotificationMetrics {
+
+	/**
+	 * The domain and type of the MBeans registered by {@link #registerMBeans()}
+	 * @since 1.3
+	 */
+	public static final String MBEAN_NAME_PREFIX = "uk.co.edgeorgedev.notifj:type=NotificationMetrics,source=";
+
+	private final ConcurrentMap<String, BackendMetrics> sources = new ConcurrentHashMap<String, BackendMetrics>();
+	private volatile MBeanServer mbean_server;
+
+	@Override
+	public void recordSend(String source, long latency_nanos, boolean success) {
+		metricsOf(source).send(latency_nanos, success);
+	}
+
+	@Override
+	public void recordDrop(String source) {
+		metricsOf(source).drop();
+	}
+
+	@Override
+	public void recordQueueDepth(String source, int depth) {
+		metricsOf(source).queueDepth(depth);
+	}
+
+	@Override
+	public void recordProbe(String source, boolean cache_hit) {
+		metricsOf(source).probe(cache_hit);
+	}
+
+	@Override
+	public void recordCompile(String source, long latency_nanos) {
+		metricsOf(source).compile(latency_nanos);
+	}
+
+	@Override
+	public void recordError(String source, Throwable cause) {
+		metricsOf(source).error();
+	}
+
+	/**
+	 * Get the measurements of a backend or component
+	 * @param source the simple class name of the backend or component, e.g. <tt>LinuxNotification</tt>
+	 * @return the measurements - <tt>null</tt> if nothing has been recorded for the source
+	 * @since 1.3
+	 */
+	public BackendMetrics get(String source) {
+		return sources.get(source);
+	}
+
+	/**
+	 * Get the measurements of every backend and component that has recorded any
+	 * @return the measurements, in no particular order
+	 * @since 1.3
+	 */
+	public Collection<BackendMetrics> getAll() {
+		return Collections.unmodifiableCollection(new ArrayList<BackendMetrics>(sources.values()));
+	}
+
+	/**
+	 * Clears the measurements of every source
+	 * @since 1.3
+	 */
+	public void reset() {
+		for (BackendMetrics metrics : sources.values()) {
+			metrics.reset();
+		}
+	}
+
+	/**
+	 * Registers an MBean for each source with the platform MBean server, and for each new source as it is seen
+	 *
+	 * @throws NotificationException if an MBean cannot be registered
+	 * @see BackendMetricsMXBean
+	 * @since 1.3
+	 */
+	public synchronized void registerMBeans() throws NotificationException {
+		if(mbean_server != null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<BackendMetrics> registered = new ArrayList<BackendMetrics>();
+		try {
+			for (BackendMetrics metrics : sources.values()) {
+				register(server, metrics);
+				registered.add(metrics);
+			}
+		} catch (JMException e) {
+			for (BackendMetrics metrics : registered) {
+				unregister(server, metrics);
+			}
+			throw new NotificationException("Could not register notification metrics MBeans", e);
+		}
+		mbean_server = server;
+	}
+
+	/**
+	 * Unregisters the MBeans registered by {@link #registerMBeans()}
+	 * @since 1.3
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer server = mbean_server;
+		mbean_server = null;
+		if(server == null)
+			return;
+		for (BackendMetrics metrics : sources.values()) {
+			unregister(server, metrics);
+		}
+	}
+
+	/*
+	 * Get the measurements of a source, creating them the first time it is seen
+	 */
+	private BackendMetrics metricsOf(String source) {
+		BackendMetrics metrics = sources.get(source);
+		if(metrics != null)
+			return metrics;
+
+		BackendMetrics created = new BackendMetrics(source);
+		metrics = sources.putIfAbsent(source, created);
+		if(metrics != null)
+			return metrics;
+
+		if(mbean_server != null){
+			synchronized (this) {
+				MBeanServer server = mbean_server;
+				try {
+					if(server != null)
+						register(server, created);
+				} catch (JMException e) {
+					// The measurements are still recorded and readable with get()
+				}
+			}
+		}
+		return created;
+	}
+
+	private static void register(MBeanServer server, BackendMetrics metrics) throws JMException {
+		ObjectName name = nameOf(metrics);
+		if(!server.isRegistered(name))
+			server.registerMBean(metrics, name);
+	}
+
+	private static void unregister(MBeanServer server, BackendMetrics metrics) {
+		try {
+			ObjectName name = nameOf(metrics);
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+		} catch (JMException e) {
+			// Already gone
+		}
+	}
+
+	/*
+	 * The MBean name of a source, quoted should it contain characters that are special in object names
+	 */
+	private static ObjectName nameOf(BackendMetrics metrics) throws JMException {
+		String source = metrics.getSource();
+		boolean plain = source.length() > 0;
+		for (int i = 0; i < source.length() && plain; i++) {
+			plain = ",=:\"*?\n".indexOf(source.charAt(i)) < 0;
+		}
+		return new ObjectName(MBEAN_NAME_PREFIX + (plain ? source : ObjectName.quote(source)));
+	}
+
+}
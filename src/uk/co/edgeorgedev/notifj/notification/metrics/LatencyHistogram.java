@@ -0,0 +1,148 @@
+/**
+ * LatencyHistogram.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, in the manner of HdrHistogram.
+ *
+ * <p>Values are counted in log-linear buckets: exactly below 64ns, and above that in 32 buckets per power of two,
+ * so any recorded value is reported to within about 3%. Recording is a handful of atomic increments and never
+ * allocates; reading scans the buckets, so percentiles are meant for monitoring rather than hot paths. Readings
+ * taken while values are being recorded may be momentarily inconsistent with each other, e.g. a count that
+ * includes a value the maximum does not.
+ *
+ * @see     DefaultNotificationMetrics
+ * @since   1.3
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency
+	 * @param nanos the latency in nanoseconds - negative values are recorded as 0
+	 * @since 1.3
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current;
+		while(value > (current = max.get()) && !max.compareAndSet(current, value)){
+			/* Retry until the larger value is stored or another thread stores a larger one */
+		}
+	}
+
+	/**
+	 * Get the number of recorded latencies
+	 * @return the count
+	 * @since 1.3
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Get the mean latency
+	 * @return the mean in nanoseconds - 0 if none have been recorded
+	 * @since 1.3
+	 */
+	public double getMean() {
+		long recorded = count.get();
+		return recorded == 0 ? 0 : (double) total.get() / recorded;
+	}
+
+	/**
+	 * Get the largest recorded latency
+	 * @return the maximum in nanoseconds - 0 if none have been recorded
+	 * @since 1.3
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the latency that the given percentage of recorded latencies are at or below
+	 * @param percentile the percentage, from 0 to 100, e.g. 99.9
+	 * @return the latency in nanoseconds, rounded up to the top of its bucket - 0 if none have been recorded
+	 * @throws IllegalArgumentException if the percentile is not between 0 and 100
+	 * @since 1.3
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+
+		long[] snapshot = new long[BUCKETS];
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			recorded += snapshot[i];
+		}
+		if(recorded == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if(seen >= rank)
+				return Math.min(highestValueOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears every recorded latency
+	 *
+	 * <p>Latencies recorded during the reset may be partly kept.
+	 *
+	 * @since 1.3
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/*
+	 * The bucket holding a value - the top SUB_BUCKET_BITS + 1 bits of the value select it
+	 */
+	static int indexOf(long value) {
+		if(value < LINEAR_LIMIT)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/*
+	 * The largest value held by a bucket
+	 */
+	static long highestValueOf(int index) {
+		if(index < LINEAR_LIMIT)
+			return index;
+		int offset = index - LINEAR_LIMIT;
+		int shift = offset / SUB_BUCKETS + 1;
+		long sub = offset % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+}
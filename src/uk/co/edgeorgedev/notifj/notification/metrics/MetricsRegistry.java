@@ -0,0 +1,103 @@
+/**
+ * MetricsRegistry.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * This class holds the {@link NotificationMetrics} that every NotifJ backend and component records to.
+ *
+ * <p>Unless another is set, the first provider listed in
+ * <tt>META-INF/services/uk.co.edgeorgedev.notifj.notification.metrics.NotificationMetrics</tt> is used, or a
+ * {@link DefaultNotificationMetrics} if there is none. Providers are loaded once, with the context class loader.
+ *
+ * <p>For example, the following publishes every backend's measurements over JMX:
+ * <pre>
+ * DefaultNotificationMetrics metrics = new DefaultNotificationMetrics();
+ * metrics.registerMBeans();
+ * MetricsRegistry.set(metrics);</pre>
+ *
+ * @see     NotificationMetrics
+ * @since   1.3
+ */
+public final class MetricsRegistry {
+
+	/**
+	 * Metrics that discard every measurement
+	 * @since 1.3
+	 */
+	public static final NotificationMetrics NONE = new NotificationMetrics() {
+		@Override
+		public void recordSend(String source, long latency_nanos, boolean success) {}
+
+		@Override
+		public void recordDrop(String source) {}
+
+		@Override
+		public void recordQueueDepth(String source, int depth) {}
+
+		@Override
+		public void recordProbe(String source, boolean cache_hit) {}
+
+		@Override
+		public void recordCompile(String source, long latency_nanos) {}
+
+		@Override
+		public void recordError(String source, Throwable cause) {}
+	};
+
+	private static volatile NotificationMetrics metrics;
+
+	private MetricsRegistry() {}
+
+	/**
+	 * Get the metrics measurements are recorded to
+	 * @return the metrics in use
+	 * @since 1.3
+	 */
+	public static NotificationMetrics get() {
+		NotificationMetrics current = metrics;
+		if(current == null){
+			synchronized (MetricsRegistry.class) {
+				current = metrics;
+				if(current == null)
+					metrics = current = load();
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Sets the metrics measurements are recorded to from now on
+	 * @param metrics the metrics to use - {@link #NONE} to stop recording
+	 * @throws IllegalArgumentException if the metrics are null
+	 * @since 1.3
+	 */
+	public static void set(NotificationMetrics metrics) {
+		if(metrics == null)
+			throw new IllegalArgumentException("Metrics cannot be null");
+		MetricsRegistry.metrics = metrics;
+	}
+
+	private static NotificationMetrics load() {
+		Iterator<NotificationMetrics> providers = ServiceLoader.load(NotificationMetrics.class).iterator();
+		try {
+			while(providers.hasNext()){
+				try {
+					return providers.next();
+				} catch (ServiceConfigurationError e) {
+					// A provider that cannot be loaded is skipped
+				}
+			}
+		} catch (ServiceConfigurationError e) {
+			// A malformed provider configuration file ends discovery
+		}
+		return new DefaultNotificationMetrics();
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * NotificationMetrics.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+/**
+ * A service provider interface that receives measurements from every NotifJ backend and component.
+ *
+ * <p>Each measurement names its <tt>source</tt>: the simple class name of the notification that recorded it, e.g.
+ * <tt>WindowsGrowlNotification</tt>, or of the component, e.g. <tt>NotificationRateLimiter</tt>.
+ *
+ * <p>Methods are called on the notifying thread, often from many threads at once, so implementations must be
+ * thread-safe and should neither block nor throw. The implementation in use is chosen by {@link MetricsRegistry};
+ * others can be installed with {@link MetricsRegistry#set(NotificationMetrics)} or listed in
+ * <tt>META-INF/services/uk.co.edgeorgedev.notifj.notification.metrics.NotificationMetrics</tt>.
+ *
+ * @see     DefaultNotificationMetrics
+ * @since   1.3
+ */
+public interface NotificationMetrics {
+
+	/**
+	 * Records a notification handed to the desktop, or a failed attempt to do so
+	 * @param source the backend that sent the notification
+	 * @param latency_nanos the time taken to send it, in nanoseconds
+	 * @param success <tt>true</tt> if the notification was sent and <tt>false</tt> if it failed
+	 * @since 1.3
+	 */
+	public abstract void recordSend(String source, long latency_nanos, boolean success);
+
+	/**
+	 * Records a notification discarded without being sent, e.g. by a full queue or a rate limit
+	 * @param source the backend or component that discarded it
+	 * @since 1.3
+	 */
+	public abstract void recordDrop(String source);
+
+	/**
+	 * Records the number of notifications waiting in a queue
+	 * @param source the backend whose queue it is
+	 * @param depth the number of queued notifications
+	 * @since 1.3
+	 */
+	public abstract void recordQueueDepth(String source, int depth);
+
+	/**
+	 * Records a check for a running notification service, such as Growl
+	 * @param source the component making the check
+	 * @param cache_hit <tt>true</tt> if a cached result was used and <tt>false</tt> if the service was probed
+	 * @since 1.3
+	 */
+	public abstract void recordProbe(String source, boolean cache_hit);
+
+	/**
+	 * Records the compilation of a script
+	 * @param source the component that compiled it
+	 * @param latency_nanos the time taken to compile it, in nanoseconds
+	 * @since 1.3
+	 */
+	public abstract void recordCompile(String source, long latency_nanos);
+
+	/**
+	 * Records an error that was handled without reaching the caller, e.g. a failed probe treated as "not running"
+	 * @param source the backend or component that handled it
+	 * @param cause the error
+	 * @since 1.3
+	 */
+	public abstract void recordError(String source, Throwable cause);
+
+}
@@ -0,0 +1,72 @@
+/**
+ * ThroughputWindow.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in one-second slots over the last minute, without locking.
+ *
+ * <p>The slot for a new second is claimed by compare-and-set and then cleared, so an event counted by another
+ * thread in the instant between the two is lost. The rate is therefore approximate, which suits monitoring.
+ *
+ * @see     BackendMetrics
+ * @since   1.3
+ */
+final class ThroughputWindow {
+
+	private static final int SLOTS = 60;
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+	private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+	private final long started = second();
+
+	ThroughputWindow() {
+		for (int i = 0; i < SLOTS; i++) {
+			seconds.set(i, Long.MIN_VALUE);
+		}
+	}
+
+	/*
+	 * Count an event in the current second
+	 */
+	void mark() {
+		long now = second();
+		int slot = slotOf(now);
+		long claimed = seconds.get(slot);
+		if(claimed != now && seconds.compareAndSet(slot, claimed, now))
+			counts.set(slot, 0);
+		counts.incrementAndGet(slot);
+	}
+
+	/*
+	 * The mean number of events per second over the completed seconds of the last minute
+	 */
+	double perSecond() {
+		long now = second();
+		long span = Math.min(SLOTS - 1, now - started);
+		if(span < 1)
+			return 0;
+		long events = 0;
+		for (long second = now - span; second < now; second++) {
+			int slot = slotOf(second);
+			if(seconds.get(slot) == second)
+				events += counts.get(slot);
+		}
+		return (double) events / span;
+	}
+
+	private static long second() {
+		return System.nanoTime() / NANOS_PER_SECOND;
+	}
+
+	private static int slotOf(long second) {
+		return (int) (((second % SLOTS) + SLOTS) % SLOTS);
+	}
+
+}
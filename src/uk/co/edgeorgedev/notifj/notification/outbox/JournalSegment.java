@@ -0,0 +1,171 @@
+/**
+ * JournalSegment.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.outbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One file of a {@link NotificationJournal}.
+ *
+ * <p>A segment is a fixed-size, zero-filled file of records, each a length, a CRC32 of the body and the body
+ * itself. The length is written after the body, so a record torn by a crash reads as the end of the segment.
+ * Only the segment being written is memory-mapped.
+ *
+ * @since   1.3
+ */
+final class JournalSegment {
+
+	static final String PREFIX = "outbox-";
+	static final String SUFFIX = ".journal";
+	static final int RECORD_HEADER_LENGTH = 8;
+
+	final long sequence;
+	final File file;
+
+	/*
+	 * The number of appended entries in this segment that have not been acknowledged
+	 */
+	int outstanding;
+
+	private RandomAccessFile access;
+	private MappedByteBuffer buffer;
+
+	private JournalSegment(long sequence, File file) {
+		this.sequence = sequence;
+		this.file = file;
+	}
+
+	/*
+	 * Create and map a new segment for writing
+	 */
+	static JournalSegment create(File directory, long sequence, int size) throws IOException {
+		JournalSegment segment = new JournalSegment(sequence, new File(directory, name(sequence)));
+		segment.map(size);
+		return segment;
+	}
+
+	/*
+	 * An existing segment, mapped only while it is read
+	 */
+	static JournalSegment existing(File file, long sequence) {
+		return new JournalSegment(sequence, file);
+	}
+
+	static String name(long sequence) {
+		return String.format("%s%016d%s", PREFIX, sequence, SUFFIX);
+	}
+
+	/*
+	 * The sequence number in a segment file name, or -1 if the name is not a segment's
+	 */
+	static long sequenceOf(String name) {
+		if(!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+			return -1;
+		try {
+			return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Read each intact record body in order, stopping at the first torn or empty record
+	 */
+	void read(RecordReader reader) throws IOException {
+		map((int) Math.min(file.length(), Integer.MAX_VALUE));
+		try {
+			CRC32 crc = new CRC32();
+			while(buffer.remaining() >= RECORD_HEADER_LENGTH){
+				int start = buffer.position();
+				int length = buffer.getInt();
+				int checksum = buffer.getInt();
+				if(length <= 0 || length > buffer.remaining())
+					break;
+
+				byte[] body = new byte[length];
+				buffer.get(body);
+				crc.reset();
+				crc.update(body, 0, length);
+				if((int) crc.getValue() != checksum){
+					buffer.position(start);
+					break;
+				}
+				reader.record(body);
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/*
+	 * Check if a record body of the given length fits in the remainder of the segment
+	 */
+	boolean hasRoom(int length) {
+		return buffer.remaining() >= RECORD_HEADER_LENGTH + length;
+	}
+
+	/*
+	 * Append a record - the caller must have checked there is room
+	 */
+	void write(byte[] body, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, length);
+		int start = buffer.position();
+		buffer.position(start + RECORD_HEADER_LENGTH);
+		buffer.put(body, 0, length);
+		buffer.putInt(start + 4, (int) crc.getValue());
+		buffer.putInt(start, length);
+	}
+
+	/*
+	 * Flush written records to the storage device
+	 */
+	void force() {
+		if(buffer != null)
+			buffer.force();
+	}
+
+	/*
+	 * Release the file - the mapping itself is released by the garbage collector
+	 */
+	void close() {
+		buffer = null;
+		if(access == null)
+			return;
+		try {
+			access.close();
+		} catch (IOException e) {
+			// Nothing further to release
+		} finally {
+			access = null;
+		}
+	}
+
+	private void map(int size) throws IOException {
+		access = new RandomAccessFile(file, "rw");
+		try {
+			if(access.length() < size)
+				access.setLength(size);
+			buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Receives the records of a segment as it is read
+	 */
+	interface RecordReader {
+		void record(byte[] body) throws IOException;
+	}
+
+}
@@ -0,0 +1,573 @@
+/**
+ * NotificationJournal.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.NotificationIcon;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * An append-only journal of notifications that have not yet been displayed.
+ *
+ * <p>The journal is a directory of memory-mapped segment files. Each notification is appended before it is
+ * displayed and acknowledged once it has been, and {@link #open()} returns every entry that was appended but
+ * never acknowledged. A new segment is started when the current one is full, and the oldest segments are
+ * deleted once every entry in them has been acknowledged.
+ *
+ * <p>When appended entries reach the storage device is decided by the {@link SyncPolicy}. With
+ * {@link SyncPolicy#GROUP}, threads appending at the same time share a single flush. Acknowledgements are
+ * never flushed on their own, as a lost acknowledgement only causes a notification to be displayed twice.
+ *
+ * <p>Every record starts with its type and the version of its layout; a journal holding a record of an unknown
+ * version cannot be opened.
+ *
+ * @see     OutboxNotification
+ * @since   1.3
+ */
+public class NotificationJournal {
+
+	/**
+	 * The default size of a segment file
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+	/**
+	 * The default time between flushes with {@link SyncPolicy#INTERVAL}
+	 */
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+	/**
+	 * When appended entries are flushed to the storage device
+	 * @since 1.3
+	 */
+	public enum SyncPolicy {
+		/** Every append is flushed before it returns */
+		ALWAYS,
+		/** Every append is flushed before it returns, with concurrent appends sharing a flush */
+		GROUP,
+		/** Appends are flushed by a background thread at a fixed interval */
+		INTERVAL,
+		/** Flushing is left to the operating system */
+		NEVER
+	}
+
+	private static final byte APPEND = 1;
+	private static final byte ACK = 2;
+
+	/*
+	 * The layout of a record, written after its type so that a later layout can be told apart
+	 */
+	private static final byte RECORD_VERSION = 1;
+
+	private final File directory;
+	private final int segment_size;
+	private final SyncPolicy policy;
+	private final long interval_millis;
+
+	private final Object lock = new Object();
+	private final LinkedList<JournalSegment> segments = new LinkedList<JournalSegment>();
+	private final Map<Long, JournalSegment> locations = new HashMap<Long, JournalSegment>();
+	private final LinkedHashMap<Long, NotificationMessage> pending = new LinkedHashMap<Long, NotificationMessage>();
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+	private final DataOutputStream output = new DataOutputStream(record);
+
+	private JournalSegment current;
+	private long next_id = 1;
+	private ScheduledExecutorService syncer;
+
+	private final Object sync_monitor = new Object();
+	private volatile long written;
+	private long synced;
+	private boolean syncing;
+
+	/**
+	 * Constructs a journal with {@link SyncPolicy#GROUP} flushing and {@link #DEFAULT_SEGMENT_SIZE} segments
+	 * @param directory the directory holding the segment files, created if it does not exist
+	 * @since 1.3
+	 */
+	public NotificationJournal(File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, SyncPolicy.GROUP, DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructs a journal
+	 * @param directory the directory holding the segment files, created if it does not exist
+	 * @param segment_size the size of each segment file in bytes
+	 * @param policy when appended entries are flushed to the storage device
+	 * @param interval the time between flushes with {@link SyncPolicy#INTERVAL}
+	 * @param unit the time unit of the <tt>interval</tt>
+	 * @throws IllegalArgumentException if any argument is null, the segment size is less than 4KiB or the interval is less than 1
+	 * @since 1.3
+	 */
+	public NotificationJournal(File directory, int segment_size, SyncPolicy policy, long interval, TimeUnit unit) {
+		if(directory == null || policy == null || unit == null)
+			throw new IllegalArgumentException("Directory, sync policy and time unit cannot be null");
+		if(segment_size < 4096)
+			throw new IllegalArgumentException("Segment size cannot be less than 4096 bytes");
+		if(interval < 1)
+			throw new IllegalArgumentException("Interval cannot be less than 1");
+		this.directory = directory;
+		this.segment_size = segment_size;
+		this.policy = policy;
+		this.interval_millis = Math.max(1, unit.toMillis(interval));
+	}
+
+	/**
+	 * Reads the journal and starts a new segment to append to
+	 *
+	 * @return the entries that were appended but not acknowledged, in the order they were appended
+	 * @throws NotificationException if the journal cannot be read or the new segment cannot be created
+	 * @since 1.3
+	 */
+	public List<Entry> open() throws NotificationException {
+		synchronized (lock) {
+			if(current != null)
+				throw new IllegalStateException("Journal is already open");
+			if(!directory.isDirectory() && !directory.mkdirs())
+				throw new NotificationException("Could not create journal directory " + directory);
+
+			try {
+				replay();
+				current = JournalSegment.create(directory, segments.isEmpty() ? 1 : segments.getLast().sequence + 1, segment_size);
+				segments.add(current);
+			} catch (IOException e) {
+				closeSegments();
+				throw new NotificationException("Could not open journal " + directory, e);
+			}
+			compact();
+
+			if(policy == SyncPolicy.INTERVAL)
+				startSyncer();
+			return getPending();
+		}
+	}
+
+	/**
+	 * Appends a notification, flushing it according to the sync policy
+	 *
+	 * @param message the notification
+	 * @return the id used to acknowledge the entry
+	 * @throws NotificationException if the entry cannot be written, or the thread is interrupted waiting for a
+	 * {@link SyncPolicy#GROUP} flush - the entry is then written but may not be flushed, and stays pending
+	 * @since 1.3
+	 */
+	public long append(NotificationMessage message) throws NotificationException {
+		long ticket;
+		long id;
+		synchronized (lock) {
+			ensureOpen();
+			id = next_id++;
+			try {
+				record.reset();
+				output.writeByte(APPEND);
+				output.writeByte(RECORD_VERSION);
+				output.writeLong(id);
+				writeMessage(message);
+				write();
+			} catch (IOException e) {
+				throw new NotificationException("Could not append to journal " + directory, e);
+			}
+			current.outstanding++;
+			locations.put(id, current);
+			pending.put(id, message);
+			ticket = ++written;
+
+			if(policy == SyncPolicy.ALWAYS)
+				current.force();
+		}
+
+		if(policy == SyncPolicy.GROUP)
+			awaitSync(ticket);
+		return id;
+	}
+
+	/**
+	 * Acknowledges that a notification has been displayed, so that it is not returned by the next {@link #open()}
+	 *
+	 * @param id the id returned by {@link #append(NotificationMessage)}
+	 * @throws NotificationException if the acknowledgement cannot be written
+	 * @since 1.3
+	 */
+	public void ack(long id) throws NotificationException {
+		synchronized (lock) {
+			ensureOpen();
+			JournalSegment segment = locations.remove(id);
+			if(segment == null)
+				return;
+			pending.remove(id);
+			try {
+				record.reset();
+				output.writeByte(ACK);
+				output.writeByte(RECORD_VERSION);
+				output.writeLong(id);
+				write();
+			} catch (IOException e) {
+				throw new NotificationException("Could not acknowledge journal entry " + id, e);
+			}
+			segment.outstanding--;
+			if(segment == segments.getFirst() && segment.outstanding == 0)
+				compact();
+		}
+	}
+
+	/**
+	 * Deletes the oldest segments whose entries have all been acknowledged
+	 *
+	 * <p>Segments are only deleted oldest first, so an acknowledgement is never deleted before the entry it acknowledges.
+	 * This is done automatically as entries are acknowledged.
+	 *
+	 * @return the number of segments deleted
+	 * @since 1.3
+	 */
+	public int compact() {
+		synchronized (lock) {
+			int deleted = 0;
+			while(segments.size() > 1 && segments.getFirst().outstanding == 0){
+				JournalSegment oldest = segments.removeFirst();
+				oldest.close();
+				if(!oldest.file.delete() && oldest.file.exists()){
+					// Still mapped on some platforms - retried by the next compaction
+					segments.addFirst(oldest);
+					break;
+				}
+				deleted++;
+			}
+			return deleted;
+		}
+	}
+
+	/**
+	 * Flushes every appended entry to the storage device
+	 * @throws NotificationException if the journal is not open
+	 * @since 1.3
+	 */
+	public void sync() throws NotificationException {
+		long ticket;
+		synchronized (lock) {
+			ensureOpen();
+			ticket = written;
+		}
+		awaitSync(ticket);
+	}
+
+	/**
+	 * Get the entries that have been appended but not acknowledged
+	 * @return the pending entries, in the order they were appended
+	 * @since 1.3
+	 */
+	public List<Entry> getPending() {
+		synchronized (lock) {
+			List<Entry> entries = new ArrayList<Entry>(pending.size());
+			for (Map.Entry<Long, NotificationMessage> entry : pending.entrySet()) {
+				entries.add(new Entry(entry.getKey(), entry.getValue()));
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Get the number of segment files
+	 * @return the segment count
+	 * @since 1.3
+	 */
+	public int getSegmentCount() {
+		synchronized (lock) {
+			return segments.size();
+		}
+	}
+
+	/**
+	 * Get the directory holding the segment files
+	 * @return the journal directory
+	 * @since 1.3
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Flushes and closes the journal - unacknowledged entries are returned by the next {@link #open()}
+	 * @since 1.3
+	 */
+	public void close() {
+		synchronized (lock) {
+			if(syncer != null){
+				syncer.shutdownNow();
+				syncer = null;
+			}
+			if(current != null && policy != SyncPolicy.NEVER)
+				current.force();
+			closeSegments();
+		}
+	}
+
+	/*
+	 * Read every segment in order, rebuilding the pending entries and each segment's outstanding count
+	 */
+	private void replay() throws IOException {
+		File[] files = directory.listFiles();
+		List<JournalSegment> found = new ArrayList<JournalSegment>();
+		if(files != null){
+			for (File file : files) {
+				long sequence = JournalSegment.sequenceOf(file.getName());
+				if(sequence > 0)
+					found.add(JournalSegment.existing(file, sequence));
+			}
+		}
+		Collections.sort(found, new Comparator<JournalSegment>() {
+			@Override
+			public int compare(JournalSegment first, JournalSegment second) {
+				return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+			}
+		});
+
+		for (final JournalSegment segment : found) {
+			segment.read(new JournalSegment.RecordReader() {
+				@Override
+				public void record(byte[] body) throws IOException {
+					DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+					byte type = input.readByte();
+					byte version = input.readByte();
+					if(version != RECORD_VERSION)
+						throw new IOException("Unsupported record version " + version + " in journal segment " + segment.file);
+					long id = input.readLong();
+					next_id = Math.max(next_id, id + 1);
+					if(type == APPEND){
+						pending.put(id, readMessage(input));
+						locations.put(id, segment);
+						segment.outstanding++;
+					}else if(type == ACK){
+						JournalSegment appended = locations.remove(id);
+						pending.remove(id);
+						if(appended != null)
+							appended.outstanding--;
+					}
+				}
+			});
+			segments.add(segment);
+		}
+	}
+
+	/*
+	 * Write the encoded record, starting a new segment should the current one be full
+	 */
+	private void write() throws IOException {
+		int length = record.size();
+		if(!current.hasRoom(length)){
+			if(policy != SyncPolicy.NEVER)
+				current.force();
+			current.close();
+			int size = Math.max(segment_size, length + JournalSegment.RECORD_HEADER_LENGTH);
+			current = JournalSegment.create(directory, current.sequence + 1, size);
+			segments.add(current);
+		}
+		current.write(record.toByteArray(), length);
+	}
+
+	/*
+	 * Wait until the ticket has been flushed - the first waiting thread flushes for every other
+	 */
+	private void awaitSync(long ticket) throws NotificationException {
+		while(true){
+			long target;
+			JournalSegment segment;
+			synchronized (sync_monitor) {
+				while(syncing && synced < ticket){
+					try {
+						sync_monitor.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new NotificationException("Interrupted waiting for journal " + directory + " to be flushed", e);
+					}
+				}
+				if(synced >= ticket)
+					return;
+				syncing = true;
+			}
+
+			// Earlier segments were flushed when they filled up
+			synchronized (lock) {
+				target = written;
+				segment = current;
+			}
+			try {
+				if(segment != null)
+					segment.force();
+			} finally {
+				synchronized (sync_monitor) {
+					syncing = false;
+					synced = Math.max(synced, target);
+					sync_monitor.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void startSyncer() {
+		syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NotifJ-Journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		syncer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					awaitSync(written);
+				} catch (NotificationException e) {
+					// Interrupted by close() - nothing is waiting on this flush
+				}
+			}
+		}, interval_millis, interval_millis, TimeUnit.MILLISECONDS);
+	}
+
+	private void ensureOpen() throws NotificationException {
+		if(current == null)
+			throw new NotificationException("Journal " + directory + " is not open - Have you called open()?");
+	}
+
+	private void closeSegments() {
+		for (JournalSegment segment : segments) {
+			segment.close();
+		}
+		segments.clear();
+		locations.clear();
+		pending.clear();
+		current = null;
+	}
+
+	/*
+	 * Title, message, priority, then the optional settings - sticky as -1 when unset - and last the icon source,
+	 * followed by the image of an icon made from bytes
+	 */
+	private void writeMessage(NotificationMessage message) throws IOException {
+		writeString(message.getTitle());
+		writeString(message.getMessage());
+		output.writeByte(message.getPriority().getValue());
+		Boolean sticky = message.getSticky();
+		output.writeByte(sticky == null ? -1 : (sticky ? 1 : 0));
+		writeString(message.getCallbackUrl() == null ? null : message.getCallbackUrl().toString());
+		NotificationIcon icon = message.getIcon();
+		writeString(icon == null ? null : icon.getLocation());
+		writeString(message.getType());
+		output.writeByte(icon == null ? -1 : icon.getSource().ordinal());
+		if(icon != null && icon.getSource() == NotificationIcon.Source.BYTES){
+			byte[] bytes = icon.getBytes();
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static NotificationMessage readMessage(DataInputStream input) throws IOException {
+		NotificationMessage.Builder builder = NotificationMessage.builder()
+				.title(readString(input))
+				.message(readString(input))
+				.priority(NotificationPriority.valueOf(input.readByte()));
+		byte sticky = input.readByte();
+		if(sticky >= 0)
+			builder.sticky(sticky == 1);
+		String callback_url = readString(input);
+		if(callback_url != null)
+			builder.callbackUrl(new URL(callback_url));
+		String icon = readString(input);
+		builder.type(readString(input));
+		byte source = input.readByte();
+		if(source < 0)
+			return builder.build();
+		switch (NotificationIcon.Source.values()[source]) {
+		case NAME:
+			return builder.icon(NotificationIcon.named(icon)).build();
+		case FILE:
+			return builder.icon(NotificationIcon.fromFile(new File(icon))).build();
+		case URL:
+			return builder.icon(NotificationIcon.fromUrl(new URL(icon))).build();
+		default:
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return builder.icon(NotificationIcon.fromBytes(bytes)).build();
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		if(value == null){
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8");
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if(length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * A notification appended to the journal
+	 * @since 1.3
+	 */
+	public static class Entry {
+
+		private final long id;
+		private final NotificationMessage message;
+
+		Entry(long id, NotificationMessage message) {
+			this.id = id;
+			this.message = message;
+		}
+
+		/**
+		 * Get the id used to acknowledge the entry
+		 * @return the entry id
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Get the notification
+		 * @return the notification
+		 */
+		public NotificationMessage getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry[" + id + ": " + message + "]";
+		}
+	}
+
+}
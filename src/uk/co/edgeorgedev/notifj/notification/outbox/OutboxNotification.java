@@ -0,0 +1,493 @@
+/**
+ * OutboxNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.outbox;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationDispatcher.OverflowPolicy;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * This class records each notification in a {@link NotificationJournal} before passing it to another notification,
+ * so that notifications that were not displayed - because the backend failed or the application stopped - are
+ * displayed again when the outbox is next opened.
+ *
+ * <p>Delivery is at-least-once: a notification displayed just before a crash, but not yet acknowledged in the
+ * journal, is displayed again.
+ *
+ * <p>Notifications queued by <tt>showAsync</tt> are recorded before they are queued and acknowledged once the
+ * queue has displayed them, so those still queued when the application stops are displayed again too. Should the
+ * queue refuse or drop one, it stays in the journal for {@link #redeliver()}.
+ *
+ * <p>For example:
+ * <pre>
+ * Notification notif = new OutboxNotification(new GrowlNotification("Test Application"),
+ *         new File(System.getProperty("user.home"), ".notifj/outbox"));
+ * notif.open();
+ * notif.show("Hello", "World");</pre>
+ *
+ * @see     NotificationJournal
+ * @since   1.3
+ */
+public class OutboxNotification extends AbstractNotification {
+
+	private final Notification mNotification;
+	private final NotificationJournal journal;
+
+	/*
+	 * Ids of the journal entries being displayed, which redeliver() leaves alone. Appending and
+	 * marking an entry share the read lock, so redeliver() never sees an entry that is not yet marked
+	 */
+	private final Set<Long> in_flight = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private final ReadWriteLock claim = new ReentrantReadWriteLock();
+
+	/*
+	 * The copies of messages queued by showAsync, by identity, with their journal entries - the queued show
+	 * displays and acknowledges the entry rather than appending another
+	 */
+	private final Map<NotificationMessage, Queued> queued = Collections.synchronizedMap(new IdentityHashMap<NotificationMessage, Queued>());
+
+	/**
+	 * Constructs an outbox with a journal using the default settings
+	 * @param notification the notification that displays notifications
+	 * @param directory the directory holding the journal
+	 * @throws IllegalArgumentException if either argument is null
+	 * @since 1.3
+	 */
+	public OutboxNotification(Notification notification, File directory) {
+		this(notification, new NotificationJournal(directory));
+	}
+
+	/**
+	 * Constructs an outbox
+	 * @param notification the notification that displays notifications
+	 * @param journal the journal, which must not be open
+	 * @throws IllegalArgumentException if either argument is null
+	 * @since 1.3
+	 */
+	public OutboxNotification(Notification notification, NotificationJournal journal) {
+		if(notification == null || journal == null)
+			throw new IllegalArgumentException("Notification and journal cannot be null");
+		this.mNotification = notification;
+		this.journal = journal;
+	}
+
+	/**
+	 * Opens the notification and the journal, then displays any notifications left in the journal
+	 *
+	 * <p>Replay stops at the first notification that fails; the rest are kept for {@link #redeliver()} or the next <tt>open()</tt>.
+	 *
+	 * @throws NotificationException if the notification or the journal cannot be opened
+	 * @since 1.3
+	 */
+	@Override
+	public void open() throws NotificationException {
+		mNotification.open();
+		boolean journal_opened = false;
+		try {
+			journal.open();
+			journal_opened = true;
+		} finally {
+			if(!journal_opened)
+				closeQuietly();
+		}
+		openDispatcher();
+		try {
+			redeliver();
+		} catch (NotificationException e) {
+			// Kept in the journal until the backend recovers
+			recordError(e);
+		}
+	}
+
+	/**
+	 * Records a notification in the journal, displays it and acknowledges it
+	 *
+	 * <p>Should the notification fail it stays in the journal and is displayed again by {@link #redeliver()} or the next {@link #open()}.
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @throws NotificationException if the notification cannot be recorded or displayed
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		show(title, message, NotificationPriority.NORMAL);
+	}
+
+	/**
+	 * Records a notification of a given priority in the journal, displays it and acknowledges it
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @throws NotificationException if the notification cannot be recorded or displayed
+	 * @since 1.3
+	 */
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		show(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Records a notification in the journal, displays it and acknowledges it
+	 *
+	 * @param  message the notification to display.
+	 * @throws NotificationException if the notification cannot be recorded or displayed
+	 * @since 1.3
+	 */
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		Queued entry = queued.remove(message);
+		long id = entry == null ? record(message) : entry.id;
+		try {
+			mNotification.show(message);
+			journal.ack(id);
+		} finally {
+			in_flight.remove(id);
+		}
+	}
+
+	/**
+	 * Records a notification in the journal, then queues it to be displayed and acknowledged on a background thread
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification cannot be recorded, or has been closed or cannot be queued
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(String title, String message) throws NotificationException {
+		return showAsync(new NotificationMessage(title, message));
+	}
+
+	/**
+	 * Records a notification of a given priority in the journal, then queues it to be displayed and acknowledged
+	 * on a background thread
+	 *
+	 * @param  title the title of the notification.
+	 * @param  message the message body of the notification.
+	 * @param  priority the priority of the notification.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification cannot be recorded, or has been closed or cannot be queued
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(String title, String message, NotificationPriority priority) throws NotificationException {
+		return showAsync(new NotificationMessage(title, message, priority));
+	}
+
+	/**
+	 * Records a notification in the journal, then queues it to be displayed and acknowledged on a background thread
+	 *
+	 * <p>Should the notification be refused or dropped by the queue, or fail, it stays in the journal and is
+	 * displayed again by {@link #redeliver()} or the next {@link #open()}.
+	 *
+	 * @param  message the notification to display.
+	 * @return a <tt>Future</tt> that completes once the notification has been displayed
+	 * @throws NotificationException if the notification cannot be recorded, or has been closed or cannot be queued
+	 * @throws IllegalArgumentException if the message is null
+	 * @see #dispatch(int, OverflowPolicy)
+	 * @since 1.3
+	 */
+	@Override
+	public Future<Void> showAsync(NotificationMessage message) throws NotificationException {
+		if(message == null)
+			throw new IllegalArgumentException("Message cannot be null");
+		/* A copy of its own, so that the queued show can tell it apart from the same message shown again */
+		NotificationMessage copy = message.toBuilder().build();
+		Queued entry = new Queued(record(copy));
+		queued.put(copy, entry);
+		boolean submitted = false;
+		try {
+			entry.future = super.showAsync(copy);
+			submitted = true;
+			return entry.future;
+		} finally {
+			if(!submitted){
+				queued.remove(copy);
+				in_flight.remove(entry.id);
+			}
+		}
+	}
+
+	/*
+	 * Append a message to the journal and mark it as in flight
+	 */
+	private long record(NotificationMessage message) throws NotificationException {
+		claim.readLock().lock();
+		try {
+			long id = journal.append(message);
+			in_flight.add(id);
+			return id;
+		} finally {
+			claim.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Records several notifications in the journal, displays them and acknowledges those that succeed
+	 *
+	 * @param  messages the notifications to display.
+	 * @return the result of each notification, in the same order as <tt>messages</tt>
+	 * @throws NotificationException if the notifications cannot be recorded or none can be displayed
+	 * @since 1.3
+	 */
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		List<NotificationMessage> all = new ArrayList<NotificationMessage>(messages);
+		List<Long> ids = new ArrayList<Long>(all.size());
+		try {
+			claim.readLock().lock();
+			try {
+				for (NotificationMessage message : all) {
+					long id = journal.append(message);
+					in_flight.add(id);
+					ids.add(id);
+				}
+			} finally {
+				claim.readLock().unlock();
+			}
+
+			List<NotificationResult> results = mNotification.showAll(all);
+			for (int i = 0; i < ids.size(); i++) {
+				if(results.get(i).isSuccess())
+					journal.ack(ids.get(i));
+			}
+			return results;
+		} finally {
+			in_flight.removeAll(ids);
+		}
+	}
+
+	/**
+	 * Displays the notifications in the journal that have not been acknowledged, in the order they were recorded
+	 *
+	 * <p>Notifications another thread is displaying - through <tt>show</tt> or another <tt>redeliver()</tt> - are
+	 * skipped, so that only those left by a failure or a previous run are displayed again.
+	 *
+	 * @return the number of notifications displayed
+	 * @throws NotificationException if a notification fails - it and those after it stay in the journal
+	 * @since 1.3
+	 */
+	public int redeliver() throws NotificationException {
+		releaseDropped();
+		List<NotificationJournal.Entry> claimed = new ArrayList<NotificationJournal.Entry>();
+		claim.writeLock().lock();
+		try {
+			for (NotificationJournal.Entry entry : journal.getPending()) {
+				if(in_flight.add(entry.getId()))
+					claimed.add(entry);
+			}
+		} finally {
+			claim.writeLock().unlock();
+		}
+
+		int delivered = 0;
+		try {
+			for (NotificationJournal.Entry entry : claimed) {
+				mNotification.show(entry.getMessage());
+				journal.ack(entry.getId());
+				delivered++;
+			}
+		} finally {
+			for (NotificationJournal.Entry entry : claimed) {
+				in_flight.remove(entry.getId());
+			}
+		}
+		return delivered;
+	}
+
+	/*
+	 * Release the entries of queued notifications that completed without being displayed - dropped by the
+	 * queue or failed when it was shut down - as a displayed one has already left the queued map
+	 */
+	private void releaseDropped() {
+		synchronized (queued) {
+			Iterator<Queued> entries = queued.values().iterator();
+			while(entries.hasNext()){
+				Queued entry = entries.next();
+				Future<Void> future = entry.future;
+				if(future != null && future.isDone()){
+					entries.remove();
+					in_flight.remove(entry.id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the notifications in the journal that have not been acknowledged
+	 * @return the pending notifications, in the order they were recorded
+	 * @since 1.3
+	 */
+	public List<NotificationMessage> getPending() {
+		List<NotificationJournal.Entry> entries = journal.getPending();
+		List<NotificationMessage> pending = new ArrayList<NotificationMessage>(entries.size());
+		for (NotificationJournal.Entry entry : entries) {
+			pending.add(entry.getMessage());
+		}
+		return pending;
+	}
+
+	/**
+	 * Get the journal
+	 * @return the journal notifications are recorded in
+	 * @since 1.3
+	 */
+	public NotificationJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Closes the notification and the journal - unacknowledged notifications are kept for the next {@link #open()}
+	 * @throws NotificationException if the notification cannot be closed
+	 * @since 1.3
+	 */
+	@Override
+	public void close() throws NotificationException {
+		try {
+			closeDispatcher();
+			mNotification.close();
+		} finally {
+			releaseDropped();
+			journal.close();
+		}
+	}
+
+	/*
+	 * Close the notification after the journal failed to open, keeping the journal's failure
+	 */
+	private void closeQuietly() {
+		try {
+			mNotification.close();
+		} catch (NotificationException e) {
+			recordError(e);
+		} catch (RuntimeException e) {
+			recordError(e);
+		}
+	}
+
+	/**
+	 * Enables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification sticky(){
+		return sticky(true);
+	}
+
+	/**
+	 * Enables/Disables any subsequent notifications to be <i>sticky</i> by being displayed until dismissed
+	 * @param sticky <tt>true</tt> if sticky notifications are to be enabled and <tt>false</tt> otherwise.
+	 *
+	 * @see #sticky()
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification sticky(boolean sticky){
+		super.sticky(sticky);
+		mNotification.sticky(sticky);
+		return this;
+	}
+
+	/**
+	 * Adds a callback url to notifications.
+	 *
+	 * @param callback_url the callback URL to open - <tt>null</tt> can be used to remove the callback as can {@link #removeCallback()}
+	 * @see #removeCallback()
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification callbackUrl(URL callback_url){
+		super.callbackUrl(callback_url);
+		mNotification.callbackUrl(callback_url);
+		return this;
+	}
+
+	/**
+	 * Removes any previously associated callback.
+	 *
+	 * @see #callbackUrl(URL)
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification removeCallback(){
+		return callbackUrl(null);
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)}
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @throws IllegalArgumentException if the policy is null or the capacity is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification dispatch(int capacity, OverflowPolicy policy){
+		super.dispatch(capacity, policy);
+		return this;
+	}
+
+	/**
+	 * Configures the queue used by {@link #showAsync(String, String)} to display several notifications at once
+	 *
+	 * @param capacity the maximum number of notifications that may be queued
+	 * @param policy the action taken when a notification is submitted to a full queue
+	 * @param concurrency the maximum number of notifications displayed at once
+	 * @throws IllegalArgumentException if the policy is null or the capacity or concurrency is less than 1
+	 * @throws IllegalStateException if notifications have already been queued
+	 * @since 1.3
+	 * @return the modified <tt>OutboxNotification</tt> object
+	 */
+	@Override
+	public OutboxNotification dispatch(int capacity, OverflowPolicy policy, int concurrency){
+		super.dispatch(capacity, policy, concurrency);
+		return this;
+	}
+
+	/*
+	 * A notification queued by showAsync
+	 */
+	private static class Queued {
+
+		final long id;
+		volatile Future<Void> future;
+
+		Queued(long id) {
+			this.id = id;
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * BackendNotification.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.spi;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.edgeorgedev.notifj.notification.AbstractNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.NotificationHandle;
+import uk.co.edgeorgedev.notifj.notification.NotificationMessage;
+import uk.co.edgeorgedev.notifj.notification.NotificationPriority;
+import uk.co.edgeorgedev.notifj.notification.NotificationResult;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A notification whose backend's notification is created and opened on first use.
+ *
+ * <p>Sticky and callback settings are passed on when the backend's notification is created and whenever
+ * they change, rather than with every notification.
+ *
+ * @see     NotificationBackends#create(String, NotificationBackend.Capability...)
+ * @since   1.3
+ */
+class BackendNotification extends AbstractNotification {
+
+	private final NotificationBackend backend;
+	private final Object lock = new Object();
+
+	private volatile Notification delegate;
+	private volatile boolean opened;
+
+	BackendNotification(NotificationBackend backend, String application_name) {
+		this.backend = backend;
+		setApplicationName(application_name);
+	}
+
+	/*
+	 * The backend's notification is opened on first use
+	 */
+	@Override
+	public void open() throws NotificationException {
+		opened = true;
+		openDispatcher();
+	}
+
+	@Override
+	public void show(String title, String message) throws NotificationException {
+		delegate().show(title, message);
+	}
+
+	@Override
+	public void show(String title, String message, NotificationPriority priority) throws NotificationException {
+		delegate().show(title, message, priority);
+	}
+
+	@Override
+	public void show(NotificationMessage message) throws NotificationException {
+		delegate().show(message);
+	}
+
+	@Override
+	public NotificationHandle showUpdatable(NotificationMessage message) throws NotificationException {
+		return delegate().showUpdatable(message);
+	}
+
+	@Override
+	public void setUpdateInterval(long interval, TimeUnit unit) {
+		synchronized (lock) {
+			super.setUpdateInterval(interval, unit);
+			if(delegate instanceof AbstractNotification)
+				((AbstractNotification) delegate).setUpdateInterval(interval, unit);
+		}
+	}
+
+	@Override
+	public List<NotificationResult> showAll(Collection<NotificationMessage> messages) throws NotificationException {
+		return delegate().showAll(messages);
+	}
+
+	@Override
+	public void close() throws NotificationException {
+		closeDispatcher();
+		Notification current;
+		synchronized (lock) {
+			current = delegate;
+			delegate = null;
+			opened = false;
+		}
+		if(current != null)
+			current.close();
+	}
+
+	@Override
+	public BackendNotification sticky(boolean sticky) {
+		synchronized (lock) {
+			super.sticky(sticky);
+			if(delegate != null)
+				delegate.sticky(sticky);
+		}
+		return this;
+	}
+
+	@Override
+	public BackendNotification sticky() {
+		return sticky(true);
+	}
+
+	@Override
+	public BackendNotification callbackUrl(URL callback_url) {
+		synchronized (lock) {
+			super.callbackUrl(callback_url);
+			if(delegate != null)
+				delegate.callbackUrl(callback_url);
+		}
+		return this;
+	}
+
+	@Override
+	public BackendNotification removeCallback() {
+		return callbackUrl(null);
+	}
+
+	/*
+	 * Get the backend this notification uses
+	 */
+	NotificationBackend getBackend() {
+		return backend;
+	}
+
+	/*
+	 * Create and open the backend's notification on first use
+	 */
+	private Notification delegate() throws NotificationException {
+		Notification current = delegate;
+		if(current != null)
+			return current;
+
+		synchronized (lock) {
+			if(delegate != null)
+				return delegate;
+			if(!opened)
+				throw new NotificationException("Notification has not been opened - Have you called open()?");
+			current = backend.create(application_name);
+			current.sticky(sticky);
+			current.callbackUrl(callback_url);
+			if(current instanceof AbstractNotification)
+				((AbstractNotification) current).setUpdateInterval(getUpdateIntervalNanos(), TimeUnit.NANOSECONDS);
+			try {
+				current.open();
+			} catch (NotificationException e) {
+				closeQuietly(current);
+				throw e;
+			}
+			delegate = current;
+			return current;
+		}
+	}
+
+	private static void closeQuietly(Notification notification) {
+		try {
+			notification.close();
+		} catch (NotificationException e) {
+			// The open failure is reported instead
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BackendNotification[" + backend.getName() + "]";
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * NotificationBackend.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.spi;
+
+import java.util.Set;
+
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+
+/**
+ * A service provider that creates notifications for one desktop notification system.
+ *
+ * <p>Backends are discovered with <tt>java.util.ServiceLoader</tt>. To add a backend, implement this
+ * interface with a public no-argument constructor and list the class in
+ * <tt>META-INF/services/uk.co.edgeorgedev.notifj.notification.spi.NotificationBackend</tt>.
+ *
+ * <p>Constructing a backend and calling {@link #isSupported()} must be cheap, as every backend is
+ * consulted when one is selected. Any connection or registration belongs in the created
+ * notification's <tt>open()</tt> or <tt>show()</tt>.
+ *
+ * @see     NotificationBackends
+ * @since   1.3
+ */
+public interface NotificationBackend {
+
+	/**
+	 * Optional features that a backend may support
+	 * @since 1.3
+	 */
+	public enum Capability {
+		/** Notifications can be displayed until dismissed */
+		STICKY,
+		/** A callback URL is opened when a notification is clicked */
+		CALLBACKS,
+		/** Several notifications can be displayed in a single round-trip */
+		BATCHING,
+		/** A displayed notification can be replaced rather than another being displayed */
+		UPDATE_IN_PLACE
+	}
+
+	/**
+	 * Get the name of the backend
+	 * @return a short, unique name, e.g. <tt>growl</tt>
+	 * @since 1.3
+	 */
+	public abstract String getName();
+
+	/**
+	 * Get the priority of the backend - where several are supported, the highest priority is preferred
+	 * @return the priority
+	 * @since 1.3
+	 */
+	public abstract int getPriority();
+
+	/**
+	 * Check if the backend can be used on this system
+	 * @return <tt>true</tt> if the backend is supported and <tt>false</tt> otherwise.
+	 * @since 1.3
+	 */
+	public abstract boolean isSupported();
+
+	/**
+	 * Get the optional features supported by the backend on this system
+	 * @return the supported capabilities
+	 * @since 1.3
+	 */
+	public abstract Set<Capability> getCapabilities();
+
+	/**
+	 * Creates an unopened notification
+	 * @param application_name the name of the application displaying notifications
+	 * @return the notification
+	 * @throws NotificationException if the notification cannot be created
+	 * @since 1.3
+	 */
+	public abstract Notification create(String application_name) throws NotificationException;
+
+}
@@ -0,0 +1,163 @@
+/**
+ * NotificationBackends.java
+ * NotifJ
+ *
+ */
+package uk.co.edgeorgedev.notifj.notification.spi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import uk.co.edgeorgedev.notifj.notification.FailoverNotification;
+import uk.co.edgeorgedev.notifj.notification.Notification;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationException;
+import uk.co.edgeorgedev.notifj.notification.exception.NotificationOperatingSystemException;
+import uk.co.edgeorgedev.notifj.notification.spi.NotificationBackend.Capability;
+
+/**
+ * This class discovers {@link NotificationBackend} providers and selects the best one for this system.
+ *
+ * <p>For example, the following displays a notification with whichever supported backend has the highest
+ * priority and can display sticky notifications:
+ * <pre>
+ * Notification notif = NotificationBackends.create("Test Application", Capability.STICKY).sticky();
+ * notif.open();
+ * notif.show("Hello", "World");</pre>
+ *
+ * <p>Providers are loaded once, with the context class loader, and cached until {@link #reload()}.
+ * Providers that fail to load are skipped.
+ *
+ * @see     NotificationBackend
+ * @since   1.3
+ */
+public final class NotificationBackends {
+
+	private static final Comparator<NotificationBackend> BY_PRIORITY = new Comparator<NotificationBackend>() {
+		@Override
+		public int compare(NotificationBackend first, NotificationBackend second) {
+			if(first.getPriority() != second.getPriority())
+				return first.getPriority() > second.getPriority() ? -1 : 1;
+			return first.getName().compareTo(second.getName());
+		}
+	};
+
+	private static volatile List<NotificationBackend> backends;
+
+	private NotificationBackends() {}
+
+	/**
+	 * Get every discovered backend, supported or not, highest priority first
+	 * @return the discovered backends
+	 * @since 1.3
+	 */
+	public static List<NotificationBackend> all() {
+		List<NotificationBackend> loaded = backends;
+		if(loaded == null){
+			synchronized (NotificationBackends.class) {
+				loaded = backends;
+				if(loaded == null)
+					backends = loaded = load();
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Get the backends supported on this system that have every required capability, highest priority first
+	 * @param required the capabilities the backends must have
+	 * @return the matching backends - empty if there are none
+	 * @since 1.3
+	 */
+	public static List<NotificationBackend> available(Capability... required) {
+		List<NotificationBackend> available = new ArrayList<NotificationBackend>();
+		for (NotificationBackend backend : all()) {
+			if(backend.isSupported() && backend.getCapabilities().containsAll(Arrays.asList(required)))
+				available.add(backend);
+		}
+		return available;
+	}
+
+	/**
+	 * Creates a notification with the highest priority supported backend that has every required capability
+	 *
+	 * <p>The backend's notification is created and opened on the first call to <tt>show()</tt>, so
+	 * any connection or registration failure is reported there rather than by <tt>open()</tt>.
+	 *
+	 * @param application_name the name of the application displaying notifications
+	 * @param required the capabilities the backend must have
+	 * @return an unopened notification
+	 * @throws NotificationOperatingSystemException if no backend is available
+	 * @since 1.3
+	 */
+	public static Notification create(String application_name, Capability... required) throws NotificationException {
+		List<NotificationBackend> available = available(required);
+		if(available.isEmpty())
+			throw new NotificationOperatingSystemException("No notification backend supports this system" +
+					(required.length == 0 ? "" : " with " + Arrays.toString(required)));
+		return new BackendNotification(available.get(0), application_name);
+	}
+
+	/**
+	 * Creates a notification that tries every supported backend with the required capabilities, highest priority first
+	 *
+	 * <p>Each backend's notification is created and opened on first use.
+	 *
+	 * @param application_name the name of the application displaying notifications
+	 * @param required the capabilities the backends must have
+	 * @return an unopened failover notification
+	 * @throws NotificationOperatingSystemException if no backend is available
+	 * @see FailoverNotification
+	 * @since 1.3
+	 */
+	public static FailoverNotification failover(String application_name, Capability... required) throws NotificationException {
+		List<NotificationBackend> available = available(required);
+		if(available.isEmpty())
+			throw new NotificationOperatingSystemException("No notification backend supports this system" +
+					(required.length == 0 ? "" : " with " + Arrays.toString(required)));
+		List<Notification> chain = new ArrayList<Notification>(available.size());
+		for (NotificationBackend backend : available) {
+			chain.add(new BackendNotification(backend, application_name));
+		}
+		return new FailoverNotification(chain);
+	}
+
+	/**
+	 * Discards the cached providers so that they are discovered again on next use
+	 * @since 1.3
+	 */
+	public static void reload() {
+		backends = null;
+	}
+
+	private static List<NotificationBackend> load() {
+		List<NotificationBackend> loaded = new ArrayList<NotificationBackend>();
+		Iterator<NotificationBackend> providers = ServiceLoader.load(NotificationBackend.class).iterator();
+		while(hasNext(providers)){
+			try {
+				loaded.add(providers.next());
+			} catch (ServiceConfigurationError e) {
+				// A provider that cannot be loaded is skipped
+			}
+		}
+		Collections.sort(loaded, BY_PRIORITY);
+		return Collections.unmodifiableList(loaded);
+	}
+
+	/*
+	 * A malformed provider configuration file ends discovery
+	 */
+	private static boolean hasNext(Iterator<NotificationBackend> providers) {
+		try {
+			return providers.hasNext();
+		} catch (ServiceConfigurationError e) {
+			return false;
+		}
+	}
+
+}